@@ -0,0 +1,374 @@
+package de.tarent.cumulocity.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.node.CanceledExecutionException;
+
+import com.google.gson.stream.JsonReader;
+
+import de.tarent.cumulocity.data.PagedCollectionReader.ElementDecoder;
+import de.tarent.cumulocity.data.RowSink;
+import de.tarent.cumulocity.data.alarms.AlarmBenchmarks;
+import de.tarent.cumulocity.data.events.EventBenchmarks;
+import de.tarent.cumulocity.data.measurements.MeasurementBenchmarks;
+import de.tarent.cumulocity.deviceretriever.DeviceBenchmarks;
+
+/**
+ * measures the throughput (rows/s) and the allocation (bytes per row) of the
+ * decoders that turn Cumulocity responses into rows, offline on recorded
+ * pages in the "fixtures" directory
+ *
+ * every page is read the same way as the {@link de.tarent.cumulocity.data.PagedCollectionReader}
+ * does and every row is built like the {@link de.tarent.cumulocity.data.ContainerRowSink}
+ * does, only the output table is left out; the decoders are registered by
+ * the *Benchmarks classes in their packages (this is a fragment of the
+ * connector, so package-private decoders can be used), new decoders are added
+ * there
+ *
+ * every case runs in JVMs of its own ("-forks", 1 by default), so that the
+ * JIT profile of one decoder does not slow down the next one, and every row
+ * is consumed by a black hole (like the one of JMH, which is not available
+ * offline) so that decoding it cannot be optimized away; "-forks 0" runs all
+ * cases in the current JVM (e.g. for a profiler)
+ *
+ * run as Java application with the KNIME target platform on the class path,
+ * e.g. "DecoderBenchmark -iterations 10 -forks 3 alarm" (all options are
+ * optional, the last argument selects the cases by name)
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class DecoderBenchmark {
+
+	private static final com.sun.management.ThreadMXBean ALLOCATION = allocationBean();
+
+	/**
+	 * prefix of the lines with the results of a forked JVM
+	 */
+	private static final String RESULT = "RESULT\t";
+
+	/**
+	 * the sinks of all iterations end up here, so that the JIT cannot prove
+	 * that the rows are never used
+	 */
+	private static volatile Object s_blackhole;
+
+	private static final class Case {
+		private final String m_name;
+		private final String m_fixture;
+		private final String m_collectionName;
+		private final Supplier<ElementDecoder> m_decoder;
+
+		private Case(final String aName, final String aFixture, final String aCollectionName,
+				final Supplier<ElementDecoder> aDecoder) {
+			m_name = aName;
+			m_fixture = aFixture;
+			m_collectionName = aCollectionName;
+			m_decoder = aDecoder;
+		}
+	}
+
+	/**
+	 * builds the rows like the container sink and consumes every row: the row
+	 * and the number of its cells are folded into fields of the sink, which is
+	 * handed over to {@link DecoderBenchmark#s_blackhole} after every
+	 * iteration
+	 */
+	private static final class RowBuildingSink implements RowSink {
+		private long m_rowIx = 0;
+		private long m_nCells = 0;
+		private DataRow m_last;
+
+		@Override
+		public boolean addRow(final DataCell[] aCells) throws CanceledExecutionException {
+			m_last = new DefaultRow(RowKey.createRowKey(m_rowIx), aCells);
+			m_nCells += m_last.getNumCells();
+			m_rowIx++;
+			return true;
+		}
+	}
+
+	/**
+	 * throughput and allocation of one case (in one JVM or merged over forks)
+	 */
+	private static final class Result {
+		private final double[] m_rowsPerSecond;
+		private final double m_bytesPerSecond;
+		private final double m_allocatedPerRow;
+
+		private Result(final double[] aRowsPerSecond, final double aBytesPerSecond,
+				final double aAllocatedPerRow) {
+			m_rowsPerSecond = aRowsPerSecond;
+			m_bytesPerSecond = aBytesPerSecond;
+			m_allocatedPerRow = aAllocatedPerRow;
+		}
+	}
+
+	private final List<Case> m_cases = new ArrayList<>();
+
+	private File m_fixtures = new File("fixtures");
+	private long m_warmupNanos = TimeUnit.SECONDS.toNanos(3);
+	private int m_nIterations = 5;
+	private long m_iterationNanos = TimeUnit.SECONDS.toNanos(2);
+	private int m_nForks = 1;
+	private String m_filter = "";
+	/**
+	 * name of the only case to run, if this is a forked JVM
+	 */
+	private String m_child = null;
+	private final List<String> m_forkArgs = new ArrayList<>();
+
+	private DecoderBenchmark() {
+	}
+
+	/**
+	 * registers a case
+	 *
+	 * @param aName           - name of the case, e.g. "alarms"
+	 * @param aFixture        - file name of the recorded page
+	 * @param aCollectionName - name of the collection within the page
+	 * @param aDecoder        - creates a new decoder, a decoder is used for all
+	 *                        pages of an iteration like it is for all pages of a
+	 *                        retrieval
+	 */
+	public void register(final String aName, final String aFixture, final String aCollectionName,
+			final Supplier<ElementDecoder> aDecoder) {
+		m_cases.add(new Case(aName, aFixture, aCollectionName, aDecoder));
+	}
+
+	public static void main(final String[] aArgs) throws Exception {
+		final DecoderBenchmark benchmark = new DecoderBenchmark();
+		benchmark.parseArgs(aArgs);
+		AlarmBenchmarks.register(benchmark);
+		EventBenchmarks.register(benchmark);
+		MeasurementBenchmarks.register(benchmark);
+		DeviceBenchmarks.register(benchmark);
+		benchmark.run();
+	}
+
+	private void parseArgs(final String[] aArgs) {
+		for (int i = 0; i < aArgs.length; i++) {
+			switch (aArgs[i]) {
+			case "-fixtures":
+				m_fixtures = new File(aArgs[++i]);
+				m_forkArgs.addAll(Arrays.asList(aArgs[i - 1], m_fixtures.getAbsolutePath()));
+				break;
+			case "-warmup":
+				m_warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(aArgs[++i]));
+				m_forkArgs.addAll(Arrays.asList(aArgs[i - 1], aArgs[i]));
+				break;
+			case "-iterations":
+				m_nIterations = Integer.parseInt(aArgs[++i]);
+				m_forkArgs.addAll(Arrays.asList(aArgs[i - 1], aArgs[i]));
+				break;
+			case "-time":
+				m_iterationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(aArgs[++i]));
+				m_forkArgs.addAll(Arrays.asList(aArgs[i - 1], aArgs[i]));
+				break;
+			case "-forks":
+				m_nForks = Integer.parseInt(aArgs[++i]);
+				break;
+			case "-child":
+				m_child = aArgs[++i];
+				break;
+			default:
+				m_filter = aArgs[i];
+			}
+		}
+	}
+
+	private void run() throws IOException, InterruptedException, CanceledExecutionException {
+		if (m_child != null) {
+			for (final Case c : m_cases) {
+				if (c.m_name.equals(m_child)) {
+					final Result result = measure(c);
+					final StringBuilder line = new StringBuilder(RESULT);
+					line.append(result.m_bytesPerSecond).append('\t').append(result.m_allocatedPerRow);
+					for (final double rowsPerSecond : result.m_rowsPerSecond) {
+						line.append('\t').append(rowsPerSecond);
+					}
+					System.out.println(line);
+				}
+			}
+			return;
+		}
+		System.out.printf("%-28s %14s %10s %10s %12s%n", "case", "rows/s", "+-", "MB/s", "bytes/row");
+		for (final Case c : m_cases) {
+			if (!c.m_name.contains(m_filter)) {
+				continue;
+			}
+			final Result result = m_nForks > 0 ? fork(c) : measure(c);
+			System.out.printf("%-28s %14.0f %10.0f %10.1f %12s%n", c.m_name, mean(result.m_rowsPerSecond),
+					stdDev(result.m_rowsPerSecond), result.m_bytesPerSecond / (1024 * 1024),
+					Double.isNaN(result.m_allocatedPerRow) ? "n/a"
+							: String.format("%.0f", result.m_allocatedPerRow));
+		}
+	}
+
+	/**
+	 * runs the given case in the current JVM
+	 */
+	private Result measure(final Case aCase) throws IOException, CanceledExecutionException {
+		final byte[] page = Files.readAllBytes(new File(m_fixtures, aCase.m_fixture).toPath());
+		final RowBuildingSink check = new RowBuildingSink();
+		decodePage(aCase, aCase.m_decoder.get(), page, check);
+		if (check.m_rowIx == 0) {
+			throw new IllegalStateException(
+					"No rows decoded from " + aCase.m_fixture + " by case " + aCase.m_name);
+		}
+
+		runFor(aCase, page, m_warmupNanos);
+		final double[] rowsPerSecond = new double[m_nIterations];
+		double bytesPerSecond = 0;
+		double allocatedPerRow = 0;
+		for (int i = 0; i < m_nIterations; i++) {
+			final long allocatedBefore = allocatedBytes();
+			final long start = System.nanoTime();
+			final long[] counts = runFor(aCase, page, m_iterationNanos);
+			final double seconds = (System.nanoTime() - start) / 1e9;
+			final long allocated = allocatedBytes() - allocatedBefore;
+
+			rowsPerSecond[i] = counts[0] / seconds;
+			bytesPerSecond += counts[1] * (double) page.length / seconds / m_nIterations;
+			allocatedPerRow += allocated / (double) counts[0] / m_nIterations;
+		}
+		return new Result(rowsPerSecond, bytesPerSecond, ALLOCATION == null ? Double.NaN : allocatedPerRow);
+	}
+
+	/**
+	 * runs the given case in new JVMs (same java, class path and JVM options)
+	 * one after the other, the iterations of all forks are merged
+	 */
+	private Result fork(final Case aCase) throws IOException, InterruptedException {
+		final List<String> command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(DecoderBenchmark.class.getName());
+		command.addAll(m_forkArgs);
+		command.add("-child");
+		command.add(aCase.m_name);
+
+		final double[] rowsPerSecond = new double[m_nForks * m_nIterations];
+		double bytesPerSecond = 0;
+		double allocatedPerRow = 0;
+		for (int fork = 0; fork < m_nForks; fork++) {
+			final Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT)
+					.start();
+			String result = null;
+			try (final BufferedReader out = new BufferedReader(
+					new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+				for (String line = out.readLine(); line != null; line = out.readLine()) {
+					if (line.startsWith(RESULT)) {
+						result = line.substring(RESULT.length());
+					}
+				}
+			}
+			if (process.waitFor() != 0 || result == null) {
+				throw new IllegalStateException("Fork " + (fork + 1) + " of case " + aCase.m_name + " failed");
+			}
+			final String[] values = result.split("\t");
+			bytesPerSecond += Double.parseDouble(values[0]) / m_nForks;
+			allocatedPerRow += Double.parseDouble(values[1]) / m_nForks;
+			for (int i = 0; i < m_nIterations; i++) {
+				rowsPerSecond[fork * m_nIterations + i] = Double.parseDouble(values[2 + i]);
+			}
+		}
+		return new Result(rowsPerSecond, bytesPerSecond, allocatedPerRow);
+	}
+
+	/**
+	 * @return number of rows and pages decoded
+	 */
+	private static long[] runFor(final Case aCase, final byte[] aPage, final long aNanos)
+			throws IOException, CanceledExecutionException {
+		final ElementDecoder decoder = aCase.m_decoder.get();
+		final RowBuildingSink sink = new RowBuildingSink();
+		final long end = System.nanoTime() + aNanos;
+		long nPages = 0;
+		do {
+			decodePage(aCase, decoder, aPage, sink);
+			nPages++;
+		} while (System.nanoTime() < end);
+		s_blackhole = sink;
+		// a measurement may become several rows
+		return new long[] { sink.m_rowIx, nPages };
+	}
+
+	private static void decodePage(final Case aCase, final ElementDecoder aDecoder, final byte[] aPage,
+			final RowSink aSink) throws IOException, CanceledExecutionException {
+		try (final JsonReader reader = new JsonReader(
+				new InputStreamReader(new ByteArrayInputStream(aPage), StandardCharsets.UTF_8))) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (aCase.m_collectionName.equals(reader.nextName())) {
+					reader.beginArray();
+					while (reader.hasNext()) {
+						aDecoder.decode(reader, aSink);
+					}
+					reader.endArray();
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+	}
+
+	/**
+	 * @return bean that measures the allocations per thread, null if the JVM
+	 *         does not support it
+	 */
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return bytes allocated by the calling thread so far, 0 if they are not
+	 *         measured
+	 */
+	private static long allocatedBytes() {
+		return ALLOCATION == null ? 0 : ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	static double mean(final double[] aValues) {
+		double sum = 0;
+		for (final double value : aValues) {
+			sum += value;
+		}
+		return sum / aValues.length;
+	}
+
+	static double stdDev(final double[] aValues) {
+		final double mean = mean(aValues);
+		double sum = 0;
+		for (final double value : aValues) {
+			sum += (value - mean) * (value - mean);
+		}
+		return aValues.length < 2 ? 0 : Math.sqrt(sum / (aValues.length - 1));
+	}
+}
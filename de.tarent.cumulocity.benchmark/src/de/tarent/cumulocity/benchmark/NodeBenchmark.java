@@ -0,0 +1,375 @@
+package de.tarent.cumulocity.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.filestore.internal.NotInWorkflowDataRepository;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.DefaultNodeProgressMonitor;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.Node;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.workflow.FlowObjectStack;
+import org.knime.core.node.workflow.NodeID;
+import org.knime.core.node.workflow.SingleNodeContainer;
+
+import de.tarent.cumulocity.connector.BenchmarkConnections;
+import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.data.RetrieverBenchmarks;
+import de.tarent.cumulocity.data.WriteJournal;
+import de.tarent.cumulocity.data.alarms.AlarmBenchmarks;
+import de.tarent.cumulocity.data.events.EventBenchmarks;
+import de.tarent.cumulocity.data.measurements.MeasurementBenchmarks;
+import de.tarent.cumulocity.deviceretriever.DeviceBenchmarks;
+
+/**
+ * end-to-end throughput of the nodes: every node is executed (the same way
+ * KNIME does, including the output tables) against a {@link StandInServer}
+ * and the rows per second and requests per execution are reported, so that
+ * regressions are caught before a release
+ *
+ * the nodes are registered by the *Benchmarks classes in their packages (the
+ * execute methods are protected), which also set up the settings of a case
+ *
+ * "-save file" writes the rows per second of every case to a file, which
+ * later runs compare with ("-baseline file"): a case that is more than the
+ * tolerance ("-tolerance", 0.2 by default) slower is reported and the
+ * benchmark exits with 1, so that a release build can run it as a check;
+ * journals that the creator nodes leave behind (e.g. after injected errors)
+ * are deleted at the end
+ *
+ * run as Java application with the KNIME target platform on the class path,
+ * e.g. "NodeBenchmark -latency 20 -throttle 0.05 events" (all options are
+ * optional, the last argument selects the cases by name)
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class NodeBenchmark {
+
+	/**
+	 * executes the node of a case
+	 */
+	@FunctionalInterface
+	public interface NodeRun {
+		/**
+		 * @param aModel  - new model of the node of the case (with default
+		 *                settings)
+		 * @param aInData - the connection to the stand-in and the input table (may
+		 *                be null)
+		 */
+		PortObject[] execute(NodeModel aModel, PortObject[] aInData, ExecutionContext aExec) throws Exception;
+	}
+
+	/**
+	 * creates the input table of a case
+	 */
+	@FunctionalInterface
+	public interface InputTable {
+		BufferedDataTable create(NodeBenchmark aBenchmark, ExecutionContext aExec) throws Exception;
+	}
+
+	private static final class Case {
+		private final String m_name;
+		private final NodeFactory<? extends NodeModel> m_factory;
+		private final InputTable m_input;
+		private final NodeRun m_run;
+
+		private Case(final String aName, final NodeFactory<? extends NodeModel> aFactory, final InputTable aInput,
+				final NodeRun aRun) {
+			m_name = aName;
+			m_factory = aFactory;
+			m_input = aInput;
+			m_run = aRun;
+		}
+	}
+
+	private final List<Case> m_cases = new ArrayList<>();
+	private final StandInServer m_server;
+
+	private File m_fixtures = new File("fixtures");
+	private int m_nElements = 20000;
+	private int m_nRows = 2000;
+	private int m_nWarmups = 1;
+	private int m_nIterations = 3;
+	private String m_filter = "";
+	private File m_baseline = null;
+	private File m_save = null;
+	private double m_tolerance = 0.2;
+
+	private NodeBenchmark(final StandInServer aServer) {
+		m_server = aServer;
+	}
+
+	/**
+	 * registers a case
+	 *
+	 * @param aName    - name of the case, e.g. "events"
+	 * @param aFactory - factory of the node
+	 * @param aInput   - creates the input table, null if the node gets none
+	 * @param aRun     - configures and executes the node
+	 */
+	public void register(final String aName, final NodeFactory<? extends NodeModel> aFactory,
+			final InputTable aInput, final NodeRun aRun) {
+		m_cases.add(new Case(aName, aFactory, aInput, aRun));
+	}
+
+	/**
+	 * @return number of rows of the input tables of the creator nodes
+	 */
+	public int getNumberOfRows() {
+		return m_nRows;
+	}
+
+	/**
+	 * @return ids of the devices of the stand-in, the generated data refers to
+	 *         them in turn
+	 */
+	public List<String> getDeviceIds() {
+		return m_server.getDeviceIds();
+	}
+
+	/**
+	 * @return table with the ids of the devices of the stand-in in the column
+	 *         "Device ID"
+	 */
+	public BufferedDataTable createDeviceTable(final ExecutionContext aExec) {
+		final List<String> ids = getDeviceIds();
+		return createTable(aExec, new DataTableSpec(new DataColumnSpecCreator("Device ID", StringCell.TYPE)
+				.createSpec()), ids.size(), aRowIx -> new DataCell[] { new StringCell(ids.get((int) aRowIx)) });
+	}
+
+	/**
+	 * @param aCells - creates the cells of the row with the given index
+	 */
+	public static BufferedDataTable createTable(final ExecutionContext aExec, final DataTableSpec aSpec,
+			final long aNumRows, final LongFunction<DataCell[]> aCells) {
+		final BufferedDataContainer container = aExec.createDataContainer(aSpec);
+		for (long i = 0; i < aNumRows; i++) {
+			container.addRowToTable(new DefaultRow(RowKey.createRowKey(i), aCells.apply(i)));
+		}
+		container.close();
+		return container.getTable();
+	}
+
+	public static void main(final String[] aArgs) throws Exception {
+		final Set<File> journals = listJournals();
+		final int nRegressions;
+		try (final StandInServer server = new StandInServer()) {
+			final NodeBenchmark benchmark = new NodeBenchmark(server);
+			benchmark.parseArgs(aArgs);
+			benchmark.addCollections();
+			RetrieverBenchmarks.register(benchmark);
+			DeviceBenchmarks.registerNodes(benchmark);
+			EventBenchmarks.registerNodes(benchmark);
+			AlarmBenchmarks.registerNodes(benchmark);
+			MeasurementBenchmarks.registerNodes(benchmark);
+			nRegressions = benchmark.run();
+		} finally {
+			deleteJournals(journals);
+		}
+		if (nRegressions > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the journal files of the creator nodes that exist now
+	 */
+	private static Set<File> listJournals() {
+		final File[] files = WriteJournal.getDirectory().listFiles();
+		return files == null ? new HashSet<>() : new HashSet<>(Arrays.asList(files));
+	}
+
+	/**
+	 * deletes the journal files of the creator nodes that have been added
+	 * since the given ones have been listed (the journals of real workflows
+	 * are kept)
+	 */
+	private static void deleteJournals(final Set<File> aExisting) {
+		for (final File file : listJournals()) {
+			if (!aExisting.contains(file) && !file.delete()) {
+				System.err.println("Failed to delete journal " + file);
+			}
+		}
+	}
+
+	private void parseArgs(final String[] aArgs) {
+		long latency = 0;
+		long jitter = 0;
+		for (int i = 0; i < aArgs.length; i++) {
+			switch (aArgs[i]) {
+			case "-fixtures":
+				m_fixtures = new File(aArgs[++i]);
+				break;
+			case "-elements":
+				m_nElements = Integer.parseInt(aArgs[++i]);
+				break;
+			case "-devices":
+				m_server.setNumberOfDevices(Integer.parseInt(aArgs[++i]));
+				break;
+			case "-rows":
+				m_nRows = Integer.parseInt(aArgs[++i]);
+				break;
+			case "-latency":
+				latency = Long.parseLong(aArgs[++i]);
+				break;
+			case "-jitter":
+				jitter = Long.parseLong(aArgs[++i]);
+				break;
+			case "-errors":
+				m_server.setErrorRate(Double.parseDouble(aArgs[++i]));
+				break;
+			case "-throttle":
+				m_server.setThrottleRate(Double.parseDouble(aArgs[++i]));
+				break;
+			case "-retryAfter":
+				m_server.setRetryAfter(Integer.parseInt(aArgs[++i]));
+				break;
+			case "-baseline":
+				m_baseline = new File(aArgs[++i]);
+				break;
+			case "-save":
+				m_save = new File(aArgs[++i]);
+				break;
+			case "-tolerance":
+				m_tolerance = Double.parseDouble(aArgs[++i]);
+				break;
+			case "-warmup":
+				m_nWarmups = Integer.parseInt(aArgs[++i]);
+				break;
+			case "-iterations":
+				m_nIterations = Integer.parseInt(aArgs[++i]);
+				break;
+			default:
+				m_filter = aArgs[i];
+			}
+		}
+		m_server.setLatency(latency, jitter);
+	}
+
+	private void addCollections() throws Exception {
+		m_server.addCollection("inventory/managedObjects", "managedObjects",
+				new File(m_fixtures, "managedObjects.json"), m_server.getDeviceIds().size());
+		m_server.addCollection("event/events", "events", new File(m_fixtures, "events.json"), m_nElements);
+		m_server.addCollection("alarm/alarms", "alarms", new File(m_fixtures, "alarms.json"), m_nElements);
+		m_server.addCollection("measurement/measurements", "measurements",
+				new File(m_fixtures, "measurements.json"), m_nElements);
+	}
+
+	/**
+	 * @return number of cases that are slower than the baseline
+	 */
+	private int run() throws Exception {
+		final Map<String, Double> baseline = m_baseline == null ? new LinkedHashMap<>() : readResults(m_baseline);
+		final Map<String, Double> results = new LinkedHashMap<>();
+		final CumulocityPortObject connection = BenchmarkConnections.create(m_server.getUrl());
+		System.out.printf("%-36s %12s %10s %10s %12s%n", "case", "rows/s", "+-", "ms", "requests");
+		for (final Case c : m_cases) {
+			if (!c.m_name.contains(m_filter)) {
+				continue;
+			}
+			for (int i = 0; i < m_nWarmups; i++) {
+				execute(c, connection);
+			}
+			final double[] rowsPerSecond = new double[m_nIterations];
+			double millis = 0;
+			double requests = 0;
+			for (int i = 0; i < m_nIterations; i++) {
+				final long requestsBefore = m_server.getNumberOfRequests();
+				final long start = System.nanoTime();
+				final long nRows = execute(c, connection);
+				final long nanos = System.nanoTime() - start;
+
+				rowsPerSecond[i] = nRows / (nanos / 1e9);
+				millis += nanos / 1e6 / m_nIterations;
+				requests += (m_server.getNumberOfRequests() - requestsBefore) / (double) m_nIterations;
+			}
+			System.out.printf("%-36s %12.0f %10.0f %10.0f %12.0f%n", c.m_name, DecoderBenchmark.mean(rowsPerSecond),
+					DecoderBenchmark.stdDev(rowsPerSecond), millis, requests);
+			results.put(c.m_name, DecoderBenchmark.mean(rowsPerSecond));
+		}
+		System.out.printf("stand-in: %d requests, %d failed, %d throttled, %d elements created%n",
+				m_server.getNumberOfRequests(), m_server.getNumberOfFailedRequests(),
+				m_server.getNumberOfThrottledRequests(), m_server.getNumberOfCreatedElements());
+
+		if (m_save != null) {
+			writeResults(m_save, results);
+		}
+		int nRegressions = 0;
+		for (final Map.Entry<String, Double> result : results.entrySet()) {
+			final Double expected = baseline.get(result.getKey());
+			if (expected != null && result.getValue() < expected * (1 - m_tolerance)) {
+				System.out.printf("REGRESSION %s: %.0f rows/s, baseline %.0f rows/s%n", result.getKey(),
+						result.getValue(), expected);
+				nRegressions++;
+			}
+		}
+		return nRegressions;
+	}
+
+	/**
+	 * @return rows per second by case, one "case&lt;tab&gt;rows/s" per line
+	 */
+	private static Map<String, Double> readResults(final File aFile) throws IOException {
+		final Map<String, Double> results = new LinkedHashMap<>();
+		for (final String line : Files.readAllLines(aFile.toPath(), StandardCharsets.UTF_8)) {
+			final int ix = line.lastIndexOf('\t');
+			if (ix > 0) {
+				results.put(line.substring(0, ix), Double.parseDouble(line.substring(ix + 1)));
+			}
+		}
+		return results;
+	}
+
+	private static void writeResults(final File aFile, final Map<String, Double> aResults) throws IOException {
+		final List<String> lines = new ArrayList<>();
+		for (final Map.Entry<String, Double> result : aResults.entrySet()) {
+			lines.add(result.getKey() + "\t" + result.getValue());
+		}
+		Files.write(aFile.toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * executes the node of the given case once (with a new node, like a new
+	 * node in a workflow)
+	 *
+	 * @return number of rows retrieved (rows of the output table) or written
+	 *         (rows of the input table)
+	 */
+	private long execute(final Case aCase, final CumulocityPortObject aConnection) throws Exception {
+		@SuppressWarnings("unchecked")
+		final Node node = new Node((NodeFactory<NodeModel>) aCase.m_factory);
+		// the nodes push their metrics as flow variables
+		node.setFlowObjectStack(new FlowObjectStack(NodeID.ROOTID), new FlowObjectStack(NodeID.ROOTID));
+		final ExecutionContext exec = new ExecutionContext(new DefaultNodeProgressMonitor(), node,
+				SingleNodeContainer.MemoryPolicy.CacheSmallInMemory, NotInWorkflowDataRepository.newInstance());
+
+		final BufferedDataTable input = aCase.m_input == null ? null : aCase.m_input.create(this, exec);
+		final PortObject[] output = aCase.m_run.execute(node.getNodeModel(),
+				new PortObject[] { aConnection, input }, exec);
+		if (output.length > 0 && output[0] instanceof BufferedDataTable) {
+			return ((BufferedDataTable) output[0]).size();
+		}
+		return input == null ? 0 : input.size();
+	}
+}
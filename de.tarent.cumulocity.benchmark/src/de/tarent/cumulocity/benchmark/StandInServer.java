@@ -0,0 +1,501 @@
+package de.tarent.cumulocity.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * local stand-in for the REST API of a Cumulocity tenant, so that the nodes
+ * can be load-tested without a live tenant
+ *
+ * serves collections (events, alarms, measurements, managed objects) that are
+ * generated from the recorded pages in the "fixtures" directory, paginated
+ * like the platform ("currentPage", "pageSize", "withTotalPages") and
+ * filtered by "ids", "source", "type", "status", "severity", "dateFrom" and "dateTo" (all other
+ * filters are ignored), "withChildren=false" leaves out the references to
+ * child objects of managed objects; POSTs to a collection are accepted and answered like
+ * the platform does, but the created elements are not stored
+ *
+ * the latency and the rates of failed (500) and rejected (429) requests can be
+ * changed at any time, rejected requests carry a "Retry-After" header like
+ * those of the platform
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class StandInServer implements AutoCloseable {
+
+	/**
+	 * ids of the devices, the managed objects have these ids and all other
+	 * elements refer to them as source
+	 */
+	static final long DEVICE_ID_BASE = 10000;
+
+	/**
+	 * same as the platform
+	 */
+	private static final int DEFAULT_PAGE_SIZE = 5;
+	private static final int MAX_PAGE_SIZE = 2000;
+
+	/**
+	 * a pre-rendered element with the attributes it can be filtered by
+	 */
+	private static final class Element {
+		private final byte[] m_json;
+		/**
+		 * without the references to child objects
+		 */
+		private final byte[] m_jsonWithoutChildren;
+		private final String m_id;
+		private final String m_source;
+		private final String m_type;
+		private final String m_status;
+		private final String m_severity;
+		private final long m_time;
+
+		private Element(final JsonObject aElement, final long aTime) {
+			m_json = aElement.toString().getBytes(StandardCharsets.UTF_8);
+			final JsonObject withoutChildren = aElement.deepCopy();
+			withoutChildren.remove("childDevices");
+			withoutChildren.remove("childAssets");
+			withoutChildren.remove("childAdditions");
+			m_jsonWithoutChildren = withoutChildren.toString().getBytes(StandardCharsets.UTF_8);
+			m_id = aElement.has("id") ? aElement.get("id").getAsString() : null;
+			m_source = aElement.has("source") ? aElement.getAsJsonObject("source").get("id").getAsString() : null;
+			m_type = aElement.has("type") ? aElement.get("type").getAsString() : null;
+			m_status = aElement.has("status") ? aElement.get("status").getAsString() : null;
+			m_severity = aElement.has("severity") ? aElement.get("severity").getAsString() : null;
+			m_time = aTime;
+		}
+	}
+
+	private static final class Collection {
+		private final String m_name;
+		private final List<Element> m_elements;
+
+		private Collection(final String aName, final List<Element> aElements) {
+			m_name = aName;
+			m_elements = aElements;
+		}
+	}
+
+	private final HttpServer m_server;
+	private final ExecutorService m_executor;
+	private final String m_url;
+
+	/**
+	 * collections by their url (without leading or trailing slashes)
+	 */
+	private final Map<String, Collection> m_collections = new ConcurrentHashMap<>();
+	private final AtomicLong m_nextId = new AtomicLong(1000000);
+
+	private volatile int m_nDevices = 10;
+	private volatile long m_latencyMillis = 0;
+	private volatile long m_jitterMillis = 0;
+	private volatile double m_errorRate = 0;
+	private volatile double m_throttleRate = 0;
+	private volatile int m_retryAfterSeconds = 1;
+
+	private final AtomicLong m_nRequests = new AtomicLong();
+	private final AtomicLong m_nFailed = new AtomicLong();
+	private final AtomicLong m_nThrottled = new AtomicLong();
+	private final AtomicLong m_nCreated = new AtomicLong();
+
+	/**
+	 * starts the server on a free port of the loopback interface
+	 */
+	public StandInServer() throws IOException {
+		m_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		m_executor = Executors.newCachedThreadPool(aRunnable -> {
+			final Thread thread = new Thread(aRunnable, "Cumulocity-Stand-In");
+			thread.setDaemon(true);
+			return thread;
+		});
+		m_server.setExecutor(m_executor);
+		m_server.createContext("/", this::handle);
+		m_server.start();
+		m_url = "http://" + m_server.getAddress().getHostString() + ":" + m_server.getAddress().getPort();
+	}
+
+	/**
+	 * @return base url of the server, to be used as platform url
+	 */
+	public String getUrl() {
+		return m_url;
+	}
+
+	/**
+	 * @param aNumDevices - number of devices the generated elements refer to (set
+	 *                    before collections are added)
+	 */
+	public void setNumberOfDevices(final int aNumDevices) {
+		m_nDevices = aNumDevices;
+	}
+
+	/**
+	 * @return ids of the devices the generated elements refer to
+	 */
+	public List<String> getDeviceIds() {
+		final List<String> ids = new ArrayList<>();
+		for (int i = 0; i < m_nDevices; i++) {
+			ids.add(String.valueOf(DEVICE_ID_BASE + i));
+		}
+		return ids;
+	}
+
+	/**
+	 * @param aMillis       - time until a request is answered
+	 * @param aJitterMillis - up to this time is added at random
+	 */
+	public void setLatency(final long aMillis, final long aJitterMillis) {
+		m_latencyMillis = aMillis;
+		m_jitterMillis = aJitterMillis;
+	}
+
+	/**
+	 * @param aRate - fraction of the requests that fail with 500
+	 */
+	public void setErrorRate(final double aRate) {
+		m_errorRate = aRate;
+	}
+
+	/**
+	 * @param aRate - fraction of the requests that are rejected with 429 (too
+	 *              many requests)
+	 */
+	public void setThrottleRate(final double aRate) {
+		m_throttleRate = aRate;
+	}
+
+	/**
+	 * @param aSeconds - value of the "Retry-After" header of rejected requests
+	 */
+	public void setRetryAfter(final int aSeconds) {
+		m_retryAfterSeconds = aSeconds;
+	}
+
+	/**
+	 * adds a collection with the given number of elements, which are copies of
+	 * the elements of the recorded page with new ids; the managed objects get
+	 * the ids of the devices, all other elements refer to the devices in turn
+	 * and are one second apart, ending now
+	 *
+	 * @param aRelativeUrl    - e.g. "event/events"
+	 * @param aCollectionName - e.g. "events"
+	 * @param aFixture        - recorded page with elements of the collection
+	 */
+	public void addCollection(final String aRelativeUrl, final String aCollectionName, final File aFixture,
+			final int aNumElements) throws IOException {
+		final JsonArray templates;
+		try (final Reader reader = new InputStreamReader(new FileInputStream(aFixture), StandardCharsets.UTF_8)) {
+			templates = new JsonParser().parse(reader).getAsJsonObject().getAsJsonArray(aCollectionName);
+		}
+		final boolean isInventory = aRelativeUrl.startsWith("inventory/");
+		final long end = System.currentTimeMillis();
+		final List<Element> elements = new ArrayList<>(aNumElements);
+		for (int i = 0; i < aNumElements; i++) {
+			final JsonObject element = templates.get(i % templates.size()).deepCopy().getAsJsonObject();
+			final String id = String.valueOf(isInventory ? DEVICE_ID_BASE + i : m_nextId.getAndIncrement());
+			element.addProperty("id", id);
+			element.addProperty("self", m_url + "/" + aRelativeUrl + "/" + id);
+			if (element.has("source")) {
+				element.getAsJsonObject("source").addProperty("id", String.valueOf(DEVICE_ID_BASE + i % m_nDevices));
+			}
+			final long time = end - TimeUnit.SECONDS.toMillis(aNumElements - i);
+			if (element.has("time")) {
+				element.addProperty("time", Instant.ofEpochMilli(time).toString());
+			}
+			elements.add(new Element(element, time));
+		}
+		m_collections.put(aRelativeUrl, new Collection(aCollectionName, elements));
+	}
+
+	/**
+	 * @return number of requests received (including the failed and rejected
+	 *         ones)
+	 */
+	public long getNumberOfRequests() {
+		return m_nRequests.get();
+	}
+
+	public long getNumberOfFailedRequests() {
+		return m_nFailed.get();
+	}
+
+	public long getNumberOfThrottledRequests() {
+		return m_nThrottled.get();
+	}
+
+	/**
+	 * @return number of elements created by POSTs
+	 */
+	public long getNumberOfCreatedElements() {
+		return m_nCreated.get();
+	}
+
+	@Override
+	public void close() {
+		m_server.stop(0);
+		m_executor.shutdownNow();
+	}
+
+	private void handle(final HttpExchange aExchange) throws IOException {
+		try {
+			m_nRequests.incrementAndGet();
+			final long jitter = m_jitterMillis;
+			final long latency = m_latencyMillis + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+			if (latency > 0) {
+				Thread.sleep(latency);
+			}
+			final double random = ThreadLocalRandom.current().nextDouble();
+			if (random < m_throttleRate) {
+				m_nThrottled.incrementAndGet();
+				aExchange.getResponseHeaders().set("Retry-After", String.valueOf(m_retryAfterSeconds));
+				sendError(aExchange, 429, "general/tooManyRequests", "Too many requests");
+				return;
+			}
+			if (random < m_throttleRate + m_errorRate) {
+				m_nFailed.incrementAndGet();
+				sendError(aExchange, 500, "general/internalError", "Failure injected by the stand-in");
+				return;
+			}
+
+			final String path = trimSlashes(aExchange.getRequestURI().getPath());
+			final Collection collection = m_collections.get(path);
+			if (collection == null) {
+				sendError(aExchange, 404, "general/notFound", "Unknown resource " + path);
+				return;
+			}
+			switch (aExchange.getRequestMethod()) {
+			case "GET":
+				sendPage(aExchange, path, collection);
+				break;
+			case "POST":
+				create(aExchange, path, collection);
+				break;
+			default:
+				sendError(aExchange, 405, "general/methodNotAllowed", aExchange.getRequestMethod());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			sendError(aExchange, 500, "general/internalError", String.valueOf(e));
+		} finally {
+			aExchange.close();
+		}
+	}
+
+	private void sendPage(final HttpExchange aExchange, final String aPath, final Collection aCollection)
+			throws IOException {
+		final Map<String, String> query = parseQuery(aExchange.getRequestURI().getRawQuery());
+		final int pageSize = Math.min(MAX_PAGE_SIZE, parseInt(query.get("pageSize"), DEFAULT_PAGE_SIZE));
+		final int currentPage = Math.max(1, parseInt(query.get("currentPage"), 1));
+		final boolean withChildren = !"false".equals(query.get("withChildren"));
+
+		final List<Element> matches = filter(aCollection.m_elements, query);
+		final int from = (int) Math.min(matches.size(), (long) (currentPage - 1) * pageSize);
+		final int to = Math.min(matches.size(), from + pageSize);
+
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		final String self = m_url + "/" + aPath + "?pageSize=" + pageSize + "&currentPage=";
+		write(body, "{\"self\":\"" + self + currentPage + "\",");
+		// like the platform, there is a next link whenever the page is full
+		if (to - from == pageSize) {
+			write(body, "\"next\":\"" + self + (currentPage + 1) + "\",");
+		}
+		write(body, "\"" + aCollection.m_name + "\":[");
+		for (int i = from; i < to; i++) {
+			if (i > from) {
+				body.write(',');
+			}
+			body.write(withChildren ? matches.get(i).m_json : matches.get(i).m_jsonWithoutChildren);
+		}
+		write(body, "],\"statistics\":{\"currentPage\":" + currentPage + ",\"pageSize\":" + pageSize);
+		if ("true".equals(query.get("withTotalPages"))) {
+			write(body, ",\"totalPages\":" + (matches.size() + pageSize - 1) / pageSize);
+		}
+		write(body, "}}");
+		send(aExchange, 200, body.toByteArray(), null);
+	}
+
+	private static List<Element> filter(final List<Element> aElements, final Map<String, String> aQuery) {
+		final Set<String> ids = aQuery.containsKey("ids") ? new HashSet<>(Arrays.asList(aQuery.get("ids").split(",")))
+				: null;
+		final String source = aQuery.get("source");
+		final String type = aQuery.get("type");
+		final String status = aQuery.get("status");
+		final String severity = aQuery.get("severity");
+		final long dateFrom = parseDate(aQuery.get("dateFrom"), Long.MIN_VALUE);
+		final long dateTo = parseDate(aQuery.get("dateTo"), Long.MAX_VALUE);
+		if (ids == null && source == null && type == null && status == null && severity == null
+				&& dateFrom == Long.MIN_VALUE && dateTo == Long.MAX_VALUE) {
+			return aElements;
+		}
+		final List<Element> matches = new ArrayList<>();
+		for (final Element element : aElements) {
+			if ((ids == null || ids.contains(element.m_id)) && (source == null || source.equals(element.m_source))
+					&& (type == null || type.equals(element.m_type))
+					&& (status == null || status.equals(element.m_status))
+					&& (severity == null || severity.equals(element.m_severity)) && element.m_time >= dateFrom
+					&& element.m_time < dateTo) {
+				matches.add(element);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * answers like the platform: 201 with the location of the new element and
+	 * the element (or the collection of elements) with ids
+	 */
+	private void create(final HttpExchange aExchange, final String aPath, final Collection aCollection)
+			throws IOException {
+		final JsonObject posted;
+		try (final Reader reader = new InputStreamReader(aExchange.getRequestBody(), StandardCharsets.UTF_8)) {
+			posted = new JsonParser().parse(reader).getAsJsonObject();
+		}
+		final String location;
+		if (posted.has(aCollection.m_name) && posted.get(aCollection.m_name).isJsonArray()) {
+			for (final JsonElement element : posted.getAsJsonArray(aCollection.m_name)) {
+				addId(element.getAsJsonObject(), aPath);
+			}
+			location = m_url + "/" + aPath;
+		} else {
+			location = addId(posted, aPath);
+		}
+		send(aExchange, 201, posted.toString().getBytes(StandardCharsets.UTF_8), location);
+	}
+
+	/**
+	 * @return the url of the new element
+	 */
+	private String addId(final JsonObject aElement, final String aPath) {
+		final String id = String.valueOf(m_nextId.getAndIncrement());
+		final String self = m_url + "/" + aPath + "/" + id;
+		aElement.add("id", new JsonPrimitive(id));
+		aElement.add("self", new JsonPrimitive(self));
+		m_nCreated.incrementAndGet();
+		return self;
+	}
+
+	private static void sendError(final HttpExchange aExchange, final int aCode, final String aError,
+			final String aMessage) throws IOException {
+		final JsonObject error = new JsonObject();
+		error.addProperty("error", aError);
+		error.addProperty("message", aMessage);
+		// the request body has to be consumed before the connection can be re-used
+		drain(aExchange.getRequestBody());
+		send(aExchange, aCode, error.toString().getBytes(StandardCharsets.UTF_8), null);
+	}
+
+	private static void send(final HttpExchange aExchange, final int aCode, final byte[] aBody,
+			final String aLocation) throws IOException {
+		aExchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+		if (aLocation != null) {
+			aExchange.getResponseHeaders().set("Location", aLocation);
+		}
+		aExchange.sendResponseHeaders(aCode, aBody.length);
+		try (final OutputStream out = aExchange.getResponseBody()) {
+			out.write(aBody);
+		}
+	}
+
+	private static void drain(final InputStream aIn) throws IOException {
+		final byte[] buffer = new byte[8192];
+		while (aIn.read(buffer) >= 0) {
+			// discard
+		}
+	}
+
+	private static void write(final ByteArrayOutputStream aOut, final String aText) {
+		final byte[] bytes = aText.getBytes(StandardCharsets.UTF_8);
+		aOut.write(bytes, 0, bytes.length);
+	}
+
+	private static Map<String, String> parseQuery(final String aRawQuery) throws UnsupportedEncodingException {
+		final Map<String, String> query = new HashMap<>();
+		if (aRawQuery == null) {
+			return query;
+		}
+		for (final String param : aRawQuery.split("&")) {
+			final int ix = param.indexOf('=');
+			if (ix > 0) {
+				query.put(URLDecoder.decode(param.substring(0, ix), "UTF-8"),
+						URLDecoder.decode(param.substring(ix + 1), "UTF-8"));
+			}
+		}
+		return query;
+	}
+
+	private static int parseInt(final String aValue, final int aDefault) {
+		if (aValue == null) {
+			return aDefault;
+		}
+		try {
+			return Integer.parseInt(aValue);
+		} catch (NumberFormatException e) {
+			return aDefault;
+		}
+	}
+
+	/**
+	 * @return epoch millis of the given date, the default if there is none or
+	 *         it cannot be parsed
+	 */
+	private static long parseDate(final String aValue, final long aDefault) {
+		if (aValue == null) {
+			return aDefault;
+		}
+		try {
+			return OffsetDateTime.parse(aValue.trim()).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return aDefault;
+		}
+	}
+
+	private static String trimSlashes(final String aPath) {
+		int start = 0;
+		int end = aPath.length();
+		while (start < end && aPath.charAt(start) == '/') {
+			start++;
+		}
+		while (end > start && aPath.charAt(end - 1) == '/') {
+			end--;
+		}
+		return aPath.substring(start, end);
+	}
+}
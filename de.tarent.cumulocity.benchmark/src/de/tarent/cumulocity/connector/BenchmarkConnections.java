@@ -0,0 +1,24 @@
+package de.tarent.cumulocity.connector;
+
+import java.util.Optional;
+
+/**
+ * connections for the benchmarks
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class BenchmarkConnections {
+
+	private BenchmarkConnections() {
+	}
+
+	/**
+	 * @return connection port object as created by the connector node for the
+	 *         platform with the given url (any user and password)
+	 */
+	public static CumulocityPortObject create(final String aUrl) {
+		return new CumulocityPortObject(CumulocityPortObject.saveConnectionInfoInConfigObject(Optional.empty(), aUrl,
+				Optional.empty(), Optional.of("benchmark"), Optional.of("benchmark")));
+	}
+}
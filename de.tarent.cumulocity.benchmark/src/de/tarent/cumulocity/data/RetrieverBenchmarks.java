@@ -0,0 +1,95 @@
+package de.tarent.cumulocity.data;
+
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+
+import de.tarent.cumulocity.benchmark.NodeBenchmark;
+import de.tarent.cumulocity.data.alarms.AlarmBenchmarks;
+import de.tarent.cumulocity.data.alarms.AlarmsNodeFactory;
+import de.tarent.cumulocity.data.events.EventBenchmarks;
+import de.tarent.cumulocity.data.events.EventsNodeFactory;
+import de.tarent.cumulocity.data.measurements.MeasurementsNodeFactory;
+
+/**
+ * the retriever nodes of events, alarms and measurements (all of them
+ * retrieve the data of the devices of the stand-in one after the other)
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class RetrieverBenchmarks {
+
+	private RetrieverBenchmarks() {
+	}
+
+	public static void register(final NodeBenchmark aBenchmark) {
+		aBenchmark.register("events retriever", new EventsNodeFactory(), NodeBenchmark::createDeviceTable,
+				(aModel, aInData, aExec) -> execute((RetrieveDataNodeModel) aModel, aInData, aExec, 1));
+		// the devices are cached after the warm-up
+		aBenchmark.register("events retriever (device columns)", new EventsNodeFactory(),
+				NodeBenchmark::createDeviceTable,
+				(aModel, aInData, aExec) -> execute((RetrieveDataNodeModel) aModel, aInData, aExec, 1, true));
+		// one request per device and type
+		aBenchmark.register("events retriever (2 types, 4 parallel)", new EventsNodeFactory(),
+				NodeBenchmark::createDeviceTable, (aModel, aInData, aExec) -> {
+					final NodeSettings settings = settings((RetrieveDataNodeModel) aModel, 4, false);
+					EventBenchmarks.setEventTypes(settings, "c8y_LocationUpdate, c8y_DoorOpened");
+					return execute((RetrieveDataNodeModel) aModel, aInData, aExec, settings);
+				});
+		aBenchmark.register("alarms retriever", new AlarmsNodeFactory(), NodeBenchmark::createDeviceTable,
+				(aModel, aInData, aExec) -> execute((RetrieveDataNodeModel) aModel, aInData, aExec, 1));
+		// one request per device, status and severity
+		aBenchmark.register("alarms retriever (filters, 4 parallel)", new AlarmsNodeFactory(),
+				NodeBenchmark::createDeviceTable, (aModel, aInData, aExec) -> {
+					final NodeSettings settings = settings((RetrieveDataNodeModel) aModel, 4, false);
+					AlarmBenchmarks.setStatusesAndSeverities(settings, "ACTIVE", "CRITICAL, MAJOR");
+					return execute((RetrieveDataNodeModel) aModel, aInData, aExec, settings);
+				});
+		aBenchmark.register("measurements retriever", new MeasurementsNodeFactory(),
+				NodeBenchmark::createDeviceTable,
+				(aModel, aInData, aExec) -> execute((RetrieveDataNodeModel) aModel, aInData, aExec, 1));
+		aBenchmark.register("measurements retriever (4 parallel)", new MeasurementsNodeFactory(),
+				NodeBenchmark::createDeviceTable,
+				(aModel, aInData, aExec) -> execute((RetrieveDataNodeModel) aModel, aInData, aExec, 4));
+	}
+
+	private static PortObject[] execute(final RetrieveDataNodeModel aModel, final PortObject[] aInData,
+			final ExecutionContext aExec, final int aParallelism) throws Exception {
+		return execute(aModel, aInData, aExec, aParallelism, false);
+	}
+
+	/**
+	 * executes the node with its default settings, except for the device id
+	 * column of the input table, the parallelism and the device columns
+	 */
+	private static PortObject[] execute(final RetrieveDataNodeModel aModel, final PortObject[] aInData,
+			final ExecutionContext aExec, final int aParallelism, final boolean aDeviceColumns) throws Exception {
+		return execute(aModel, aInData, aExec, settings(aModel, aParallelism, aDeviceColumns));
+	}
+
+	private static PortObject[] execute(final RetrieveDataNodeModel aModel, final PortObject[] aInData,
+			final ExecutionContext aExec, final NodeSettings aSettings) throws Exception {
+		aModel.validateSettings(aSettings);
+		aModel.loadValidatedSettingsFrom(aSettings);
+		return aModel.execute(aInData, aExec);
+	}
+
+	/**
+	 * @return the default settings of the node, except for the device id column
+	 *         of the input table, the parallelism and the device columns
+	 */
+	private static NodeSettings settings(final RetrieveDataNodeModel aModel, final int aParallelism,
+			final boolean aDeviceColumns) {
+		final NodeSettings settings = new NodeSettings("benchmark");
+		aModel.saveSettingsTo(settings);
+		final SettingsModelString deviceIdColumn = RetrieveDataNodeModel.createSettingsDeviceIdColumn();
+		deviceIdColumn.setStringValue("Device ID");
+		deviceIdColumn.saveSettingsTo(settings);
+		settings.addInt(RetrieveDataNodeModel.Config_PARALLELISM, aParallelism);
+		settings.addBoolean(RetrieveDataNodeModel.Config_DEVICE_COLUMNS, aDeviceColumns);
+		settings.addString(RetrieveDataNodeModel.Config_DEVICE_FRAGMENTS, aDeviceColumns ? "c8y_Hardware" : "");
+		return settings;
+	}
+}
@@ -0,0 +1,94 @@
+package de.tarent.cumulocity.data.alarms;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeCellFactory;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.port.PortObject;
+
+import de.tarent.cumulocity.benchmark.DecoderBenchmark;
+import de.tarent.cumulocity.benchmark.NodeBenchmark;
+import de.tarent.cumulocity.data.alarms.CreateAlarmsNodeModel.COLUMN_KEYS;
+
+/**
+ * decoders of the alarms retriever and the alarms creator node
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class AlarmBenchmarks {
+
+	private static final String[] SEVERITIES = { "CRITICAL", "MAJOR", "MINOR", "WARNING" };
+
+	private AlarmBenchmarks() {
+	}
+
+	public static void register(final DecoderBenchmark aBenchmark) {
+		aBenchmark.register("alarms", "alarms.json", "alarms", AlarmRowDecoder::new);
+	}
+
+	public static void registerNodes(final NodeBenchmark aBenchmark) {
+		aBenchmark.register("alarms creator", new CreateAlarmsNodeFactory(), AlarmBenchmarks::createInput,
+				(aModel, aInData, aExec) -> execute((CreateAlarmsNodeModel) aModel, aInData, aExec, false));
+		aBenchmark.register("alarms creator (aggregated)", new CreateAlarmsNodeFactory(),
+				AlarmBenchmarks::createInput,
+				(aModel, aInData, aExec) -> execute((CreateAlarmsNodeModel) aModel, aInData, aExec, true));
+	}
+
+	/**
+	 * sets the status and severity filters of the alarms retriever (the
+	 * settings keys are only visible in this package)
+	 *
+	 * @param aStatuses   - comma separated statuses
+	 * @param aSeverities - comma separated severities
+	 */
+	public static void setStatusesAndSeverities(final NodeSettings aSettings, final String aStatuses,
+			final String aSeverities) {
+		aSettings.addString(AlarmsNodeModel.Config_ALARM_STATUSES, aStatuses);
+		aSettings.addString(AlarmsNodeModel.Config_ALARM_SEVERITIES, aSeverities);
+	}
+
+	/**
+	 * @return one active alarm per row, for the devices of the stand-in in turn
+	 */
+	private static BufferedDataTable createInput(final NodeBenchmark aBenchmark, final ExecutionContext aExec) {
+		final List<String> devices = aBenchmark.getDeviceIds();
+		final ZonedDateTime start = ZonedDateTime.now(ZoneOffset.UTC).minusSeconds(aBenchmark.getNumberOfRows());
+		final DataTableSpec spec = new DataTableSpec(
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_ALARM_TYPE.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_SEVERITY.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_SOURCE_ID.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_TEXT.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_STATUS.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_TIME.toString(), ZonedDateTimeCellFactory.TYPE)
+						.createSpec());
+		return NodeBenchmark.createTable(aExec, spec, aBenchmark.getNumberOfRows(),
+				aRowIx -> new DataCell[] { new StringCell("c8y_BenchmarkAlarm"),
+						new StringCell(SEVERITIES[(int) (aRowIx % SEVERITIES.length)]),
+						new StringCell(devices.get((int) (aRowIx % devices.size()))),
+						new StringCell("Benchmark alarm " + aRowIx), new StringCell("ACTIVE"),
+						ZonedDateTimeCellFactory.create(start.plusSeconds(aRowIx)) });
+	}
+
+	private static PortObject[] execute(final CreateAlarmsNodeModel aModel, final PortObject[] aInData,
+			final ExecutionContext aExec, final boolean aAggregate) throws Exception {
+		final NodeSettings settings = new NodeSettings("benchmark");
+		aModel.saveSettingsTo(settings);
+		for (final COLUMN_KEYS key : new COLUMN_KEYS[] { COLUMN_KEYS.KEY_ALARM_TYPE, COLUMN_KEYS.KEY_SEVERITY,
+				COLUMN_KEYS.KEY_SOURCE_ID, COLUMN_KEYS.KEY_TEXT, COLUMN_KEYS.KEY_STATUS, COLUMN_KEYS.KEY_TIME }) {
+			settings.addString(key.name(), key.toString());
+		}
+		settings.addBoolean(CreateAlarmsNodeModel.Config_AGGREGATE, aAggregate);
+		aModel.validateSettings(settings);
+		aModel.loadValidatedSettingsFrom(settings);
+		return aModel.execute(aInData, aExec);
+	}
+}
@@ -0,0 +1,87 @@
+package de.tarent.cumulocity.data.events;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeCellFactory;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.port.PortObject;
+
+import de.tarent.cumulocity.benchmark.DecoderBenchmark;
+import de.tarent.cumulocity.benchmark.NodeBenchmark;
+import de.tarent.cumulocity.data.events.CreateEventsNodeModel.COLUMN_KEYS;
+
+/**
+ * decoders of the events retriever and the events creator node
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class EventBenchmarks {
+
+	private EventBenchmarks() {
+	}
+
+	public static void register(final DecoderBenchmark aBenchmark) {
+		aBenchmark.register("events", "events.json", "events", EventRowDecoder::new);
+	}
+
+	public static void registerNodes(final NodeBenchmark aBenchmark) {
+		aBenchmark.register("events creator", new CreateEventsNodeFactory(), EventBenchmarks::createInput,
+				(aModel, aInData, aExec) -> execute((CreateEventsNodeModel) aModel, aInData, aExec, 1));
+		aBenchmark.register("events creator (8 parallel)", new CreateEventsNodeFactory(),
+				EventBenchmarks::createInput,
+				(aModel, aInData, aExec) -> execute((CreateEventsNodeModel) aModel, aInData, aExec, 8));
+	}
+
+	/**
+	 * sets the type filter of the events retriever (the settings keys are only
+	 * visible in this package)
+	 *
+	 * @param aTypes - comma separated event types
+	 */
+	public static void setEventTypes(final NodeSettings aSettings, final String aTypes) {
+		aSettings.addString(EventsNodeModel.Config_EVENT_TYPES, aTypes);
+		aSettings.addString(EventsNodeModel.Config_EVENT_FRAGMENT_TYPE, "");
+	}
+
+	/**
+	 * @return one event per row, for the devices of the stand-in in turn
+	 */
+	private static BufferedDataTable createInput(final NodeBenchmark aBenchmark, final ExecutionContext aExec) {
+		final List<String> devices = aBenchmark.getDeviceIds();
+		final ZonedDateTime start = ZonedDateTime.now(ZoneOffset.UTC).minusSeconds(aBenchmark.getNumberOfRows());
+		final DataTableSpec spec = new DataTableSpec(
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_EVENT_TYPE.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_SOURCE_ID.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_TEXT.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_TIME.toString(), ZonedDateTimeCellFactory.TYPE)
+						.createSpec());
+		return NodeBenchmark.createTable(aExec, spec, aBenchmark.getNumberOfRows(),
+				aRowIx -> new DataCell[] { new StringCell("c8y_BenchmarkEvent"),
+						new StringCell(devices.get((int) (aRowIx % devices.size()))),
+						new StringCell("Benchmark event " + aRowIx),
+						ZonedDateTimeCellFactory.create(start.plusSeconds(aRowIx)) });
+	}
+
+	private static PortObject[] execute(final CreateEventsNodeModel aModel, final PortObject[] aInData,
+			final ExecutionContext aExec, final int aMaxInFlight) throws Exception {
+		final NodeSettings settings = new NodeSettings("benchmark");
+		aModel.saveSettingsTo(settings);
+		for (final COLUMN_KEYS key : new COLUMN_KEYS[] { COLUMN_KEYS.KEY_EVENT_TYPE, COLUMN_KEYS.KEY_SOURCE_ID,
+				COLUMN_KEYS.KEY_TEXT, COLUMN_KEYS.KEY_TIME }) {
+			settings.addString(key.name(), key.toString());
+		}
+		settings.addInt(CreateEventsNodeModel.Config_MAX_IN_FLIGHT, aMaxInFlight);
+		aModel.validateSettings(settings);
+		aModel.loadValidatedSettingsFrom(settings);
+		return aModel.execute(aInData, aExec);
+	}
+}
@@ -0,0 +1,102 @@
+package de.tarent.cumulocity.data.measurements;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeCellFactory;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.port.PortObject;
+
+import de.tarent.cumulocity.benchmark.DecoderBenchmark;
+import de.tarent.cumulocity.benchmark.NodeBenchmark;
+import de.tarent.cumulocity.data.measurements.MeasurementCreatorNodeModel.COLUMN_KEYS;
+
+/**
+ * decoders of the measurements retriever, in the long format (one row per
+ * series) and in the wide format (one row per measurement), and the
+ * measurements creator node
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class MeasurementBenchmarks {
+
+	/**
+	 * value columns of the wide format, the acceleration series of the recorded
+	 * measurements are left out (dropped values)
+	 */
+	private static final String[] SERIES = { "c8y_TemperatureMeasurement.T", "c8y_HumidityMeasurement.h",
+			"c8y_Battery.level" };
+
+	private MeasurementBenchmarks() {
+	}
+
+	public static void register(final DecoderBenchmark aBenchmark) {
+		aBenchmark.register("measurements (long)", "measurements.json", "measurements",
+				() -> new MeasurementRowDecoder(new AtomicLong()));
+
+		final Map<String, Integer> columns = new HashMap<>();
+		for (final String name : SERIES) {
+			columns.put(name, columns.size());
+		}
+		aBenchmark.register("measurements (wide)", "measurements.json", "measurements",
+				() -> new MeasurementRowDecoder(new AtomicLong(), columns, new AtomicLong()));
+	}
+
+	public static void registerNodes(final NodeBenchmark aBenchmark) {
+		aBenchmark.register("measurements creator", new MeasurementCreatorNodeFactory(),
+				MeasurementBenchmarks::createInput,
+				(aModel, aInData, aExec) -> execute((MeasurementCreatorNodeModel) aModel, aInData, aExec, 1));
+		aBenchmark.register("measurements creator (batches of 200)", new MeasurementCreatorNodeFactory(),
+				MeasurementBenchmarks::createInput,
+				(aModel, aInData, aExec) -> execute((MeasurementCreatorNodeModel) aModel, aInData, aExec, 200));
+	}
+
+	/**
+	 * @return one temperature measurement per row, for the devices of the
+	 *         stand-in in turn
+	 */
+	private static BufferedDataTable createInput(final NodeBenchmark aBenchmark, final ExecutionContext aExec) {
+		final List<String> devices = aBenchmark.getDeviceIds();
+		final ZonedDateTime start = ZonedDateTime.now(ZoneOffset.UTC).minusSeconds(aBenchmark.getNumberOfRows());
+		final DataTableSpec spec = new DataTableSpec(
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_MEASUREMENT_TYPE.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_SOURCE_ID.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_TIME.toString(), ZonedDateTimeCellFactory.TYPE)
+						.createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_FRAGMENT_SERIES.toString(), StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_MEASUREMENT_VALUE.toString(), DoubleCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(COLUMN_KEYS.KEY_MEASUREMENT_UNIT.toString(), StringCell.TYPE).createSpec());
+		return NodeBenchmark.createTable(aExec, spec, aBenchmark.getNumberOfRows(),
+				aRowIx -> new DataCell[] { new StringCell("c8y_TemperatureMeasurement"),
+						new StringCell(devices.get((int) (aRowIx % devices.size()))),
+						ZonedDateTimeCellFactory.create(start.plusSeconds(aRowIx)), new StringCell("T"),
+						new DoubleCell(20 + aRowIx % 100 / 10.0), new StringCell("C") });
+	}
+
+	private static PortObject[] execute(final MeasurementCreatorNodeModel aModel, final PortObject[] aInData,
+			final ExecutionContext aExec, final int aBatchSize) throws Exception {
+		final NodeSettings settings = new NodeSettings("benchmark");
+		aModel.saveSettingsTo(settings);
+		for (final COLUMN_KEYS key : new COLUMN_KEYS[] { COLUMN_KEYS.KEY_MEASUREMENT_TYPE, COLUMN_KEYS.KEY_SOURCE_ID,
+				COLUMN_KEYS.KEY_TIME, COLUMN_KEYS.KEY_FRAGMENT_SERIES, COLUMN_KEYS.KEY_MEASUREMENT_VALUE,
+				COLUMN_KEYS.KEY_MEASUREMENT_UNIT }) {
+			settings.addString(key.name(), key.toString());
+		}
+		settings.addInt(MeasurementCreatorNodeModel.Config_BATCH_SIZE, aBatchSize);
+		aModel.validateSettings(settings);
+		aModel.loadValidatedSettingsFrom(settings);
+		return aModel.execute(aInData, aExec);
+	}
+}
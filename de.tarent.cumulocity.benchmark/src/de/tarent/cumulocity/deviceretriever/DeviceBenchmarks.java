@@ -0,0 +1,45 @@
+package de.tarent.cumulocity.deviceretriever;
+
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.port.PortObject;
+
+import de.tarent.cumulocity.benchmark.DecoderBenchmark;
+import de.tarent.cumulocity.benchmark.NodeBenchmark;
+
+/**
+ * decoders of the device retriever and the node itself
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class DeviceBenchmarks {
+
+	private DeviceBenchmarks() {
+	}
+
+	public static void register(final DecoderBenchmark aBenchmark) {
+		aBenchmark.register("managed objects", "managedObjects.json", "managedObjects",
+				ManagedObjectRowDecoder::new);
+		aBenchmark.register("managed objects (2 fragments)", "managedObjects.json", "managedObjects",
+				() -> new ManagedObjectRowDecoder(new String[] { "c8y_Hardware", "c8y_Position" }));
+	}
+
+	public static void registerNodes(final NodeBenchmark aBenchmark) {
+		aBenchmark.register("device retriever", new DeviceRetrieverNodeFactory(), null,
+				(aModel, aInData, aExec) -> ((DeviceRetrieverNodeModel) aModel).execute(aInData, aExec));
+		aBenchmark.register("device retriever (4 parallel)", new DeviceRetrieverNodeFactory(), null,
+				(aModel, aInData, aExec) -> executeWithParallelism((DeviceRetrieverNodeModel) aModel, 4, aInData,
+						aExec));
+	}
+
+	private static PortObject[] executeWithParallelism(final DeviceRetrieverNodeModel aModel,
+			final int aParallelism, final PortObject[] aInData, final ExecutionContext aExec) throws Exception {
+		final NodeSettings settings = new NodeSettings("benchmark");
+		aModel.saveSettingsTo(settings);
+		settings.addInt(DeviceRetrieverNodeModel.Config_PARALLELISM, aParallelism);
+		aModel.validateSettings(settings);
+		aModel.loadValidatedSettingsFrom(settings);
+		return aModel.execute(aInData, aExec);
+	}
+}
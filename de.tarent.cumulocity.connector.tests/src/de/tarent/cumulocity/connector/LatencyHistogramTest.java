@@ -0,0 +1,72 @@
+package de.tarent.cumulocity.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * tests of the buckets and percentiles of the {@link LatencyHistogram}
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void emptyHistogramIsZero() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.percentile(50));
+		assertEquals(0, histogram.getMax());
+	}
+
+	@Test
+	public void everyValueIsWithinItsBucket() {
+		for (long value = 0; value < 100000; value++) {
+			assertBucket(value);
+		}
+		for (int shift = 17; shift < 63; shift++) {
+			assertBucket((1L << shift) - 1);
+			assertBucket(1L << shift);
+			assertBucket((1L << shift) + (1L << (shift - 2)) + 1);
+		}
+		assertBucket(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void percentilesAreAccurateToABucket() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long millis = 1; millis <= 1000; millis++) {
+			histogram.record(millis * 1000000);
+		}
+		assertEquals(1000000000L, histogram.getMax());
+		assertEquals(1000, histogram.getCount());
+		assertAccurate(500000000L, histogram.percentile(50));
+		assertAccurate(900000000L, histogram.percentile(90));
+		assertAccurate(990000000L, histogram.percentile(99));
+		// never above the maximum
+		assertEquals(1000000000L, histogram.percentile(100));
+	}
+
+	@Test
+	public void copyIsIndependent() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(10);
+		final LatencyHistogram copy = histogram.copy();
+		histogram.record(1000);
+		assertEquals(1, copy.getCount());
+		assertEquals(10, copy.getMax());
+	}
+
+	private static void assertBucket(final long aValue) {
+		final int bucket = LatencyHistogram.bucket(aValue);
+		assertTrue("value " + aValue, aValue <= LatencyHistogram.upperBound(bucket));
+		if (bucket > 0) {
+			assertTrue("value " + aValue, aValue > LatencyHistogram.upperBound(bucket - 1));
+		}
+	}
+
+	private static void assertAccurate(final long aExpected, final long aActual) {
+		assertTrue(aExpected + " vs. " + aActual, aActual >= aExpected && aActual <= aExpected * 1.125);
+	}
+}
@@ -0,0 +1,121 @@
+package de.tarent.cumulocity.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.Test;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * tests of the delays between the retries of the {@link RetryInterceptor}
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public class RetryInterceptorTest {
+
+	/**
+	 * the backoff is random, so every retry is checked repeatedly
+	 */
+	private static final int SAMPLES = 200;
+
+	@Test
+	public void backoffDoublesWithEveryRetry() {
+		for (int retry = 1; retry <= RetryInterceptor.MAX_RETRIES; retry++) {
+			final long max = Math.min(RetryInterceptor.MAX_DELAY_MILLIS,
+					RetryInterceptor.INITIAL_DELAY_MILLIS << (retry - 1));
+			assertBackoff(retry, max);
+		}
+	}
+
+	@Test
+	public void backoffIsCappedAtMaxDelay() {
+		assertBackoff(20, RetryInterceptor.MAX_DELAY_MILLIS);
+		// no overflow of the shift
+		assertBackoff(100, RetryInterceptor.MAX_DELAY_MILLIS);
+	}
+
+	@Test
+	public void delayWithoutRetryAfterIsBackoff() {
+		assertDelayIsBackoff(response(null), 3);
+	}
+
+	@Test
+	public void delayHonoursRetryAfterSeconds() {
+		assertEquals(3000, RetryInterceptor.delay(response("3"), 1));
+		assertEquals(0, RetryInterceptor.delay(response(" 0 "), 1));
+	}
+
+	@Test
+	public void delayHonoursRetryAfterDate() {
+		final String date = DateTimeFormatter.RFC_1123_DATE_TIME
+				.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(10));
+		final long delay = RetryInterceptor.delay(response(date), 1);
+		// the date has a precision of seconds
+		assertTrue("delay " + delay, delay > 8000 && delay <= 10000);
+	}
+
+	@Test
+	public void delayCapsLongRetryAfter() {
+		assertEquals(RetryInterceptor.MAX_RETRY_AFTER_MILLIS, RetryInterceptor.delay(response("3600"), 1));
+	}
+
+	@Test
+	public void delayIgnoresInvalidRetryAfter() {
+		assertDelayIsBackoff(response("soon"), 2);
+		// a date in the past
+		assertDelayIsBackoff(response("Thu, 01 Jan 2015 00:00:00 GMT"), 2);
+	}
+
+	@Test
+	public void onlyRejectedOrIdempotentRequestsAreRetried() {
+		assertTrue(RetryInterceptor.isRetryable(429, false));
+		assertTrue(RetryInterceptor.isRetryable(503, false));
+		assertTrue(RetryInterceptor.isRetryable(502, true));
+		assertFalse(RetryInterceptor.isRetryable(502, false));
+		assertTrue(RetryInterceptor.isRetryable(504, true));
+		assertFalse(RetryInterceptor.isRetryable(504, false));
+		assertFalse(RetryInterceptor.isRetryable(500, true));
+		assertFalse(RetryInterceptor.isRetryable(404, true));
+	}
+
+	/**
+	 * the upper half of the delay is random
+	 */
+	private static void assertBackoff(final int aRetry, final long aMax) {
+		for (int i = 0; i < SAMPLES; i++) {
+			final long delay = RetryInterceptor.backoff(aRetry);
+			assertTrue("retry " + aRetry + ": " + delay, delay >= aMax / 2 && delay <= aMax);
+		}
+	}
+
+	private static void assertDelayIsBackoff(final Response aResponse, final int aRetry) {
+		final long max = RetryInterceptor.INITIAL_DELAY_MILLIS << (aRetry - 1);
+		for (int i = 0; i < SAMPLES; i++) {
+			final long delay = RetryInterceptor.delay(aResponse, aRetry);
+			assertTrue("retry " + aRetry + ": " + delay, delay >= max / 2 && delay <= max);
+		}
+	}
+
+	/**
+	 * @param aRetryAfter - value of the "Retry-After" header, null for none
+	 * @return a 429 response
+	 */
+	private static Response response(final String aRetryAfter) {
+		final Response.Builder builder = new Response.Builder()
+				.request(new Request.Builder().url("http://localhost/alarm/alarms").build())
+				.protocol(Protocol.HTTP_1_1).code(429).message("Too Many Requests");
+		if (aRetryAfter != null) {
+			builder.header("Retry-After", aRetryAfter);
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,47 @@
+package de.tarent.cumulocity.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+/**
+ * tests of the URL encoding of the query parameters sent by the
+ * {@link PagedCollectionReader}
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public class PagedCollectionReaderTest {
+
+	@Test
+	public void valuesAreEncoded() {
+		assertEquals("type=c8y%20Temperature", PagedCollectionReader.toParameter("type", "c8y Temperature"));
+		assertEquals("type=a%2Bb", PagedCollectionReader.toParameter("type", "a+b"));
+		// a value that looks like further parameters stays one value
+		assertEquals("type=a%26type%3Db", PagedCollectionReader.toParameter("type", "a&type=b"));
+		assertEquals("text=%C3%A4", PagedCollectionReader.toParameter("text", "ä"));
+	}
+
+	@Test
+	public void emptyValuesAreOmitted() {
+		assertEquals("type=x", PagedCollectionReader.toParameter("type", " x "));
+		assertEquals("", PagedCollectionReader.toParameter("type", "  "));
+		assertEquals("a=1&b=2", PagedCollectionReader.joinQueries("", "a=1", "", "b=2", ""));
+		assertEquals("", PagedCollectionReader.joinQueries());
+	}
+
+	@Test
+	public void datesAreUtcAndEncoded() {
+		assertEquals("dateFrom=1970-01-01T00%3A00%3A01.500Z", PagedCollectionReader.toDateParameter("dateFrom", 1500));
+	}
+
+	@Test
+	public void deviceQueryIsBuiltFromTheValues() {
+		assertEquals("source=12%2034&dateFrom=1970-01-01T00%3A00%3A00.000Z&dateTo=1970-01-01T00%3A00%3A01.000Z",
+				RetrieveDataNodeModel.toQuery(Optional.of("12 34"), 0, 1000));
+		assertEquals("dateFrom=1970-01-01T00%3A00%3A00.000Z&dateTo=1970-01-01T00%3A00%3A01.000Z",
+				RetrieveDataNodeModel.toQuery(Optional.empty(), 0, 1000));
+	}
+}
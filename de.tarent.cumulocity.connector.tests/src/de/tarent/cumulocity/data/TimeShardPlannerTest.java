@@ -0,0 +1,57 @@
+package de.tarent.cumulocity.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.knime.core.node.CanceledExecutionException;
+
+import de.tarent.cumulocity.data.TimeShardPlanner.TimeShard;
+
+/**
+ * tests of the queries of the {@link TimeShardPlanner} that do not need a
+ * connection to Cumulocity
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public class TimeShardPlannerTest {
+
+	private static final String FROM = "dateFrom=1970-01-01T00%3A00%3A01.000Z";
+	private static final String TO = "dateTo=1970-01-01T00%3A00%3A02.000Z";
+
+	@Test
+	public void shardQueryIsEncoded() {
+		assertEquals("source=1&" + FROM + "&" + TO, new TimeShard("source=1", 1000, 2000, false).toQuery());
+		assertEquals(FROM + "&" + TO, new TimeShard("", 1000, 2000, false).toQuery());
+	}
+
+	@Test
+	public void openEndHasNoDateTo() {
+		assertEquals("source=1&" + FROM, new TimeShard("source=1", 1000, 2000, true).toQuery());
+	}
+
+	@Test
+	public void noPlanningWithAsManyDevicesAsRequests() throws CanceledExecutionException {
+		// without a reader every request would fail
+		final TimeShardPlanner planner = new TimeShardPlanner(null, 2, 1, 1);
+		final List<List<TimeShard>> shards = planner.plan(Arrays.asList("source=1", "source=2"),
+				Arrays.asList(1000L, 1000L), 2000, false, null);
+		assertEquals(2, shards.size());
+		assertEquals(1, shards.get(0).size());
+		assertEquals("source=2&" + FROM + "&" + TO, shards.get(1).get(0).toQuery());
+	}
+
+	@Test
+	public void noPlanningWithoutParallelRequests() throws CanceledExecutionException {
+		final TimeShardPlanner planner = new TimeShardPlanner(null, 1, 1, 1);
+		final List<List<TimeShard>> shards = planner.plan(Arrays.asList("source=1", "source=2"),
+				Arrays.asList(1000L, 2000L), 2000, false, null);
+		assertEquals(1, shards.get(0).size());
+		// nothing to retrieve in an empty time range
+		assertTrue(shards.get(1).isEmpty());
+	}
+}
@@ -0,0 +1,141 @@
+package de.tarent.cumulocity.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Test;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.StringCell;
+
+/**
+ * tests of the fingerprints of the {@link WriteJournal} and of resuming from
+ * the journal file of a previous execution
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public class WriteJournalTest {
+
+	private static final String IDENTITY = "tester@https://example.cumulocity.com";
+
+	private final String m_journalId = UUID.randomUUID().toString();
+
+	@After
+	public void deleteJournal() {
+		WriteJournal.getFile(m_journalId, IDENTITY).delete();
+	}
+
+	@Test
+	public void fingerprintCoversKeyAndCells() {
+		final long fingerprint = WriteJournal
+				.fingerprint(new DefaultRow("Row0", new StringCell("ab"), new StringCell("c")));
+		assertEquals(fingerprint,
+				WriteJournal.fingerprint(new DefaultRow("Row0", new StringCell("ab"), new StringCell("c"))));
+		assertNotEquals(fingerprint,
+				WriteJournal.fingerprint(new DefaultRow("Row1", new StringCell("ab"), new StringCell("c"))));
+		assertNotEquals(fingerprint,
+				WriteJournal.fingerprint(new DefaultRow("Row0", new StringCell("a"), new StringCell("bc"))));
+		// a missing value differs from an empty text
+		assertNotEquals(WriteJournal.fingerprint(new DefaultRow("Row0", new StringCell(""))),
+				WriteJournal.fingerprint(new DefaultRow("Row0", DataType.getMissingCell())));
+	}
+
+	@Test
+	public void writtenRowsAreSkippedOnce() throws IOException {
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 3, false)) {
+			journal.acknowledge(1);
+			journal.acknowledge(2);
+		}
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 3, true)) {
+			assertTrue(journal.isWritten(1));
+			assertFalse(journal.isWritten(1));
+			assertFalse(journal.isWritten(3));
+			assertTrue(journal.isWritten(2));
+			assertEquals(2, journal.getNumberSkipped());
+		}
+	}
+
+	@Test
+	public void identicalRowsAreSkippedAsOftenAsWritten() throws IOException {
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 4, false)) {
+			journal.acknowledge(7);
+			journal.acknowledge(7);
+		}
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 4, true)) {
+			assertTrue(journal.isWritten(7));
+			assertTrue(journal.isWritten(7));
+			assertFalse(journal.isWritten(7));
+		}
+	}
+
+	@Test
+	public void rowsAreWrittenAgainWithoutResume() throws IOException {
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 2, false)) {
+			journal.acknowledge(1);
+		}
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 2, false)) {
+			assertFalse(journal.isWritten(1));
+		}
+	}
+
+	@Test
+	public void partiallyWrittenRecordIsIgnored() throws IOException {
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 3, false)) {
+			journal.acknowledge(1);
+		}
+		// crash while the fingerprint of the next row was written
+		try (final FileOutputStream out = new FileOutputStream(WriteJournal.getFile(m_journalId, IDENTITY), true)) {
+			out.write(new byte[] { 0, 0, 0 });
+		}
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 3, true)) {
+			assertTrue(journal.isWritten(1));
+			assertFalse(journal.isWritten(0));
+			journal.acknowledge(2);
+		}
+		// the journal has been re-written without the partial record
+		assertEquals(4 + 2 * 8, WriteJournal.getFile(m_journalId, IDENTITY).length());
+	}
+
+	@Test
+	public void journalOfOlderVersionIsNotResumed() throws IOException {
+		final File file = WriteJournal.getFile(m_journalId, IDENTITY);
+		file.getParentFile().mkdirs();
+		// version 1 recorded the indices of the written rows
+		try (final DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			out.writeInt(0x436a6e31);
+			out.writeLong(0);
+			out.writeLong(1);
+		}
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 3, true)) {
+			assertFalse(journal.isWritten(0));
+			assertFalse(journal.isWritten(1));
+			assertEquals(0, journal.getNumberSkipped());
+		}
+	}
+
+	@Test
+	public void journalIsDeletedOnceAllRowsAreDone() throws IOException {
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 3, false)) {
+			journal.acknowledge(1);
+			journal.acknowledge(2);
+		}
+		assertTrue(WriteJournal.getFile(m_journalId, IDENTITY).isFile());
+
+		try (final WriteJournal journal = WriteJournal.open(m_journalId, IDENTITY, 3, true)) {
+			assertTrue(journal.isWritten(1));
+			assertTrue(journal.isWritten(2));
+			journal.acknowledge(3);
+		}
+		assertFalse(WriteJournal.getFile(m_journalId, IDENTITY).exists());
+	}
+}
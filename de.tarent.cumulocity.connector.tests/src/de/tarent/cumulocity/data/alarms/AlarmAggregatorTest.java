@@ -0,0 +1,81 @@
+package de.tarent.cumulocity.data.alarms;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.telekom.m2m.cot.restsdk.alarm.Alarm;
+import com.telekom.m2m.cot.restsdk.inventory.ManagedObject;
+
+import de.tarent.cumulocity.data.alarms.AlarmAggregator.Group;
+
+/**
+ * tests of the grouping and of the order of the groups of the
+ * {@link AlarmAggregator}
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public class AlarmAggregatorTest {
+
+	@Test
+	public void latestAlarmOfAGroupIsKept() {
+		final AlarmAggregator aggregator = new AlarmAggregator();
+		aggregator.add(alarm("1", "c8y_Overheat", Alarm.STATE_ACTIVE, 2000, "second"), 1);
+		aggregator.add(alarm("1", "c8y_Overheat", Alarm.STATE_ACTIVE, 1000, "first"), 2);
+		aggregator.add(alarm("1", "c8y_Overheat", Alarm.STATE_ACTIVE, 2000, "also second"), 3);
+
+		final List<Group> groups = aggregator.getGroups();
+		assertEquals(1, groups.size());
+		// later rows win on equal times
+		assertEquals("also second", groups.get(0).getAlarm().getText());
+		assertEquals(Arrays.asList(1L, 2L, 3L), groups.get(0).getRows());
+		assertEquals(3, aggregator.getNumberOfRows());
+	}
+
+	@Test
+	public void groupsAreOrderedByTheirLatestTime() {
+		final AlarmAggregator aggregator = new AlarmAggregator();
+		aggregator.add(alarm("1", "c8y_Overheat", Alarm.STATE_CLEARED, 3000, "cleared"), 1);
+		aggregator.add(alarm("1", "c8y_Overheat", Alarm.STATE_ACTIVE, 1000, "raised"), 2);
+		aggregator.add(alarm("2", "c8y_Overheat", Alarm.STATE_ACTIVE, 2000, "other device"), 3);
+		aggregator.add(alarm("1", "c8y_Overheat", Alarm.STATE_ACTIVE, 2500, "raised again"), 4);
+
+		// the last status of an alarm is written last, also if its row comes first
+		final List<Group> groups = aggregator.getGroups();
+		assertEquals(3, groups.size());
+		assertEquals("other device", groups.get(0).getAlarm().getText());
+		assertEquals("raised again", groups.get(1).getAlarm().getText());
+		assertEquals("cleared", groups.get(2).getAlarm().getText());
+	}
+
+	@Test
+	public void groupsWithTheSameTimeKeepTheOrderOfTheirFirstRow() {
+		final AlarmAggregator aggregator = new AlarmAggregator();
+		aggregator.add(alarm("2", "c8y_Overheat", Alarm.STATE_ACTIVE, 1000, "a"), 1);
+		aggregator.add(alarm("1", "c8y_Overheat", Alarm.STATE_ACTIVE, 1000, "b"), 2);
+		aggregator.add(alarm("1", "c8y_Leak", Alarm.STATE_ACTIVE, 1000, "c"), 3);
+
+		final List<Group> groups = aggregator.getGroups();
+		assertEquals("a", groups.get(0).getAlarm().getText());
+		assertEquals("b", groups.get(1).getAlarm().getText());
+		assertEquals("c", groups.get(2).getAlarm().getText());
+	}
+
+	private static Alarm alarm(final String aSourceId, final String aType, final String aStatus, final long aTime,
+			final String aText) {
+		final ManagedObject source = new ManagedObject();
+		source.setId(aSourceId);
+		final Alarm alarm = new Alarm();
+		alarm.setSource(source);
+		alarm.setType(aType);
+		alarm.setStatus(aStatus);
+		alarm.setTime(new Date(aTime));
+		alarm.setText(aText);
+		return alarm;
+	}
+}
@@ -0,0 +1,131 @@
+package de.tarent.cumulocity.data.measurements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeCellFactory;
+import org.knime.core.node.CanceledExecutionException;
+
+import de.tarent.cumulocity.data.RowSink;
+
+/**
+ * tests of the skipping and recording of measurements by the
+ * {@link IncrementalRowSink} and its {@link HighWaterMarks}
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public class IncrementalRowSinkTest {
+
+	private static final long SECOND = 1000;
+
+	private final List<String> m_written = new ArrayList<>();
+	private final RowSink m_target = aCells -> {
+		m_written.add(aCells[0].isMissing() ? "?" : ((StringValue) aCells[0]).getStringValue());
+		return true;
+	};
+
+	@Test
+	public void marksKeepTheLatestTimeAndItsIds() {
+		final HighWaterMarks marks = new HighWaterMarks();
+		marks.update("d1", 2 * SECOND, "m1");
+		marks.update("d1", 2 * SECOND, "m2");
+		marks.update("d1", SECOND, "m0");
+		assertEquals(Optional.of(2 * SECOND), marks.getTime("d1"));
+		assertTrue(marks.contains("d1", 2 * SECOND, "m1"));
+		assertTrue(marks.contains("d1", 2 * SECOND, "m2"));
+		assertFalse(marks.contains("d1", SECOND, "m0"));
+
+		// a later measurement replaces the ids of the earlier second
+		marks.update("d1", 3 * SECOND, "m3");
+		assertFalse(marks.contains("d1", 2 * SECOND, "m1"));
+		assertTrue(marks.contains("d1", 3 * SECOND, "m3"));
+		assertFalse(marks.getTime("d2").isPresent());
+	}
+
+	@Test
+	public void copyOfMarksIsIndependent() {
+		final HighWaterMarks marks = new HighWaterMarks();
+		marks.update("d1", SECOND, "m1");
+		final HighWaterMarks copy = new HighWaterMarks(marks);
+		copy.update("d1", SECOND, "m2");
+		copy.update("d2", SECOND, "m3");
+		assertFalse(marks.contains("d1", SECOND, "m2"));
+		assertFalse(marks.getTime("d2").isPresent());
+
+		copy.clear();
+		assertTrue(copy.isEmpty());
+		assertTrue(marks.contains("d1", SECOND, "m1"));
+	}
+
+	@Test
+	public void measurementsOfThePreviousExecutionAreSkipped() throws CanceledExecutionException {
+		final HighWaterMarks previous = new HighWaterMarks();
+		previous.update("d1", 2 * SECOND, "m1");
+		final HighWaterMarks marks = new HighWaterMarks(previous);
+		final IncrementalRowSink sink = new IncrementalRowSink(m_target, previous, marks);
+
+		// the retrieval starts at the second of the latest measurement
+		assertTrue(sink.addRow(row("m1", "d1", 2 * SECOND)));
+		assertTrue(sink.addRow(row("m2", "d1", 2 * SECOND)));
+		assertTrue(sink.addRow(row("m3", "d1", 5 * SECOND)));
+		assertTrue(sink.addRow(row("m4", "d2", SECOND)));
+
+		assertEquals(3, m_written.size());
+		assertEquals("m2", m_written.get(0));
+		assertEquals(Optional.of(5 * SECOND), marks.getTime("d1"));
+		assertEquals(Optional.of(SECOND), marks.getTime("d2"));
+		// the previous marks are not modified
+		assertEquals(Optional.of(2 * SECOND), previous.getTime("d1"));
+		assertFalse(previous.getTime("d2").isPresent());
+	}
+
+	@Test
+	public void everySeriesRowOfASkippedMeasurementIsSkipped() throws CanceledExecutionException {
+		final HighWaterMarks previous = new HighWaterMarks();
+		previous.update("d1", SECOND, "m1");
+		final IncrementalRowSink sink = new IncrementalRowSink(m_target, previous, new HighWaterMarks());
+
+		// long format: one row per series of the same measurement
+		sink.addRow(row("m1", "d1", SECOND));
+		sink.addRow(row("m1", "d1", SECOND));
+		assertTrue(m_written.isEmpty());
+	}
+
+	@Test
+	public void rowsWithoutIdOrTimeArePassedOn() throws CanceledExecutionException {
+		final HighWaterMarks marks = new HighWaterMarks();
+		final IncrementalRowSink sink = new IncrementalRowSink(m_target, new HighWaterMarks(), marks);
+
+		final DataCell[] noTime = row("m1", "d1", SECOND);
+		noTime[3] = DataType.getMissingCell();
+		sink.addRow(noTime);
+		final DataCell[] noId = row("m2", "d1", SECOND);
+		noId[0] = DataType.getMissingCell();
+		sink.addRow(noId);
+
+		assertEquals(2, m_written.size());
+		assertTrue(marks.isEmpty());
+	}
+
+	/**
+	 * @return the first columns of a measurement row (id, type, device id, time)
+	 */
+	private static DataCell[] row(final String aMeasurementId, final String aDeviceId, final long aTime) {
+		return new DataCell[] { new StringCell(aMeasurementId), new StringCell("c8y_Temperature"),
+				new StringCell(aDeviceId),
+				ZonedDateTimeCellFactory.create(Instant.ofEpochMilli(aTime).atZone(ZoneOffset.UTC)) };
+	}
+}
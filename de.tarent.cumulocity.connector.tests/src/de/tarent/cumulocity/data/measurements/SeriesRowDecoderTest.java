@@ -0,0 +1,99 @@
+package de.tarent.cumulocity.data.measurements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.StringValue;
+import org.knime.core.node.CanceledExecutionException;
+
+import com.google.gson.stream.JsonReader;
+
+import de.tarent.cumulocity.data.JsonCells;
+
+/**
+ * tests of the decoding of responses of the series api by the
+ * {@link SeriesRowDecoder}
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public class SeriesRowDecoderTest {
+
+	private final List<DataCell[]> m_rows = new ArrayList<>();
+
+	@Test
+	public void seriesAfterValuesAreMappedToTheirColumns() throws IOException, CanceledExecutionException {
+		// the output has the series in a different order than the response
+		final SeriesRowDecoder decoder = new SeriesRowDecoder(Arrays.asList("c8y_Humidity.H", "c8y_Temperature.T"));
+		assertTrue(decode(decoder, "{\"values\": {"
+				+ "\"2024-01-01T00:00:00.000Z\": [{\"min\": 1.0, \"max\": 2.0}, {\"min\": 40, \"max\": 45}],"
+				+ "\"2024-01-01T00:01:00.000+01:00\": [null, {\"min\": 41, \"max\": null}]},"
+				+ "\"series\": [{\"name\": \"T\", \"type\": \"c8y_Temperature\", \"unit\": \"C\"},"
+				+ "{\"name\": \"H\", \"type\": \"c8y_Humidity\", \"unit\": \"%\"}],"
+				+ "\"truncated\": false}"));
+
+		assertEquals(2, m_rows.size());
+		final DataCell[] first = m_rows.get(0);
+		assertEquals("12", ((StringValue) first[0]).getStringValue());
+		assertEquals(JsonCells.createDateCell("2024-01-01T00:00:00.000Z"), first[1]);
+		assertEquals(40.0, ((DoubleValue) first[2]).getDoubleValue(), 0);
+		assertEquals(45.0, ((DoubleValue) first[3]).getDoubleValue(), 0);
+		assertEquals(1.0, ((DoubleValue) first[4]).getDoubleValue(), 0);
+		assertEquals(2.0, ((DoubleValue) first[5]).getDoubleValue(), 0);
+
+		// buckets without a value of a series leave its cells missing
+		final DataCell[] second = m_rows.get(1);
+		assertEquals(JsonCells.createDateCell("2023-12-31T23:01:00.000Z"), second[1]);
+		assertEquals(41.0, ((DoubleValue) second[2]).getDoubleValue(), 0);
+		assertTrue(second[3].isMissing());
+		assertTrue(second[4].isMissing());
+		assertTrue(second[5].isMissing());
+		assertFalse(decoder.isTruncated());
+	}
+
+	@Test
+	public void seriesThatHaveNotBeenRequestedAreIgnored() throws IOException, CanceledExecutionException {
+		final SeriesRowDecoder decoder = new SeriesRowDecoder(Arrays.asList("c8y_Temperature.T"));
+		decode(decoder, "{\"series\": [{\"name\": \"P\", \"type\": \"c8y_Pressure\"},"
+				+ "{\"name\": \"T\", \"type\": \"c8y_Temperature\"}],"
+				+ "\"values\": {\"2024-01-01T00:00:00Z\": [{\"min\": 1013, \"max\": 1015}, {\"min\": 20, \"max\": 21}]},"
+				+ "\"truncated\": true}");
+
+		assertEquals(1, m_rows.size());
+		assertEquals(4, m_rows.get(0).length);
+		assertEquals(20.0, ((DoubleValue) m_rows.get(0)[2]).getDoubleValue(), 0);
+		assertEquals(21.0, ((DoubleValue) m_rows.get(0)[3]).getDoubleValue(), 0);
+		assertTrue(decoder.isTruncated());
+	}
+
+	@Test
+	public void decodingStopsWhenTheSinkIsFull() throws IOException, CanceledExecutionException {
+		final SeriesRowDecoder decoder = new SeriesRowDecoder(Arrays.asList("c8y_Temperature.T"));
+		final JsonReader reader = new JsonReader(new StringReader("{\"values\": {"
+				+ "\"2024-01-01T00:00:00Z\": [{\"min\": 1, \"max\": 2}], \"2024-01-01T00:01:00Z\": [{\"min\": 3, \"max\": 4}]},"
+				+ "\"series\": [{\"name\": \"T\", \"type\": \"c8y_Temperature\"}]}"));
+		assertFalse(decoder.decode(reader, "12", aCells -> {
+			m_rows.add(aCells);
+			return false;
+		}));
+		assertEquals(1, m_rows.size());
+	}
+
+	private boolean decode(final SeriesRowDecoder aDecoder, final String aResponse)
+			throws IOException, CanceledExecutionException {
+		return aDecoder.decode(new JsonReader(new StringReader(aResponse)), "12", aCells -> {
+			m_rows.add(aCells);
+			return true;
+		});
+	}
+}
@@ -0,0 +1,65 @@
+package de.tarent.cumulocity.connector;
+
+import com.telekom.m2m.cot.restsdk.alarm.AlarmApi;
+import com.telekom.m2m.cot.restsdk.event.EventApi;
+import com.telekom.m2m.cot.restsdk.inventory.InventoryApi;
+import com.telekom.m2m.cot.restsdk.measurement.MeasurementApi;
+
+/**
+ * access to the APIs of the cumulocity cloud for one user, all APIs share the
+ * same rest client (and thereby the connections of its tenant)
+ *
+ * instances are obtained from {@link CotPlatformProvider} and may be used by
+ * several nodes at the same time
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class CotConnection {
+
+	private final CotRestClient m_restClient;
+	private final String m_password;
+	private final MeasurementApi m_measurementApi;
+	private final AlarmApi m_alarmApi;
+	private final EventApi m_eventApi;
+	private final InventoryApi m_inventoryApi;
+
+	CotConnection(final CotRestClient aRestClient, final String aPassword) {
+		m_restClient = aRestClient;
+		m_password = aPassword;
+		m_measurementApi = new MeasurementApi(aRestClient);
+		m_alarmApi = new AlarmApi(aRestClient);
+		m_eventApi = new EventApi(aRestClient);
+		m_inventoryApi = new InventoryApi(aRestClient);
+	}
+
+	/**
+	 * @return true if this connection has been created with the given password
+	 */
+	boolean hasPassword(final String aPassword) {
+		return m_password == null ? aPassword == null : m_password.equals(aPassword);
+	}
+
+	/**
+	 * @return rest client for direct (streamed) access to the REST API
+	 */
+	public CotRestClient getRestClient() {
+		return m_restClient;
+	}
+
+	public MeasurementApi getMeasurementApi() {
+		return m_measurementApi;
+	}
+
+	public AlarmApi getAlarmApi() {
+		return m_alarmApi;
+	}
+
+	public EventApi getEventApi() {
+		return m_eventApi;
+	}
+
+	public InventoryApi getInventoryApi() {
+		return m_inventoryApi;
+	}
+}
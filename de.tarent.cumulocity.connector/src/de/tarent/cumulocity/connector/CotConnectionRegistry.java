@@ -0,0 +1,105 @@
+package de.tarent.cumulocity.connector;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.node.NodeLogger;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * JVM-wide registry of the connections to the cumulocity cloud, so that all
+ * nodes using the same connection share the HTTP connections (keep-alive, no
+ * repeated TCP and TLS handshakes)
+ *
+ * there is one HTTP client with its own connection pool per platform url and
+ * tenant (which also retries overloaded requests, see
+ * {@link RetryInterceptor}), and one {@link CotConnection} per user of the
+ * tenant; tenants that have not been used for a while are removed and their
+ * idle connections are closed
+ *
+ * all methods are thread safe
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class CotConnectionRegistry {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(CotConnectionRegistry.class);
+
+	/**
+	 * tenants are removed after this time without any request for a connection
+	 */
+	private static final long MAX_IDLE_MILLIS = 10 * 60 * 1000;
+
+	/**
+	 * enough for the parallel requests of a node (including the read-ahead)
+	 */
+	private static final int MAX_IDLE_CONNECTIONS = 32;
+	private static final long KEEP_ALIVE_MINUTES = 5;
+
+	private static final class Tenant {
+		private final OkHttpClient m_client;
+		private final Map<String, CotConnection> m_connections = new HashMap<>();
+		private long m_lastUsed;
+
+		private Tenant(final OkHttpClient aClient) {
+			m_client = aClient;
+		}
+	}
+
+	private final OkHttpClient m_baseClient;
+	private final Map<String, Tenant> m_tenants = new HashMap<>();
+
+	/**
+	 * @param aBaseClient - the HTTP clients of the tenants are derived from this
+	 *                    one (timeouts etc.)
+	 */
+	CotConnectionRegistry(final OkHttpClient aBaseClient) {
+		m_baseClient = aBaseClient;
+	}
+
+	/**
+	 * @param aTenant - may be null
+	 * @param aUser   - user name as sent to the platform (including the tenant)
+	 * @return the connection of the given user, a new one if the user has not
+	 *         been connected yet or if the password has changed
+	 */
+	synchronized CotConnection get(final String aUrl, final String aTenant, final String aUser,
+			final String aPassword) {
+		final long now = System.currentTimeMillis();
+		evictIdle(now);
+		final String tenantKey = aUrl + "\n" + (aTenant == null ? "" : aTenant);
+		Tenant tenant = m_tenants.get(tenantKey);
+		if (tenant == null) {
+			tenant = new Tenant(m_baseClient.newBuilder()
+					.connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+					// one retry budget per tenant, the rate limits of the platform are per tenant
+					.addInterceptor(new RetryInterceptor()).addNetworkInterceptor(new MetricsInterceptor()).build());
+			m_tenants.put(tenantKey, tenant);
+		}
+		tenant.m_lastUsed = now;
+		CotConnection connection = tenant.m_connections.get(aUser);
+		if (connection == null || !connection.hasPassword(aPassword)) {
+			connection = new CotConnection(new CotRestClient(tenant.m_client, aUrl, aUser, aPassword), aPassword);
+			tenant.m_connections.put(aUser, connection);
+		}
+		return connection;
+	}
+
+	private void evictIdle(final long aNow) {
+		final Iterator<Map.Entry<String, Tenant>> iter = m_tenants.entrySet().iterator();
+		while (iter.hasNext()) {
+			final Tenant tenant = iter.next().getValue();
+			if (aNow - tenant.m_lastUsed > MAX_IDLE_MILLIS) {
+				iter.remove();
+				// connections still in use by a running node are not affected
+				tenant.m_client.connectionPool().evictAll();
+				logger.debug("Closed idle connections of " + tenant.m_connections.size() + " user(s).");
+			}
+		}
+	}
+}
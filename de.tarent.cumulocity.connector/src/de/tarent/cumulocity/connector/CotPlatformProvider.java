@@ -1,17 +1,19 @@
 package de.tarent.cumulocity.connector;
 
+import java.util.concurrent.TimeUnit;
+
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
 import org.knime.core.node.config.base.ConfigBase;
 import org.knime.core.node.workflow.CredentialsProvider;
 import org.knime.core.node.workflow.ICredentials;
 
-import com.telekom.m2m.cot.restsdk.CloudOfThingsPlatform;
-import com.telekom.m2m.cot.restsdk.devicecontrol.CotCredentials;
+import okhttp3.OkHttpClient;
 
 /**
- * creates the API-access object to the cumulocity cloud from the given
- * configuration
+ * provides the API-access object to the cumulocity cloud for the given
+ * configuration, connections are shared JVM-wide (see
+ * {@link CotConnectionRegistry})
  * 
  * note that this class is identical to the one in package
  * de.tarent.cumulocity.getMeasurements (to avoid class loader issues with the cot jar
@@ -31,11 +33,22 @@ public class CotPlatformProvider {
 	static final String CFGKEY_url = "url";
 
 	/**
-	 * creates a new connection whenever it is called
+	 * base of the HTTP clients of all connections, same timeouts as used by the
+	 * platform
+	 */
+	private static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder().readTimeout(1, TimeUnit.MINUTES)
+			.build();
+
+	private static final CotConnectionRegistry REGISTRY = new CotConnectionRegistry(HTTP_CLIENT);
+
+	/**
+	 * the credentials are resolved on every call (so that changed credentials
+	 * take effect), the connection is re-used for the same platform, tenant,
+	 * user and password
 	 * 
-	 * @return API object to query the CoT platform
+	 * @return API objects to query the CoT platform
 	 */
-	public static CloudOfThingsPlatform getCoTPlatform(final CredentialsProvider aCredentialsProvider,
+	public static CotConnection getConnection(final CredentialsProvider aCredentialsProvider,
 			final ConfigBase aConfig) {
 		try {
 
@@ -50,21 +63,30 @@ public class CotPlatformProvider {
 				pwd = aConfig.getPassword("passwordEncrypted", ";Op5~pK{31AIN^eH~Ab`:Yaikm8CM`8_Dw:1Kl4_WHrvuAXO");
 			}
 
-			final CloudOfThingsPlatform platform;
-			if (aConfig.containsKey(CotPlatformProvider.CFGKEY_tenant)) {
-				platform = new CloudOfThingsPlatform(
-						aConfig.getString(CotPlatformProvider.CFGKEY_url),
-						new CotCredentials(aConfig.getString(CotPlatformProvider.CFGKEY_tenant),
-								uName, pwd));
+			// same as the platform: user names are prefixed with the tenant (unless
+			// they already are)
+			final String tenant = aConfig.getString(CotPlatformProvider.CFGKEY_tenant, null);
+			final String user;
+			if (tenant != null && uName != null && !uName.startsWith(tenant + "/")) {
+				user = tenant + "/" + uName;
 			} else {
-				platform = new CloudOfThingsPlatform(
-						aConfig.getString(CotPlatformProvider.CFGKEY_url), uName, pwd);
+				user = uName;
 			}
-			return platform;
+			return REGISTRY.get(aConfig.getString(CotPlatformProvider.CFGKEY_url), tenant, user, pwd);
 		} catch (InvalidSettingsException e) {
 			final NodeLogger logger = NodeLogger.getLogger(CotPlatformProvider.class);
 			logger.error("Error: failed to process stored cumulocity connection info. Will use dummy defaults!", e);
-			return new CloudOfThingsPlatform("DB URL", "user name", "some password");
+			return new CotConnection(new CotRestClient(HTTP_CLIENT, "DB URL", "user name", "some password"),
+					"some password");
 		}
 	}
+
+	/**
+	 * @return rest client for direct (streamed) access to the REST API, see
+	 *         {@link #getConnection}
+	 */
+	public static CotRestClient getCoTRestClient(final CredentialsProvider aCredentialsProvider,
+			final ConfigBase aConfig) {
+		return getConnection(aCredentialsProvider, aConfig).getRestClient();
+	}
 }
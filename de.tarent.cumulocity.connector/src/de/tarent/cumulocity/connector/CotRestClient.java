@@ -0,0 +1,130 @@
+package de.tarent.cumulocity.connector;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Base64;
+
+import org.knime.core.node.CanceledExecutionException;
+
+import com.google.gson.stream.JsonReader;
+import com.telekom.m2m.cot.restsdk.CloudOfThingsRestClient;
+import com.telekom.m2m.cot.restsdk.util.CotSdkException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * rest client that additionally allows to process the response of a GET
+ * request as a stream of JSON tokens, i.e. without reading the whole response
+ * into memory and without creating an object tree first
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public class CotRestClient extends CloudOfThingsRestClient {
+
+	/**
+	 * processes the (successful) response of a request
+	 */
+	@FunctionalInterface
+	public interface JsonHandler<T> {
+		T handle(JsonReader aReader) throws IOException, CanceledExecutionException;
+	}
+
+	private final String m_host;
+	private final String m_user;
+	private final String m_authorization;
+
+	public CotRestClient(final OkHttpClient aClient, final String aHost, final String aUser, final String aPassword) {
+		super(aClient, aHost, aUser, aPassword);
+		m_host = aHost;
+		m_user = aUser;
+		try {
+			m_authorization = "Basic "
+					+ Base64.getEncoder().encodeToString((aUser + ":" + aPassword).getBytes("utf-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new CotSdkException("Error generating auth string.", e);
+		}
+	}
+
+	/**
+	 * executes a GET request and hands the response body over to the given
+	 * handler, the response is closed when the handler returns (even if not
+	 * all of it has been read)
+	 *
+	 * @param aRelativeUrl - url relative to the host, including the query
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public <T> T getJson(final String aRelativeUrl, final JsonHandler<T> aHandler)
+			throws CanceledExecutionException {
+		try (final Response response = execute(aRelativeUrl)) {
+			try (final JsonReader reader = new JsonReader(response.body().charStream())) {
+				return aHandler.handle(reader);
+			}
+		} catch (IOException e) {
+			throw new CotSdkException("Error in request", e);
+		}
+	}
+
+	/**
+	 * executes a GET request and reads the whole response body
+	 *
+	 * @param aRelativeUrl - url relative to the host, including the query
+	 * @return the (UTF-8 encoded) response body
+	 */
+	public byte[] getBytes(final String aRelativeUrl) {
+		try (final Response response = execute(aRelativeUrl)) {
+			return response.body().bytes();
+		} catch (IOException e) {
+			throw new CotSdkException("Error in request", e);
+		}
+	}
+
+	/**
+	 * @return time the calling thread has spent on failed attempts of requests
+	 *         and waiting for their retries so far (in millis), e.g. to leave it
+	 *         out when timing a request
+	 */
+	public static long getRetryMillis() {
+		return RetryInterceptor.getRetryMillis();
+	}
+
+	/**
+	 * @return host and user of this client (without the password), e.g. to
+	 *         tell apart data cached for different users
+	 */
+	public String getIdentity() {
+		return m_user + "@" + m_host;
+	}
+
+	/**
+	 * @return the successful response, must be closed by the caller
+	 */
+	private Response execute(final String aRelativeUrl) throws IOException {
+		final Request request = new Request.Builder().addHeader("Authorization", m_authorization)
+				.addHeader("Accept", "application/json").url(m_host + "/" + trimSlashes(aRelativeUrl)).build();
+		final Response response = client.newCall(request).execute();
+		if (!response.isSuccessful()) {
+			try {
+				final String body = response.body() == null ? "" : response.body().string();
+				throw new CotSdkException(response.code(), "Request failed. Platform response: " + body);
+			} finally {
+				response.close();
+			}
+		}
+		return response;
+	}
+
+	private static String trimSlashes(final String aUrl) {
+		int start = 0;
+		int end = aUrl.length();
+		while (start < end && aUrl.charAt(start) == '/') {
+			start++;
+		}
+		while (end > start && aUrl.charAt(end - 1) == '/') {
+			end--;
+		}
+		return aUrl.substring(start, end);
+	}
+}
@@ -0,0 +1,243 @@
+package de.tarent.cumulocity.connector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * performance metrics of one node execution: number, size and latency of the
+ * HTTP requests (recorded by the {@link MetricsInterceptor}) and the time
+ * spent decoding responses and writing rows
+ *
+ * the metrics of an execution are active for the thread that started them;
+ * work that is handed over to other threads must be wrapped with
+ * {@link #propagate(Runnable)} or {@link #propagate(Callable)}, so that its
+ * requests are attributed to the right node (the HTTP clients are shared by
+ * all nodes); code that waits without access to the node (e.g. between the
+ * retries of a request) asks the metrics whether the execution has been
+ * canceled
+ *
+ * thread safe
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class ExecutionMetrics implements AutoCloseable {
+
+	private static final ThreadLocal<ExecutionMetrics> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * prefix of the flow variables
+	 */
+	static final String PREFIX = "cumulocity_";
+
+	private final ExecutionMonitor m_exec;
+	private final long m_start = System.nanoTime();
+	private volatile long m_end = -1;
+
+	private final AtomicLong m_nRequests = new AtomicLong();
+	private final AtomicLong m_nFailedRequests = new AtomicLong();
+	private final AtomicLong m_bytesSent = new AtomicLong();
+	private final AtomicLong m_bytesReceived = new AtomicLong();
+	private final AtomicLong m_decodeNanos = new AtomicLong();
+	private final AtomicLong m_writeNanos = new AtomicLong();
+
+	/**
+	 * latencies of the requests, for the percentiles (fixed size)
+	 */
+	private final LatencyHistogram m_latencies = new LatencyHistogram();
+
+	private ExecutionMetrics(final ExecutionMonitor aExec) {
+		m_exec = aExec;
+	}
+
+	/**
+	 * @param aExec - monitor of the node execution
+	 * @return new metrics, active for the calling thread until they are closed
+	 */
+	public static ExecutionMetrics start(final ExecutionMonitor aExec) {
+		final ExecutionMetrics metrics = new ExecutionMetrics(aExec);
+		CURRENT.set(metrics);
+		return metrics;
+	}
+
+	/**
+	 * @return the metrics that are active for the calling thread, null if there
+	 *         are none
+	 */
+	public static ExecutionMetrics current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @return the given task, which runs with the metrics of the calling thread
+	 */
+	public static Runnable propagate(final Runnable aTask) {
+		final ExecutionMetrics metrics = current();
+		return () -> {
+			final ExecutionMetrics previous = activate(metrics);
+			try {
+				aTask.run();
+			} finally {
+				activate(previous);
+			}
+		};
+	}
+
+	/**
+	 * @return the given task, which runs with the metrics of the calling thread
+	 */
+	public static <T> Callable<T> propagate(final Callable<T> aTask) {
+		final ExecutionMetrics metrics = current();
+		return () -> {
+			final ExecutionMetrics previous = activate(metrics);
+			try {
+				return aTask.call();
+			} finally {
+				activate(previous);
+			}
+		};
+	}
+
+	/**
+	 * @param aMetrics - metrics to activate for the calling thread, may be null
+	 * @return the metrics that have been active before
+	 */
+	public static ExecutionMetrics activate(final ExecutionMetrics aMetrics) {
+		final ExecutionMetrics previous = CURRENT.get();
+		if (aMetrics == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(aMetrics);
+		}
+		return previous;
+	}
+
+	/**
+	 * @return true if the user has canceled the execution
+	 */
+	public boolean isCanceled() {
+		try {
+			m_exec.checkCanceled();
+			return false;
+		} catch (CanceledExecutionException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * records one request (each attempt of a retried request is recorded)
+	 *
+	 * @param aLatencyNanos - time until the response headers have been received
+	 */
+	void recordRequest(final long aLatencyNanos, final long aBytesSent, final boolean aFailed) {
+		m_nRequests.incrementAndGet();
+		if (aFailed) {
+			m_nFailedRequests.incrementAndGet();
+		}
+		if (aBytesSent > 0) {
+			m_bytesSent.addAndGet(aBytesSent);
+		}
+		synchronized (this) {
+			m_latencies.record(aLatencyNanos);
+		}
+	}
+
+	void addBytesReceived(final long aBytes) {
+		m_bytesReceived.addAndGet(aBytes);
+	}
+
+	/**
+	 * @param aNanos - time spent turning responses into cells
+	 */
+	public void addDecodeTime(final long aNanos) {
+		m_decodeNanos.addAndGet(aNanos);
+	}
+
+	/**
+	 * @param aNanos - time spent writing rows into the output table
+	 */
+	public void addWriteTime(final long aNanos) {
+		m_writeNanos.addAndGet(aNanos);
+	}
+
+	/**
+	 * @return the metrics by name (without prefix), counts are longs, times (in
+	 *         milliseconds) and sizes are doubles
+	 */
+	public Map<String, Number> getValues() {
+		final LatencyHistogram latencies;
+		synchronized (this) {
+			latencies = m_latencies.copy();
+		}
+		final long end = m_end < 0 ? System.nanoTime() : m_end;
+
+		final Map<String, Number> values = new LinkedHashMap<>();
+		values.put("requests", m_nRequests.get());
+		values.put("failed_requests", m_nFailedRequests.get());
+		values.put("bytes_sent", (double) m_bytesSent.get());
+		values.put("bytes_received", (double) m_bytesReceived.get());
+		values.put("latency_p50_ms", millis(latencies.percentile(50)));
+		values.put("latency_p90_ms", millis(latencies.percentile(90)));
+		values.put("latency_p99_ms", millis(latencies.percentile(99)));
+		values.put("latency_max_ms", millis(latencies.getMax()));
+		values.put("decode_ms", millis(m_decodeNanos.get()));
+		values.put("write_ms", millis(m_writeNanos.get()));
+		values.put("elapsed_ms", millis(end - m_start));
+		return values;
+	}
+
+	/**
+	 * hands the metrics over to the given consumers, e.g. to push them as flow
+	 * variables ("cumulocity_requests", ...)
+	 */
+	public void publish(final BiConsumer<String, Integer> aIntConsumer,
+			final BiConsumer<String, Double> aDoubleConsumer) {
+		for (final Map.Entry<String, Number> value : getValues().entrySet()) {
+			if (value.getValue() instanceof Long) {
+				aIntConsumer.accept(PREFIX + value.getKey(),
+						(int) Math.min(Integer.MAX_VALUE, value.getValue().longValue()));
+			} else {
+				aDoubleConsumer.accept(PREFIX + value.getKey(), value.getValue().doubleValue());
+			}
+		}
+	}
+
+	/**
+	 * logs a summary of the metrics
+	 */
+	public void log(final NodeLogger aLogger) {
+		final Map<String, Number> values = getValues();
+		aLogger.infoWithFormat(
+				"%d requests (%d failed), %.0f bytes sent, %.0f bytes received, latency p50/p90/p99/max: "
+						+ "%.0f/%.0f/%.0f/%.0f ms, decoding: %.0f ms, writing: %.0f ms, total: %.0f ms",
+				values.get("requests"), values.get("failed_requests"), values.get("bytes_sent"),
+				values.get("bytes_received"), values.get("latency_p50_ms"), values.get("latency_p90_ms"),
+				values.get("latency_p99_ms"), values.get("latency_max_ms"), values.get("decode_ms"),
+				values.get("write_ms"), values.get("elapsed_ms"));
+	}
+
+	/**
+	 * stops the clock and deactivates the metrics for the calling thread
+	 */
+	@Override
+	public void close() {
+		if (m_end < 0) {
+			m_end = System.nanoTime();
+		}
+		if (CURRENT.get() == this) {
+			CURRENT.remove();
+		}
+	}
+
+	private static double millis(final long aNanos) {
+		return aNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,94 @@
+package de.tarent.cumulocity.connector;
+
+/**
+ * histogram of latencies (in nanos) with a fixed number of logarithmic
+ * buckets, so that the memory does not grow with the number of requests
+ *
+ * every power of two is split into {@link #SUB_BUCKETS} buckets, a percentile
+ * is the upper bound of its bucket (at most 12.5% above the exact value), the
+ * maximum is exact
+ *
+ * not thread safe
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class LatencyHistogram {
+
+	static final int SUB_BUCKETS = 8;
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * values below {@link #SUB_BUCKETS} have a bucket of their own, the powers
+	 * of two from {@link #SUB_BUCKET_BITS} up to 62 have {@link #SUB_BUCKETS}
+	 * buckets each
+	 */
+	private final long[] m_counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+	private long m_n = 0;
+	private long m_max = 0;
+
+	void record(final long aNanos) {
+		final long value = Math.max(0, aNanos);
+		m_counts[bucket(value)]++;
+		m_n++;
+		m_max = Math.max(m_max, value);
+	}
+
+	long getCount() {
+		return m_n;
+	}
+
+	long getMax() {
+		return m_max;
+	}
+
+	/**
+	 * @param aPercent - 0 to 100
+	 * @return the smallest bucket bound that the given percentage of the
+	 *         values does not exceed, 0 if nothing has been recorded
+	 */
+	long percentile(final int aPercent) {
+		if (m_n == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(aPercent / 100.0 * m_n));
+		long n = 0;
+		for (int ix = 0; ix < m_counts.length; ix++) {
+			n += m_counts[ix];
+			if (n >= rank) {
+				return Math.min(m_max, upperBound(ix));
+			}
+		}
+		return m_max;
+	}
+
+	LatencyHistogram copy() {
+		final LatencyHistogram copy = new LatencyHistogram();
+		System.arraycopy(m_counts, 0, copy.m_counts, 0, m_counts.length);
+		copy.m_n = m_n;
+		copy.m_max = m_max;
+		return copy;
+	}
+
+	static int bucket(final long aValue) {
+		if (aValue < SUB_BUCKETS) {
+			return (int) aValue;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(aValue);
+		final int sub = (int) (aValue >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the largest value of the given bucket
+	 */
+	static long upperBound(final int aBucket) {
+		if (aBucket < SUB_BUCKETS) {
+			return aBucket;
+		}
+		final int shift = aBucket / SUB_BUCKETS - 1;
+		final long lowerBound = (long) (SUB_BUCKETS + aBucket % SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+}
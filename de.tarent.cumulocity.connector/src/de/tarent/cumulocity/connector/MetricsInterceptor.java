@@ -0,0 +1,60 @@
+package de.tarent.cumulocity.connector;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * records every request that is sent over the network in the
+ * {@link ExecutionMetrics} of the calling thread (if there are any)
+ *
+ * installed as network interceptor, so that the bytes are counted as they are
+ * transferred (compressed) and every attempt of a retried request is recorded
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class MetricsInterceptor implements Interceptor {
+
+	@Override
+	public Response intercept(final Chain aChain) throws IOException {
+		final ExecutionMetrics metrics = ExecutionMetrics.current();
+		final Request request = aChain.request();
+		if (metrics == null) {
+			return aChain.proceed(request);
+		}
+		final long bytesSent = request.body() == null ? 0 : request.body().contentLength();
+		final long start = System.nanoTime();
+		final Response response;
+		try {
+			response = aChain.proceed(request);
+		} catch (IOException | RuntimeException e) {
+			metrics.recordRequest(System.nanoTime() - start, bytesSent, true);
+			throw e;
+		}
+		metrics.recordRequest(System.nanoTime() - start, bytesSent, !response.isSuccessful());
+
+		final ResponseBody body = response.body();
+		if (body == null) {
+			return response;
+		}
+		final ForwardingSource counting = new ForwardingSource(body.source()) {
+			@Override
+			public long read(final Buffer aSink, final long aByteCount) throws IOException {
+				final long n = super.read(aSink, aByteCount);
+				if (n > 0) {
+					metrics.addBytesReceived(n);
+				}
+				return n;
+			}
+		};
+		return response.newBuilder()
+				.body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(counting))).build();
+	}
+}
@@ -0,0 +1,204 @@
+package de.tarent.cumulocity.connector;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.knime.core.node.NodeLogger;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * retries requests that have been rejected because of the load of the
+ * platform (429, 503) or that failed on the way (5xx of a gateway, broken
+ * connections), so that long running nodes are not aborted and do not lose
+ * data because of a short overload
+ *
+ * the delay grows exponentially with random jitter, a "Retry-After" header of
+ * the platform is honoured; requests that may already have been processed
+ * (e.g. a POST whose response got lost) are not retried
+ *
+ * the number of retries is limited per request and by a budget that is shared
+ * by all requests of a tenant: every request adds a fraction of a retry to it,
+ * so that a platform that is down is not flooded with retries
+ *
+ * the waiting is stopped when the node execution of the request (see
+ * {@link ExecutionMetrics}) is canceled; the time spent on retries is summed
+ * up per thread, so that it can be left out of the timing of a request
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class RetryInterceptor implements Interceptor {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(RetryInterceptor.class);
+
+	static final int MAX_RETRIES = 6;
+	static final long INITIAL_DELAY_MILLIS = 500;
+	static final long MAX_DELAY_MILLIS = 30 * 1000;
+
+	/**
+	 * longer "Retry-After" times are cut down to this
+	 */
+	static final long MAX_RETRY_AFTER_MILLIS = 2 * 60 * 1000;
+
+	/**
+	 * retries that are available right away, e.g. at the start of a node
+	 */
+	static final double MAX_BUDGET = 50;
+
+	/**
+	 * in the long run at most one retry per five requests
+	 */
+	static final double BUDGET_PER_REQUEST = 0.2;
+
+	/**
+	 * interval in which a canceled execution is noticed while waiting
+	 */
+	static final long CANCEL_CHECK_MILLIS = 100;
+
+	/**
+	 * time spent on failed attempts and waiting for retries, per thread
+	 */
+	private static final ThreadLocal<long[]> RETRY_MILLIS = ThreadLocal.withInitial(() -> new long[1]);
+
+	private double m_budget = MAX_BUDGET;
+
+	@Override
+	public Response intercept(final Chain aChain) throws IOException {
+		final Request request = aChain.request();
+		final boolean idempotent = !"POST".equals(request.method());
+		deposit();
+		int retry = 0;
+		while (true) {
+			final long start = System.currentTimeMillis();
+			final Response response;
+			try {
+				response = aChain.proceed(request);
+			} catch (IOException e) {
+				// a POST whose response got lost (e.g. timed out) may have been processed
+				if (!idempotent || Thread.currentThread().isInterrupted() || !mayRetry(retry)) {
+					throw e;
+				}
+				retry++;
+				logger.debug("Request " + request.method() + " " + request.url().encodedPath() + " failed ("
+						+ e.getMessage() + "), retry " + retry + " of " + MAX_RETRIES + ".");
+				sleep(backoff(retry));
+				RETRY_MILLIS.get()[0] += System.currentTimeMillis() - start;
+				continue;
+			}
+
+			if (!isRetryable(response.code(), idempotent) || !mayRetry(retry)) {
+				return response;
+			}
+			retry++;
+			final long delay = delay(response, retry);
+			logger.debug("Request " + request.method() + " " + request.url().encodedPath() + " returned "
+					+ response.code() + ", retry " + retry + " of " + MAX_RETRIES + " in " + delay + " ms.");
+			response.close();
+			sleep(delay);
+			RETRY_MILLIS.get()[0] += System.currentTimeMillis() - start;
+		}
+	}
+
+	/**
+	 * @return time the calling thread has spent on failed attempts and waiting
+	 *         for retries so far, in millis
+	 */
+	static long getRetryMillis() {
+		return RETRY_MILLIS.get()[0];
+	}
+
+	/**
+	 * 429 and 503 are returned before the request is processed, the other
+	 * gateway errors may also occur afterwards
+	 */
+	static boolean isRetryable(final int aCode, final boolean aIdempotent) {
+		switch (aCode) {
+		case 429:
+		case 503:
+			return true;
+		case 502:
+		case 504:
+			return aIdempotent;
+		default:
+			return false;
+		}
+	}
+
+	private synchronized void deposit() {
+		m_budget = Math.min(MAX_BUDGET, m_budget + BUDGET_PER_REQUEST);
+	}
+
+	/**
+	 * withdraws a retry from the budget if possible
+	 */
+	private synchronized boolean mayRetry(final int aRetry) {
+		if (aRetry >= MAX_RETRIES) {
+			return false;
+		}
+		if (m_budget < 1) {
+			logger.warn("Retry budget exhausted, Cumulocity seems to be overloaded or unavailable.");
+			return false;
+		}
+		m_budget--;
+		return true;
+	}
+
+	/**
+	 * @return the time given by the platform or the exponential backoff
+	 */
+	static long delay(final Response aResponse, final int aRetry) {
+		final String retryAfter = aResponse.header("Retry-After");
+		if (retryAfter != null) {
+			long millis = -1;
+			try {
+				millis = Long.parseLong(retryAfter.trim()) * 1000;
+			} catch (NumberFormatException e) {
+				try {
+					millis = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+							.toEpochMilli() - System.currentTimeMillis();
+				} catch (DateTimeParseException e2) {
+					logger.debug("Ignoring invalid Retry-After header: " + retryAfter);
+				}
+			}
+			if (millis >= 0) {
+				return Math.min(millis, MAX_RETRY_AFTER_MILLIS);
+			}
+		}
+		return backoff(aRetry);
+	}
+
+	/**
+	 * @return exponential delay of the given retry (starting with 1), the upper
+	 *         half is random so that parallel requests do not retry in lockstep
+	 */
+	static long backoff(final int aRetry) {
+		final long delay = Math.min(MAX_DELAY_MILLIS, INITIAL_DELAY_MILLIS << Math.min(aRetry - 1, 16));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	/**
+	 * waits in short intervals, so that a canceled execution is noticed
+	 */
+	private static void sleep(final long aMillis) throws InterruptedIOException {
+		final ExecutionMetrics metrics = ExecutionMetrics.current();
+		final long end = System.currentTimeMillis() + aMillis;
+		try {
+			for (long remaining = aMillis; remaining > 0; remaining = end - System.currentTimeMillis()) {
+				if (metrics != null && metrics.isCanceled()) {
+					throw new InterruptedIOException("Retry has been canceled.");
+				}
+				Thread.sleep(Math.min(remaining, CANCEL_CHECK_MILLIS));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Retry has been interrupted.");
+		}
+	}
+}
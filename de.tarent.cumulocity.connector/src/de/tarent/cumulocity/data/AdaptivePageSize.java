@@ -0,0 +1,122 @@
+package de.tarent.cumulocity.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * adapts the page size to the measured responses: pages that are received
+ * quickly are dominated by the round-trip, so the page size grows; slow or
+ * very large pages risk timeouts and hold a lot of memory, so it shrinks
+ *
+ * the page sizes double from step to step, so a reader can switch to a
+ * smaller page size at any page and to a larger one whenever the number of
+ * elements read so far is a multiple of it (see {@link #next(int, long)})
+ *
+ * thread safe, one instance is shared by all requests of a node execution
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class AdaptivePageSize {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(AdaptivePageSize.class);
+
+	/**
+	 * the maximum of Cumulocity
+	 */
+	private static final int MAX_SIZE = 2000;
+
+	/**
+	 * pages are not halved below this size (unless the initial size is smaller)
+	 */
+	private static final int MIN_SIZE = 100;
+
+	/**
+	 * pages received faster than this are grown
+	 */
+	private static final long FAST_MILLIS = 500;
+
+	/**
+	 * pages received slower than this are shrunk
+	 */
+	private static final long SLOW_MILLIS = 5000;
+
+	/**
+	 * pages larger than this are shrunk
+	 */
+	private static final long MAX_PAGE_BYTES = 8L * 1024 * 1024;
+
+	/**
+	 * the initial size and its halves and doubles, in ascending order
+	 */
+	private final int[] m_sizes;
+	private int m_sizeIx;
+
+	/**
+	 * @param aInitialSize - page size to start with (at most the maximum of
+	 *                     Cumulocity), it is halved as long as the half is a
+	 *                     whole number not below 100 and doubled up to the
+	 *                     maximum
+	 */
+	public AdaptivePageSize(final int aInitialSize) {
+		final int initialSize = Math.max(1, Math.min(MAX_SIZE, aInitialSize));
+		int smallest = initialSize;
+		while (smallest % 2 == 0 && smallest / 2 >= MIN_SIZE) {
+			smallest /= 2;
+		}
+		final List<Integer> sizes = new ArrayList<>();
+		for (int size = smallest; size <= MAX_SIZE; size *= 2) {
+			sizes.add(size);
+		}
+		m_sizes = sizes.stream().mapToInt(Integer::intValue).toArray();
+		m_sizeIx = sizes.indexOf(initialSize);
+	}
+
+	/**
+	 * @return the current page size
+	 */
+	public synchronized int get() {
+		return m_sizes[m_sizeIx];
+	}
+
+	/**
+	 * records the response to a page request
+	 *
+	 * @param aPageSize - requested page size
+	 * @param aMillis   - time until the page had been received completely
+	 * @param aBytes    - size of the page
+	 */
+	public synchronized void record(final int aPageSize, final long aMillis, final long aBytes) {
+		if (aPageSize != m_sizes[m_sizeIx]) {
+			// requested before the last adaption
+			return;
+		}
+		if ((aMillis > SLOW_MILLIS || aBytes > MAX_PAGE_BYTES) && m_sizeIx > 0) {
+			m_sizeIx--;
+			logger.debugWithFormat("Page of %d elements took %d ms (%d bytes), reducing page size to %d.",
+					aPageSize, aMillis, aBytes, m_sizes[m_sizeIx]);
+		} else if (aMillis < FAST_MILLIS && aBytes < MAX_PAGE_BYTES / 2 && m_sizeIx < m_sizes.length - 1) {
+			m_sizeIx++;
+			logger.debugWithFormat("Page of %d elements took %d ms (%d bytes), increasing page size to %d.",
+					aPageSize, aMillis, aBytes, m_sizes[m_sizeIx]);
+		}
+	}
+
+	/**
+	 * @param aPageSize - page size used so far (a supported size)
+	 * @param aOffset   - number of elements read so far (a multiple of the page
+	 *                  size)
+	 * @return page size to continue with, the page that follows the elements
+	 *         read so far is "offset / size + 1"
+	 */
+	public int next(final int aPageSize, final long aOffset) {
+		final int size = get();
+		if (size > aPageSize && aOffset % size != 0) {
+			// a larger page must start at a multiple of its size
+			return aPageSize;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,128 @@
+package de.tarent.cumulocity.data;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.knime.core.node.NodeLogger;
+
+import com.telekom.m2m.cot.restsdk.util.CotSdkException;
+
+import de.tarent.cumulocity.connector.CotRestClient;
+
+/**
+ * requests pages via the {@link PageCache}, i.e. a page is only requested from
+ * the platform if it is not cached yet, and counts the hits and misses
+ *
+ * the pages are cached per platform and user, as different users may see
+ * different data; the order of the query parameters does not matter
+ *
+ * pages that cannot change anymore (e.g. measurements of a time range that
+ * ended more than {@link #IMMUTABLE_GRACE_PERIOD} ago, devices may still send
+ * buffered data for a time range that ended recently) are kept for at least a
+ * day, also if the max age of the pages is shorter
+ *
+ * thread safe, one instance is used per node execution
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class CachedPages {
+
+	/**
+	 * time after the end of a time range in which devices may still send data
+	 * for it, in millis
+	 */
+	public static final long IMMUTABLE_GRACE_PERIOD = 24L * 60 * 60 * 1000;
+
+	/**
+	 * min age after which pages that cannot change anymore are requested again
+	 */
+	private static final long IMMUTABLE_TIME_TO_LIVE = 24L * 60 * 60 * 1000;
+
+	private final PageCache m_cache;
+	private final CotRestClient m_client;
+	private final boolean m_immutable;
+	private final long m_timeToLive;
+
+	private final AtomicLong m_hits = new AtomicLong();
+	private final AtomicLong m_misses = new AtomicLong();
+
+	/**
+	 * @param aImmutable  - true if the requested pages cannot change anymore
+	 * @param aTimeToLive - max age of a cached page in millis
+	 */
+	public CachedPages(final PageCache aCache, final CotRestClient aClient, final boolean aImmutable,
+			final long aTimeToLive) {
+		m_cache = aCache;
+		m_client = aClient;
+		m_immutable = aImmutable;
+		m_timeToLive = aTimeToLive;
+	}
+
+	/**
+	 * @param aRelativeUrl - url relative to the host, including the query
+	 * @return the (UTF-8 encoded) page, from the cache if possible
+	 */
+	public byte[] get(final String aRelativeUrl) {
+		final String key = key(aRelativeUrl);
+		final Optional<byte[]> cached = m_cache.get(key, m_timeToLive,
+				Math.max(m_timeToLive, IMMUTABLE_TIME_TO_LIVE));
+		if (cached.isPresent()) {
+			m_hits.incrementAndGet();
+			return cached.get();
+		}
+		m_misses.incrementAndGet();
+		final byte[] page = m_client.getBytes(aRelativeUrl);
+		m_cache.put(key, page, m_immutable);
+		return page;
+	}
+
+	public long getHits() {
+		return m_hits.get();
+	}
+
+	public long getMisses() {
+		return m_misses.get();
+	}
+
+	/**
+	 * logs the number of hits and misses
+	 */
+	public void logStatistics(final NodeLogger aLogger) {
+		aLogger.infoWithFormat("Page cache: %d hits, %d misses.", getHits(), getMisses());
+	}
+
+	private String key(final String aRelativeUrl) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(m_client.getIdentity().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+			digest.update(normalise(aRelativeUrl).getBytes(StandardCharsets.UTF_8));
+			final StringBuilder key = new StringBuilder();
+			for (final byte b : digest.digest()) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM supports SHA-256
+			throw new CotSdkException("Failed to create cache key", e);
+		}
+	}
+
+	/**
+	 * @return the url with the query parameters in alphabetical order
+	 */
+	static String normalise(final String aRelativeUrl) {
+		final int queryIx = aRelativeUrl.indexOf('?');
+		if (queryIx < 0) {
+			return aRelativeUrl;
+		}
+		final String[] parameters = aRelativeUrl.substring(queryIx + 1).split("&");
+		Arrays.sort(parameters);
+		return aRelativeUrl.substring(0, queryIx + 1) + String.join("&", parameters);
+	}
+}
@@ -0,0 +1,197 @@
+package de.tarent.cumulocity.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+
+/**
+ * runs retrieval tasks (typically one per device) on a bounded worker pool
+ *
+ * the rows produced by the tasks are handed over to the calling thread via a
+ * bounded queue, so that only the calling thread ever writes into the output
+ * container (which is not thread safe)
+ *
+ * in ordered mode every task has its own queue and the rows are written in
+ * the order in which the tasks have been submitted (the rows of a task are
+ * only written once all rows of the previous tasks have been written)
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class ConcurrentRetriever implements AutoCloseable {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(ConcurrentRetriever.class);
+
+	/**
+	 * marker that is put into the queue whenever a task is finished
+	 */
+	private static final DataCell[] END_OF_TASK = new DataCell[0];
+
+	private static final long POLL_INTERVAL_MS = 100;
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	/**
+	 * one unit of work, e.g. the retrieval of all measurements of one device
+	 */
+	@FunctionalInterface
+	public interface RetrievalTask {
+		void retrieve(RowSink aSink) throws CanceledExecutionException;
+	}
+
+	private final ExecutorService m_executor;
+	private final int m_queueCapacity;
+	private final boolean m_ordered;
+	/**
+	 * the shared queue or (in ordered mode) one queue per task
+	 */
+	private final List<BlockingQueue<DataCell[]>> m_queues = new ArrayList<>();
+	private final AtomicReference<RuntimeException> m_failure = new AtomicReference<>();
+	private volatile boolean m_stopped = false;
+	private int m_nTasks = 0;
+
+	/**
+	 * @param aParallelism   - maximal number of tasks that are executed at the
+	 *                       same time
+	 * @param aQueueCapacity - maximal number of rows that may wait to be written
+	 *                       into the output container
+	 */
+	public ConcurrentRetriever(final int aParallelism, final int aQueueCapacity) {
+		this(aParallelism, aQueueCapacity, false);
+	}
+
+	/**
+	 * @param aParallelism   - maximal number of tasks that are executed at the
+	 *                       same time
+	 * @param aQueueCapacity - maximal number of rows that may wait to be written
+	 *                       into the output container (per task in ordered mode)
+	 * @param aOrdered       - write the rows in the order of the tasks
+	 */
+	public ConcurrentRetriever(final int aParallelism, final int aQueueCapacity, final boolean aOrdered) {
+		m_queueCapacity = aQueueCapacity;
+		m_ordered = aOrdered;
+		if (!aOrdered) {
+			m_queues.add(new ArrayBlockingQueue<>(aQueueCapacity));
+		}
+		m_executor = Executors.newFixedThreadPool(aParallelism, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable aRunnable) {
+				final Thread t = new Thread(aRunnable, "Cumulocity-Retriever-" + THREAD_COUNTER.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * schedules the given task, all tasks must be submitted before
+	 * {@link #drainInto(RowSink, ExecutionContext)} is called
+	 */
+	public void submit(final RetrievalTask aTask) {
+		m_nTasks++;
+		final BlockingQueue<DataCell[]> queue;
+		if (m_ordered) {
+			// allocates its capacity lazily, most of the tasks wait for their turn
+			queue = new LinkedBlockingQueue<>(m_queueCapacity);
+			m_queues.add(queue);
+		} else {
+			queue = m_queues.get(0);
+		}
+		final RowSink queueSink = aCells -> {
+			// the caller may re-use the array
+			return handOver(queue, aCells.clone());
+		};
+		m_executor.execute(ExecutionMetrics.propagate(() -> {
+			try {
+				if (!m_stopped) {
+					aTask.retrieve(queueSink);
+				}
+			} catch (CanceledExecutionException e) {
+				// nothing to do, the retrieval has been stopped
+			} catch (RuntimeException e) {
+				if (!m_stopped) {
+					logger.error("Retrieval task failed: " + e.getMessage());
+					m_failure.compareAndSet(null, e);
+				}
+			} finally {
+				handOver(queue, END_OF_TASK);
+			}
+		}));
+	}
+
+	/**
+	 * moves the rows of all tasks into the given sink until all tasks are
+	 * finished or the sink does not want any more rows, all remaining tasks are
+	 * stopped afterwards
+	 *
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public void drainInto(final RowSink aTarget, final ExecutionContext aExec) throws CanceledExecutionException {
+		int nFinished = 0;
+		try {
+			while (nFinished < m_nTasks && m_failure.get() == null) {
+				// the shared queue or the queue of the oldest unfinished task
+				final BlockingQueue<DataCell[]> queue = m_queues.get(m_ordered ? nFinished : 0);
+				final DataCell[] cells = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if (cells == null) {
+					aExec.checkCanceled();
+				} else if (cells == END_OF_TASK) {
+					if (m_ordered) {
+						// release the (drained) queue
+						m_queues.set(nFinished, null);
+					}
+					nFinished++;
+					aExec.setProgress(nFinished / (double) m_nTasks);
+				} else if (!aTarget.addRow(cells)) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CanceledExecutionException("Retrieval has been interrupted.");
+		} finally {
+			close();
+		}
+		final RuntimeException failure = m_failure.get();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private boolean handOver(final BlockingQueue<DataCell[]> aQueue, final DataCell[] aCells) {
+		try {
+			while (!m_stopped) {
+				if (aQueue.offer(aCells, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * stops all tasks that are still running
+	 */
+	@Override
+	public void close() {
+		m_stopped = true;
+		m_executor.shutdownNow();
+	}
+}
@@ -0,0 +1,174 @@
+package de.tarent.cumulocity.data;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+
+import com.telekom.m2m.cot.restsdk.util.CotSdkException;
+
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+
+/**
+ * writes elements (e.g. events) to Cumulocity with a bounded number of
+ * requests in flight, so that the throughput is not limited by the round-trip
+ * time of a single request
+ *
+ * the elements are created by the calling thread (which also reads the input
+ * table) and handed over to a worker pool; a failed request is counted and
+ * reported, the remaining elements are still written
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class ConcurrentWriter<T> implements AutoCloseable {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(ConcurrentWriter.class);
+
+	private static final long POLL_INTERVAL_MS = 100;
+
+	/**
+	 * max time to wait for the requests in flight when the writer is closed
+	 */
+	private static final long CLOSE_TIMEOUT_S = 60;
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	/**
+	 * writes a single element with one request
+	 */
+	@FunctionalInterface
+	public interface WriteTask<T> {
+		void write(T aElement) throws CotSdkException;
+	}
+
+	/**
+	 * called (from a worker thread) for every element that could not be written
+	 */
+	@FunctionalInterface
+	public interface FailureHandler<T> {
+		void failed(T aElement, CotSdkException aException);
+	}
+
+	private final ExecutorService m_executor;
+	private final Semaphore m_inFlight;
+	private final int m_maxInFlight;
+	private final WriteTask<T> m_task;
+	private final FailureHandler<T> m_failureHandler;
+	private final AtomicLong m_nWritten = new AtomicLong();
+	private final AtomicReference<CotSdkException> m_lastException = new AtomicReference<>();
+	/**
+	 * unexpected failure (not a rejected request), stops the writing
+	 */
+	private final AtomicReference<RuntimeException> m_failure = new AtomicReference<>();
+
+	/**
+	 * @param aMaxInFlight     - maximal number of requests at the same time
+	 * @param aTask            - writes one element
+	 * @param aFailureHandler  - informed about every element that has not been
+	 *                         written
+	 */
+	public ConcurrentWriter(final int aMaxInFlight, final WriteTask<T> aTask,
+			final FailureHandler<T> aFailureHandler) {
+		m_maxInFlight = aMaxInFlight;
+		m_inFlight = new Semaphore(aMaxInFlight);
+		m_task = aTask;
+		m_failureHandler = aFailureHandler;
+		m_executor = Executors.newFixedThreadPool(aMaxInFlight, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable aRunnable) {
+				final Thread t = new Thread(aRunnable, "Cumulocity-Writer-" + THREAD_COUNTER.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * schedules the writing of the given element, blocks while the maximal
+	 * number of requests is in flight
+	 *
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public void submit(final T aElement, final ExecutionContext aExec) throws CanceledExecutionException {
+		acquire(1, aExec);
+		m_executor.execute(ExecutionMetrics.propagate(() -> {
+			try {
+				m_task.write(aElement);
+				m_nWritten.incrementAndGet();
+			} catch (CotSdkException cse) {
+				m_lastException.set(cse);
+				m_failureHandler.failed(aElement, cse);
+			} catch (RuntimeException e) {
+				m_failure.compareAndSet(null, e);
+			} finally {
+				m_inFlight.release();
+			}
+		}));
+	}
+
+	/**
+	 * waits until all submitted elements have been written (or have failed)
+	 *
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public void awaitCompletion(final ExecutionContext aExec) throws CanceledExecutionException {
+		acquire(m_maxInFlight, aExec);
+		m_inFlight.release(m_maxInFlight);
+	}
+
+	private void acquire(final int aPermits, final ExecutionContext aExec) throws CanceledExecutionException {
+		try {
+			while (!m_inFlight.tryAcquire(aPermits, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+				aExec.checkCanceled();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CanceledExecutionException("Writing has been interrupted.");
+		}
+		final RuntimeException failure = m_failure.get();
+		if (failure != null) {
+			m_inFlight.release(aPermits);
+			throw failure;
+		}
+	}
+
+	/**
+	 * @return number of elements that have been written successfully so far
+	 */
+	public long getNumberWritten() {
+		return m_nWritten.get();
+	}
+
+	/**
+	 * @return exception of the last failed request, null if no request failed
+	 */
+	public CotSdkException getLastException() {
+		return m_lastException.get();
+	}
+
+	/**
+	 * stops the writing and waits (at most a minute) until the requests in
+	 * flight have been completed, so that their results are counted
+	 */
+	@Override
+	public void close() {
+		m_executor.shutdown();
+		try {
+			if (!m_executor.awaitTermination(CLOSE_TIMEOUT_S, TimeUnit.SECONDS)) {
+				logger.warn("Requests still in flight after " + CLOSE_TIMEOUT_S
+						+ " seconds, their elements are not counted as written.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package de.tarent.cumulocity.data;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+
+/**
+ * row sink that writes directly into the output container, must only be used
+ * from the thread that owns the container
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class ContainerRowSink implements RowSink {
+
+	private final BufferedDataContainer m_container;
+	private final ExecutionContext m_exec;
+	private final long m_maxNum;
+	private final ExecutionMetrics m_metrics = ExecutionMetrics.current();
+	private long m_rowIx;
+
+	public ContainerRowSink(final BufferedDataContainer aContainer, final ExecutionContext aExec,
+			final long aRowIx, final long aMaxNum) {
+		m_container = aContainer;
+		m_exec = aExec;
+		m_rowIx = aRowIx;
+		m_maxNum = aMaxNum;
+	}
+
+	@Override
+	public boolean addRow(final DataCell[] aCells) throws CanceledExecutionException {
+		final long start = System.nanoTime();
+		// addRowToTable copies the content of the row, so the cell array may be re-used
+		m_container.addRowToTable(new DefaultRow(RowKey.createRowKey(m_rowIx), aCells));
+		if (m_metrics != null) {
+			m_metrics.addWriteTime(System.nanoTime() - start);
+		}
+		m_rowIx++;
+		m_exec.checkCanceled();
+		return m_rowIx < m_maxNum;
+	}
+
+	@Override
+	public void checkCanceled() throws CanceledExecutionException {
+		m_exec.checkCanceled();
+	}
+
+	/**
+	 * @return index of the next row to be added
+	 */
+	public long getRowIx() {
+		return m_rowIx;
+	}
+}
@@ -0,0 +1,268 @@
+package de.tarent.cumulocity.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.NodeLogger;
+
+import com.google.gson.stream.JsonReader;
+
+import de.tarent.cumulocity.connector.CotRestClient;
+
+/**
+ * memory-bounded cache for the metadata of devices (name, type and selected
+ * fragments), shared by all nodes of the JVM, so that retrieved data can be
+ * enriched with device columns without reading the whole inventory
+ *
+ * the devices are kept per connection (host and user, see
+ * {@link CotRestClient#getIdentity()}) and are requested lazily, a hundred at
+ * a time; after the refresh interval a device is requested again, the cached
+ * cells are only replaced if the device has been updated since (its
+ * "lastUpdated" has changed); once the cache exceeds its size the least
+ * recently used devices are evicted
+ *
+ * all methods are thread safe
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class DeviceMetadataCache {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(DeviceMetadataCache.class);
+
+	private static final String MANAGED_OBJECTS_URL = "inventory/managedObjects";
+
+	private static final int MAX_DEVICES = 100000;
+
+	private static final long REFRESH_MILLIS = 5 * 60 * 1000;
+
+	/**
+	 * keeps the urls short enough for all proxies
+	 */
+	private static final int IDS_PER_REQUEST = 100;
+
+	private static DeviceMetadataCache instance;
+
+	/**
+	 * metadata of one device, devices that do not exist (or are not visible to
+	 * the user) have missing cells
+	 */
+	public static final class Device {
+		private final DataCell m_name;
+		private final DataCell m_type;
+		private final String m_lastUpdated;
+		private final Map<String, DataCell> m_fragments;
+		private volatile long m_checked;
+
+		private Device(final DataCell aName, final DataCell aType, final String aLastUpdated,
+				final Map<String, DataCell> aFragments, final long aChecked) {
+			m_name = aName;
+			m_type = aType;
+			m_lastUpdated = aLastUpdated;
+			m_fragments = aFragments;
+			m_checked = aChecked;
+		}
+
+		public DataCell getName() {
+			return m_name;
+		}
+
+		public DataCell getType() {
+			return m_type;
+		}
+
+		/**
+		 * @return the fragment as text (see
+		 *         {@link JsonCells#nextJsonCell(JsonReader)}), a missing cell if
+		 *         the device does not have it
+		 */
+		public DataCell getFragment(final String aFragment) {
+			final DataCell fragment = m_fragments.get(aFragment);
+			return fragment == null ? DataType.getMissingCell() : fragment;
+		}
+
+		private boolean hasFragments(final Collection<String> aFragments) {
+			return m_fragments.keySet().containsAll(aFragments);
+		}
+	}
+
+	/**
+	 * in access order, i.e. the least recently used device comes first
+	 */
+	private final LinkedHashMap<String, Device> m_devices = new LinkedHashMap<>(16, 0.75f, true);
+	private final int m_maxDevices;
+	private final long m_refreshMillis;
+
+	/**
+	 * @return the cache shared by all nodes
+	 */
+	public static synchronized DeviceMetadataCache getInstance() {
+		if (instance == null) {
+			instance = new DeviceMetadataCache(MAX_DEVICES, REFRESH_MILLIS);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param aMaxDevices    - max number of cached devices (of all connections)
+	 * @param aRefreshMillis - time after which a device is requested again
+	 */
+	DeviceMetadataCache(final int aMaxDevices, final long aRefreshMillis) {
+		m_maxDevices = aMaxDevices;
+		m_refreshMillis = aRefreshMillis;
+	}
+
+	/**
+	 * @param aIds       - ids of the devices
+	 * @param aFragments - fragments that are needed
+	 * @return metadata of the given devices, the devices that are not cached
+	 *         (or need to be refreshed) are requested from the inventory
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public Map<String, Device> get(final CotRestClient aClient, final Collection<String> aIds,
+			final String[] aFragments) throws CanceledExecutionException {
+		final String identity = aClient.getIdentity();
+		final List<String> fragments = Arrays.asList(aFragments);
+		final long now = System.currentTimeMillis();
+
+		final Map<String, Device> devices = new HashMap<>();
+		final Map<String, Device> stale = new LinkedHashMap<>();
+		synchronized (this) {
+			for (final String id : aIds) {
+				final Device device = m_devices.get(key(identity, id));
+				if (device != null && device.hasFragments(fragments) && now - device.m_checked < m_refreshMillis) {
+					devices.put(id, device);
+				} else {
+					stale.put(id, device);
+				}
+			}
+		}
+		logger.infoWithFormat("Device metadata: %d of %d devices taken from the cache.", devices.size(),
+				devices.size() + stale.size());
+
+		final Iterator<String> ids = stale.keySet().iterator();
+		while (ids.hasNext()) {
+			final List<String> batch = new ArrayList<>();
+			// the fragments that have been cached so far are kept
+			final Set<String> batchFragments = new LinkedHashSet<>(fragments);
+			while (ids.hasNext() && batch.size() < IDS_PER_REQUEST) {
+				final String id = ids.next();
+				batch.add(id);
+				if (stale.get(id) != null) {
+					batchFragments.addAll(stale.get(id).m_fragments.keySet());
+				}
+			}
+			final Map<String, Device> requested = request(aClient, batch, batchFragments, now);
+			synchronized (this) {
+				for (final String id : batch) {
+					final Device previous = stale.get(id);
+					Device device = requested.get(id);
+					if (device == null) {
+						// deleted or not accessible
+						final Map<String, DataCell> missing = new HashMap<>();
+						batchFragments.forEach(aFragment -> missing.put(aFragment, DataType.getMissingCell()));
+						device = new Device(DataType.getMissingCell(), DataType.getMissingCell(), null, missing, now);
+					} else if (previous != null && previous.m_lastUpdated != null
+							&& previous.m_lastUpdated.equals(device.m_lastUpdated)
+							&& previous.m_fragments.keySet().equals(device.m_fragments.keySet())) {
+						// unchanged, the cached cells may already be referenced by tables
+						previous.m_checked = now;
+						device = previous;
+					}
+					m_devices.put(key(identity, id), device);
+					devices.put(id, device);
+				}
+				evict();
+			}
+		}
+		return devices;
+	}
+
+	private Map<String, Device> request(final CotRestClient aClient, final List<String> aIds,
+			final Set<String> aFragments, final long aNow) throws CanceledExecutionException {
+		final String url = MANAGED_OBJECTS_URL + "?ids=" + String.join(",", aIds) + "&pageSize=" + aIds.size()
+				+ "&withChildren=false";
+		return aClient.getJson(url, aReader -> {
+			final Map<String, Device> devices = new HashMap<>();
+			aReader.beginObject();
+			while (aReader.hasNext()) {
+				if ("managedObjects".equals(aReader.nextName())) {
+					aReader.beginArray();
+					while (aReader.hasNext()) {
+						readDevice(aReader, aFragments, aNow, devices);
+					}
+					aReader.endArray();
+				} else {
+					aReader.skipValue();
+				}
+			}
+			aReader.endObject();
+			return devices;
+		});
+	}
+
+	private static void readDevice(final JsonReader aReader, final Set<String> aFragments, final long aNow,
+			final Map<String, Device> aDevices) throws IOException {
+		String id = null;
+		String lastUpdated = null;
+		DataCell name = DataType.getMissingCell();
+		DataCell type = DataType.getMissingCell();
+		final Map<String, DataCell> fragments = new HashMap<>();
+		for (final String fragment : aFragments) {
+			// also devices without the fragment have it (as missing cell)
+			fragments.put(fragment, DataType.getMissingCell());
+		}
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			final String attribute = aReader.nextName();
+			switch (attribute) {
+			case "id":
+				id = aReader.nextString();
+				break;
+			case "name":
+				name = JsonCells.nextStringCell(aReader);
+				break;
+			case "type":
+				type = JsonCells.nextStringCell(aReader);
+				break;
+			case "lastUpdated":
+				lastUpdated = aReader.nextString();
+				break;
+			default:
+				if (fragments.containsKey(attribute)) {
+					fragments.put(attribute, JsonCells.nextJsonCell(aReader));
+				} else {
+					aReader.skipValue();
+				}
+			}
+		}
+		aReader.endObject();
+		if (id != null) {
+			aDevices.put(id, new Device(name, type, lastUpdated, fragments, aNow));
+		}
+	}
+
+	private void evict() {
+		final Iterator<Device> devices = m_devices.values().iterator();
+		while (m_devices.size() > m_maxDevices && devices.hasNext()) {
+			devices.next();
+			devices.remove();
+		}
+	}
+
+	private static String key(final String aIdentity, final String aId) {
+		return aIdentity + "\n" + aId;
+	}
+}
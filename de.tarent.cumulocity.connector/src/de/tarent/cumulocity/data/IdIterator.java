@@ -23,6 +23,7 @@ public final class IdIterator implements Iterator<Optional<FilterBuilder>>, Clos
 	private final CloseableRowIterator m_rowIterator;
 	private final int m_colIx;
 	private Optional<FilterBuilder> m_emptyFilter = null;
+	private String m_currentId = null;
 
 	public IdIterator() {
 		m_rowIterator = null;
@@ -49,7 +50,8 @@ public final class IdIterator implements Iterator<Optional<FilterBuilder>>, Clos
 		if (m_rowIterator != null) {
 			final DataRow row = m_rowIterator.next();
 			final DataCell id_value = row.getCell(m_colIx);
-			return Optional.of(Filter.build().setFilter(FilterBy.BYSOURCE, id_value.toString()));
+			m_currentId = id_value.toString();
+			return Optional.of(Filter.build().setFilter(FilterBy.BYSOURCE, m_currentId));
 		} else {
 			final Optional<FilterBuilder> tmp = m_emptyFilter;
 			m_emptyFilter = null;
@@ -57,6 +59,14 @@ public final class IdIterator implements Iterator<Optional<FilterBuilder>>, Clos
 		}
 	}
 
+	/**
+	 * @return the device id of the filter returned by the last call to
+	 *         {@link #next()}, empty if there is no device table
+	 */
+	public Optional<String> getCurrentId() {
+		return Optional.ofNullable(m_currentId);
+	}
+
 	@Override
 	public void close() {
 		if (m_rowIterator != null) {
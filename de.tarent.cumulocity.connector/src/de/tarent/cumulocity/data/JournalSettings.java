@@ -0,0 +1,105 @@
+package de.tarent.cumulocity.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.workflow.NodeContainer;
+import org.knime.core.node.workflow.NodeContext;
+import org.knime.core.node.workflow.WorkflowContext;
+import org.knime.core.node.workflow.WorkflowManager;
+
+/**
+ * settings of the creator nodes for the {@link WriteJournal}
+ *
+ * the journal id of a node is derived from the location of its workflow and
+ * its node id, so it survives a restart (or crash) of KNIME, while a copied
+ * node gets an id (and journal) of its own; nodes that are executed outside
+ * of a workflow get a random id per instance
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class JournalSettings {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(JournalSettings.class);
+
+	static final String Config_RESUME = "RESUME";
+
+	static final String RESUME_LABEL = "Resume: skip rows written by the previous execution";
+
+	private final String m_instanceId = UUID.randomUUID().toString();
+	private final SettingsModelBoolean m_resumeSettings = createResumeSettings();
+
+	static SettingsModelBoolean createResumeSettings() {
+		return new SettingsModelBoolean(Config_RESUME, false);
+	}
+
+	/**
+	 * adds the resume option to the given dialog
+	 */
+	public static void addDialogComponents(final DefaultNodeSettingsPane aPane) {
+		aPane.addDialogComponent(new DialogComponentBoolean(createResumeSettings(), RESUME_LABEL));
+	}
+
+	/**
+	 * @param aIdentity - user and platform the rows are written to
+	 * @param aNumRows  - number of rows of the input table
+	 * @return the journal of this execution, takes over the rows of the
+	 *         previous execution in resume mode
+	 */
+	public WriteJournal open(final String aIdentity, final long aNumRows) {
+		try {
+			return WriteJournal.open(journalId(), aIdentity, aNumRows, m_resumeSettings.getBooleanValue());
+		} catch (IOException e) {
+			logger.warn("Failed to create the journal, execution cannot be resumed: " + e.getMessage());
+			return WriteJournal.none();
+		}
+	}
+
+	/**
+	 * must be called from the thread that executes the node
+	 *
+	 * @return workflow location and node id, the random id of this instance if
+	 *         the node is not executed in a (saved) workflow
+	 */
+	private String journalId() {
+		final NodeContext context = NodeContext.getContext();
+		if (context == null) {
+			return m_instanceId;
+		}
+		final NodeContainer node = context.getNodeContainer();
+		final WorkflowManager workflow = context.getWorkflowManager();
+		final WorkflowContext workflowContext = workflow == null ? null : workflow.getContext();
+		final File location = workflowContext == null ? null : workflowContext.getCurrentLocation();
+		if (node == null || location == null) {
+			return m_instanceId;
+		}
+		return location.getAbsolutePath() + "#" + node.getID();
+	}
+
+	public void saveSettingsTo(final NodeSettingsWO aSettings) {
+		m_resumeSettings.saveSettingsTo(aSettings);
+	}
+
+	public void loadValidatedSettingsFrom(final NodeSettingsRO aSettings) throws InvalidSettingsException {
+		// not available in workflows created with older versions (a journal id
+		// saved by older versions is ignored)
+		if (aSettings.containsKey(Config_RESUME)) {
+			m_resumeSettings.loadSettingsFrom(aSettings);
+		}
+	}
+
+	public void validateSettings(final NodeSettingsRO aSettings) throws InvalidSettingsException {
+		if (aSettings.containsKey(Config_RESUME)) {
+			m_resumeSettings.validateSettings(aSettings);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package de.tarent.cumulocity.data;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeCellFactory;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * helper methods to create cells directly from a JSON stream, all methods are
+ * thread safe
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class JsonCells {
+
+	private static final ZoneId UTC = ZoneId.of("UTC");
+
+	private JsonCells() {
+		// static helpers only
+	}
+
+	/**
+	 * @return string cell with the next value or a missing cell if the value is
+	 *         null
+	 */
+	public static DataCell nextStringCell(final JsonReader aReader) throws IOException {
+		if (aReader.peek() == JsonToken.NULL) {
+			aReader.nextNull();
+			return DataType.getMissingCell();
+		}
+		return new StringCell(aReader.nextString());
+	}
+
+	/**
+	 * copies the next value (e.g. a fragment of a managed object) token by token,
+	 * without building an object tree
+	 *
+	 * @return string cell with the next value (strings as they are, objects,
+	 *         arrays, numbers and booleans as JSON) or a missing cell if the
+	 *         value is null
+	 */
+	public static DataCell nextJsonCell(final JsonReader aReader) throws IOException {
+		switch (aReader.peek()) {
+		case NULL:
+			aReader.nextNull();
+			return DataType.getMissingCell();
+		case STRING:
+			return new StringCell(aReader.nextString());
+		default:
+			final StringWriter json = new StringWriter();
+			try (final JsonWriter writer = new JsonWriter(json)) {
+				writer.setSerializeNulls(true);
+				copyValue(aReader, writer);
+			}
+			return new StringCell(json.toString());
+		}
+	}
+
+	private static void copyValue(final JsonReader aReader, final JsonWriter aWriter) throws IOException {
+		switch (aReader.peek()) {
+		case BEGIN_OBJECT:
+			aReader.beginObject();
+			aWriter.beginObject();
+			while (aReader.hasNext()) {
+				aWriter.name(aReader.nextName());
+				copyValue(aReader, aWriter);
+			}
+			aReader.endObject();
+			aWriter.endObject();
+			break;
+		case BEGIN_ARRAY:
+			aReader.beginArray();
+			aWriter.beginArray();
+			while (aReader.hasNext()) {
+				copyValue(aReader, aWriter);
+			}
+			aReader.endArray();
+			aWriter.endArray();
+			break;
+		case STRING:
+			aWriter.value(aReader.nextString());
+			break;
+		case NUMBER:
+			// keeps the number as sent (no rounding through double)
+			aWriter.jsonValue(aReader.nextString());
+			break;
+		case BOOLEAN:
+			aWriter.value(aReader.nextBoolean());
+			break;
+		case NULL:
+			aReader.nextNull();
+			aWriter.nullValue();
+			break;
+		default:
+			throw new IOException("Unexpected JSON token " + aReader.peek());
+		}
+	}
+
+	/**
+	 * @return date cell with the next value or a missing cell if the value is
+	 *         null
+	 */
+	public static DataCell nextDateCell(final JsonReader aReader) throws IOException {
+		if (aReader.peek() == JsonToken.NULL) {
+			aReader.nextNull();
+			return DataType.getMissingCell();
+		}
+		return createDateCell(aReader.nextString());
+	}
+
+	/**
+	 * same representation as the one created with the date format of the
+	 * retriever nodes (UTC, precision of seconds)
+	 *
+	 * @param aTime - ISO 8601 date time with offset as sent by Cumulocity
+	 */
+	public static DataCell createDateCell(final String aTime) {
+		final ZonedDateTime time = ZonedDateTime.parse(aTime, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+		return ZonedDateTimeCellFactory.create(time.withZoneSameInstant(UTC).truncatedTo(ChronoUnit.SECONDS));
+	}
+}
@@ -0,0 +1,206 @@
+package de.tarent.cumulocity.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * size-bounded cache for result pages on the local disk, shared by all nodes
+ * of the JVM
+ *
+ * once the cache exceeds its size the least recently used pages are evicted;
+ * pages expire after the time-to-live given on lookup, which may be longer for
+ * pages that cannot change anymore (e.g. of a time range in the past)
+ *
+ * all methods are thread safe
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class PageCache {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(PageCache.class);
+
+	private static final String DIRECTORY_NAME = "cumulocity-page-cache";
+
+	private static final long MAX_SIZE = 512L * 1024 * 1024;
+
+	private static final String SUFFIX = ".page";
+	private static final String SUFFIX_IMMUTABLE = ".ipage";
+	private static final String SUFFIX_TMP = ".tmp";
+
+	private static PageCache instance;
+
+	private static final class Entry {
+		private final File m_file;
+		private final long m_size;
+		private final long m_created;
+		private final boolean m_immutable;
+
+		private Entry(final File aFile, final long aSize, final long aCreated, final boolean aImmutable) {
+			m_file = aFile;
+			m_size = aSize;
+			m_created = aCreated;
+			m_immutable = aImmutable;
+		}
+	}
+
+	private final File m_dir;
+	private final long m_maxSize;
+
+	/**
+	 * in access order, i.e. the least recently used page comes first
+	 */
+	private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long m_size;
+
+	/**
+	 * @return the cache in the KNIME temp directory
+	 */
+	public static synchronized PageCache getInstance() {
+		if (instance == null) {
+			instance = new PageCache(new File(KNIMEConstants.getKNIMETempDir(), DIRECTORY_NAME), MAX_SIZE);
+		}
+		return instance;
+	}
+
+	/**
+	 * takes over the pages that have been cached by a previous session
+	 *
+	 * @param aDir     - directory of the cache
+	 * @param aMaxSize - max total size of the cached pages in bytes
+	 */
+	PageCache(final File aDir, final long aMaxSize) {
+		m_dir = aDir;
+		m_maxSize = aMaxSize;
+		final File[] files = aDir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (final File file : files) {
+			final String name = file.getName();
+			if (name.endsWith(SUFFIX) || name.endsWith(SUFFIX_IMMUTABLE)) {
+				final boolean immutable = name.endsWith(SUFFIX_IMMUTABLE);
+				final String key = name.substring(0, name.lastIndexOf('.'));
+				final Entry old = m_entries.put(key, new Entry(file, file.length(), file.lastModified(), immutable));
+				if (old != null) {
+					m_size -= old.m_size;
+					delete(old.m_file);
+				}
+				m_size += file.length();
+			} else if (name.endsWith(SUFFIX_TMP)) {
+				// left over by an aborted write
+				delete(file);
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * @param aKey                 - key of the page (must be usable as file
+	 *                             name)
+	 * @param aTimeToLive          - max age of a page that may still change, in
+	 *                             millis
+	 * @param aImmutableTimeToLive - max age of a page that cannot change
+	 *                             anymore, in millis
+	 * @return content of the page, if it is cached and has not expired
+	 */
+	Optional<byte[]> get(final String aKey, final long aTimeToLive, final long aImmutableTimeToLive) {
+		final Entry entry;
+		synchronized (this) {
+			entry = m_entries.get(aKey);
+			if (entry == null) {
+				return Optional.empty();
+			}
+			final long timeToLive = entry.m_immutable ? aImmutableTimeToLive : aTimeToLive;
+			if (System.currentTimeMillis() - entry.m_created > timeToLive) {
+				remove(aKey, entry);
+				return Optional.empty();
+			}
+		}
+		try {
+			return Optional.of(Files.readAllBytes(entry.m_file.toPath()));
+		} catch (IOException e) {
+			// deleted from outside or evicted in the meantime
+			logger.debug("Cached page not readable: " + entry.m_file, e);
+			synchronized (this) {
+				remove(aKey, entry);
+			}
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * adds (or replaces) a page, errors are logged but otherwise ignored as the
+	 * page can always be requested again
+	 *
+	 * @param aImmutable - true if the page cannot change anymore
+	 */
+	void put(final String aKey, final byte[] aContent, final boolean aImmutable) {
+		if (aContent.length > m_maxSize) {
+			return;
+		}
+		final File file = new File(m_dir, aKey + (aImmutable ? SUFFIX_IMMUTABLE : SUFFIX));
+		try {
+			Files.createDirectories(m_dir.toPath());
+			// readers must never see a partially written page
+			final Path tmp = Files.createTempFile(m_dir.toPath(), aKey, SUFFIX_TMP);
+			try {
+				Files.write(tmp, aContent);
+				Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to cache page in " + m_dir + ": " + e.getMessage());
+			return;
+		}
+		synchronized (this) {
+			final Entry old = m_entries.remove(aKey);
+			if (old != null) {
+				m_size -= old.m_size;
+				if (!old.m_file.equals(file)) {
+					delete(old.m_file);
+				}
+			}
+			m_entries.put(aKey, new Entry(file, aContent.length, System.currentTimeMillis(), aImmutable));
+			m_size += aContent.length;
+			evict();
+		}
+	}
+
+	private void evict() {
+		final Iterator<Map.Entry<String, Entry>> iter = m_entries.entrySet().iterator();
+		while (m_size > m_maxSize && iter.hasNext()) {
+			final Entry entry = iter.next().getValue();
+			iter.remove();
+			m_size -= entry.m_size;
+			delete(entry.m_file);
+		}
+	}
+
+	private void remove(final String aKey, final Entry aEntry) {
+		if (m_entries.remove(aKey, aEntry)) {
+			m_size -= aEntry.m_size;
+			delete(aEntry.m_file);
+		}
+	}
+
+	private static void delete(final File aFile) {
+		if (!aFile.delete() && aFile.exists()) {
+			logger.debug("Failed to delete cached page " + aFile);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package de.tarent.cumulocity.data;
+
+import java.util.Optional;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+
+import de.tarent.cumulocity.connector.CotRestClient;
+
+/**
+ * settings of the retriever nodes for the use of the {@link PageCache}
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class PageCacheSettings {
+
+	static final String Config_PAGE_CACHE = "PAGE_CACHE";
+	static final String Config_PAGE_CACHE_TTL = "PAGE_CACHE_TTL";
+	static final int MAX_PAGE_CACHE_TTL = 7 * 24 * 60;
+
+	static final String PAGE_CACHE_LABEL = "Cache retrieved pages on disk";
+	static final String PAGE_CACHE_TTL_LABEL = "Max age of cached pages (minutes)";
+
+	private final SettingsModelBoolean m_enabledSettings = createEnabledSettings();
+	private final SettingsModelIntegerBounded m_ttlSettings = createTtlSettings();
+
+	static SettingsModelBoolean createEnabledSettings() {
+		return new SettingsModelBoolean(Config_PAGE_CACHE, false);
+	}
+
+	static SettingsModelIntegerBounded createTtlSettings() {
+		return new SettingsModelIntegerBounded(Config_PAGE_CACHE_TTL, 60, 1, MAX_PAGE_CACHE_TTL);
+	}
+
+	/**
+	 * adds the options of the page cache to the given dialog
+	 */
+	public static void addDialogComponents(final DefaultNodeSettingsPane aPane) {
+		aPane.addDialogComponent(new DialogComponentBoolean(createEnabledSettings(), PAGE_CACHE_LABEL));
+		aPane.addDialogComponent(new DialogComponentNumber(createTtlSettings(), PAGE_CACHE_TTL_LABEL, 10));
+	}
+
+	/**
+	 * @param aImmutable - true if the pages to retrieve cannot change anymore
+	 *                   (they are kept for at least a day, also if the max
+	 *                   age is shorter)
+	 * @return access to the page cache, empty if the cache is not to be used
+	 */
+	public Optional<CachedPages> open(final CotRestClient aClient, final boolean aImmutable) {
+		if (!m_enabledSettings.getBooleanValue()) {
+			return Optional.empty();
+		}
+		return Optional.of(new CachedPages(PageCache.getInstance(), aClient, aImmutable,
+				m_ttlSettings.getIntValue() * 60L * 1000L));
+	}
+
+	public void saveSettingsTo(final NodeSettingsWO aSettings) {
+		m_enabledSettings.saveSettingsTo(aSettings);
+		m_ttlSettings.saveSettingsTo(aSettings);
+	}
+
+	public void loadValidatedSettingsFrom(final NodeSettingsRO aSettings) throws InvalidSettingsException {
+		// not available in workflows created with older versions
+		if (aSettings.containsKey(Config_PAGE_CACHE)) {
+			m_enabledSettings.loadSettingsFrom(aSettings);
+			m_ttlSettings.loadSettingsFrom(aSettings);
+		}
+	}
+
+	public void validateSettings(final NodeSettingsRO aSettings) throws InvalidSettingsException {
+		if (aSettings.containsKey(Config_PAGE_CACHE)) {
+			m_enabledSettings.validateSettings(aSettings);
+			m_ttlSettings.validateSettings(aSettings);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package de.tarent.cumulocity.data;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.knime.core.node.CanceledExecutionException;
+
+import com.telekom.m2m.cot.restsdk.util.CotSdkException;
+
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+
+/**
+ * requests the following pages of a collection in the background while the
+ * current page is being decoded, so that the network is not idle during
+ * decoding and decoding does not wait for the network
+ *
+ * at most "depth" pages are requested ahead, which caps the memory needed
+ * for pages that have been read but not yet decoded; pages after the last page
+ * (if it is known) are only requested when they are asked for, otherwise up to
+ * "depth" (empty) pages are requested in vain at the end of the collection
+ *
+ * the requests of all prefetchers share a bounded pool of threads, pages that
+ * have not been requested yet when a prefetcher is closed (e.g. because a page
+ * that is not full has been decoded) are not requested anymore
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class PagePrefetcher implements AutoCloseable {
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	/**
+	 * maximal number of pages that are requested at the same time by all
+	 * prefetchers, further requests wait for a free thread
+	 */
+	private static final int MAX_THREADS = 16;
+
+	/**
+	 * interval in which the user is asked whether the execution has been
+	 * canceled while waiting for a page
+	 */
+	private static final long CANCEL_CHECK_MS = 200;
+
+	/**
+	 * shared by all prefetchers, idle threads are discarded after a while
+	 */
+	private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60,
+			TimeUnit.SECONDS, new LinkedBlockingQueue<>(), aRunnable -> {
+				final Thread t = new Thread(aRunnable, "Cumulocity-Prefetch-" + THREAD_COUNTER.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+
+	static {
+		EXECUTOR.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * requests a single page
+	 */
+	@FunctionalInterface
+	public interface PageFetcher {
+		/**
+		 * @param aPage - number of the page, starting with 1
+		 * @return the content of the page
+		 */
+		byte[] fetch(int aPage);
+	}
+
+	private final PageFetcher m_fetcher;
+	private final int m_depth;
+	private final int m_lastPage;
+	private final Deque<Future<byte[]>> m_pending = new ArrayDeque<>();
+	private int m_nextPage;
+
+	/**
+	 * @param aFirstPage - number of the first page to return
+	 * @param aDepth     - number of pages that are requested ahead of the page
+	 *                   that is currently being decoded
+	 */
+	public PagePrefetcher(final PageFetcher aFetcher, final int aFirstPage, final int aDepth) {
+		this(aFetcher, aFirstPage, aDepth, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param aLastPage - number of the last page that is requested ahead, e.g.
+	 *                  the total number of pages reported by Cumulocity
+	 */
+	public PagePrefetcher(final PageFetcher aFetcher, final int aFirstPage, final int aDepth,
+			final int aLastPage) {
+		m_fetcher = aFetcher;
+		m_nextPage = aFirstPage;
+		m_depth = aDepth;
+		m_lastPage = aLastPage;
+	}
+
+	/**
+	 * @param aSink - sink of the decoded rows, asked whether the execution has
+	 *              been canceled while waiting
+	 * @return content of the next page (waits until it has been received)
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public byte[] next(final RowSink aSink) throws CanceledExecutionException {
+		// the next page and up to depth pages after it (up to the last page)
+		while (m_pending.isEmpty() || (m_pending.size() <= m_depth && m_nextPage <= m_lastPage)) {
+			final int page = m_nextPage++;
+			// the prefetch threads are shared, the requests count for the node
+			final Callable<byte[]> fetch = () -> m_fetcher.fetch(page);
+			m_pending.add(EXECUTOR.submit(ExecutionMetrics.propagate(fetch)));
+		}
+		final Future<byte[]> page = m_pending.poll();
+		try {
+			while (true) {
+				try {
+					return page.get(CANCEL_CHECK_MS, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					aSink.checkCanceled();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CotSdkException("Interrupted while waiting for the next page", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new CotSdkException("Error in request", e.getCause());
+		}
+	}
+
+	/**
+	 * cancels the requests for pages that are not needed anymore
+	 */
+	@Override
+	public void close() {
+		for (final Future<byte[]> page : m_pending) {
+			page.cancel(true);
+		}
+		m_pending.clear();
+	}
+}
@@ -0,0 +1,98 @@
+package de.tarent.cumulocity.data;
+
+import java.util.Optional;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+
+/**
+ * settings of the retriever nodes for the size of the requested pages
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class PageSizeSettings {
+
+	static final String Config_PAGE_SIZE = "PAGE_SIZE";
+	static final String Config_ADAPTIVE_PAGE_SIZE = "ADAPTIVE_PAGE_SIZE";
+
+	/**
+	 * maximal page size accepted by Cumulocity
+	 */
+	public static final int MAX_PAGE_SIZE = 2000;
+
+	static final String PAGE_SIZE_LABEL = "Page size";
+	static final String ADAPTIVE_PAGE_SIZE_LABEL = "Adapt page size to response times";
+
+	private final SettingsModelIntegerBounded m_pageSizeSettings;
+	private final SettingsModelBoolean m_adaptiveSettings = createAdaptiveSettings();
+
+	/**
+	 * @param aDefaultPageSize - page size of workflows created before the page
+	 *                         size could be configured
+	 */
+	public PageSizeSettings(final int aDefaultPageSize) {
+		m_pageSizeSettings = createPageSizeSettings(aDefaultPageSize);
+	}
+
+	static SettingsModelIntegerBounded createPageSizeSettings(final int aDefault) {
+		return new SettingsModelIntegerBounded(Config_PAGE_SIZE, aDefault, 1, MAX_PAGE_SIZE);
+	}
+
+	static SettingsModelBoolean createAdaptiveSettings() {
+		return new SettingsModelBoolean(Config_ADAPTIVE_PAGE_SIZE, false);
+	}
+
+	/**
+	 * adds the page size options to the given dialog
+	 */
+	public static void addDialogComponents(final DefaultNodeSettingsPane aPane) {
+		aPane.addDialogComponent(
+				new DialogComponentNumber(createPageSizeSettings(MAX_PAGE_SIZE), PAGE_SIZE_LABEL, 100));
+		aPane.addDialogComponent(new DialogComponentBoolean(createAdaptiveSettings(), ADAPTIVE_PAGE_SIZE_LABEL));
+	}
+
+	/**
+	 * @return the configured page size (the initial one in the adaptive mode)
+	 */
+	public int getPageSize() {
+		return m_pageSizeSettings.getIntValue();
+	}
+
+	/**
+	 * @return the page size adaption for one execution, empty if the page size
+	 *         is fixed
+	 */
+	public Optional<AdaptivePageSize> createAdaptivePageSize() {
+		if (!m_adaptiveSettings.getBooleanValue()) {
+			return Optional.empty();
+		}
+		return Optional.of(new AdaptivePageSize(getPageSize()));
+	}
+
+	public void saveSettingsTo(final NodeSettingsWO aSettings) {
+		m_pageSizeSettings.saveSettingsTo(aSettings);
+		m_adaptiveSettings.saveSettingsTo(aSettings);
+	}
+
+	public void loadValidatedSettingsFrom(final NodeSettingsRO aSettings) throws InvalidSettingsException {
+		// not available in workflows created with older versions
+		if (aSettings.containsKey(Config_PAGE_SIZE)) {
+			m_pageSizeSettings.loadSettingsFrom(aSettings);
+			m_adaptiveSettings.loadSettingsFrom(aSettings);
+		}
+	}
+
+	public void validateSettings(final NodeSettingsRO aSettings) throws InvalidSettingsException {
+		if (aSettings.containsKey(Config_PAGE_SIZE)) {
+			m_pageSizeSettings.validateSettings(aSettings);
+			m_adaptiveSettings.validateSettings(aSettings);
+		}
+	}
+}
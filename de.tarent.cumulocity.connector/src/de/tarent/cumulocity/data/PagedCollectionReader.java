@@ -0,0 +1,561 @@
+package de.tarent.cumulocity.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+import org.knime.core.node.CanceledExecutionException;
+
+import com.google.gson.stream.JsonReader;
+import com.telekom.m2m.cot.restsdk.util.CotSdkException;
+
+import de.tarent.cumulocity.connector.CotRestClient;
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+
+/**
+ * reads all pages of a Cumulocity collection (measurements, events, ...) and
+ * streams the elements of the collection into a decoder
+ *
+ * in contrast to the pagination of the rest SDK every page is requested only
+ * once (the SDK fetches every page twice to find out whether there is a next
+ * page), a page that contains fewer elements than requested is the last one
+ *
+ * with a read-ahead depth greater than 0 the following pages (up to the total
+ * number of pages, which is requested with the first page) are requested while
+ * the current page is decoded (see {@link PagePrefetcher}); without
+ * read-ahead and without a {@link PageCache} every page is decoded while it is
+ * received
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class PagedCollectionReader {
+
+	/**
+	 * turns one element of a collection into rows
+	 */
+	@FunctionalInterface
+	public interface ElementDecoder {
+		/**
+		 * must consume exactly one (complete) element from the given reader
+		 *
+		 * @return false if the sink does not want any more rows
+		 */
+		boolean decode(JsonReader aReader, RowSink aSink) throws IOException, CanceledExecutionException;
+	}
+
+	private static final String WITH_TOTAL_PAGES = "withTotalPages=true";
+
+	/**
+	 * the first page of a query, requested together with the total number of
+	 * pages so that the caller can decide how to read the following pages
+	 */
+	public static final class FirstPage {
+		private final byte[] m_content;
+		private final int m_pageSize;
+		private final int m_totalPages;
+		private final int m_nElements;
+
+		private FirstPage(final byte[] aContent, final int aPageSize, final int aTotalPages, final int aNElements) {
+			m_content = aContent;
+			m_pageSize = aPageSize;
+			m_totalPages = aTotalPages;
+			m_nElements = aNElements;
+		}
+
+		/**
+		 * @return total number of pages of the query, 0 if the platform did not
+		 *         report it
+		 */
+		public int getTotalPages() {
+			return m_totalPages;
+		}
+
+		public int getPageSize() {
+			return m_pageSize;
+		}
+
+		public int getNumElements() {
+			return m_nElements;
+		}
+	}
+
+	/**
+	 * thread safe, in contrast to the formatting of the rest SDK
+	 */
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX")
+			.withZone(ZoneOffset.UTC);
+
+	private final CotRestClient m_client;
+	private final String m_relativeUrl;
+	private final String m_collectionName;
+	private final int m_pageSize;
+	private final int m_prefetchDepth;
+	private final Optional<CachedPages> m_cache;
+	private final Optional<AdaptivePageSize> m_adaptivePageSize;
+	/**
+	 * parameters added to every request, may be empty
+	 */
+	private final String m_fixedQuery;
+
+	/**
+	 * @param aRelativeUrl     - url of the collection, e.g.
+	 *                         "measurement/measurements"
+	 * @param aCollectionName  - name of the JSON array in the response that
+	 *                         contains the elements, e.g. "measurements"
+	 * @param aPageSize        - number of elements to request per page
+	 */
+	public PagedCollectionReader(final CotRestClient aClient, final String aRelativeUrl,
+			final String aCollectionName, final int aPageSize) {
+		this(aClient, aRelativeUrl, aCollectionName, aPageSize, 0);
+	}
+
+	/**
+	 * @param aPrefetchDepth - number of pages to request ahead
+	 */
+	public PagedCollectionReader(final CotRestClient aClient, final String aRelativeUrl,
+			final String aCollectionName, final int aPageSize, final int aPrefetchDepth) {
+		this(aClient, aRelativeUrl, aCollectionName, aPageSize, aPrefetchDepth, Optional.empty());
+	}
+
+	/**
+	 * @param aCache - if present, pages are taken from (and added to) the cache
+	 */
+	public PagedCollectionReader(final CotRestClient aClient, final String aRelativeUrl,
+			final String aCollectionName, final int aPageSize, final int aPrefetchDepth,
+			final Optional<CachedPages> aCache) {
+		this(aClient, aRelativeUrl, aCollectionName, aPageSize, aPrefetchDepth, aCache, Optional.empty());
+	}
+
+	/**
+	 * @param aAdaptivePageSize - if present, the page size is adapted to the
+	 *                          responses (the given page size is ignored), after
+	 *                          every page or, when reading ahead, for every call
+	 *                          of {@link #read(String, ElementDecoder, RowSink)};
+	 *                          not used together with a cache, as the cached
+	 *                          pages are only found again with the same size
+	 */
+	public PagedCollectionReader(final CotRestClient aClient, final String aRelativeUrl,
+			final String aCollectionName, final int aPageSize, final int aPrefetchDepth,
+			final Optional<CachedPages> aCache, final Optional<AdaptivePageSize> aAdaptivePageSize) {
+		this(aClient, aRelativeUrl, aCollectionName, aPageSize, aPrefetchDepth, aCache, aAdaptivePageSize, "");
+	}
+
+	private PagedCollectionReader(final CotRestClient aClient, final String aRelativeUrl,
+			final String aCollectionName, final int aPageSize, final int aPrefetchDepth,
+			final Optional<CachedPages> aCache, final Optional<AdaptivePageSize> aAdaptivePageSize,
+			final String aFixedQuery) {
+		m_client = aClient;
+		m_relativeUrl = aRelativeUrl;
+		m_collectionName = aCollectionName;
+		m_pageSize = aPageSize;
+		m_prefetchDepth = aPrefetchDepth;
+		m_cache = aCache;
+		m_adaptivePageSize = aCache.isPresent() ? Optional.empty() : aAdaptivePageSize;
+		m_fixedQuery = aFixedQuery;
+	}
+
+	/**
+	 * @param aQuery - parameters ("key=value&amp;...") that are added to every
+	 *               request, e.g. filters that are the same for all devices
+	 * @return reader with the same settings that adds the given parameters
+	 */
+	public PagedCollectionReader withQuery(final String aQuery) {
+		return new PagedCollectionReader(m_client, m_relativeUrl, m_collectionName, m_pageSize, m_prefetchDepth,
+				m_cache, m_adaptivePageSize, joinQueries(m_fixedQuery, aQuery));
+	}
+
+	/**
+	 * reads all elements matching the given query
+	 *
+	 * @param aQuery - filter parameters ("key=value&amp;..."), may be empty
+	 * @return false if the sink does not want any more rows
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public boolean read(final String aQuery, final ElementDecoder aDecoder, final RowSink aSink)
+			throws CanceledExecutionException {
+		if (m_prefetchDepth > 0 || m_cache.isPresent() || m_adaptivePageSize.isPresent()) {
+			return readBuffered(aQuery, aDecoder, aSink);
+		}
+		int page = 1;
+		while (true) {
+			final PageResult result = m_client.getJson(pageUrl(page, m_pageSize, aQuery),
+					aReader -> readPage(aReader, aDecoder, aSink));
+			if (!result.m_more) {
+				return false;
+			}
+			if (result.m_nElements < m_pageSize) {
+				return true;
+			}
+			page++;
+		}
+	}
+
+	/**
+	 * reads all elements matching the given query, starting with the given
+	 * (already requested) first page; the following pages are requested with
+	 * the page size of the first page
+	 *
+	 * @param aFirstPage - the first page of the given query
+	 * @return false if the sink does not want any more rows
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public boolean read(final FirstPage aFirstPage, final String aQuery, final ElementDecoder aDecoder,
+			final RowSink aSink) throws CanceledExecutionException {
+		return readFrom(aFirstPage, aQuery, m_prefetchDepth, aDecoder, aSink);
+	}
+
+	/**
+	 * requests the first page of the given query together with the total number
+	 * of pages (without decoding it)
+	 *
+	 * @param aQuery - filter parameters ("key=value&amp;..."), may be empty
+	 */
+	public FirstPage fetchFirstPage(final String aQuery) {
+		final int pageSize = m_adaptivePageSize.map(AdaptivePageSize::get).orElse(m_pageSize);
+		final String firstPageQuery = aQuery.isEmpty() ? WITH_TOTAL_PAGES : aQuery + "&" + WITH_TOTAL_PAGES;
+		final byte[] content = fetchPage(1, pageSize, firstPageQuery);
+		try {
+			// only the statistics are read, the elements are skipped
+			final PageResult result = decodePage(content, (aReader, aSink) -> {
+				aReader.skipValue();
+				return true;
+			}, aCells -> true);
+			return new FirstPage(content, pageSize, result.m_totalPages, result.m_nElements);
+		} catch (CanceledExecutionException e) {
+			// the sink does not check for cancellation
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * reads only the elements of the first page matching the given query, e.g.
+	 * to sample the collection
+	 *
+	 * @param aQuery - filter parameters ("key=value&amp;..."), may be empty
+	 * @return false if the sink does not want any more rows
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public boolean readFirstPage(final String aQuery, final ElementDecoder aDecoder, final RowSink aSink)
+			throws CanceledExecutionException {
+		return m_client.getJson(pageUrl(1, m_pageSize, aQuery), aReader -> readPage(aReader, aDecoder, aSink)).m_more;
+	}
+
+	/**
+	 * reads every page completely before it is decoded, which allows to read
+	 * ahead, to cache pages and to measure the responses
+	 */
+	private boolean readBuffered(final String aQuery, final ElementDecoder aDecoder, final RowSink aSink)
+			throws CanceledExecutionException {
+		if (m_prefetchDepth > 0) {
+			return readAhead(aQuery, m_prefetchDepth, aDecoder, aSink);
+		}
+		int pageSize = m_adaptivePageSize.map(AdaptivePageSize::get).orElse(m_pageSize);
+		int page = 1;
+		long offset = 0;
+		while (true) {
+			final PageResult result = decodePage(fetchPage(page, pageSize, aQuery), aDecoder, aSink);
+			if (!result.m_more) {
+				return false;
+			}
+			if (result.m_nElements < pageSize) {
+				return true;
+			}
+			offset += pageSize;
+			if (m_adaptivePageSize.isPresent()) {
+				pageSize = m_adaptivePageSize.get().next(pageSize, offset);
+			}
+			page = (int) (offset / pageSize) + 1;
+		}
+	}
+
+	/**
+	 * reads all elements matching the given query with up to the given number of
+	 * requests at the same time
+	 *
+	 * the first page is requested together with the total number of pages, the
+	 * following pages are then requested concurrently (but at most up to the
+	 * last page) and decoded in page order, so the rows are the same as with
+	 * {@link #read(String, ElementDecoder, RowSink)}; pages that have been added
+	 * in the meantime are read one after the other
+	 *
+	 * the pages are addressed by their number, so the query has to order the
+	 * elements in a stable way (e.g. "$orderby=id" of the inventory query
+	 * language) if the platform does not; even then elements that are created
+	 * or deleted while the pages are requested shift the following pages, so
+	 * an element may be missed or read twice
+	 *
+	 * @param aQuery       - filter parameters ("key=value&amp;..."), may be empty
+	 * @param aParallelism - maximal number of pages requested at the same time
+	 * @return false if the sink does not want any more rows
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public boolean readConcurrently(final String aQuery, final int aParallelism, final ElementDecoder aDecoder,
+			final RowSink aSink) throws CanceledExecutionException {
+		if (aParallelism <= 1) {
+			return read(aQuery, aDecoder, aSink);
+		}
+		return readAhead(aQuery, aParallelism - 1, aDecoder, aSink);
+	}
+
+	/**
+	 * reads the first page together with the total number of pages, the
+	 * following pages are requested up to the given depth ahead of the page that
+	 * is decoded (but not after the last page); see
+	 * {@link #readConcurrently(String, int, ElementDecoder, RowSink)} for the
+	 * order of the elements
+	 */
+	private boolean readAhead(final String aQuery, final int aDepth, final ElementDecoder aDecoder,
+			final RowSink aSink) throws CanceledExecutionException {
+		return readFrom(fetchFirstPage(aQuery), aQuery, aDepth, aDecoder, aSink);
+	}
+
+	/**
+	 * decodes the given first page and reads the following pages (with the page
+	 * size of the first page), up to the given depth ahead
+	 */
+	private boolean readFrom(final FirstPage aFirstPage, final String aQuery, final int aDepth,
+			final ElementDecoder aDecoder, final RowSink aSink) throws CanceledExecutionException {
+		// the page size cannot change while pages are requested ahead
+		final int pageSize = aFirstPage.m_pageSize;
+		final PageResult firstPage = decodePage(aFirstPage.m_content, aDecoder, aSink);
+		if (!firstPage.m_more) {
+			return false;
+		}
+		if (firstPage.m_nElements < pageSize) {
+			return true;
+		}
+		if (aDepth <= 0) {
+			for (int page = 2;; page++) {
+				final PageResult result = decodePage(fetchPage(page, pageSize, aQuery), aDecoder, aSink);
+				if (!result.m_more) {
+					return false;
+				}
+				if (result.m_nElements < pageSize) {
+					return true;
+				}
+			}
+		}
+		// without statistics the pages are requested ahead until one is not full
+		final int lastPage = firstPage.m_totalPages > 0 ? firstPage.m_totalPages : Integer.MAX_VALUE;
+		final PagePrefetcher.PageFetcher fetcher = aPage -> fetchPage(aPage, pageSize, aQuery);
+		try (final PagePrefetcher prefetcher = new PagePrefetcher(fetcher, 2, aDepth, lastPage)) {
+			while (true) {
+				final PageResult result = decodePage(prefetcher.next(aSink), aDecoder, aSink);
+				if (!result.m_more) {
+					return false;
+				}
+				if (result.m_nElements < pageSize) {
+					return true;
+				}
+			}
+		}
+	}
+
+	private PageResult decodePage(final byte[] aContent, final ElementDecoder aDecoder, final RowSink aSink)
+			throws CanceledExecutionException {
+		try (final JsonReader reader = new JsonReader(
+				new InputStreamReader(new ByteArrayInputStream(aContent), StandardCharsets.UTF_8))) {
+			return readPage(reader, aDecoder, aSink);
+		} catch (IOException e) {
+			throw new CotSdkException("Failed to parse response", e);
+		}
+	}
+
+	/**
+	 * the time spent on retries of the request is not recorded for the adaption
+	 * of the page size, it says nothing about the page size
+	 */
+	private byte[] fetchPage(final int aPage, final int aPageSize, final String aQuery) {
+		final long start = System.currentTimeMillis();
+		final long retryStart = CotRestClient.getRetryMillis();
+		final byte[] content = getBytes(pageUrl(aPage, aPageSize, aQuery));
+		if (m_adaptivePageSize.isPresent()) {
+			final long retryMillis = CotRestClient.getRetryMillis() - retryStart;
+			m_adaptivePageSize.get().record(aPageSize, System.currentTimeMillis() - start - retryMillis,
+					content.length);
+		}
+		return content;
+	}
+
+	private byte[] getBytes(final String aRelativeUrl) {
+		if (m_cache.isPresent()) {
+			return m_cache.get().get(aRelativeUrl);
+		}
+		return m_client.getBytes(aRelativeUrl);
+	}
+
+	/**
+	 * asks the platform for the number of elements matching the given query
+	 * (without retrieving them)
+	 *
+	 * @param aQuery - filter parameters ("key=value&amp;..."), may be empty
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public long count(final String aQuery) throws CanceledExecutionException {
+		// with a page size of 1 the number of pages is the number of elements
+		return m_client.getJson(pageUrl(1, 1, aQuery) + "&" + WITH_TOTAL_PAGES, aReader -> {
+			long totalPages = 0;
+			aReader.beginObject();
+			while (aReader.hasNext()) {
+				if ("statistics".equals(aReader.nextName())) {
+					totalPages = readTotalPages(aReader);
+				} else {
+					aReader.skipValue();
+				}
+			}
+			aReader.endObject();
+			return totalPages;
+		});
+	}
+
+	/**
+	 * @return total number of pages in the statistics object of a page, 0 if it
+	 *         has not been requested
+	 */
+	private static int readTotalPages(final JsonReader aReader) throws IOException {
+		int totalPages = 0;
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			if ("totalPages".equals(aReader.nextName())) {
+				totalPages = aReader.nextInt();
+			} else {
+				aReader.skipValue();
+			}
+		}
+		aReader.endObject();
+		return totalPages;
+	}
+
+	/**
+	 * the filters of the rest SDK are not used for the queries, the SDK joins
+	 * their values without encoding them (e.g. the "+" of a date offset or
+	 * blanks in a type)
+	 *
+	 * @return "name=value" with the value URL encoded (and trimmed), empty if the
+	 *         value is empty
+	 */
+	public static String toParameter(final String aName, final String aValue) {
+		final String value = aValue.trim();
+		if (value.isEmpty()) {
+			return "";
+		}
+		try {
+			// spaces are encoded as %20, Cumulocity does not decode "+"
+			return aName + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8.name()).replace("+", "%20");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 not supported", e);
+		}
+	}
+
+	/**
+	 * @param aMillis - epoch millis
+	 * @return "name=date" with the date in the format of Cumulocity (UTC)
+	 */
+	public static String toDateParameter(final String aName, final long aMillis) {
+		return toParameter(aName, DATE_FORMAT.format(Instant.ofEpochMilli(aMillis)));
+	}
+
+	/**
+	 * @return the non-empty queries joined with "&amp;"
+	 */
+	public static String joinQueries(final String... aQueries) {
+		final StringBuilder query = new StringBuilder();
+		for (final String part : aQueries) {
+			if (!part.isEmpty()) {
+				if (query.length() > 0) {
+					query.append('&');
+				}
+				query.append(part);
+			}
+		}
+		return query.toString();
+	}
+
+	private String pageUrl(final int aPage, final int aPageSize, final String aQuery) {
+		final String url = m_relativeUrl + "?currentPage=" + aPage + "&pageSize=" + aPageSize;
+		final String query = joinQueries(aQuery, m_fixedQuery);
+		if (query.isEmpty()) {
+			return url;
+		}
+		return url + "&" + query;
+	}
+
+	/**
+	 * records the time spent decoding the page in the metrics of the execution
+	 * (without the time spent in the sink; in the streaming mode including the
+	 * time waiting for the network)
+	 */
+	private PageResult readPage(final JsonReader aReader, final ElementDecoder aDecoder, final RowSink aSink)
+			throws IOException, CanceledExecutionException {
+		final ExecutionMetrics metrics = ExecutionMetrics.current();
+		if (metrics == null) {
+			return readElements(aReader, aDecoder, aSink);
+		}
+		final long[] sinkNanos = new long[1];
+		final RowSink timedSink = aCells -> {
+			final long start = System.nanoTime();
+			try {
+				return aSink.addRow(aCells);
+			} finally {
+				sinkNanos[0] += System.nanoTime() - start;
+			}
+		};
+		final long start = System.nanoTime();
+		try {
+			return readElements(aReader, aDecoder, timedSink);
+		} finally {
+			metrics.addDecodeTime(System.nanoTime() - start - sinkNanos[0]);
+		}
+	}
+
+	private PageResult readElements(final JsonReader aReader, final ElementDecoder aDecoder, final RowSink aSink)
+			throws IOException, CanceledExecutionException {
+		int nElements = 0;
+		int totalPages = 0;
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			final String name = aReader.nextName();
+			if (m_collectionName.equals(name)) {
+				aReader.beginArray();
+				while (aReader.hasNext()) {
+					nElements++;
+					if (!aDecoder.decode(aReader, aSink)) {
+						// no need to read the remainder of the response
+						return new PageResult(nElements, false, totalPages);
+					}
+				}
+				aReader.endArray();
+			} else if ("statistics".equals(name)) {
+				totalPages = readTotalPages(aReader);
+			} else {
+				// self and next links
+				aReader.skipValue();
+			}
+		}
+		aReader.endObject();
+		return new PageResult(nElements, true, totalPages);
+	}
+
+	private static final class PageResult {
+		private final int m_nElements;
+		private final boolean m_more;
+		/**
+		 * 0 if the total number of pages has not been requested
+		 */
+		private final int m_totalPages;
+
+		private PageResult(final int aNElements, final boolean aMore, final int aTotalPages) {
+			m_nElements = aNElements;
+			m_more = aMore;
+			m_totalPages = aTotalPages;
+		}
+	}
+}
@@ -2,9 +2,11 @@ package de.tarent.cumulocity.data;
 
 import org.knime.core.data.StringValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
 import org.knime.core.node.defaultnodesettings.DialogComponentDate;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
 import org.knime.core.node.util.DataValueColumnFilter;
 
 /**
@@ -15,9 +17,27 @@ public class RetrieveDataNodeDialog extends DefaultNodeSettingsPane {
 	static final String TO_DATE_LABEL = "To Date";
 	static final String FROM_DATE_LABEL = "From Date";
 	static final String MAX_NUM_RECORDS_LABEL = "Max number of records to retrieve";
+	static final String PARALLELISM_LABEL = "Number of parallel requests";
+	static final String PREFETCH_PAGES_LABEL = "Number of pages to read ahead";
+	static final String DEVICE_COLUMNS_LABEL = "Add device name and type";
+	static final String DEVICE_FRAGMENTS_LABEL = "Device fragments as columns (comma separated)";
 
 	public RetrieveDataNodeDialog(final boolean aAddDeviceIdCol, final int aLimitNumRecords, 
 			final boolean aRequireDeviceId) {
+		this(aAddDeviceIdCol, aLimitNumRecords, aRequireDeviceId, false);
+	}
+
+	public RetrieveDataNodeDialog(final boolean aAddDeviceIdCol, final int aLimitNumRecords,
+			final boolean aRequireDeviceId, final boolean aOfferParallelism) {
+		this(aAddDeviceIdCol, aLimitNumRecords, aRequireDeviceId, aOfferParallelism, true);
+	}
+
+	/**
+	 * @param aOfferPaging - show the page size, read-ahead and page cache
+	 *                     options (only nodes that read paged collections)
+	 */
+	public RetrieveDataNodeDialog(final boolean aAddDeviceIdCol, final int aLimitNumRecords,
+			final boolean aRequireDeviceId, final boolean aOfferParallelism, final boolean aOfferPaging) {
 		super();
 
 		if (aAddDeviceIdCol) {
@@ -41,5 +61,26 @@ public class RetrieveDataNodeDialog extends DefaultNodeSettingsPane {
 				RetrieveDataNodeModel.createDateSettings(RetrieveDataNodeModel.Config_From_Date), FROM_DATE_LABEL));
 		addDialogComponent(new DialogComponentDate(
 				RetrieveDataNodeModel.createDateSettings(RetrieveDataNodeModel.Config_To_Date), TO_DATE_LABEL));
+
+		if (aOfferParallelism) {
+			// several devices may be retrieved at once to make better use of the network
+			addDialogComponent(new DialogComponentNumber(RetrieveDataNodeModel.createParallelismSettings(),
+					PARALLELISM_LABEL, 1));
+		}
+		// the device metadata is cached, so the inventory is not read again
+		addDialogComponent(new DialogComponentBoolean(RetrieveDataNodeModel.createDeviceColumnsSettings(),
+				DEVICE_COLUMNS_LABEL));
+		addDialogComponent(new DialogComponentString(RetrieveDataNodeModel.createDeviceFragmentsSettings(),
+				DEVICE_FRAGMENTS_LABEL, false, 30));
+		if (!aOfferPaging) {
+			return;
+		}
+		// fewer round-trips with larger pages, less memory with smaller ones
+		PageSizeSettings.addDialogComponents(this);
+		// the next pages are requested while the current one is processed
+		addDialogComponent(new DialogComponentNumber(RetrieveDataNodeModel.createPrefetchPagesSettings(),
+				PREFETCH_PAGES_LABEL, 1));
+		// pages of repeated requests are taken from the local disk
+		PageCacheSettings.addDialogComponents(this);
 	}
 }
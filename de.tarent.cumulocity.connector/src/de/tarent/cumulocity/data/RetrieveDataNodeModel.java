@@ -3,21 +3,41 @@ package de.tarent.cumulocity.data;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TimeZone;
 
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.container.AbstractCellFactory;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelDate;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelLong;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 import org.knime.core.util.Pair;
@@ -29,7 +49,9 @@ import com.telekom.m2m.cot.restsdk.util.Filter;
 import com.telekom.m2m.cot.restsdk.util.Filter.FilterBuilder;
 
 import de.tarent.cumulocity.connector.CotPlatformProvider;
+import de.tarent.cumulocity.connector.CotRestClient;
 import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.connector.ExecutionMetrics;
 
 /**
  * @author tarent solutions GmbH
@@ -40,8 +62,11 @@ public abstract class RetrieveDataNodeModel extends NodeModel {
 
 	private static final String KEY_DEVICE_ID_COLUMN = "key_device_id_col";
 
-	// private static final NodeLogger logger =
-	// NodeLogger.getLogger(RetrieveDataNodeModel.class);
+	private static final String DEVICE_NAME_COLUMN = "Device Name";
+	private static final String DEVICE_TYPE_COLUMN = "Device Type";
+
+	private static final NodeLogger logger = NodeLogger.getLogger(RetrieveDataNodeModel.class);
+
 	/**
 	 * the settings key which is used to retrieve and store the settings (from the
 	 * dialog or from a settings file) (package visibility to be usable from the
@@ -51,11 +76,23 @@ public abstract class RetrieveDataNodeModel extends NodeModel {
 	static final String Config_To_Date = "To_Date";
 	static final String Config_def_Date = "Def_Date";
 	static final String Config_MAX_NUM_RECORDS = "MAX_NUM_RECORDS";
+	static final String Config_PARALLELISM = "PARALLELISM";
+	static final int MAX_PARALLELISM = 16;
+	static final String Config_PREFETCH_PAGES = "PREFETCH_PAGES";
+	static final int MAX_PREFETCH_PAGES = 8;
+	static final String Config_DEVICE_COLUMNS = "DEVICE_COLUMNS";
+	static final String Config_DEVICE_FRAGMENTS = "DEVICE_FRAGMENTS";
 	private final SettingsModelDate m_fromDateSettings = createDateSettings(Config_From_Date);
 	private final SettingsModelDate m_toDateSettings = createDateSettings(Config_To_Date);
 	protected final SettingsModelLong m_maxNumRecordsSettings = createLongSettings(Config_MAX_NUM_RECORDS, -1);
+	protected final SettingsModelIntegerBounded m_parallelismSettings = createParallelismSettings();
+	protected final SettingsModelIntegerBounded m_prefetchPagesSettings = createPrefetchPagesSettings();
+	private final SettingsModelBoolean m_deviceColumnsSettings = createDeviceColumnsSettings();
+	private final SettingsModelString m_deviceFragmentsSettings = createDeviceFragmentsSettings();
 	
 	private final SettingsModelString m_deviceIdColSettings = createSettingsDeviceIdColumn();
+	private final PageCacheSettings m_pageCacheSettings = new PageCacheSettings();
+	private final PageSizeSettings m_pageSizeSettings;
 
 	private final Date m_earliestDate = new Date(0);
 
@@ -69,13 +106,38 @@ public abstract class RetrieveDataNodeModel extends NodeModel {
 		return new SettingsModelLong(aLabel, aDefault);
 	}
 
+	final static SettingsModelIntegerBounded createParallelismSettings() {
+		return new SettingsModelIntegerBounded(Config_PARALLELISM, 1, 1, MAX_PARALLELISM);
+	}
+
+	final static SettingsModelIntegerBounded createPrefetchPagesSettings() {
+		return new SettingsModelIntegerBounded(Config_PREFETCH_PAGES, 1, 0, MAX_PREFETCH_PAGES);
+	}
+
+	final static SettingsModelBoolean createDeviceColumnsSettings() {
+		return new SettingsModelBoolean(Config_DEVICE_COLUMNS, false);
+	}
+
+	final static SettingsModelString createDeviceFragmentsSettings() {
+		return new SettingsModelString(Config_DEVICE_FRAGMENTS, "");
+	}
+
 	/*
 	 * we have 1 or 2 input ports (connection info and optionally device info) and
 	 * one output port with the measurements/alarms/events
 	 */
 	protected RetrieveDataNodeModel(final PortType[] aInputPorts) {
+		this(aInputPorts, PageSizeSettings.MAX_PAGE_SIZE);
+	}
+
+	/**
+	 * @param aDefaultPageSize - page size of workflows created before the page
+	 *                         size could be configured
+	 */
+	protected RetrieveDataNodeModel(final PortType[] aInputPorts, final int aDefaultPageSize) {
 		super(aInputPorts, new PortType[] { BufferedDataTable.TYPE });
 		m_dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		m_pageSizeSettings = new PageSizeSettings(aDefaultPageSize);
 	}
 
 	protected Pair<Optional<Date>, Optional<Date>> getFromTo() {
@@ -111,6 +173,21 @@ public abstract class RetrieveDataNodeModel extends NodeModel {
 		return maxNum;
 	}
 
+	/**
+	 * @return number of devices for which data is retrieved at the same time
+	 */
+	protected int getParallelism() {
+		return m_parallelismSettings.getIntValue();
+	}
+
+	/**
+	 * @return number of pages that are requested while the current page is
+	 *         processed
+	 */
+	protected int getPrefetchDepth() {
+		return m_prefetchPagesSettings.getIntValue();
+	}
+
 	protected Optional<FilterBuilder> getOptionalDateFilter() {
 		return addOptionalDateFilter(Optional.empty());
 	}
@@ -136,24 +213,205 @@ public abstract class RetrieveDataNodeModel extends NodeModel {
 		}
 	}
 
+	/**
+	 * same restrictions as {@link #addOptionalDateFilter(Optional)}, but with
+	 * URL encoded values
+	 *
+	 * @param aDeviceId - empty for the elements of all devices
+	 * @return query parameters of the device and the selected time range, empty
+	 *         if there are no restrictions
+	 */
+	protected String toQuery(final Optional<String> aDeviceId) {
+		final Pair<Optional<Date>, Optional<Date>> dateRestrictions = getFromTo();
+		if (!dateRestrictions.getFirst().isPresent() && !dateRestrictions.getSecond().isPresent()) {
+			return PagedCollectionReader.toParameter("source", aDeviceId.orElse(""));
+		}
+		return toQuery(aDeviceId, dateRestrictions.getFirst().orElse(m_earliestDate).getTime(),
+				dateRestrictions.getSecond().orElse(new Date(System.currentTimeMillis() + 100000)).getTime());
+	}
+
+	/**
+	 * @param aDeviceId - empty for the elements of all devices
+	 * @return query parameters of the device and the given time range (epoch
+	 *         millis)
+	 */
+	protected static String toQuery(final Optional<String> aDeviceId, final long aFrom, final long aTo) {
+		return PagedCollectionReader.joinQueries(PagedCollectionReader.toParameter("source", aDeviceId.orElse("")),
+				PagedCollectionReader.toDateParameter("dateFrom", aFrom),
+				PagedCollectionReader.toDateParameter("dateTo", aTo));
+	}
+
 	protected MeasurementApi getMeasurementApi(final CumulocityPortObject aCoTPortObject) {
-		return CotPlatformProvider.getCoTPlatform(getCredentialsProvider(), aCoTPortObject.getConfig())
+		return CotPlatformProvider.getConnection(getCredentialsProvider(), aCoTPortObject.getConfig())
 				.getMeasurementApi();
 	}
 
 	protected AlarmApi getAlarmApi(final CumulocityPortObject aCoTPortObject) {
-		return CotPlatformProvider.getCoTPlatform(getCredentialsProvider(), aCoTPortObject.getConfig()).getAlarmApi();
+		return CotPlatformProvider.getConnection(getCredentialsProvider(), aCoTPortObject.getConfig()).getAlarmApi();
 	}
 
 	protected EventApi getEventApi(final CumulocityPortObject aCoTPortObject) {
-		return CotPlatformProvider.getCoTPlatform(getCredentialsProvider(), aCoTPortObject.getConfig()).getEventApi();
+		return CotPlatformProvider.getConnection(getCredentialsProvider(), aCoTPortObject.getConfig()).getEventApi();
+	}
+
+	protected CotRestClient getRestClient(final CumulocityPortObject aCoTPortObject) {
+		return CotPlatformProvider.getCoTRestClient(getCredentialsProvider(), aCoTPortObject.getConfig());
+	}
+
+	/**
+	 * @return number of elements to request per page (the initial one if the
+	 *         page size is adapted)
+	 */
+	protected int getPageSize() {
+		return m_pageSizeSettings.getPageSize();
+	}
+
+	/**
+	 * @return the page size adaption for one execution, empty if the page size
+	 *         is fixed
+	 */
+	protected Optional<AdaptivePageSize> createAdaptivePageSize() {
+		return m_pageSizeSettings.createAdaptivePageSize();
+	}
+
+	/**
+	 * pages of a time range that ended more than
+	 * {@link CachedPages#IMMUTABLE_GRACE_PERIOD} ago are kept for at least a day
+	 * if the retrieved data cannot change once it has been stored
+	 *
+	 * @param aImmutable - true if stored data cannot change
+	 * @return access to the page cache, empty if the cache is not to be used
+	 */
+	protected Optional<CachedPages> openPageCache(final CotRestClient aClient, final boolean aImmutable) {
+		final Optional<Date> to = getFromTo().getSecond();
+		return m_pageCacheSettings.open(aClient,
+				aImmutable && to.isPresent()
+						&& to.get().getTime() < System.currentTimeMillis() - CachedPages.IMMUTABLE_GRACE_PERIOD);
 	}
 
 	protected abstract DataTableSpec outputTableSpec();
 
+	/**
+	 * @return name of the column of the output table with the id of the device
+	 *         the data belongs to
+	 */
+	protected String sourceIdColumn() {
+		return "Source ID";
+	}
+
+	/**
+	 * retrieves the data, the requests and timings are recorded in the
+	 * {@link ExecutionMetrics} of the execution, which are pushed as flow
+	 * variables ("cumulocity_requests", ...) afterwards
+	 */
+	@Override
+	protected final PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
+		final ExecutionMetrics metrics = ExecutionMetrics.start(exec);
+		try {
+			final PortObject[] out = executeRetrieval(inData, exec);
+			if (!m_deviceColumnsSettings.getBooleanValue()) {
+				return out;
+			}
+			return new PortObject[] { addDeviceColumns((BufferedDataTable) out[0],
+					getRestClient((CumulocityPortObject) inData[0]), exec) };
+		} finally {
+			metrics.close();
+			metrics.log(logger);
+			metrics.publish(this::pushFlowVariableInt, this::pushFlowVariableDouble);
+		}
+	}
+
+	/**
+	 * @see #execute(PortObject[], ExecutionContext)
+	 */
+	protected abstract PortObject[] executeRetrieval(final PortObject[] inData, final ExecutionContext exec)
+			throws Exception;
+
+	/**
+	 * adds the name, the type and the selected fragments of the devices, which
+	 * are taken from the {@link DeviceMetadataCache} (only devices that are not
+	 * cached yet are requested from the inventory)
+	 */
+	private BufferedDataTable addDeviceColumns(final BufferedDataTable aTable, final CotRestClient aClient,
+			final ExecutionContext aExec) throws CanceledExecutionException, InvalidSettingsException {
+		final String[] fragments = parseCommaList(m_deviceFragmentsSettings.getStringValue()).toArray(new String[0]);
+		// the columns of a wide table are only known after the retrieval
+		checkDeviceColumnNames(aTable.getDataTableSpec(), fragments);
+		final int sourceIx = aTable.getDataTableSpec().findColumnIndex(sourceIdColumn());
+		final Set<String> ids = new LinkedHashSet<>();
+		try (final CloseableRowIterator rows = aTable.iterator()) {
+			while (rows.hasNext()) {
+				final DataCell source = rows.next().getCell(sourceIx);
+				if (!source.isMissing()) {
+					ids.add(((StringValue) source).getStringValue());
+				}
+			}
+		}
+		final Map<String, DeviceMetadataCache.Device> devices = DeviceMetadataCache.getInstance().get(aClient,
+				ids, fragments);
+
+		final ColumnRearranger rearranger = new ColumnRearranger(aTable.getDataTableSpec());
+		rearranger.append(new AbstractCellFactory(deviceColumnSpecs(fragments)) {
+			@Override
+			public DataCell[] getCells(final DataRow aRow) {
+				final DataCell[] cells = new DataCell[2 + fragments.length];
+				final DataCell source = aRow.getCell(sourceIx);
+				final DeviceMetadataCache.Device device = source.isMissing() ? null
+						: devices.get(((StringValue) source).getStringValue());
+				cells[0] = device == null ? DataType.getMissingCell() : device.getName();
+				cells[1] = device == null ? DataType.getMissingCell() : device.getType();
+				for (int i = 0; i < fragments.length; i++) {
+					cells[2 + i] = device == null ? DataType.getMissingCell() : device.getFragment(fragments[i]);
+				}
+				return cells;
+			}
+		});
+		return aExec.createColumnRearrangeTable(aTable, rearranger, aExec);
+	}
+
+	/**
+	 * the fragment columns are appended to the output, their names must not be
+	 * taken
+	 *
+	 * @param aSpec - spec of the output without the device columns
+	 */
+	private static void checkDeviceColumnNames(final DataTableSpec aSpec, final String[] aFragments)
+			throws InvalidSettingsException {
+		for (final String fragment : aFragments) {
+			if (DEVICE_NAME_COLUMN.equals(fragment) || DEVICE_TYPE_COLUMN.equals(fragment)
+					|| aSpec.findColumnIndex(fragment) >= 0) {
+				throw new InvalidSettingsException(
+						"\"" + fragment + "\" is already a column of the output and cannot be selected as fragment");
+			}
+		}
+	}
+
+	private static DataColumnSpec[] deviceColumnSpecs(final String[] aFragments) {
+		final DataColumnSpec[] columns = new DataColumnSpec[2 + aFragments.length];
+		columns[0] = new DataColumnSpecCreator(DEVICE_NAME_COLUMN, StringCell.TYPE).createSpec();
+		columns[1] = new DataColumnSpecCreator(DEVICE_TYPE_COLUMN, StringCell.TYPE).createSpec();
+		for (int i = 0; i < aFragments.length; i++) {
+			columns[2 + i] = new DataColumnSpecCreator(aFragments[i], StringCell.TYPE).createSpec();
+		}
+		return columns;
+	}
+
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
-		return new PortObjectSpec[] { outputTableSpec() };
+		final DataTableSpec spec = outputTableSpec();
+		if (spec == null || !m_deviceColumnsSettings.getBooleanValue()) {
+			return new PortObjectSpec[] { spec };
+		}
+		final String[] fragments = parseCommaList(m_deviceFragmentsSettings.getStringValue()).toArray(new String[0]);
+		checkDeviceColumnNames(spec, fragments);
+		return new PortObjectSpec[] { new DataTableSpec(spec, new DataTableSpec(deviceColumnSpecs(fragments))) };
+	}
+
+	/**
+	 * @return name of the selected column with the device IDs, if any
+	 */
+	protected Optional<String> getDeviceIdColumn() {
+		return Optional.ofNullable(m_deviceIdColSettings.getStringValue());
 	}
 
 	protected IdIterator retrieveDeviceIDs(final BufferedDataTable inTable) {
@@ -170,6 +428,12 @@ public abstract class RetrieveDataNodeModel extends NodeModel {
 		m_toDateSettings.saveSettingsTo(settings);
 		m_maxNumRecordsSettings.saveSettingsTo(settings);
 		m_deviceIdColSettings.saveSettingsTo(settings);
+		m_parallelismSettings.saveSettingsTo(settings);
+		m_prefetchPagesSettings.saveSettingsTo(settings);
+		m_deviceColumnsSettings.saveSettingsTo(settings);
+		m_deviceFragmentsSettings.saveSettingsTo(settings);
+		m_pageCacheSettings.saveSettingsTo(settings);
+		m_pageSizeSettings.saveSettingsTo(settings);
 	}
 
 	/**
@@ -181,6 +445,22 @@ public abstract class RetrieveDataNodeModel extends NodeModel {
 		m_toDateSettings.loadSettingsFrom(settings);
 		m_maxNumRecordsSettings.loadSettingsFrom(settings);
 		m_deviceIdColSettings.loadSettingsFrom(settings);
+		// not available in workflows created with older versions
+		if (settings.containsKey(Config_PARALLELISM)) {
+			m_parallelismSettings.loadSettingsFrom(settings);
+		}
+		if (settings.containsKey(Config_PREFETCH_PAGES)) {
+			m_prefetchPagesSettings.loadSettingsFrom(settings);
+		} else {
+			// older workflows keep requesting one page after the other
+			m_prefetchPagesSettings.setIntValue(0);
+		}
+		if (settings.containsKey(Config_DEVICE_COLUMNS)) {
+			m_deviceColumnsSettings.loadSettingsFrom(settings);
+			m_deviceFragmentsSettings.loadSettingsFrom(settings);
+		}
+		m_pageCacheSettings.loadValidatedSettingsFrom(settings);
+		m_pageSizeSettings.loadValidatedSettingsFrom(settings);
 	}
 
 	/**
@@ -192,6 +472,18 @@ public abstract class RetrieveDataNodeModel extends NodeModel {
 		m_fromDateSettings.validateSettings(settings);
 		m_toDateSettings.validateSettings(settings);
 		m_maxNumRecordsSettings.validateSettings(settings);
+		if (settings.containsKey(Config_PARALLELISM)) {
+			m_parallelismSettings.validateSettings(settings);
+		}
+		if (settings.containsKey(Config_PREFETCH_PAGES)) {
+			m_prefetchPagesSettings.validateSettings(settings);
+		}
+		if (settings.containsKey(Config_DEVICE_COLUMNS)) {
+			m_deviceColumnsSettings.validateSettings(settings);
+			m_deviceFragmentsSettings.validateSettings(settings);
+		}
+		m_pageCacheSettings.validateSettings(settings);
+		m_pageSizeSettings.validateSettings(settings);
 
 		final SettingsModelDate fromDateSettings = createDateSettings(Config_From_Date);
 		fromDateSettings.loadSettingsFrom(settings);
@@ -230,4 +522,26 @@ public abstract class RetrieveDataNodeModel extends NodeModel {
 	protected static SettingsModelString createSettingsDeviceIdColumn() {
 		return new SettingsModelString(KEY_DEVICE_ID_COLUMN, null);
 	}
+
+	/**
+	 * @param aConfigName - key of a filter that is sent to Cumulocity, empty
+	 *                    means no filter
+	 */
+	public static SettingsModelString createFilterSettings(final String aConfigName) {
+		return new SettingsModelString(aConfigName, "");
+	}
+
+	/**
+	 * @param aList - comma separated names, e.g. of fragments or types
+	 * @return the distinct (trimmed) names in the given order
+	 */
+	public static List<String> parseCommaList(final String aList) {
+		final Set<String> names = new LinkedHashSet<>();
+		for (final String name : aList.split(",")) {
+			if (!name.trim().isEmpty()) {
+				names.add(name.trim());
+			}
+		}
+		return new ArrayList<>(names);
+	}
 }
@@ -0,0 +1,35 @@
+package de.tarent.cumulocity.data;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.node.CanceledExecutionException;
+
+/**
+ * receiver for the cells of the rows created from retrieved Cumulocity data
+ *
+ * implementations decide where the rows end up (directly in the output
+ * container or in a hand-over queue when the data is retrieved concurrently)
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public interface RowSink {
+
+	/**
+	 * adds one row, the given array may be re-used by the caller afterwards
+	 *
+	 * @param aCells - the cells of the new row
+	 * @return false if no more rows are wanted (maximal number of rows reached
+	 *         or retrieval stopped)
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	boolean addRow(DataCell[] aCells) throws CanceledExecutionException;
+
+	/**
+	 * for callers that wait for data without adding rows
+	 *
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	default void checkCanceled() throws CanceledExecutionException {
+		// the workers of a concurrent retrieval are stopped by interruption
+	}
+}
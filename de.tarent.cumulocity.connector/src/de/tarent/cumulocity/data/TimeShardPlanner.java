@@ -0,0 +1,252 @@
+package de.tarent.cumulocity.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+import de.tarent.cumulocity.data.PagedCollectionReader.ElementDecoder;
+import de.tarent.cumulocity.data.PagedCollectionReader.FirstPage;
+
+/**
+ * splits the time range of a query into shards that can be retrieved
+ * concurrently
+ *
+ * a shard that contains too many elements (as reported by the platform) is
+ * split into two halves, recursively, until all shards are small enough or
+ * too short to be split any further; the shards of a query are returned in
+ * time order, so that retrieving them one after the other yields the same
+ * elements as a single query for the whole range (the platform returns the
+ * elements oldest first)
+ *
+ * there is no planning if there are at least as many queries (devices) as
+ * parallel requests, the queries alone keep the requests busy then; otherwise
+ * the first page of every query (which is retrieved anyway) tells whether it
+ * has to be split, only the parts of a split query cost a count request each
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class TimeShardPlanner {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(TimeShardPlanner.class);
+
+	/**
+	 * a part of the time range of a query, the start is inclusive and the end is
+	 * exclusive so that adjacent shards do not overlap
+	 */
+	public static final class TimeShard {
+		private final String m_baseQuery;
+		private final long m_from;
+		private final long m_to;
+		private final boolean m_openEnd;
+		/**
+		 * the first page of a shard that has not been split, it is only decoded
+		 * once
+		 */
+		private Optional<FirstPage> m_firstPage = Optional.empty();
+
+		TimeShard(final String aBaseQuery, final long aFrom, final long aTo, final boolean aOpenEnd) {
+			m_baseQuery = aBaseQuery;
+			m_from = aFrom;
+			m_to = aTo;
+			m_openEnd = aOpenEnd;
+		}
+
+		/**
+		 * reads all elements of the shard (starting with its first page if that
+		 * has been requested by the planning)
+		 *
+		 * @return false if the sink does not want any more rows
+		 * @throws CanceledExecutionException - user interrupted the process
+		 */
+		public boolean read(final PagedCollectionReader aReader, final ElementDecoder aDecoder, final RowSink aSink)
+				throws CanceledExecutionException {
+			final Optional<FirstPage> firstPage = m_firstPage;
+			m_firstPage = Optional.empty();
+			if (firstPage.isPresent()) {
+				return aReader.read(firstPage.get(), toQuery(), aDecoder, aSink);
+			}
+			return aReader.read(toQuery(), aDecoder, aSink);
+		}
+
+		/**
+		 * @return the query parameters of the shard (the base query restricted to
+		 *         the time range of the shard)
+		 */
+		public String toQuery() {
+			return PagedCollectionReader.joinQueries(m_baseQuery,
+					PagedCollectionReader.toDateParameter("dateFrom", m_from),
+					m_openEnd ? "" : PagedCollectionReader.toDateParameter("dateTo", m_to));
+		}
+	}
+
+	private final PagedCollectionReader m_reader;
+	private final int m_parallelism;
+	private final long m_maxElementsPerShard;
+	private final long m_minShardMillis;
+
+	/**
+	 * @param aReader              - used to request the first pages and the
+	 *                             number of elements of the shards
+	 * @param aParallelism         - maximal number of concurrent requests
+	 * @param aMaxElementsPerShard - shards with more elements are split
+	 * @param aMinShardMillis      - shards that are shorter are not split
+	 */
+	public TimeShardPlanner(final PagedCollectionReader aReader, final int aParallelism,
+			final long aMaxElementsPerShard, final long aMinShardMillis) {
+		m_reader = aReader;
+		m_parallelism = aParallelism;
+		m_maxElementsPerShard = aMaxElementsPerShard;
+		m_minShardMillis = aMinShardMillis;
+	}
+
+	/**
+	 * splits the time range [from, aTo) of each of the given queries
+	 *
+	 * @param aBaseQueries - query parameters without date restriction (e.g. the
+	 *                     device filter)
+	 * @param aFroms       - start of the time range of each query
+	 * @param aOpenEnd     - true if the time range is not restricted at its end
+	 *                     (aTo is only used for splitting then)
+	 * @return the time ordered shards for each query (in the order of the
+	 *         queries)
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	public List<List<TimeShard>> plan(final List<String> aBaseQueries, final List<Long> aFroms, final long aTo,
+			final boolean aOpenEnd, final ExecutionContext aExec) throws CanceledExecutionException {
+		if (m_parallelism <= 1 || aBaseQueries.size() >= m_parallelism) {
+			// nothing to gain from splitting
+			final List<List<TimeShard>> shards = new ArrayList<>();
+			for (int i = 0; i < aBaseQueries.size(); i++) {
+				final List<TimeShard> queryShards = new ArrayList<>();
+				if (aOpenEnd || aFroms.get(i) < aTo) {
+					queryShards.add(new TimeShard(aBaseQueries.get(i), aFroms.get(i), aTo, aOpenEnd));
+				}
+				shards.add(queryShards);
+			}
+			return shards;
+		}
+		final ForkJoinPool pool = new ForkJoinPool(m_parallelism);
+		try {
+			final List<ShardTask> tasks = new ArrayList<>();
+			for (int i = 0; i < aBaseQueries.size(); i++) {
+				if (!aOpenEnd && aFroms.get(i) >= aTo) {
+					// empty time range, nothing to retrieve
+					tasks.add(null);
+					continue;
+				}
+				final ShardTask task = new ShardTask(
+						new TimeShard(aBaseQueries.get(i), aFroms.get(i), aTo, aOpenEnd), true, aExec);
+				pool.execute(task);
+				tasks.add(task);
+			}
+			final List<List<TimeShard>> shards = new ArrayList<>();
+			int nShards = 0;
+			for (final ShardTask task : tasks) {
+				final List<TimeShard> queryShards = task == null ? new ArrayList<>() : task.join();
+				nShards += queryShards.size();
+				shards.add(queryShards);
+			}
+			logger.info("Split " + aBaseQueries.size() + " queries into " + nShards + " time shards.");
+			return shards;
+		} catch (CanceledRuntimeException e) {
+			throw e.m_cause;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * checks the size of one shard and splits it if necessary
+	 */
+	private final class ShardTask extends RecursiveTask<List<TimeShard>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final TimeShard m_shard;
+		/**
+		 * the first page of a whole query is requested instead of counting its
+		 * elements, it is kept if the query is not split
+		 */
+		private final boolean m_whole;
+		private final transient ExecutionContext m_exec;
+		/**
+		 * the requests of the (shared) pool threads count for the node
+		 */
+		private final transient ExecutionMetrics m_metrics = ExecutionMetrics.current();
+
+		private ShardTask(final TimeShard aShard, final boolean aWhole, final ExecutionContext aExec) {
+			m_shard = aShard;
+			m_whole = aWhole;
+			m_exec = aExec;
+		}
+
+		@Override
+		protected List<TimeShard> compute() {
+			final ExecutionMetrics previous = ExecutionMetrics.activate(m_metrics);
+			try {
+				return split();
+			} finally {
+				ExecutionMetrics.activate(previous);
+			}
+		}
+
+		private List<TimeShard> split() {
+			final long nElements;
+			Optional<FirstPage> firstPage = Optional.empty();
+			try {
+				m_exec.checkCanceled();
+				if (m_whole) {
+					firstPage = Optional.of(m_reader.fetchFirstPage(m_shard.toQuery()));
+					// without statistics only the elements of the first page are known
+					nElements = (long) firstPage.get().getPageSize() * Math.max(1, firstPage.get().getTotalPages());
+				} else {
+					nElements = m_reader.count(m_shard.toQuery());
+				}
+			} catch (CanceledExecutionException e) {
+				throw new CanceledRuntimeException(e);
+			}
+			final List<TimeShard> result = new ArrayList<>();
+			if (nElements <= m_maxElementsPerShard || m_shard.m_to - m_shard.m_from < 2 * m_minShardMillis) {
+				final boolean empty = firstPage.map(aPage -> aPage.getNumElements() == 0).orElse(nElements == 0);
+				// elements may still be added to the (open) end
+				if (!empty || m_shard.m_openEnd) {
+					m_shard.m_firstPage = firstPage;
+					result.add(m_shard);
+				}
+				return result;
+			}
+			final long middle = m_shard.m_from + (m_shard.m_to - m_shard.m_from) / 2;
+			final ShardTask first = new ShardTask(
+					new TimeShard(m_shard.m_baseQuery, m_shard.m_from, middle, false), false, m_exec);
+			final ShardTask second = new ShardTask(
+					new TimeShard(m_shard.m_baseQuery, middle, m_shard.m_to, m_shard.m_openEnd), false, m_exec);
+			second.fork();
+			result.addAll(first.compute());
+			result.addAll(second.join());
+			return result;
+		}
+	}
+
+	/**
+	 * transports a cancellation out of the fork join pool
+	 */
+	private static final class CanceledRuntimeException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final CanceledExecutionException m_cause;
+
+		private CanceledRuntimeException(final CanceledExecutionException aCause) {
+			super(aCause);
+			m_cause = aCause;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package de.tarent.cumulocity.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.node.KNIMEConstants;
+import org.knime.core.node.NodeLogger;
+
+import com.telekom.m2m.cot.restsdk.util.CotSdkException;
+
+/**
+ * journal of the rows of the input table that a creator node has written
+ * successfully, so that a cancelled or crashed execution can be resumed
+ * without writing the same rows again
+ *
+ * the journal is a file in the KNIME temp directory (per node, user and
+ * platform) with the fingerprints of the written rows (row key and cell
+ * values, see {@link #fingerprint(DataRow)}), so rows that have been added,
+ * removed, re-ordered or changed since the previous execution are recognised;
+ * every fingerprint is written as soon as the platform has acknowledged the
+ * row, a record that has been written only partially (crash) is ignored
+ *
+ * the file is deleted once every row of the input table has been written (or
+ * skipped), only incomplete executions leave a journal behind
+ *
+ * thread safe, one instance is used per node execution
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+public final class WriteJournal implements AutoCloseable {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(WriteJournal.class);
+
+	static final String DIRECTORY_NAME = "cumulocity-journal";
+
+	/**
+	 * version 2: fingerprints of the rows instead of row indices
+	 */
+	private static final int MAGIC = 0x436a6e32;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final File m_file;
+	/**
+	 * number of written rows per fingerprint, identical rows have the same one
+	 */
+	private final Map<Long, Integer> m_written;
+	private final long m_numRows;
+	private long m_nSkipped = 0;
+	private long m_nAcknowledged = 0;
+	private DataOutputStream m_out;
+
+	private WriteJournal(final File aFile, final Map<Long, Integer> aWritten, final long aNumRows,
+			final DataOutputStream aOut) {
+		m_file = aFile;
+		m_written = aWritten;
+		m_numRows = aNumRows;
+		m_out = aOut;
+	}
+
+	/**
+	 * @return directory of the journals of all nodes
+	 */
+	public static File getDirectory() {
+		return new File(KNIMEConstants.getKNIMETempDir(), DIRECTORY_NAME);
+	}
+
+	/**
+	 * @param aJournalId - id of the writing node
+	 * @param aIdentity  - user and platform, see
+	 *                   {@link de.tarent.cumulocity.connector.CotRestClient#getIdentity()}
+	 * @param aNumRows   - number of rows of the input table (the journal is
+	 *                   deleted once as many rows are written or skipped)
+	 * @param aResume    - true to take over the rows of the previous journal,
+	 *                   false to start with an empty journal
+	 */
+	public static WriteJournal open(final String aJournalId, final String aIdentity, final long aNumRows,
+			final boolean aResume) throws IOException {
+		final File file = getFile(aJournalId, aIdentity);
+		final File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Failed to create journal directory " + dir);
+		}
+
+		final Map<Long, Integer> written = new HashMap<>();
+		if (aResume && file.isFile()) {
+			read(file, written);
+		}
+
+		// the journal is re-written with the rows taken over, the previous one is
+		// only replaced once the new one is complete
+		final File tmp = new File(dir, file.getName() + ".tmp");
+		try (final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			for (final Map.Entry<Long, Integer> fingerprint : written.entrySet()) {
+				for (int i = 0; i < fingerprint.getValue(); i++) {
+					out.writeLong(fingerprint.getKey());
+				}
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return new WriteJournal(file, written, aNumRows,
+				new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true))));
+	}
+
+	/**
+	 * @return the journal file of the given node, user and platform
+	 */
+	static File getFile(final String aJournalId, final String aIdentity) {
+		return new File(getDirectory(), fileName(aJournalId, aIdentity) + ".journal");
+	}
+
+	/**
+	 * @return a journal that records nothing (if the journal file cannot be
+	 *         written)
+	 */
+	public static WriteJournal none() {
+		return new WriteJournal(null, new HashMap<>(), 0, null);
+	}
+
+	private static void read(final File aFile, final Map<Long, Integer> aWritten) {
+		try (final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(aFile)))) {
+			if (in.readInt() != MAGIC) {
+				logger.warn("The journal of the previous execution has been written by an older version, "
+						+ "all rows will be written.");
+				return;
+			}
+			while (true) {
+				aWritten.merge(in.readLong(), 1, Integer::sum);
+			}
+		} catch (EOFException e) {
+			// end of the journal (or a partially written record)
+		} catch (IOException e) {
+			logger.warn("Failed to read the journal of the previous execution, all rows will be written: "
+					+ e.getMessage());
+			aWritten.clear();
+		}
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the row key and the string representation of the
+	 * cells, stable across sessions (in contrast to {@link DataCell#hashCode()})
+	 *
+	 * @return fingerprint of the given row for {@link #isWritten(long)} and
+	 *         {@link #acknowledge(long)}
+	 */
+	public static long fingerprint(final DataRow aRow) {
+		long hash = hash(FNV_OFFSET_BASIS, aRow.getKey().getString());
+		for (final DataCell cell : aRow) {
+			// separator, so that ("ab", "c") and ("a", "bc") differ
+			hash = (hash ^ 0xff) * FNV_PRIME;
+			hash = hash(hash, cell.isMissing() ? "" : cell.toString());
+			hash = (hash ^ (cell.isMissing() ? 1 : 0)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	private static long hash(final long aHash, final String aValue) {
+		long hash = aHash;
+		for (final byte b : aValue.getBytes(StandardCharsets.UTF_8)) {
+			hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * every row of the previous execution is skipped once (identical rows as
+	 * often as they have been written), the skipped rows are counted
+	 *
+	 * @return true if the row with the given fingerprint has been written by a
+	 *         previous execution
+	 */
+	public synchronized boolean isWritten(final long aFingerprint) {
+		final Integer count = m_written.get(aFingerprint);
+		if (count == null) {
+			return false;
+		}
+		if (count > 1) {
+			m_written.put(aFingerprint, count - 1);
+		} else {
+			m_written.remove(aFingerprint);
+		}
+		m_nSkipped++;
+		return true;
+	}
+
+	/**
+	 * @return number of rows that have been skipped so far, because they have
+	 *         been written by previous executions
+	 */
+	public synchronized long getNumberSkipped() {
+		return m_nSkipped;
+	}
+
+	/**
+	 * records that the row with the given fingerprint has been written, the
+	 * journal is flushed right away
+	 */
+	public synchronized void acknowledge(final long aFingerprint) {
+		m_nAcknowledged++;
+		if (m_out == null) {
+			return;
+		}
+		try {
+			m_out.writeLong(aFingerprint);
+			m_out.flush();
+		} catch (IOException e) {
+			logger.error("Failed to update the journal " + m_file + ", execution cannot be resumed: "
+					+ e.getMessage());
+			closeFile();
+		}
+	}
+
+	/**
+	 * closes the journal, the file is deleted if every row of the input table
+	 * has been written or skipped (nothing left to resume)
+	 *
+	 * all writes must have been acknowledged (or failed) before
+	 */
+	@Override
+	public synchronized void close() {
+		closeFile();
+		if (m_nSkipped > 0) {
+			logger.info("Skipped " + m_nSkipped + " rows that have been written by the previous execution.");
+		}
+		if (m_file != null && m_nSkipped + m_nAcknowledged >= m_numRows && m_file.isFile()) {
+			if (m_file.delete()) {
+				logger.debug("All rows have been written, deleted the journal " + m_file);
+			} else {
+				logger.warn("Failed to delete the journal " + m_file);
+			}
+		}
+	}
+
+	private void closeFile() {
+		if (m_out == null) {
+			return;
+		}
+		try {
+			m_out.close();
+		} catch (IOException e) {
+			logger.warn("Failed to close the journal " + m_file + ": " + e.getMessage());
+		}
+		m_out = null;
+	}
+
+	private static String fileName(final String aJournalId, final String aIdentity) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(aIdentity.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+			digest.update(aJournalId.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder key = new StringBuilder();
+			for (final byte b : digest.digest()) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM supports SHA-256
+			throw new CotSdkException("Failed to create journal name", e);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package de.tarent.cumulocity.data.alarms;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.telekom.m2m.cot.restsdk.alarm.Alarm;
+
+/**
+ * collapses alarms with the same source, type and status into a single alarm
+ * before they are written
+ *
+ * Cumulocity de-duplicates active alarms by source and type anyway and only
+ * increments the count of the existing alarm, so sending all of them just
+ * costs one request per row; of every group the alarm with the latest time
+ * (and thereby its text and severity) is kept
+ *
+ * the groups are written in the order of their latest time, so that the last
+ * status of an alarm (e.g. CLEARED after ACTIVE) is also written last
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class AlarmAggregator {
+
+	/**
+	 * latest alarm of a group and the fingerprints of the rows folded into it
+	 */
+	static final class Group {
+		private Alarm m_alarm;
+		private final List<Long> m_rows = new ArrayList<>();
+
+		private Group(final Alarm aAlarm) {
+			m_alarm = aAlarm;
+		}
+
+		Alarm getAlarm() {
+			return m_alarm;
+		}
+
+		List<Long> getRows() {
+			return m_rows;
+		}
+
+		long getNumberOfRows() {
+			return m_rows.size();
+		}
+	}
+
+	/**
+	 * groups in the order of their first row
+	 */
+	private final Map<String, Group> m_groups = new LinkedHashMap<>();
+	private long m_nRows = 0;
+
+	/**
+	 * @param aFingerprint - fingerprint of the row of the alarm, see
+	 *                     {@link de.tarent.cumulocity.data.WriteJournal#fingerprint}
+	 */
+	void add(final Alarm aAlarm, final long aFingerprint) {
+		final String key = aAlarm.getSource().getId() + "\n" + aAlarm.getType() + "\n" + aAlarm.getStatus();
+		Group group = m_groups.get(key);
+		if (group == null) {
+			group = new Group(aAlarm);
+			m_groups.put(key, group);
+		} else if (!aAlarm.getTime().before(group.m_alarm.getTime())) {
+			// later rows win on equal times
+			group.m_alarm = aAlarm;
+		}
+		group.m_rows.add(aFingerprint);
+		m_nRows++;
+	}
+
+	/**
+	 * @return the groups in the order of the time of their latest alarm (groups
+	 *         with the same time in the order of their first row)
+	 */
+	List<Group> getGroups() {
+		final List<Group> groups = new ArrayList<>(m_groups.values());
+		groups.sort(Comparator.comparing(aGroup -> aGroup.m_alarm.getTime()));
+		return groups;
+	}
+
+	/**
+	 * @return number of rows that have been added
+	 */
+	long getNumberOfRows() {
+		return m_nRows;
+	}
+}
@@ -0,0 +1,100 @@
+package de.tarent.cumulocity.data.alarms;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.node.CanceledExecutionException;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import de.tarent.cumulocity.data.JsonCells;
+import de.tarent.cumulocity.data.PagedCollectionReader.ElementDecoder;
+import de.tarent.cumulocity.data.RowSink;
+
+/**
+ * decodes alarms directly from the JSON stream into rows, the cells are in the
+ * order of the output table of the alarms retriever
+ *
+ * a decoder re-uses its buffers and must therefore not be shared between
+ * threads
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class AlarmRowDecoder implements ElementDecoder {
+
+	private final DataCell[] m_cells = new DataCell[11];
+
+	@Override
+	public boolean decode(final JsonReader aReader, final RowSink aSink) throws IOException, CanceledExecutionException {
+		Arrays.fill(m_cells, DataType.getMissingCell());
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			switch (aReader.nextName()) {
+			case "id":
+				m_cells[0] = JsonCells.nextStringCell(aReader);
+				break;
+			case "type":
+				m_cells[1] = JsonCells.nextStringCell(aReader);
+				break;
+			case "severity":
+				m_cells[2] = JsonCells.nextStringCell(aReader);
+				break;
+			case "creationTime":
+				m_cells[3] = JsonCells.nextDateCell(aReader);
+				break;
+			case "count":
+				if (aReader.peek() == JsonToken.NUMBER) {
+					m_cells[4] = new IntCell(aReader.nextInt());
+				} else {
+					aReader.skipValue();
+				}
+				break;
+			case "source":
+				readSource(aReader);
+				break;
+			case "text":
+				m_cells[7] = JsonCells.nextStringCell(aReader);
+				break;
+			case "status":
+				m_cells[8] = JsonCells.nextStringCell(aReader);
+				break;
+			case "time":
+				m_cells[9] = JsonCells.nextDateCell(aReader);
+				break;
+			case "firstOccurrenceTime":
+				m_cells[10] = JsonCells.nextDateCell(aReader);
+				break;
+			default:
+				aReader.skipValue();
+			}
+		}
+		aReader.endObject();
+		return aSink.addRow(m_cells);
+	}
+
+	private void readSource(final JsonReader aReader) throws IOException {
+		if (aReader.peek() != JsonToken.BEGIN_OBJECT) {
+			aReader.skipValue();
+			return;
+		}
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			switch (aReader.nextName()) {
+			case "name":
+				m_cells[5] = JsonCells.nextStringCell(aReader);
+				break;
+			case "id":
+				m_cells[6] = JsonCells.nextStringCell(aReader);
+				break;
+			default:
+				aReader.skipValue();
+			}
+		}
+		aReader.endObject();
+	}
+}
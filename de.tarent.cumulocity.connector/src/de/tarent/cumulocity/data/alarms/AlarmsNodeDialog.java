@@ -0,0 +1,37 @@
+package de.tarent.cumulocity.data.alarms;
+
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+
+import de.tarent.cumulocity.data.RetrieveDataNodeDialog;
+
+/**
+ * implementation of the node dialog of the "Alarms" node, adds the status,
+ * severity, type and resolved filters to the common retriever options
+ *
+ * @author tarent solutions GmbH
+ */
+public class AlarmsNodeDialog extends RetrieveDataNodeDialog {
+
+	static final String STATUSES_LABEL = "Statuses (comma separated)";
+	static final String SEVERITIES_LABEL = "Severities (comma separated)";
+	static final String TYPE_LABEL = "Alarm type";
+	static final String RESOLVED_LABEL = "Resolved";
+
+	AlarmsNodeDialog() {
+		super(true, 1000, false, true);
+
+		// every combination of status and severity is requested separately
+		addDialogComponent(new DialogComponentString(
+				AlarmsNodeModel.createFilterSettings(AlarmsNodeModel.Config_ALARM_STATUSES), STATUSES_LABEL, false,
+				30));
+		addDialogComponent(new DialogComponentString(
+				AlarmsNodeModel.createFilterSettings(AlarmsNodeModel.Config_ALARM_SEVERITIES), SEVERITIES_LABEL,
+				false, 30));
+		addDialogComponent(new DialogComponentString(
+				AlarmsNodeModel.createFilterSettings(AlarmsNodeModel.Config_ALARM_TYPE), TYPE_LABEL, false, 30));
+		addDialogComponent(new DialogComponentStringSelection(AlarmsNodeModel.createResolvedSettings(),
+				RESOLVED_LABEL, AlarmsNodeModel.RESOLVED_ALL, AlarmsNodeModel.RESOLVED_FALSE,
+				AlarmsNodeModel.RESOLVED_TRUE));
+	}
+}
@@ -4,8 +4,6 @@ import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.NodeFactory;
 import org.knime.core.node.NodeView;
 
-import de.tarent.cumulocity.data.RetrieveDataNodeDialog;
-
 /**
  * simple implementation of the node factory of the
  * "Alarms" node.
@@ -53,7 +51,7 @@ public class AlarmsNodeFactory
 	 */
 	@Override
 	public NodeDialogPane createNodeDialogPane() {
-		return new RetrieveDataNodeDialog(true, 1000, false);
+		return new AlarmsNodeDialog();
 	}
 
 }
@@ -1,21 +1,17 @@
 package de.tarent.cumulocity.data.alarms;
 
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 
-import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
-import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
-import org.knime.core.data.DataType;
-import org.knime.core.data.RowKey;
 import org.knime.core.data.StringValue;
-import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.IntCell;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.data.time.zoneddatetime.ZonedDateTimeCellFactory;
@@ -25,19 +21,22 @@ import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
-import com.google.gson.internal.LazilyParsedNumber;
-import com.telekom.m2m.cot.restsdk.alarm.Alarm;
-import com.telekom.m2m.cot.restsdk.alarm.AlarmApi;
 import com.telekom.m2m.cot.restsdk.util.CotSdkException;
-import com.telekom.m2m.cot.restsdk.util.ExtensibleObject;
-import com.telekom.m2m.cot.restsdk.util.Filter.FilterBuilder;
 
+import de.tarent.cumulocity.connector.CotRestClient;
 import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.data.CachedPages;
+import de.tarent.cumulocity.data.ConcurrentRetriever;
+import de.tarent.cumulocity.data.ContainerRowSink;
 import de.tarent.cumulocity.data.IdIterator;
+import de.tarent.cumulocity.data.PagedCollectionReader;
 import de.tarent.cumulocity.data.RetrieveDataNodeModel;
 
 /**
@@ -54,14 +53,75 @@ public class AlarmsNodeModel extends RetrieveDataNodeModel {
 	private static final NodeLogger logger = NodeLogger.getLogger(AlarmsNodeModel.class);
 	private static final int IN_PORT_CONNECTION_SETTINGS = 0;
 
+	// default page size
 	private static final int RESULT_SIZE = 100;
 
+	private static final String ALARMS_URL = "alarm/alarms";
+	private static final String ALARMS_COLLECTION = "alarms";
+
+	/**
+	 * maximal number of alarms of a device and status/severity combination that
+	 * wait to be written when retrieving in parallel
+	 */
+	private static final int QUEUE_CAPACITY = 10000;
+
+	/**
+	 * max number of combinations of status and severity that are requested at
+	 * the same time, independent of the number of parallel requests per device
+	 */
+	private static final int MAX_FILTER_REQUESTS = 4;
+
+	static final List<String> STATUSES = Arrays.asList("ACTIVE", "ACKNOWLEDGED", "CLEARED");
+	static final List<String> SEVERITIES = Arrays.asList("CRITICAL", "MAJOR", "MINOR", "WARNING");
+
+	static final String RESOLVED_ALL = "All alarms";
+	static final String RESOLVED_FALSE = "Only unresolved alarms";
+	static final String RESOLVED_TRUE = "Only resolved alarms";
+
+	/**
+	 * the settings keys of the alarm filters, statuses and severities are comma
+	 * separated lists (one request per combination)
+	 */
+	static final String Config_ALARM_STATUSES = "ALARM_STATUSES";
+	static final String Config_ALARM_SEVERITIES = "ALARM_SEVERITIES";
+	static final String Config_ALARM_TYPE = "ALARM_TYPE";
+	static final String Config_ALARM_RESOLVED = "ALARM_RESOLVED";
+
+	private final SettingsModelString m_statusesSettings = createFilterSettings(Config_ALARM_STATUSES);
+	private final SettingsModelString m_severitiesSettings = createFilterSettings(Config_ALARM_SEVERITIES);
+	private final SettingsModelString m_typeSettings = createFilterSettings(Config_ALARM_TYPE);
+	private final SettingsModelString m_resolvedSettings = createResolvedSettings();
+
 	/*
 	 * we have 1 required and one optional input port (connection info + device
 	 * selection) and one output port with the alarms
 	 */
 	protected AlarmsNodeModel() {
-		super(new PortType[] { CumulocityPortObject.TYPE, BufferedDataTable.TYPE_OPTIONAL });
+		super(new PortType[] { CumulocityPortObject.TYPE, BufferedDataTable.TYPE_OPTIONAL }, RESULT_SIZE);
+	}
+
+	static SettingsModelString createResolvedSettings() {
+		return new SettingsModelString(Config_ALARM_RESOLVED, RESOLVED_ALL);
+	}
+
+	/**
+	 * @param aValues  - comma separated values, case is ignored
+	 * @param aAllowed - the values Cumulocity knows
+	 * @return the distinct values in the given order
+	 * @throws InvalidSettingsException - a value is not allowed
+	 */
+	static List<String> parseValues(final String aValues, final List<String> aAllowed)
+			throws InvalidSettingsException {
+		final Set<String> values = new LinkedHashSet<>();
+		for (final String value : parseCommaList(aValues)) {
+			final String upperCase = value.toUpperCase(Locale.ROOT);
+			if (!aAllowed.contains(upperCase)) {
+				throw new InvalidSettingsException(
+						"Unknown value '" + value + "', expected one of " + String.join(", ", aAllowed));
+			}
+			values.add(upperCase);
+		}
+		return new ArrayList<>(values);
 	}
 
 	/**
@@ -98,84 +158,58 @@ public class AlarmsNodeModel extends RetrieveDataNodeModel {
 	 * @throws CanceledExecutionException - user interrupted the process
 	 */
 	@Override
-	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec)
-			throws CanceledExecutionException {
+	protected PortObject[] executeRetrieval(final PortObject[] inData, final ExecutionContext exec)
+			throws CanceledExecutionException, InvalidSettingsException {
+
+		final CotRestClient client = getRestClient((CumulocityPortObject) inData[0]);
+		// the status and count of alarms change, pages of the past are no exception
+		final Optional<CachedPages> cache = openPageCache(client, false);
+		final PagedCollectionReader reader = new PagedCollectionReader(client, ALARMS_URL, ALARMS_COLLECTION,
+				getPageSize(), getPrefetchDepth(), cache, createAdaptivePageSize()).withQuery(filterQuery());
+		final List<PagedCollectionReader> filterReaders = createFilterReaders(reader);
+		// the combinations are few small requests, which are not worth waiting for
+		// one after the other
+		final int parallelism = Math.max(getParallelism(), Math.min(filterReaders.size(), MAX_FILTER_REQUESTS));
 
-		final AlarmApi alarmApi = getAlarmApi((CumulocityPortObject) inData[0]);
-		
 		final long maxNum = getMaxNumItemsToFetch();
 
 		final IdIterator device_ids = retrieveDeviceIDs((BufferedDataTable) inData[IN_PORT_DATA_TABLE]);
 
-		long rowIx = 0;
 		final DataTableSpec outputSpec = outputTableSpec();
 		final BufferedDataContainer container = exec.createDataContainer(outputSpec);
+		final ContainerRowSink sink = new ContainerRowSink(container, exec, 0, maxNum);
 
-		while (rowIx < maxNum && device_ids.hasNext()) {
-			final Optional<FilterBuilder> optionalFilter = addOptionalDateFilter(device_ids.next());
-			final Iterator<Alarm> alarmsIterator;
-			if (optionalFilter.isPresent()) {
-				alarmsIterator = alarmApi.getAlarms(optionalFilter.get(), RESULT_SIZE).stream().iterator();
-			} else {
-				alarmsIterator = alarmApi.getAlarms(RESULT_SIZE).stream().iterator();
-			}
-
-			rowIx = retrieveAlarmsForFilter(container, exec, maxNum, alarmsIterator, rowIx);
-		}
-
-		final BufferedDataTable out = container.getTable();
-		return new BufferedDataTable[] { out };
-	}
-
-	protected long retrieveAlarmsForFilter(final BufferedDataContainer container, 
-			final ExecutionContext exec, final long maxNum,
-			final Iterator<Alarm> alarmsIterator, long rowIx) throws CanceledExecutionException {
-		final DataCell[] cells = new DataCell[11];
 		try {
-			// Create output table specification
-			while (alarmsIterator.hasNext()) {
-				final Alarm alarm = alarmsIterator.next();
-				final Map<String, Object> attributes = alarm.getAttributes();
-				cells[0] = new StringCell(alarm.getId());
-				cells[1] = new StringCell(alarm.getType());
-				cells[2] = new StringCell(alarm.getSeverity());
-				final Date creationtime = alarm.getCreationTime();
-				cells[3] = ZonedDateTimeCellFactory.create(m_dateFormat.format(creationtime));
-				final LazilyParsedNumber count_number = (LazilyParsedNumber) alarm.get("count");
-				if (count_number instanceof LazilyParsedNumber) {
-					cells[4] = new IntCell(count_number.intValue());
-				} else {
-					cells[4] = DataType.getMissingCell();
-				}
-				final Object source = attributes.get("source");
-				if (source != null && source instanceof ExtensibleObject) {
-					String source_name = (String) ((ExtensibleObject) source).get("name");
-					cells[5] = new StringCell(source_name);
-					String source_id = (String) ((ExtensibleObject) source).get("id");
-					cells[6] = new StringCell(source_id);
-				}
-				cells[7] = new StringCell(alarm.getText());
-				cells[8] = new StringCell(alarm.getStatus());
-				final Date time = (Date) attributes.get("time");
-				cells[9] = ZonedDateTimeCellFactory.create(m_dateFormat.format(time));
-				final Date occurance_date = (Date) attributes.get("firstOccurrenceTime");
-				if (occurance_date == null) {
-					cells[10] = DataType.getMissingCell();
-				} else {
-					cells[10] = ZonedDateTimeCellFactory.create(m_dateFormat.format(occurance_date));
+			boolean more = true;
+			if (parallelism > 1) {
+				logger.info("Retrieving alarms with up to " + parallelism + " parallel requests.");
+				// the rows are written in the order of the devices and filters
+				try (final ConcurrentRetriever retriever = new ConcurrentRetriever(parallelism, QUEUE_CAPACITY,
+						true)) {
+					while (device_ids.hasNext()) {
+						device_ids.next();
+						final String query = toQuery(device_ids.getCurrentId());
+						for (final PagedCollectionReader filterReader : filterReaders) {
+							retriever.submit(aSink -> filterReader.read(query, new AlarmRowDecoder(), aSink));
+						}
+					}
+					retriever.drainInto(sink, exec);
 				}
-				final RowKey key = RowKey.createRowKey(rowIx);
-				final DataRow row = new DefaultRow(key, cells);
-				container.addRowToTable(row);
-				rowIx++;
-				if (rowIx >= maxNum) {
-					logger.info("Retrieved maximal number (" + rowIx + ") of alarms to retrieve, will stop.");
-					break;
+				more = sink.getRowIx() < maxNum;
+			} else {
+				while (more && device_ids.hasNext()) {
+					device_ids.next();
+					final String query = toQuery(device_ids.getCurrentId());
+					for (int i = 0; more && i < filterReaders.size(); i++) {
+						more = filterReaders.get(i).read(query, new AlarmRowDecoder(), sink);
+					}
 				}
-				exec.checkCanceled();
+			}
+			if (!more) {
+				logger.info("Retrieved maximal number (" + sink.getRowIx() + ") of alarms to retrieve, will stop.");
 			}
 		} catch (CotSdkException cse) {
-			if (rowIx == 0) {
+			if (sink.getRowIx() == 0) {
 				logger.error("Failed to retrieve any alarms!");
 				throw cse;
 			} else {
@@ -184,9 +218,59 @@ public class AlarmsNodeModel extends RetrieveDataNodeModel {
 			logger.error("Root cause: " + cse.getMessage());
 		} finally {
 			container.close();
-			// not supported alarmsIterator.close();
+			device_ids.close();
+			cache.ifPresent(aCache -> aCache.logStatistics(logger));
 		}
-		return rowIx;
+
+		final BufferedDataTable out = container.getTable();
+		return new BufferedDataTable[] { out };
+	}
+
+	/**
+	 * @return query parameters of the type and resolved filters, empty if there
+	 *         are none
+	 */
+	private String filterQuery() {
+		final String resolved;
+		if (RESOLVED_TRUE.equals(m_resolvedSettings.getStringValue())) {
+			resolved = "resolved=true";
+		} else if (RESOLVED_FALSE.equals(m_resolvedSettings.getStringValue())) {
+			resolved = "resolved=false";
+		} else {
+			resolved = "";
+		}
+		return PagedCollectionReader.joinQueries(
+				PagedCollectionReader.toParameter("type", m_typeSettings.getStringValue()), resolved);
+	}
+
+	/**
+	 * Cumulocity filters by a single status and a single severity, so every
+	 * combination of the selected statuses and severities is requested on its
+	 * own
+	 *
+	 * @return one reader per combination, the given reader if there are no
+	 *         status and severity filters
+	 */
+	private List<PagedCollectionReader> createFilterReaders(final PagedCollectionReader aReader)
+			throws InvalidSettingsException {
+		final List<PagedCollectionReader> statusReaders = new ArrayList<>();
+		for (final String status : parseValues(m_statusesSettings.getStringValue(), STATUSES)) {
+			statusReaders.add(aReader.withQuery(PagedCollectionReader.toParameter("status", status)));
+		}
+		if (statusReaders.isEmpty()) {
+			statusReaders.add(aReader);
+		}
+		final List<String> severities = parseValues(m_severitiesSettings.getStringValue(), SEVERITIES);
+		if (severities.isEmpty()) {
+			return statusReaders;
+		}
+		final List<PagedCollectionReader> readers = new ArrayList<>();
+		for (final PagedCollectionReader statusReader : statusReaders) {
+			for (final String severity : severities) {
+				readers.add(statusReader.withQuery(PagedCollectionReader.toParameter("severity", severity)));
+			}
+		}
+		return readers;
 	}
 
 	protected DataTableSpec outputTableSpec() {
@@ -206,4 +290,43 @@ public class AlarmsNodeModel extends RetrieveDataNodeModel {
 		return outputSpec;
 	}
 
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		super.saveSettingsTo(settings);
+		m_statusesSettings.saveSettingsTo(settings);
+		m_severitiesSettings.saveSettingsTo(settings);
+		m_typeSettings.saveSettingsTo(settings);
+		m_resolvedSettings.saveSettingsTo(settings);
+	}
+
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		super.loadValidatedSettingsFrom(settings);
+		// not available in workflows created with older versions
+		if (settings.containsKey(Config_ALARM_STATUSES)) {
+			m_statusesSettings.loadSettingsFrom(settings);
+			m_severitiesSettings.loadSettingsFrom(settings);
+			m_typeSettings.loadSettingsFrom(settings);
+			m_resolvedSettings.loadSettingsFrom(settings);
+		}
+	}
+
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		super.validateSettings(settings);
+		if (settings.containsKey(Config_ALARM_STATUSES)) {
+			m_statusesSettings.validateSettings(settings);
+			m_severitiesSettings.validateSettings(settings);
+			m_typeSettings.validateSettings(settings);
+			m_resolvedSettings.validateSettings(settings);
+
+			final SettingsModelString statuses = createFilterSettings(Config_ALARM_STATUSES);
+			statuses.loadSettingsFrom(settings);
+			parseValues(statuses.getStringValue(), STATUSES);
+			final SettingsModelString severities = createFilterSettings(Config_ALARM_SEVERITIES);
+			severities.loadSettingsFrom(settings);
+			parseValues(severities.getStringValue(), SEVERITIES);
+		}
+	}
+
 }
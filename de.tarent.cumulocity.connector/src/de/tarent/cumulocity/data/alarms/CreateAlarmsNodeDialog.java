@@ -9,10 +9,12 @@ import org.knime.core.data.time.zoneddatetime.ZonedDateTimeCellFactory;
 import org.knime.core.data.time.zoneddatetime.ZonedDateTimeValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponent;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.util.DataValueColumnFilter;
 
+import de.tarent.cumulocity.data.JournalSettings;
 import de.tarent.cumulocity.data.alarms.CreateAlarmsNodeModel.COLUMN_KEYS;
 
 /**
@@ -47,5 +49,8 @@ public class CreateAlarmsNodeDialog extends DefaultNodeSettingsPane {
 				this.addDialogComponent(col);
 			}
 		}
+		this.addDialogComponent(new DialogComponentBoolean(CreateAlarmsNodeModel.createAggregateSettings(),
+				"Aggregate rows by source, type and status"));
+		JournalSettings.addDialogComponents(this);
 	}
 }
@@ -24,6 +24,7 @@ import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.defaultnodesettings.SettingsModel;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
@@ -34,8 +35,12 @@ import com.telekom.m2m.cot.restsdk.alarm.AlarmApi;
 import com.telekom.m2m.cot.restsdk.inventory.ManagedObject;
 import com.telekom.m2m.cot.restsdk.util.CotSdkException;
 
+import de.tarent.cumulocity.connector.CotConnection;
 import de.tarent.cumulocity.connector.CotPlatformProvider;
 import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+import de.tarent.cumulocity.data.JournalSettings;
+import de.tarent.cumulocity.data.WriteJournal;
 
 /**
  * This is an example implementation of the node model of the "Alarms" node.
@@ -127,7 +132,18 @@ public class CreateAlarmsNodeModel extends NodeModel {
 		}		
 	}
 
+	static final String Config_AGGREGATE = "AGGREGATE";
+
 	private final SettingsModel[] m_inputColSettings = new SettingsModel[COLUMN_KEYS.values().length];
+	private final SettingsModelBoolean m_aggregateSettings = createAggregateSettings();
+	private final JournalSettings m_journalSettings = new JournalSettings();
+
+	/**
+	 * @return collapse the rows by source, type and status before writing
+	 */
+	static SettingsModelBoolean createAggregateSettings() {
+		return new SettingsModelBoolean(Config_AGGREGATE, false);
+	}
 
 	/**
 	 * @return device id column selection
@@ -157,7 +173,8 @@ public class CreateAlarmsNodeModel extends NodeModel {
 	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec)
 			throws CanceledExecutionException {
 
-		final AlarmApi alarmApi = getAlarmApi((CumulocityPortObject) inData[0]);
+		final CotConnection connection = getConnection((CumulocityPortObject) inData[0]);
+		final AlarmApi alarmApi = connection.getAlarmApi();
 
 		final DataTableSpec spec = ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).getSpec();
 		final Map<COLUMN_KEYS, Integer> colIndices = new HashMap<>();
@@ -169,103 +186,54 @@ public class CreateAlarmsNodeModel extends NodeModel {
 			}
 		}
 
+		final long nRows = ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).size();
+		final WriteJournal journal = m_journalSettings.open(connection.getRestClient().getIdentity(), nRows);
+
 		final CloseableRowIterator alarmsIterator = ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).iterator();
 		long ctr = 0;
 		CotSdkException lastException = null;
+		final AlarmAggregator aggregator = m_aggregateSettings.getBooleanValue() ? new AlarmAggregator() : null;
+		final ExecutionMetrics metrics = ExecutionMetrics.start(exec);
 		try {
 			// iterate over input table rows
 			while (alarmsIterator.hasNext()) {
 
 				final DataRow row = alarmsIterator.next();
-				final Alarm alarm = new Alarm();
-
-				{
-					// indicates the device, that sends the alarm.
-					final ManagedObject source = new ManagedObject();
-					// Source / Device ID - required field
-					source.setId(
-							((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_SOURCE_ID))).getStringValue());
-					// Source name - optional
-					if (colIndices.containsKey(COLUMN_KEYS.KEY_SOURCE_NAME)) {
-						final String sourceName = ((StringCell) row
-								.getCell(colIndices.get(COLUMN_KEYS.KEY_SOURCE_NAME))).getStringValue();
-						if (notEmpty(sourceName)) {
-							source.setName(sourceName);
-						}
-					}
-					alarm.setSource(source);
+				final long fingerprint = WriteJournal.fingerprint(row);
+				if (journal.isWritten(fingerprint)) {
+					continue;
 				}
+				final Alarm alarm = createAlarm(row, colIndices);
 
-				// "Alarm ID" is set internally
-
-				// "Alarm Type" - required, note that alarms are aggregated by alarm type and
-				// source id!
-				final String alarmType = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_ALARM_TYPE))).getStringValue();
-				alarm.setType(alarmType);
-
-				// "Description" / "Text" - optional
-				if (colIndices.containsKey(COLUMN_KEYS.KEY_TEXT)) {
-					final String description = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_TEXT)))
-							.getStringValue();
-					if (notEmpty(description)) {
-						alarm.setText(description);
-					}
-				}
-
-				// "Creation Time" - is set internally
-				// "Time" - optional
-				if (colIndices.containsKey(COLUMN_KEYS.KEY_TIME)) {
-					final ZonedDateTime time = ((ZonedDateTimeCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_TIME)))
-							.getZonedDateTime();
-					if (time != null) {
-						alarm.setTime(Date.from(time.toInstant()));
-					} else {
-						alarm.setTime(new Date());
-					}
+				if (aggregator != null) {
+					aggregator.add(alarm, fingerprint);
 				} else {
-					alarm.setTime(new Date());
-				}
-
-				// "First Occurrence Time" - is set internally
-
-				// "Status" - optional
-				// check format of alarm status and map to enum if possible
-				alarm.setStatus(ALARM_STATUS.STATUS_ACTIVE.toString());
-				if (colIndices.containsKey(COLUMN_KEYS.KEY_STATUS)) {
-					final String status = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_STATUS)))
-							.getStringValue();
-					if (notEmpty(status)) {
-						// note that status may be any string, but should be one of:
-						// STATE_ACKNOWLEDGED, STATE_ACTIVE, STATE_CLEARED (apparently without the 'STATE')
-						alarm.setStatus(ALARM_STATUS.toBestMatchingString(status));
+					final CotSdkException cse = writeAlarm(alarmApi, alarm);
+					if (cse == null) {
+						journal.acknowledge(fingerprint);
+						ctr++;
+					} else {
+						lastException = cse;
 					}
 				}
+				exec.checkCanceled();
+			}
 
-				// "Count" - is incremented automatically
-
-				// "Severity" - optional
-				// check format of alarm severity and map to enum if possible
-				alarm.setSeverity(ALARM_SEVERITY.SEVERITY_WARNING.toString());
-				if (colIndices.containsKey(COLUMN_KEYS.KEY_SEVERITY)) {
-					// note that severity may be any string, but should be on of:
-					// SEVERITY_CRITICAL, SEVERITY_MAJOR, SEVERITY_MINOR, SEVERITY_WARNING (apparently without the 'SEVERITY')
-					final String severity = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_SEVERITY)))
-							.getStringValue();
-					if (notEmpty(severity)) {
-						alarm.setSeverity(ALARM_SEVERITY.toBestMatchingString(severity));
+			if (aggregator != null) {
+				logger.info("Folded " + aggregator.getNumberOfRows() + " rows into " + aggregator.getGroups().size()
+						+ " alarms.");
+				for (AlarmAggregator.Group group : aggregator.getGroups()) {
+					final CotSdkException cse = writeAlarm(alarmApi, group.getAlarm());
+					if (cse == null) {
+						for (final Long row : group.getRows()) {
+							journal.acknowledge(row);
+						}
+						ctr += group.getNumberOfRows();
+					} else {
+						lastException = cse;
 					}
+					exec.checkCanceled();
 				}
-
-				try {
-					alarmApi.create(alarm);
-					ctr++;
-				} catch (CotSdkException cse) {
-					logger.error("Failed to write alarm " + alarm + " to Cumulocity!");
-					logger.error("Root cause: " + cse.getMessage());
-					logger.error("Will continue with other alarms...");
-					lastException = cse;
-				}
-				exec.checkCanceled();
 			}
 		} catch (CotSdkException cse) {
 			logger.error("Failed to write (all) alarms to Cumulocity!");
@@ -274,33 +242,137 @@ public class CreateAlarmsNodeModel extends NodeModel {
 			// re-throw
 			throw cse;
 		} finally {
+			metrics.close();
+			metrics.log(logger);
+			metrics.publish(this::pushFlowVariableInt, this::pushFlowVariableDouble);
+			journal.close();
+			final long nToWrite = nRows - journal.getNumberSkipped();
 			if (lastException != null) {
 				if (ctr == 0) {
 					logger.error("Failed to write any alarms to Cumulocity!");
 					logger.error("Root cause: " + lastException.getMessage());
 					logger.error("Please ensure that you have write permissions to the database!");
 				} else {
-					logger.error("Wrote only " + ctr + " of " + ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).size()
-							+ " alarms to Cumulocity.");
+					logger.error("Wrote only " + ctr + " of " + nToWrite + " alarms to Cumulocity.");
 					logger.error("Root cause: " + lastException.getMessage());
 					logger.error(
 							"Please ensure that the device for the given source id (deviced id) exists and that you are permitted to modify them.");
 				}
 			} else {
-				logger.info("Wrote all " + ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).size()
-						+ " alarms to Cumulocity.");
+				logger.info("Wrote all " + nToWrite + " alarms to Cumulocity.");
 			}
 			// not supported alarmsIterator.close();
 		}
 		return new BufferedDataTable[] {};
 	}
 
+	/**
+	 * @return the exception of a failed request, null if the alarm has been
+	 *         written
+	 */
+	private CotSdkException writeAlarm(final AlarmApi aAlarmApi, final Alarm aAlarm) {
+		try {
+			aAlarmApi.create(aAlarm);
+			return null;
+		} catch (CotSdkException cse) {
+			logger.error("Failed to write alarm " + aAlarm + " to Cumulocity!");
+			logger.error("Root cause: " + cse.getMessage());
+			logger.error("Will continue with other alarms...");
+			return cse;
+		}
+	}
+
+	/**
+	 * converts an input row into an alarm
+	 */
+	private Alarm createAlarm(final DataRow row, final Map<COLUMN_KEYS, Integer> colIndices) {
+		final Alarm alarm = new Alarm();
+
+		{
+			// indicates the device, that sends the alarm.
+			final ManagedObject source = new ManagedObject();
+			// Source / Device ID - required field
+			source.setId(
+					((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_SOURCE_ID))).getStringValue());
+			// Source name - optional
+			if (colIndices.containsKey(COLUMN_KEYS.KEY_SOURCE_NAME)) {
+				final String sourceName = ((StringCell) row
+						.getCell(colIndices.get(COLUMN_KEYS.KEY_SOURCE_NAME))).getStringValue();
+				if (notEmpty(sourceName)) {
+					source.setName(sourceName);
+				}
+			}
+			alarm.setSource(source);
+		}
+
+		// "Alarm ID" is set internally
+
+		// "Alarm Type" - required, note that alarms are aggregated by alarm type and
+		// source id!
+		final String alarmType = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_ALARM_TYPE))).getStringValue();
+		alarm.setType(alarmType);
+
+		// "Description" / "Text" - optional
+		if (colIndices.containsKey(COLUMN_KEYS.KEY_TEXT)) {
+			final String description = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_TEXT)))
+					.getStringValue();
+			if (notEmpty(description)) {
+				alarm.setText(description);
+			}
+		}
+
+		// "Creation Time" - is set internally
+		// "Time" - optional
+		if (colIndices.containsKey(COLUMN_KEYS.KEY_TIME)) {
+			final ZonedDateTime time = ((ZonedDateTimeCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_TIME)))
+					.getZonedDateTime();
+			if (time != null) {
+				alarm.setTime(Date.from(time.toInstant()));
+			} else {
+				alarm.setTime(new Date());
+			}
+		} else {
+			alarm.setTime(new Date());
+		}
+
+		// "First Occurrence Time" - is set internally
+
+		// "Status" - optional
+		// check format of alarm status and map to enum if possible
+		alarm.setStatus(ALARM_STATUS.STATUS_ACTIVE.toString());
+		if (colIndices.containsKey(COLUMN_KEYS.KEY_STATUS)) {
+			final String status = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_STATUS)))
+					.getStringValue();
+			if (notEmpty(status)) {
+				// note that status may be any string, but should be one of:
+				// STATE_ACKNOWLEDGED, STATE_ACTIVE, STATE_CLEARED (apparently without the 'STATE')
+				alarm.setStatus(ALARM_STATUS.toBestMatchingString(status));
+			}
+		}
+
+		// "Count" - is incremented automatically
+
+		// "Severity" - optional
+		// check format of alarm severity and map to enum if possible
+		alarm.setSeverity(ALARM_SEVERITY.SEVERITY_WARNING.toString());
+		if (colIndices.containsKey(COLUMN_KEYS.KEY_SEVERITY)) {
+			// note that severity may be any string, but should be on of:
+			// SEVERITY_CRITICAL, SEVERITY_MAJOR, SEVERITY_MINOR, SEVERITY_WARNING (apparently without the 'SEVERITY')
+			final String severity = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_SEVERITY)))
+					.getStringValue();
+			if (notEmpty(severity)) {
+				alarm.setSeverity(ALARM_SEVERITY.toBestMatchingString(severity));
+			}
+		}
+		return alarm;
+	}
+
 	private boolean notEmpty(final String aStr) {
 		return aStr != null && aStr.trim().length() > 0;
 	}
 
-	private AlarmApi getAlarmApi(final CumulocityPortObject aCoTPortObject) {
-		return CotPlatformProvider.getCoTPlatform(getCredentialsProvider(), aCoTPortObject.getConfig()).getAlarmApi();
+	private CotConnection getConnection(final CumulocityPortObject aCoTPortObject) {
+		return CotPlatformProvider.getConnection(getCredentialsProvider(), aCoTPortObject.getConfig());
 	}
 
 	/**
@@ -330,6 +402,8 @@ public class CreateAlarmsNodeModel extends NodeModel {
 		for (COLUMN_KEYS key : COLUMN_KEYS.values()) {
 			m_inputColSettings[key.ordinal()].saveSettingsTo(settings);
 		}
+		m_aggregateSettings.saveSettingsTo(settings);
+		m_journalSettings.saveSettingsTo(settings);
 	}
 
 	/**
@@ -340,6 +414,11 @@ public class CreateAlarmsNodeModel extends NodeModel {
 		for (COLUMN_KEYS key : COLUMN_KEYS.values()) {
 			m_inputColSettings[key.ordinal()].loadSettingsFrom(settings);
 		}
+		// not available in workflows created with older versions
+		if (settings.containsKey(Config_AGGREGATE)) {
+			m_aggregateSettings.loadSettingsFrom(settings);
+		}
+		m_journalSettings.loadValidatedSettingsFrom(settings);
 	}
 
 	/**
@@ -350,6 +429,10 @@ public class CreateAlarmsNodeModel extends NodeModel {
 		for (COLUMN_KEYS key : COLUMN_KEYS.values()) {
 			m_inputColSettings[key.ordinal()].validateSettings(settings);
 		}
+		if (settings.containsKey(Config_AGGREGATE)) {
+			m_aggregateSettings.validateSettings(settings);
+		}
+		m_journalSettings.validateSettings(settings);
 	}
 
 	@Override
@@ -10,9 +10,11 @@ import org.knime.core.data.time.zoneddatetime.ZonedDateTimeValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponent;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.util.DataValueColumnFilter;
 
+import de.tarent.cumulocity.data.JournalSettings;
 import de.tarent.cumulocity.data.events.CreateEventsNodeModel.COLUMN_KEYS;
 
 /**
@@ -47,5 +49,8 @@ public class CreateEventsNodeDialog extends DefaultNodeSettingsPane {
 				this.addDialogComponent(col);
 			}
 		}
+		this.addDialogComponent(new DialogComponentNumber(CreateEventsNodeModel.createMaxInFlightSettings(),
+				"Number of parallel requests", 1));
+		JournalSettings.addDialogComponents(this);
 	}
 }
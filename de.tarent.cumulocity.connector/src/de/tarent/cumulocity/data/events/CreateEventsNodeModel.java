@@ -24,6 +24,7 @@ import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.defaultnodesettings.SettingsModel;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
@@ -34,8 +35,13 @@ import com.telekom.m2m.cot.restsdk.event.EventApi;
 import com.telekom.m2m.cot.restsdk.inventory.ManagedObject;
 import com.telekom.m2m.cot.restsdk.util.CotSdkException;
 
+import de.tarent.cumulocity.connector.CotConnection;
 import de.tarent.cumulocity.connector.CotPlatformProvider;
 import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+import de.tarent.cumulocity.data.ConcurrentWriter;
+import de.tarent.cumulocity.data.JournalSettings;
+import de.tarent.cumulocity.data.WriteJournal;
 
 /**
  * implementation of the node model of the "CreateEvents" node.
@@ -72,7 +78,39 @@ public class CreateEventsNodeModel extends NodeModel {
 		}
 	}
 
+	static final String Config_MAX_IN_FLIGHT = "MAX_IN_FLIGHT";
+	static final int MAX_IN_FLIGHT = 16;
+
+	/**
+	 * an event and the fingerprint of its row (for the journal)
+	 */
+	private static final class RowEvent {
+		private final long m_fingerprint;
+		private final Event m_event;
+
+		private RowEvent(final long aFingerprint, final Event aEvent) {
+			m_fingerprint = aFingerprint;
+			m_event = aEvent;
+		}
+
+		@Override
+		public String toString() {
+			return m_event.toString();
+		}
+	}
+
 	private final SettingsModel[] m_inputColSettings = new SettingsModel[COLUMN_KEYS.values().length];
+	private final SettingsModelIntegerBounded m_maxInFlightSettings = createMaxInFlightSettings();
+	private final JournalSettings m_journalSettings = new JournalSettings();
+
+	/**
+	 * @return number of events that are written at the same time, 1 writes the
+	 *         events one after the other (as in workflows created before this
+	 *         could be configured)
+	 */
+	static SettingsModelIntegerBounded createMaxInFlightSettings() {
+		return new SettingsModelIntegerBounded(Config_MAX_IN_FLIGHT, 1, 1, MAX_IN_FLIGHT);
+	}
 
 	/**
 	 * @return device id column selection
@@ -102,7 +140,8 @@ public class CreateEventsNodeModel extends NodeModel {
 	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec)
 			throws CanceledExecutionException {
 
-		final EventApi eventApi = getEventApi((CumulocityPortObject) inData[0]);
+		final CotConnection connection = getConnection((CumulocityPortObject) inData[0]);
+		final EventApi eventApi = connection.getEventApi();
 
 		final DataTableSpec spec = ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).getSpec();
 		final Map<COLUMN_KEYS, Integer> colIndices = new HashMap<>();
@@ -114,14 +153,30 @@ public class CreateEventsNodeModel extends NodeModel {
 			}
 		}
 
+		final long nRows = ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).size();
+		final WriteJournal journal = m_journalSettings.open(connection.getRestClient().getIdentity(), nRows);
+
 		final CloseableRowIterator eventsIterator = ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).iterator();
-		long ctr = 0;
-		CotSdkException lastException = null;
+		final ConcurrentWriter<RowEvent> writer = new ConcurrentWriter<>(m_maxInFlightSettings.getIntValue(),
+				event -> {
+					eventApi.createEvent(event.m_event);
+					journal.acknowledge(event.m_fingerprint);
+				}, (event, cse) -> {
+					logger.error("Failed to write event " + event + " to Cumulocity!");
+					logger.error("Root cause: " + cse.getMessage());
+					logger.error("Will continue with other events...");
+				});
+		long nSubmitted = 0;
+		final ExecutionMetrics metrics = ExecutionMetrics.start(exec);
 		try {
 			// iterate over input table rows
 			while (eventsIterator.hasNext()) {
 
 				final DataRow row = eventsIterator.next();
+				final long fingerprint = WriteJournal.fingerprint(row);
+				if (journal.isWritten(fingerprint)) {
+					continue;
+				}
 				final Event event = new Event();
 
 				{
@@ -169,49 +224,45 @@ public class CreateEventsNodeModel extends NodeModel {
 					event.setTime(new Date());
 				}
 
-				try {
-					eventApi.createEvent(event);
-					ctr++;
-					if (ctr % 100 == 0) {
-						logger.info("Wrote " + ctr + " events to Cumulocity.");						
-					}
-				} catch (CotSdkException cse) {
-					logger.error("Failed to write event " + event + " to Cumulocity!");
-					logger.error("Root cause: " + cse.getMessage());
-					logger.error("Will continue with other events...");
-					lastException = cse;
+				writer.submit(new RowEvent(fingerprint, event), exec);
+				nSubmitted++;
+				if (nSubmitted % 100 == 0) {
+					logger.info("Wrote " + writer.getNumberWritten() + " events to Cumulocity.");
 				}
 				exec.checkCanceled();
 			}
-		} catch (CotSdkException cse) {
-			logger.error("Failed to write (all) events to Cumulocity!");
-			logger.error("Root cause: " + cse.getMessage());
-			logger.error("Please ensure that you have write permissions to the database!");
-			// re-throw
-			throw cse;
+			writer.awaitCompletion(exec);
 		} finally {
+			// failed requests are reported below, the requests in flight are
+			// awaited before the journal is closed
+			writer.close();
+			journal.close();
+			final long nToWrite = nRows - journal.getNumberSkipped();
+			metrics.close();
+			metrics.log(logger);
+			metrics.publish(this::pushFlowVariableInt, this::pushFlowVariableDouble);
+			final long ctr = writer.getNumberWritten();
+			final CotSdkException lastException = writer.getLastException();
 			if (lastException != null) {
 				if (ctr == 0) {
 					logger.error("Failed to write any events to Cumulocity!");
 					logger.error("Root cause: " + lastException.getMessage());
 					logger.error("Please ensure that you have write permissions to the database!");
 				} else {
-					logger.error("Wrote only " + ctr + " of " + ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).size()
-							+ " events to Cumulocity.");
+					logger.error("Wrote only " + ctr + " of " + nToWrite + " events to Cumulocity.");
 					logger.error("Root cause: " + lastException.getMessage());
 					logger.error(
 							"Please ensure that the device for the given source id (deviced id) exists and that you are permitted to modify them.");
 				}
 			} else {
-				logger.info("Wrote all " + ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).size()
-						+ " events to Cumulocity.");
+				logger.info("Wrote all " + nToWrite + " events to Cumulocity.");
 			}
 		}
 		return new BufferedDataTable[] {};
 	}
 
-	private EventApi getEventApi(final CumulocityPortObject aCoTPortObject) {
-		return CotPlatformProvider.getCoTPlatform(getCredentialsProvider(), aCoTPortObject.getConfig()).getEventApi();
+	private CotConnection getConnection(final CumulocityPortObject aCoTPortObject) {
+		return CotPlatformProvider.getConnection(getCredentialsProvider(), aCoTPortObject.getConfig());
 	}
 
 	private boolean notEmpty(final String aStr) {
@@ -245,6 +296,8 @@ public class CreateEventsNodeModel extends NodeModel {
 		for (COLUMN_KEYS key : COLUMN_KEYS.values()) {
 			m_inputColSettings[key.ordinal()].saveSettingsTo(settings);
 		}
+		m_maxInFlightSettings.saveSettingsTo(settings);
+		m_journalSettings.saveSettingsTo(settings);
 	}
 
 	/**
@@ -255,6 +308,11 @@ public class CreateEventsNodeModel extends NodeModel {
 		for (COLUMN_KEYS key : COLUMN_KEYS.values()) {
 			m_inputColSettings[key.ordinal()].loadSettingsFrom(settings);
 		}
+		// not available in workflows created with older versions
+		if (settings.containsKey(Config_MAX_IN_FLIGHT)) {
+			m_maxInFlightSettings.loadSettingsFrom(settings);
+		}
+		m_journalSettings.loadValidatedSettingsFrom(settings);
 	}
 
 	/**
@@ -265,6 +323,10 @@ public class CreateEventsNodeModel extends NodeModel {
 		for (COLUMN_KEYS key : COLUMN_KEYS.values()) {
 			m_inputColSettings[key.ordinal()].validateSettings(settings);
 		}
+		if (settings.containsKey(Config_MAX_IN_FLIGHT)) {
+			m_maxInFlightSettings.validateSettings(settings);
+		}
+		m_journalSettings.validateSettings(settings);
 	}
 
 	@Override
@@ -0,0 +1,46 @@
+package de.tarent.cumulocity.data.events;
+
+import java.io.IOException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.node.CanceledExecutionException;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import de.tarent.cumulocity.data.MyJsonSerializer;
+import de.tarent.cumulocity.data.PagedCollectionReader.ElementDecoder;
+import de.tarent.cumulocity.data.RowSink;
+
+/**
+ * decodes events into rows, the cells are in the order of the output table of
+ * the events retriever; only the current event is held in memory as json
+ * elements
+ *
+ * a decoder re-uses its buffers and must therefore not be shared between
+ * threads
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class EventRowDecoder implements ElementDecoder {
+
+	private final Gson m_gson = MyJsonSerializer.getInstance();
+
+	private final DataCell[] m_cells = new DataCell[7];
+
+	@Override
+	public boolean decode(final JsonReader aReader, final RowSink aSink) throws IOException, CanceledExecutionException {
+		final IoTEvent event = m_gson.fromJson(aReader, IoTEvent.class);
+
+		m_cells[0] = event.m_sourceId;
+		m_cells[1] = event.m_eventType;
+		m_cells[2] = event.m_creationTime;
+		m_cells[3] = event.m_sourceName;
+		m_cells[4] = event.m_sourceId;
+		m_cells[5] = event.m_time;
+		m_cells[6] = event.m_description;
+
+		return aSink.addRow(m_cells);
+	}
+}
@@ -0,0 +1,29 @@
+package de.tarent.cumulocity.data.events;
+
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+
+import de.tarent.cumulocity.data.RetrieveDataNodeDialog;
+
+/**
+ * implementation of the node dialog of the "Events" node, adds the type and
+ * fragment filters to the common retriever options
+ *
+ * @author tarent solutions GmbH
+ */
+public class EventsNodeDialog extends RetrieveDataNodeDialog {
+
+	static final String EVENT_TYPES_LABEL = "Event types (comma separated)";
+	static final String FRAGMENT_TYPE_LABEL = "Fragment type";
+
+	EventsNodeDialog() {
+		super(true, 100, false, true);
+
+		// every type is requested separately
+		addDialogComponent(new DialogComponentString(
+				EventsNodeModel.createFilterSettings(EventsNodeModel.Config_EVENT_TYPES), EVENT_TYPES_LABEL, false,
+				30));
+		addDialogComponent(new DialogComponentString(
+				EventsNodeModel.createFilterSettings(EventsNodeModel.Config_EVENT_FRAGMENT_TYPE), FRAGMENT_TYPE_LABEL,
+				false, 30));
+	}
+}
@@ -4,8 +4,6 @@ import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.NodeFactory;
 import org.knime.core.node.NodeView;
 
-import de.tarent.cumulocity.data.RetrieveDataNodeDialog;
-
 /**
  * simple implementation of the node factory of the
  * Cumulocity "Events" node.
@@ -55,7 +53,7 @@ public class EventsNodeFactory
 	 */
 	@Override
 	public NodeDialogPane createNodeDialogPane() {
-		return new RetrieveDataNodeDialog(true, 100, false);
+		return new EventsNodeDialog();
 	}
 
 }
@@ -4,14 +4,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
-import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
-import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
-import org.knime.core.data.RowKey;
 import org.knime.core.data.StringValue;
-import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.data.time.zoneddatetime.ZonedDateTimeCellFactory;
 import org.knime.core.node.BufferedDataContainer;
@@ -20,21 +16,24 @@ import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.telekom.m2m.cot.restsdk.event.EventApi;
-import com.telekom.m2m.cot.restsdk.event.EventCollection;
 import com.telekom.m2m.cot.restsdk.util.CotSdkException;
-import com.telekom.m2m.cot.restsdk.util.Filter.FilterBuilder;
 
+import de.tarent.cumulocity.connector.CotRestClient;
 import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.data.CachedPages;
+import de.tarent.cumulocity.data.ConcurrentRetriever;
+import de.tarent.cumulocity.data.ContainerRowSink;
 import de.tarent.cumulocity.data.IdIterator;
-import de.tarent.cumulocity.data.MyJsonSerializer;
+import de.tarent.cumulocity.data.PagedCollectionReader;
 import de.tarent.cumulocity.data.RetrieveDataNodeModel;
+import de.tarent.cumulocity.data.RowSink;
 
 /**
  * implementation of the node model of the "Events" node.
@@ -49,12 +48,33 @@ public class EventsNodeModel extends RetrieveDataNodeModel {
 	private static final NodeLogger logger = NodeLogger.getLogger(EventsNodeModel.class);
 	private static final int IN_PORT_CONNECTION_SETTINGS = 0;
 
+	private static final String EVENTS_URL = "event/events";
+	private static final String EVENTS_COLLECTION = "events";
+	// default page size
+	private static final int PAGE_SIZE = 2000;
+
+	/**
+	 * maximal number of events of a device and type that wait to be written
+	 * when retrieving in parallel
+	 */
+	private static final int QUEUE_CAPACITY = 10000;
+
+	/**
+	 * the settings keys of the event filters, the types are a comma separated
+	 * list (one request per type)
+	 */
+	static final String Config_EVENT_TYPES = "EVENT_TYPES";
+	static final String Config_EVENT_FRAGMENT_TYPE = "EVENT_FRAGMENT_TYPE";
+
+	private final SettingsModelString m_typesSettings = createFilterSettings(Config_EVENT_TYPES);
+	private final SettingsModelString m_fragmentTypeSettings = createFilterSettings(Config_EVENT_FRAGMENT_TYPE);
+
 	/*
 	 * we have 1 required and one optional input port (connection info + device
 	 * selection) and one output port with the events
 	 */
 	protected EventsNodeModel() {
-		super(new PortType[] { CumulocityPortObject.TYPE, BufferedDataTable.TYPE_OPTIONAL });
+		super(new PortType[] { CumulocityPortObject.TYPE, BufferedDataTable.TYPE_OPTIONAL }, PAGE_SIZE);
 	}
 
 	/**
@@ -91,190 +111,90 @@ public class EventsNodeModel extends RetrieveDataNodeModel {
 	 * @throws CanceledExecutionException
 	 */
 	@Override
-	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec)
+	protected PortObject[] executeRetrieval(final PortObject[] inData, final ExecutionContext exec)
 			throws CanceledExecutionException {
 		final long maxNum = getMaxNumItemsToFetch();
-		final EventApi eventApi = getEventApi((CumulocityPortObject) inData[0]);
-
-		final IdIterator device_ids = retrieveDeviceIDs((BufferedDataTable) inData[IN_PORT_DATA_TABLE]);
-
-		final DataTableSpec outputSpec = outputTableSpec();
-		final BufferedDataContainer container = exec.createDataContainer(outputSpec);
-
-		long rowIx = 0;
-		while (rowIx < maxNum && device_ids.hasNext()) {
-			final Optional<FilterBuilder> optionalFilter = addOptionalDateFilter(device_ids.next());
-			final EventCollection ec;
-			if (optionalFilter.isPresent()) {
-				ec = eventApi.getEvents(optionalFilter.get());
-			} else {
-				ec = eventApi.getEvents();
-			}
-			ec.setPageSize(2000);
-			// final Iterator<Event> eventsIterator = ec.stream().iterator();
-
-			rowIx = retrieveEventsForFilter(exec, rowIx, maxNum, ec, container);
+		final CotRestClient client = getRestClient((CumulocityPortObject) inData[0]);
+		// the text and custom fragments of events may be updated
+		final Optional<CachedPages> cache = openPageCache(client, false);
+		final PagedCollectionReader reader = new PagedCollectionReader(client, EVENTS_URL, EVENTS_COLLECTION,
+				getPageSize(), getPrefetchDepth(), cache, createAdaptivePageSize())
+						.withQuery(PagedCollectionReader.toParameter("fragmentType",
+								m_fragmentTypeSettings.getStringValue()));
+		// Cumulocity filters by a single type, several types are requested one
+		// after the other (or in parallel) and merged
+		final List<PagedCollectionReader> typeReaders = new ArrayList<>();
+		for (final String type : parseCommaList(m_typesSettings.getStringValue())) {
+			typeReaders.add(reader.withQuery(PagedCollectionReader.toParameter("type", type)));
 		}
-		return new BufferedDataTable[] { container.getTable() };
-	}
-
-	protected long retrieveEventsForFilter(final ExecutionContext exec, long rowIx, final long maxNum,
-			final EventCollection eventsCollection, final BufferedDataContainer container)
-			throws CanceledExecutionException {
-
-		final DataCell[] cells = new DataCell[7];
-		boolean done = false;
-		try {
-			final Gson gson = MyJsonSerializer.getInstance();
-			while (!done) {
-
-				final JsonArray events = eventsCollection.getJsonArray();
-				logger.info("Retrieved " + events.size() + " events as json elements");
-				for (int i = 0; i < events.size() && rowIx < maxNum; i++) {
-					IoTEvent event = gson.fromJson(events.get(i), IoTEvent.class);
-
-					cells[0] = event.m_sourceId;
-					cells[1] = event.m_eventType;
-					cells[2] = event.m_creationTime;
-					cells[3] = event.m_sourceName;
-					cells[4] = event.m_sourceId;
-					cells[5] = event.m_time;
-					cells[6] = event.m_description;
-
-					final RowKey key = RowKey.createRowKey(rowIx);
-					final DataRow row = new DefaultRow(key, cells);
-					container.addRowToTable(row);
-					rowIx++;
-				}
-				if (rowIx >= maxNum) {
-					logger.info("Retrieved maximal number (" + rowIx + ") of events to retrieve, will stop.");
-					done = true;
-				} else {
-					exec.checkCanceled();
-					if (rowIx % 1000 == 0)
-						logger.info("... processed " + rowIx + " events");
-					if (eventsCollection.hasNext()) {
-						eventsCollection.next();
-					} else {
-						done = true;
-					}
-				}
-			}
-		} catch (CotSdkException cse) {
-			if (rowIx == 0) {
-				logger.error("Failed to retrieve any events!");
-				throw cse;
-			} else {
-				logger.error("Retrieved only " + rowIx + " events, but there might be more!");
-			}
-			logger.error("Root cause: " + cse.getMessage());
-		} finally {
-			container.close();
-			logger.info("Retrieved " + rowIx + " events.");
+		if (typeReaders.isEmpty()) {
+			typeReaders.add(reader);
 		}
-
-		return rowIx;
-	}
-
-	/*- too slow
-	protected PortObject[] _execute(final PortObject[] inData, final ExecutionContext exec)
-			throws CanceledExecutionException {
-		final long maxNum = getMaxNumItemsToFetch();
-		final EventApi eventApi = getEventApi((CumulocityPortObject) inData[0]);
+		final int parallelism = getParallelism();
 
 		final IdIterator device_ids = retrieveDeviceIDs((BufferedDataTable) inData[IN_PORT_DATA_TABLE]);
 
 		final DataTableSpec outputSpec = outputTableSpec();
 		final BufferedDataContainer container = exec.createDataContainer(outputSpec);
+		final ContainerRowSink sink = new ContainerRowSink(container, exec, 0, maxNum);
 
-		long rowIx = 0;
-		while (rowIx < maxNum && device_ids.hasNext()) {
-			final Optional<FilterBuilder> optionalFilter = addOptionalDateFilter(device_ids.next());
-			final Iterator<Event> eventsIterator;
-			if (optionalFilter.isPresent()) {
-				eventsIterator = eventApi.getEvents(optionalFilter.get()).stream().iterator();
-			} else {
-				eventsIterator = eventApi.getEvents().stream().iterator();
-			}
-
-			rowIx = retrieveEventsForFilter(exec, rowIx, maxNum, eventsIterator, container);
-		}
-		return new BufferedDataTable[] { container.getTable() };
-	}
-
-	protected long retrieveEventsForFilter(final ExecutionContext exec, long rowIx, final long maxNum,
-			final Iterator<Event> eventsIterator, final BufferedDataContainer container)
-			throws CanceledExecutionException {
-
-		final DataCell[] cells = new DataCell[7];
-		logger.error("Starting event iterator");
-		long d1 = 0;
-		long d2 = 0;
-		long start1 = System.currentTimeMillis();
 		try {
-			while (eventsIterator.hasNext()) {
-
-				long start = System.currentTimeMillis();
-				final Event event = eventsIterator.next();
-				final Map<String, Object> attributes = event.getAttributes();
-				long t1 = System.currentTimeMillis();
-				d1 += t1 - start;
-
-				cells[0] = new StringCell(event.getId());
-				cells[1] = new StringCell(event.getType());
-				final Date creationtime = event.getCreationTime();
-				cells[2] = ZonedDateTimeCellFactory.create(m_dateFormat.format(creationtime));
-				final Object source = attributes.get("source");
-				if (source != null && source instanceof ExtensibleObject) {
-					final ExtensibleObject s = (ExtensibleObject) source;
-					if (s.has(ATTRIBUTE_NAME)) {
-						cells[3] = new StringCell(s.get(ATTRIBUTE_NAME).toString());
-					} else {
-						cells[3] = DataType.getMissingCell();
+			boolean more = true;
+			if (parallelism > 1) {
+				logger.info("Retrieving events with up to " + parallelism + " parallel requests.");
+				// the rows are written in the order of the devices and types
+				try (final ConcurrentRetriever retriever = new ConcurrentRetriever(parallelism, QUEUE_CAPACITY,
+						true)) {
+					while (device_ids.hasNext()) {
+						device_ids.next();
+						final String query = toQuery(device_ids.getCurrentId());
+						for (final PagedCollectionReader typeReader : typeReaders) {
+							retriever.submit(aSink -> retrieveEventsForFilter(typeReader, query, aSink));
+						}
 					}
-					cells[4] = new StringCell(s.get("id").toString());
-				}
-				final Date time = (Date) attributes.get("time");
-				if (time != null) {
-					cells[5] = ZonedDateTimeCellFactory.create(m_dateFormat.format(time));
-				} else {
-					cells[5] = DataType.getMissingCell();
+					retriever.drainInto(sink, exec);
 				}
-				cells[6] = new StringCell(event.getText());
-
-				final RowKey key = RowKey.createRowKey(rowIx);
-				final DataRow row = new DefaultRow(key, cells);
-				container.addRowToTable(row);
-
-				rowIx++;
-				if (rowIx >= maxNum) {
-					logger.info("Retrieved maximal number (" + rowIx + ") of events to retrieve, will stop.");
-					break;
+				more = sink.getRowIx() < maxNum;
+			} else {
+				while (more && device_ids.hasNext()) {
+					device_ids.next();
+					final String query = toQuery(device_ids.getCurrentId());
+					for (int i = 0; more && i < typeReaders.size(); i++) {
+						more = retrieveEventsForFilter(typeReaders.get(i), query, sink);
+					}
 				}
-				exec.checkCanceled();
-				d2 += System.currentTimeMillis() - t1;
-				if (rowIx % 100 == 0)
-					logger.error("processed first " + rowIx + " events");
+			}
+			if (!more) {
+				logger.info("Retrieved maximal number (" + sink.getRowIx() + ") of events to retrieve, will stop.");
 			}
 		} catch (CotSdkException cse) {
-			if (rowIx == 0) {
+			if (sink.getRowIx() == 0) {
 				logger.error("Failed to retrieve any events!");
 				throw cse;
 			} else {
-				logger.error("Retrieved only " + rowIx + " events, but there might be more!");
+				logger.error("Retrieved only " + sink.getRowIx() + " events, but there might be more!");
 			}
 			logger.error("Root cause: " + cse.getMessage());
 		} finally {
 			container.close();
-			logger.info("Retrieved " + rowIx + " events.");
+			device_ids.close();
+			logger.info("Retrieved " + sink.getRowIx() + " events.");
+			cache.ifPresent(aCache -> aCache.logStatistics(logger));
 		}
+		return new BufferedDataTable[] { container.getTable() };
+	}
 
-		logger.error("Total time : " + (System.currentTimeMillis() - start1));
-		logger.error("Total iterator time for " + rowIx + " events: " + d1);
-		logger.error("Total processing time for " + rowIx + " events: " + d2);
-		return rowIx;
+	/**
+	 * the next page is requested while the current page is converted into cells
+	 * (depending on the read-ahead setting)
+	 *
+	 * @return false if no more events are wanted
+	 */
+	protected boolean retrieveEventsForFilter(final PagedCollectionReader aReader, final String aQuery,
+			final RowSink aSink) throws CanceledExecutionException {
+		return aReader.read(aQuery, new EventRowDecoder(), aSink);
 	}
-*/
+
 	
 	protected DataTableSpec outputTableSpec() {
 		final List<DataColumnSpec> columns = new ArrayList<>();
@@ -288,4 +208,30 @@ public class EventsNodeModel extends RetrieveDataNodeModel {
 		final DataTableSpec outputSpec = new DataTableSpec(columns.toArray(new DataColumnSpec[0]));
 		return outputSpec;
 	}
+
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		super.saveSettingsTo(settings);
+		m_typesSettings.saveSettingsTo(settings);
+		m_fragmentTypeSettings.saveSettingsTo(settings);
+	}
+
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		super.loadValidatedSettingsFrom(settings);
+		// not available in workflows created with older versions
+		if (settings.containsKey(Config_EVENT_TYPES)) {
+			m_typesSettings.loadSettingsFrom(settings);
+			m_fragmentTypeSettings.loadSettingsFrom(settings);
+		}
+	}
+
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		super.validateSettings(settings);
+		if (settings.containsKey(Config_EVENT_TYPES)) {
+			m_typesSettings.validateSettings(settings);
+			m_fragmentTypeSettings.validateSettings(settings);
+		}
+	}
 }
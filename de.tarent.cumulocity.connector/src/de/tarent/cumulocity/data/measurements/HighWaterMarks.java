@@ -0,0 +1,129 @@
+package de.tarent.cumulocity.data.measurements;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContentRO;
+import org.knime.core.node.ModelContentWO;
+
+/**
+ * the time of the latest measurement retrieved per device
+ *
+ * the times are stored with the precision of the output table (seconds),
+ * together with the ids of the measurements of that second, so that a
+ * subsequent retrieval can start at that second and skip the measurements
+ * that have already been retrieved
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class HighWaterMarks {
+
+	private static final String CFG_DEVICES = "devices";
+	private static final String CFG_TIMES = "times";
+	private static final String CFG_IDS = "ids_";
+
+	private static final class Mark {
+		private final long m_time;
+		private final Set<String> m_ids = new HashSet<>();
+
+		private Mark(final long aTime) {
+			m_time = aTime;
+		}
+	}
+
+	private final Map<String, Mark> m_marks = new HashMap<>();
+
+	HighWaterMarks() {
+		// empty
+	}
+
+	/**
+	 * copy constructor
+	 */
+	HighWaterMarks(final HighWaterMarks aMarks) {
+		set(aMarks);
+	}
+
+	/**
+	 * replaces all marks by (copies of) the given ones
+	 */
+	void set(final HighWaterMarks aMarks) {
+		m_marks.clear();
+		for (final Entry<String, Mark> entry : aMarks.m_marks.entrySet()) {
+			final Mark mark = new Mark(entry.getValue().m_time);
+			mark.m_ids.addAll(entry.getValue().m_ids);
+			m_marks.put(entry.getKey(), mark);
+		}
+	}
+
+	/**
+	 * @return time (epoch millis) of the latest measurement of the device, if
+	 *         any
+	 */
+	Optional<Long> getTime(final String aDeviceId) {
+		final Mark mark = m_marks.get(aDeviceId);
+		if (mark == null) {
+			return Optional.empty();
+		}
+		return Optional.of(mark.m_time);
+	}
+
+	/**
+	 * @return true if the given measurement is (one of) the latest measurement(s)
+	 *         of the device
+	 */
+	boolean contains(final String aDeviceId, final long aTime, final String aMeasurementId) {
+		final Mark mark = m_marks.get(aDeviceId);
+		return mark != null && mark.m_time == aTime && mark.m_ids.contains(aMeasurementId);
+	}
+
+	void update(final String aDeviceId, final long aTime, final String aMeasurementId) {
+		Mark mark = m_marks.get(aDeviceId);
+		if (mark == null || mark.m_time < aTime) {
+			mark = new Mark(aTime);
+			m_marks.put(aDeviceId, mark);
+		}
+		if (mark.m_time == aTime) {
+			mark.m_ids.add(aMeasurementId);
+		}
+	}
+
+	boolean isEmpty() {
+		return m_marks.isEmpty();
+	}
+
+	void clear() {
+		m_marks.clear();
+	}
+
+	void saveTo(final ModelContentWO aContent) {
+		final String[] devices = m_marks.keySet().toArray(new String[0]);
+		final long[] times = new long[devices.length];
+		for (int i = 0; i < devices.length; i++) {
+			final Mark mark = m_marks.get(devices[i]);
+			times[i] = mark.m_time;
+			aContent.addStringArray(CFG_IDS + i, mark.m_ids.toArray(new String[0]));
+		}
+		aContent.addStringArray(CFG_DEVICES, devices);
+		aContent.addLongArray(CFG_TIMES, times);
+	}
+
+	void loadFrom(final ModelContentRO aContent) throws InvalidSettingsException {
+		m_marks.clear();
+		final String[] devices = aContent.getStringArray(CFG_DEVICES);
+		final long[] times = aContent.getLongArray(CFG_TIMES);
+		for (int i = 0; i < devices.length; i++) {
+			final Mark mark = new Mark(times[i]);
+			for (final String id : aContent.getStringArray(CFG_IDS + i)) {
+				mark.m_ids.add(id);
+			}
+			m_marks.put(devices[i], mark);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package de.tarent.cumulocity.data.measurements;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeValue;
+import org.knime.core.node.CanceledExecutionException;
+
+import de.tarent.cumulocity.data.RowSink;
+
+/**
+ * skips the measurement rows that have already been retrieved by the previous
+ * execution and records the time of the latest measurement per device of the
+ * rows that are passed on
+ *
+ * must only be used from the thread that writes the output table (so that
+ * only rows that are actually written are recorded)
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class IncrementalRowSink implements RowSink {
+
+	private final RowSink m_target;
+	private final HighWaterMarks m_previousMarks;
+	private final HighWaterMarks m_marks;
+
+	/**
+	 * @param aPreviousMarks - marks of the previous execution (not modified)
+	 * @param aMarks         - receives the marks of the rows passed on
+	 */
+	IncrementalRowSink(final RowSink aTarget, final HighWaterMarks aPreviousMarks, final HighWaterMarks aMarks) {
+		m_target = aTarget;
+		m_previousMarks = aPreviousMarks;
+		m_marks = aMarks;
+	}
+
+	@Override
+	public boolean addRow(final DataCell[] aCells) throws CanceledExecutionException {
+		// columns: measurement id, type, device id, time, ...
+		if (aCells[0].isMissing() || aCells[2].isMissing() || aCells[3].isMissing()) {
+			return m_target.addRow(aCells);
+		}
+		final String measurementId = ((StringValue) aCells[0]).getStringValue();
+		final String deviceId = ((StringValue) aCells[2]).getStringValue();
+		final long time = ((ZonedDateTimeValue) aCells[3]).getZonedDateTime().toInstant().toEpochMilli();
+		if (m_previousMarks.contains(deviceId, time, measurementId)) {
+			// the retrieval starts at the second of the latest measurement
+			return true;
+		}
+		m_marks.update(deviceId, time, measurementId);
+		return m_target.addRow(aCells);
+	}
+
+	@Override
+	public void checkCanceled() throws CanceledExecutionException {
+		m_target.checkCanceled();
+	}
+}
@@ -12,9 +12,11 @@ import org.knime.core.data.time.zoneddatetime.ZonedDateTimeValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponent;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.util.DataValueColumnFilter;
 
+import de.tarent.cumulocity.data.JournalSettings;
 import de.tarent.cumulocity.data.measurements.MeasurementCreatorNodeModel.COLUMN_KEYS;
 
 
@@ -52,5 +54,8 @@ public class MeasurementCreatorNodeDialog extends DefaultNodeSettingsPane {
 				this.addDialogComponent(col);
 			}
 		}
+		this.addDialogComponent(new DialogComponentNumber(MeasurementCreatorNodeModel.createBatchSizeSettings(),
+				"Measurements per request", 100));
+		JournalSettings.addDialogComponents(this);
 	}
 }
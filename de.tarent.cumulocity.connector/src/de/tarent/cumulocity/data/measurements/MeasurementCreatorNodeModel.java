@@ -3,8 +3,10 @@ package de.tarent.cumulocity.data.measurements;
 import java.io.File;
 import java.io.IOException;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.knime.core.data.DataRow;
@@ -25,6 +27,7 @@ import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.defaultnodesettings.SettingsModel;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
@@ -36,8 +39,12 @@ import com.telekom.m2m.cot.restsdk.measurement.MeasurementApi;
 import com.telekom.m2m.cot.restsdk.util.CotSdkException;
 import com.telekom.m2m.cot.restsdk.util.ExtensibleObject;
 
+import de.tarent.cumulocity.connector.CotConnection;
 import de.tarent.cumulocity.connector.CotPlatformProvider;
 import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+import de.tarent.cumulocity.data.JournalSettings;
+import de.tarent.cumulocity.data.WriteJournal;
 
 /**
  * implementation of the node model of the "MeasurementCreator" node.
@@ -75,7 +82,26 @@ public class MeasurementCreatorNodeModel extends NodeModel {
 		}
 	}
 
+	static final String Config_BATCH_SIZE = "BATCH_SIZE";
+
+	/**
+	 * upper limit of the measurements per request, keeps the request bodies at
+	 * a few MB
+	 */
+	static final int MAX_BATCH_SIZE = 2000;
+
 	private final SettingsModel[] m_inputColSettings = new SettingsModel[COLUMN_KEYS.values().length];
+	private final SettingsModelIntegerBounded m_batchSizeSettings = createBatchSizeSettings();
+	private final JournalSettings m_journalSettings = new JournalSettings();
+
+	/**
+	 * @return number of measurements written per request, 1 writes each row with
+	 *         its own request (as in workflows created before the batch size
+	 *         could be configured)
+	 */
+	static SettingsModelIntegerBounded createBatchSizeSettings() {
+		return new SettingsModelIntegerBounded(Config_BATCH_SIZE, 1, 1, MAX_BATCH_SIZE);
+	}
 
 	/**
 	 * @return device id column selection
@@ -105,7 +131,8 @@ public class MeasurementCreatorNodeModel extends NodeModel {
 	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec)
 			throws CanceledExecutionException {
 
-		final MeasurementApi measurementApi = getMeasurementApi((CumulocityPortObject) inData[0]);
+		final CotConnection connection = getConnection((CumulocityPortObject) inData[0]);
+		final MeasurementApi measurementApi = connection.getMeasurementApi();
 
 		final DataTableSpec spec = ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).getSpec();
 		final Map<COLUMN_KEYS, Integer> colIndices = new HashMap<>();
@@ -117,96 +144,62 @@ public class MeasurementCreatorNodeModel extends NodeModel {
 			}
 		}
 
+		final long nRows = ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).size();
+		final WriteJournal journal = m_journalSettings.open(connection.getRestClient().getIdentity(), nRows);
+
 		final CloseableRowIterator measurementsIterator = ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).iterator();
 		long ctr = 0;
 		CotSdkException lastException = null;
+		final int batchSize = m_batchSizeSettings.getIntValue();
+		final List<Measurement> batch = new ArrayList<>();
+		final List<Long> batchRows = new ArrayList<>();
+		final ExecutionMetrics metrics = ExecutionMetrics.start(exec);
 		try {
 			// iterate over input table rows
 			while (measurementsIterator.hasNext()) {
 
 				final DataRow row = measurementsIterator.next();
-
-				final Measurement measurement = new Measurement();
-
-				{
-					// indicates the device, that sends the measurement.
-					final ManagedObject source = new ManagedObject();
-					// Source / Device ID - required field
-					source.setId(
-							((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_SOURCE_ID))).getStringValue());
-					// Source name - optional
-					if (colIndices.containsKey(COLUMN_KEYS.KEY_SOURCE_NAME)) {
-						final String sourceName = ((StringCell) row
-								.getCell(colIndices.get(COLUMN_KEYS.KEY_SOURCE_NAME))).getStringValue();
-						if (notEmpty(sourceName)) {
-							source.setName(sourceName);
-						}
-					}
-					measurement.setSource(source);
+				final long fingerprint = WriteJournal.fingerprint(row);
+				if (journal.isWritten(fingerprint)) {
+					continue;
 				}
-
-				// "Measurement Type" - required, use cot_abc_xyz style.
-				measurement.setType(
-						((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_MEASUREMENT_TYPE))).getStringValue());
-
-				// "Measurement ID" is set internally
-
-				// "Creation Time" - is set internally
-				// "Time" - optional
-				if (colIndices.containsKey(COLUMN_KEYS.KEY_TIME)) {
-					final ZonedDateTime time = ((ZonedDateTimeCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_TIME)))
-							.getZonedDateTime();
-					if (time != null) {
-						measurement.setTime(Date.from(time.toInstant()));
-					} else {
-						measurement.setTime(new Date());
+				final Measurement measurement = createMeasurement(row, colIndices);
+
+				if (batchSize > 1) {
+					batch.add(measurement);
+					batchRows.add(fingerprint);
+					if (batch.size() >= batchSize) {
+						final CotSdkException cse = writeBatch(measurementApi, batch, batchRows, journal);
+						if (cse == null) {
+							ctr += batch.size();
+						} else {
+							lastException = cse;
+						}
+						batch.clear();
+						batchRows.clear();
 					}
 				} else {
-					measurement.setTime(new Date());
-				}
-
-				final Map<String, Object> atts = new HashMap<>();
-
-				// "Fragment Series"
-				final ExtensibleObject m = new ExtensibleObject();
-
-				m.set("value",
-						((DoubleCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_MEASUREMENT_VALUE))).getDoubleValue());
-				m.set("unit",
-						((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_MEASUREMENT_UNIT))).getStringValue());
-
-				final String series;
-				if (colIndices.containsKey(COLUMN_KEYS.KEY_FRAGMENT_SERIES)) {
-					series = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_FRAGMENT_SERIES)))
-							.getStringValue();
-				} else {
-					series = "unknown";
+					try {
+						final Measurement resMes = measurementApi.createMeasurement(measurement);
+						logger.debug("Created measurement " + resMes.getId() + " in Cumulocity.");
+						journal.acknowledge(fingerprint);
+						ctr++;
+					} catch (CotSdkException cse) {
+						logger.error("Failed to write measurement " + measurement + " to Cumulocity!");
+						logger.error("Root cause: " + cse.getMessage());
+						logger.error("Will continue with other measurements...");
+						lastException = cse;
+					}
 				}
-
-				final ExtensibleObject st = new ExtensibleObject();
-				st.set(series, m);
-
-				// "Measurement Subtype"
-				final String subType;
-				if (colIndices.containsKey(COLUMN_KEYS.KEY_SUB_TYPE)) {
-					subType = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_SUB_TYPE))).getStringValue();
+				exec.checkCanceled();
+			}
+			if (!batch.isEmpty()) {
+				final CotSdkException cse = writeBatch(measurementApi, batch, batchRows, journal);
+				if (cse == null) {
+					ctr += batch.size();
 				} else {
-					subType = "unknown";
-				}
-				atts.put(subType, st);
-				measurement.setAttributes(atts);
-
-				try {
-					final Measurement resMes = measurementApi.createMeasurement(measurement);
-					logger.debug("Created measurement " + resMes.getId() + " in Cumulocity.");
-					ctr++;
-				} catch (CotSdkException cse) {
-					logger.error("Failed to write measurement " + measurement + " to Cumulocity!");
-					logger.error("Root cause: " + cse.getMessage());
-					logger.error("Will continue with other measurements...");
 					lastException = cse;
 				}
-				exec.checkCanceled();
 			}
 		} catch (CotSdkException cse) {
 			logger.error("Failed to write (all) measurements to Cumulocity!");
@@ -215,29 +208,136 @@ public class MeasurementCreatorNodeModel extends NodeModel {
 			// re-throw
 			throw cse;
 		} finally {
+			metrics.close();
+			metrics.log(logger);
+			metrics.publish(this::pushFlowVariableInt, this::pushFlowVariableDouble);
+			journal.close();
+			final long nToWrite = nRows - journal.getNumberSkipped();
 			if (lastException != null) {
 				if (ctr == 0) {
 					logger.error("Failed to write any measurements to Cumulocity!");
 					logger.error("Root cause: " + lastException.getMessage());
 					logger.error("Please ensure that you have write permissions to the database!");
 				} else {
-					logger.error("Wrote only " + ctr + " of " + ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).size()
-							+ " measurements to Cumulocity.");
+					logger.error("Wrote only " + ctr + " of " + nToWrite + " measurements to Cumulocity.");
 					logger.error("Root cause: " + lastException.getMessage());
 					logger.error(
 							"Please ensure that the device for the given source id (deviced id) exists and that you are permitted to modify them.");
 				}
 			} else {
-				logger.info("Wrote all " + ((BufferedDataTable) inData[IN_PORT_DATA_TABLE]).size()
-						+ " measurements to Cumulocity.");
+				logger.info("Wrote all " + nToWrite + " measurements to Cumulocity.");
 			}
 		}
 		return new BufferedDataTable[] {};
 	}
 
-	private MeasurementApi getMeasurementApi(final CumulocityPortObject aCoTPortObject) {
-		return CotPlatformProvider.getCoTPlatform(getCredentialsProvider(), aCoTPortObject.getConfig())
-				.getMeasurementApi();
+	/**
+	 * writes the given measurements with a single request, the measurements of
+	 * a failed request are not retried one by one as some of them may already
+	 * have been stored
+	 *
+	 * @param aRows - fingerprints of the rows of the measurements, recorded in
+	 *              the journal if the request succeeds
+	 * @return the exception of a failed request, null if all measurements have
+	 *         been written
+	 */
+	private CotSdkException writeBatch(final MeasurementApi aMeasurementApi, final List<Measurement> aBatch,
+			final List<Long> aRows, final WriteJournal aJournal) {
+		try {
+			final List<Measurement> created = aMeasurementApi.createMeasurements(aBatch);
+			logger.debug("Created " + created.size() + " measurements in Cumulocity.");
+			for (final Long row : aRows) {
+				aJournal.acknowledge(row);
+			}
+			return null;
+		} catch (CotSdkException cse) {
+			logger.error("Failed to write a batch of " + aBatch.size() + " measurements (first: " + aBatch.get(0)
+					+ ") to Cumulocity!");
+			logger.error("Root cause: " + cse.getMessage());
+			logger.error("Will continue with other measurements...");
+			return cse;
+		}
+	}
+
+	/**
+	 * converts an input row into a measurement
+	 */
+	private Measurement createMeasurement(final DataRow row, final Map<COLUMN_KEYS, Integer> colIndices) {
+		final Measurement measurement = new Measurement();
+
+		{
+			// indicates the device, that sends the measurement.
+			final ManagedObject source = new ManagedObject();
+			// Source / Device ID - required field
+			source.setId(
+					((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_SOURCE_ID))).getStringValue());
+			// Source name - optional
+			if (colIndices.containsKey(COLUMN_KEYS.KEY_SOURCE_NAME)) {
+				final String sourceName = ((StringCell) row
+						.getCell(colIndices.get(COLUMN_KEYS.KEY_SOURCE_NAME))).getStringValue();
+				if (notEmpty(sourceName)) {
+					source.setName(sourceName);
+				}
+			}
+			measurement.setSource(source);
+		}
+
+		// "Measurement Type" - required, use cot_abc_xyz style.
+		measurement.setType(
+				((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_MEASUREMENT_TYPE))).getStringValue());
+
+		// "Measurement ID" is set internally
+
+		// "Creation Time" - is set internally
+		// "Time" - optional
+		if (colIndices.containsKey(COLUMN_KEYS.KEY_TIME)) {
+			final ZonedDateTime time = ((ZonedDateTimeCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_TIME)))
+					.getZonedDateTime();
+			if (time != null) {
+				measurement.setTime(Date.from(time.toInstant()));
+			} else {
+				measurement.setTime(new Date());
+			}
+		} else {
+			measurement.setTime(new Date());
+		}
+
+		final Map<String, Object> atts = new HashMap<>();
+
+		// "Fragment Series"
+		final ExtensibleObject m = new ExtensibleObject();
+
+		m.set("value",
+				((DoubleCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_MEASUREMENT_VALUE))).getDoubleValue());
+		m.set("unit",
+				((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_MEASUREMENT_UNIT))).getStringValue());
+
+		final String series;
+		if (colIndices.containsKey(COLUMN_KEYS.KEY_FRAGMENT_SERIES)) {
+			series = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_FRAGMENT_SERIES)))
+					.getStringValue();
+		} else {
+			series = "unknown";
+		}
+
+		final ExtensibleObject st = new ExtensibleObject();
+		st.set(series, m);
+
+		// "Measurement Subtype"
+		final String subType;
+		if (colIndices.containsKey(COLUMN_KEYS.KEY_SUB_TYPE)) {
+			subType = ((StringCell) row.getCell(colIndices.get(COLUMN_KEYS.KEY_SUB_TYPE))).getStringValue();
+		} else {
+			subType = "unknown";
+		}
+		atts.put(subType, st);
+		measurement.setAttributes(atts);
+
+		return measurement;
+	}
+
+	private CotConnection getConnection(final CumulocityPortObject aCoTPortObject) {
+		return CotPlatformProvider.getConnection(getCredentialsProvider(), aCoTPortObject.getConfig());
 	}
 
 	private boolean notEmpty(final String aStr) {
@@ -271,6 +371,8 @@ public class MeasurementCreatorNodeModel extends NodeModel {
 		for (COLUMN_KEYS key : COLUMN_KEYS.values()) {
 			m_inputColSettings[key.ordinal()].saveSettingsTo(settings);
 		}
+		m_batchSizeSettings.saveSettingsTo(settings);
+		m_journalSettings.saveSettingsTo(settings);
 	}
 
 	/**
@@ -281,6 +383,11 @@ public class MeasurementCreatorNodeModel extends NodeModel {
 		for (COLUMN_KEYS key : COLUMN_KEYS.values()) {
 			m_inputColSettings[key.ordinal()].loadSettingsFrom(settings);
 		}
+		// not available in workflows created with older versions
+		if (settings.containsKey(Config_BATCH_SIZE)) {
+			m_batchSizeSettings.loadSettingsFrom(settings);
+		}
+		m_journalSettings.loadValidatedSettingsFrom(settings);
 	}
 
 	/**
@@ -291,6 +398,10 @@ public class MeasurementCreatorNodeModel extends NodeModel {
 		for (COLUMN_KEYS key : COLUMN_KEYS.values()) {
 			m_inputColSettings[key.ordinal()].validateSettings(settings);
 		}
+		if (settings.containsKey(Config_BATCH_SIZE)) {
+			m_batchSizeSettings.validateSettings(settings);
+		}
+		m_journalSettings.validateSettings(settings);
 	}
 
 	@Override
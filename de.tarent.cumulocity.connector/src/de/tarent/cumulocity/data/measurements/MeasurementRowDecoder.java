@@ -0,0 +1,262 @@
+package de.tarent.cumulocity.data.measurements;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.NodeLogger;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import de.tarent.cumulocity.data.JsonCells;
+import de.tarent.cumulocity.data.PagedCollectionReader.ElementDecoder;
+import de.tarent.cumulocity.data.RowSink;
+
+/**
+ * decodes measurements directly from the JSON stream into rows (one row per
+ * fragment series or, in the wide format, one row per measurement with a value
+ * column per series), no intermediate object tree is created
+ *
+ * a decoder re-uses its buffers and must therefore not be shared between
+ * threads
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class MeasurementRowDecoder implements ElementDecoder {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(MeasurementRowDecoder.class);
+
+	/**
+	 * attributes of a measurement that are not fragments
+	 */
+	private static final String ATTR_ID = "id";
+	private static final String ATTR_TYPE = "type";
+	private static final String ATTR_TIME = "time";
+	private static final String ATTR_SOURCE = "source";
+
+	/**
+	 * measurement id, type, device id and time
+	 */
+	static final int N_FIXED_COLUMNS = 4;
+
+	private final AtomicLong m_ignored;
+
+	/**
+	 * column index (after the fixed columns) per "fragment.series" in the wide
+	 * format, null in the long format
+	 */
+	private final Map<String, Integer> m_seriesColumns;
+	private final AtomicLong m_dropped;
+
+	/**
+	 * the only fragment (and series) that is decoded, empty for all
+	 */
+	private final String m_fragment;
+	private final String m_seriesFilter;
+
+	// can be re-used as the sink copies its content
+	private final DataCell[] m_cells;
+
+	/**
+	 * fragment, series, value and unit of the series of the current measurement,
+	 * they can only be added as rows once the whole measurement has been read
+	 * as the order of the attributes is not fixed
+	 */
+	private final List<DataCell[]> m_series = new ArrayList<>();
+
+	/**
+	 * @param aIgnored - counter for measurements without any series
+	 */
+	MeasurementRowDecoder(final AtomicLong aIgnored) {
+		this(aIgnored, "", "");
+	}
+
+	/**
+	 * @param aFragment - the only fragment that is decoded, empty for all
+	 * @param aSeries   - the only series of the fragment that is decoded, empty
+	 *                  for all
+	 */
+	MeasurementRowDecoder(final AtomicLong aIgnored, final String aFragment, final String aSeries) {
+		m_ignored = aIgnored;
+		m_seriesColumns = null;
+		m_dropped = null;
+		m_fragment = aFragment;
+		m_seriesFilter = aSeries;
+		m_cells = new DataCell[8];
+	}
+
+	/**
+	 * decoder for the wide format, i.e. one row per measurement with one value
+	 * column per series
+	 *
+	 * @param aSeriesColumns - column index (after the fixed columns) per
+	 *                       "fragment.series"
+	 * @param aDropped       - counter for series values without a column
+	 */
+	MeasurementRowDecoder(final AtomicLong aIgnored, final Map<String, Integer> aSeriesColumns,
+			final AtomicLong aDropped) {
+		this(aIgnored, aSeriesColumns, aDropped, "", "");
+	}
+
+	/**
+	 * decoder for the wide format that only decodes the given fragment (and
+	 * series)
+	 */
+	MeasurementRowDecoder(final AtomicLong aIgnored, final Map<String, Integer> aSeriesColumns,
+			final AtomicLong aDropped, final String aFragment, final String aSeries) {
+		m_ignored = aIgnored;
+		m_seriesColumns = aSeriesColumns;
+		m_dropped = aDropped;
+		m_fragment = aFragment;
+		m_seriesFilter = aSeries;
+		m_cells = new DataCell[N_FIXED_COLUMNS + aSeriesColumns.size()];
+	}
+
+	@Override
+	public boolean decode(final JsonReader aReader, final RowSink aSink) throws IOException, CanceledExecutionException {
+		String id = null;
+		DataCell typeCell = DataType.getMissingCell();
+		DataCell sourceCell = DataType.getMissingCell();
+		DataCell dateCell = DataType.getMissingCell();
+		m_series.clear();
+
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			final String name = aReader.nextName();
+			if (aReader.peek() == JsonToken.NULL) {
+				aReader.nextNull();
+			} else if (ATTR_ID.equals(name)) {
+				id = aReader.nextString();
+			} else if (ATTR_TYPE.equals(name)) {
+				typeCell = new StringCell(aReader.nextString());
+			} else if (ATTR_TIME.equals(name)) {
+				dateCell = JsonCells.createDateCell(aReader.nextString());
+			} else if (ATTR_SOURCE.equals(name)) {
+				sourceCell = readSource(aReader);
+			} else if (aReader.peek() == JsonToken.BEGIN_OBJECT
+					&& (m_fragment.isEmpty() || m_fragment.equals(name))) {
+				readFragment(aReader, name);
+			} else {
+				// self, creationTime, fragments that are not wanted, ...
+				aReader.skipValue();
+			}
+		}
+		aReader.endObject();
+
+		if (m_series.isEmpty()) {
+			logger.info("Ignoring empty measurement: " + id);
+			m_ignored.incrementAndGet();
+			return true;
+		}
+
+		m_cells[0] = id == null ? DataType.getMissingCell() : new StringCell(id);
+		m_cells[1] = typeCell;
+		m_cells[2] = sourceCell;
+		m_cells[3] = dateCell;
+		if (m_seriesColumns != null) {
+			return addWideRow(aSink);
+		}
+		boolean more = true;
+		for (final DataCell[] series : m_series) {
+			System.arraycopy(series, 0, m_cells, N_FIXED_COLUMNS, series.length);
+			// all fragments of a measurement are always added
+			if (!aSink.addRow(m_cells)) {
+				more = false;
+			}
+		}
+		return more;
+	}
+
+	/**
+	 * adds the values of all series of the measurement as a single row, the row
+	 * is omitted if none of the series has a column
+	 */
+	private boolean addWideRow(final RowSink aSink) throws CanceledExecutionException {
+		Arrays.fill(m_cells, N_FIXED_COLUMNS, m_cells.length, DataType.getMissingCell());
+		boolean hasValue = false;
+		for (final DataCell[] series : m_series) {
+			final Integer column = m_seriesColumns.get(seriesName(series[0], series[1]));
+			if (column == null) {
+				m_dropped.incrementAndGet();
+			} else {
+				m_cells[N_FIXED_COLUMNS + column] = series[2];
+				hasValue = true;
+			}
+		}
+		if (!hasValue) {
+			return true;
+		}
+		return aSink.addRow(m_cells);
+	}
+
+	/**
+	 * @return name of the series column in the wide format, "fragment.series"
+	 */
+	static String seriesName(final DataCell aFragment, final DataCell aSeries) {
+		return ((StringValue) aFragment).getStringValue() + "." + ((StringValue) aSeries).getStringValue();
+	}
+
+	private static DataCell readSource(final JsonReader aReader) throws IOException {
+		DataCell sourceCell = DataType.getMissingCell();
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			if (ATTR_ID.equals(aReader.nextName()) && aReader.peek() != JsonToken.NULL) {
+				sourceCell = new StringCell(aReader.nextString());
+			} else {
+				aReader.skipValue();
+			}
+		}
+		aReader.endObject();
+		return sourceCell;
+	}
+
+	/**
+	 * a fragment is an object whose object valued attributes are the series,
+	 * e.g. "c8y_Temperature": { "T": { "value": 21.3, "unit": "C" } }
+	 */
+	private void readFragment(final JsonReader aReader, final String aFragment) throws IOException {
+		final DataCell fragmentCell = new StringCell(aFragment);
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			final String series = aReader.nextName();
+			if (aReader.peek() == JsonToken.BEGIN_OBJECT
+					&& (m_seriesFilter.isEmpty() || m_seriesFilter.equals(series))) {
+				final DataCell[] cells = new DataCell[] { fragmentCell, new StringCell(series),
+						DataType.getMissingCell(), DataType.getMissingCell() };
+				readSeries(aReader, cells);
+				m_series.add(cells);
+			} else {
+				aReader.skipValue();
+			}
+		}
+		aReader.endObject();
+	}
+
+	private static void readSeries(final JsonReader aReader, final DataCell[] aCells) throws IOException {
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			final String name = aReader.nextName();
+			final JsonToken token = aReader.peek();
+			if ("value".equals(name) && token == JsonToken.NUMBER) {
+				aCells[2] = new DoubleCell(aReader.nextDouble());
+			} else if ("unit".equals(name) && token != JsonToken.NULL && token != JsonToken.BEGIN_OBJECT
+					&& token != JsonToken.BEGIN_ARRAY) {
+				aCells[3] = new StringCell(aReader.nextString());
+			} else {
+				aReader.skipValue();
+			}
+		}
+		aReader.endObject();
+	}
+}
@@ -0,0 +1,30 @@
+package de.tarent.cumulocity.data.measurements;
+
+import org.knime.core.node.defaultnodesettings.DialogComponentMultiLineString;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+
+import de.tarent.cumulocity.data.RetrieveDataNodeDialog;
+
+/**
+ * implementation of the node dialog of the "Measurement Series" node, adds
+ * the series and the aggregation to the common retriever options (the series
+ * are not paged, so there are no paging options)
+ *
+ * @author tarent solutions GmbH
+ */
+public class MeasurementSeriesNodeDialog extends RetrieveDataNodeDialog {
+
+	static final String SERIES_LABEL = "Series (fragment.series)";
+	static final String AGGREGATION_TYPE_LABEL = "Aggregation";
+
+	MeasurementSeriesNodeDialog() {
+		super(true, 0, true, true, false);
+
+		addDialogComponent(new DialogComponentMultiLineString(MeasurementSeriesNodeModel.createSeriesSettings(),
+				SERIES_LABEL, true, 30, 4));
+		addDialogComponent(new DialogComponentStringSelection(
+				MeasurementSeriesNodeModel.createAggregationTypeSettings(), AGGREGATION_TYPE_LABEL,
+				MeasurementSeriesNodeModel.AGGREGATION_MINUTELY, MeasurementSeriesNodeModel.AGGREGATION_HOURLY,
+				MeasurementSeriesNodeModel.AGGREGATION_DAILY));
+	}
+}
@@ -0,0 +1,57 @@
+package de.tarent.cumulocity.data.measurements;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * implementation of the node factory of the "Measurement Series" node.
+ *
+ * @author tarent solutions GmbH
+ */
+public class MeasurementSeriesNodeFactory extends NodeFactory<MeasurementSeriesNodeModel> {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MeasurementSeriesNodeModel createNodeModel() {
+		return new MeasurementSeriesNodeModel();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getNrNodeViews() {
+		// The number of views the node should have, in this cases there is none.
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public NodeView<MeasurementSeriesNodeModel> createNodeView(final int viewIndex,
+			final MeasurementSeriesNodeModel nodeModel) {
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean hasDialog() {
+		// Indication whether the node has a dialog or not.
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public NodeDialogPane createNodeDialogPane() {
+		return new MeasurementSeriesNodeDialog();
+	}
+
+}
@@ -0,0 +1,250 @@
+package de.tarent.cumulocity.data.measurements;
+
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeCellFactory;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+import de.tarent.cumulocity.connector.CotRestClient;
+import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.data.ConcurrentRetriever;
+import de.tarent.cumulocity.data.ContainerRowSink;
+import de.tarent.cumulocity.data.IdIterator;
+import de.tarent.cumulocity.data.PagedCollectionReader;
+import de.tarent.cumulocity.data.RetrieveDataNodeModel;
+import de.tarent.cumulocity.data.RowSink;
+
+/**
+ * implementation of the node model of the "Measurement Series" node.
+ *
+ * retrieves the minimum and maximum of series of measurements per minute, hour
+ * or day, aggregated by Cumulocity (series api), so that only one row per
+ * device and time bucket is transferred instead of all measurements
+ *
+ * @author tarent solutions GmbH
+ */
+public class MeasurementSeriesNodeModel extends RetrieveDataNodeModel {
+
+	private static final NodeLogger logger = NodeLogger.getLogger(MeasurementSeriesNodeModel.class);
+
+	private static final String SERIES_URL = "measurement/measurements/series";
+
+	/**
+	 * maximal number of time buckets of a device that wait to be written when
+	 * retrieving in parallel (a response is limited by Cumulocity anyway)
+	 */
+	private static final int QUEUE_CAPACITY = 10000;
+
+	/**
+	 * thread safe, in contrast to the formatting of the rest SDK
+	 */
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX")
+			.withZone(ZoneOffset.UTC);
+
+	/**
+	 * the settings keys of the series and of the length of their time buckets
+	 */
+	static final String Config_SERIES = "SERIES";
+	static final String Config_AGGREGATION_TYPE = "AGGREGATION_TYPE";
+
+	static final String AGGREGATION_MINUTELY = "MINUTELY";
+	static final String AGGREGATION_HOURLY = "HOURLY";
+	static final String AGGREGATION_DAILY = "DAILY";
+
+	private final SettingsModelString m_seriesSettings = createSeriesSettings();
+	private final SettingsModelString m_aggregationTypeSettings = createAggregationTypeSettings();
+
+	/*
+	 * we have 2 input ports (connection info and device info) and one output port
+	 * with the aggregated series
+	 */
+	protected MeasurementSeriesNodeModel() {
+		super(new PortType[] { CumulocityPortObject.TYPE, BufferedDataTable.TYPE });
+	}
+
+	static SettingsModelString createSeriesSettings() {
+		return new SettingsModelString(Config_SERIES, "");
+	}
+
+	static SettingsModelString createAggregationTypeSettings() {
+		return new SettingsModelString(Config_AGGREGATION_TYPE, AGGREGATION_HOURLY);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	@Override
+	protected PortObject[] executeRetrieval(final PortObject[] inData, final ExecutionContext exec)
+			throws CanceledExecutionException {
+		final CotRestClient client = getRestClient((CumulocityPortObject) inData[0]);
+		final List<String> series = MeasurementsNodeModel.parseSeriesColumns(m_seriesSettings.getStringValue());
+		final String query = seriesQuery(series);
+		final AtomicLong nTruncated = new AtomicLong();
+		final int parallelism = getParallelism();
+
+		final IdIterator device_ids = retrieveDeviceIDs((BufferedDataTable) inData[IN_PORT_DATA_TABLE]);
+		final BufferedDataContainer container = exec.createDataContainer(outputTableSpec());
+		final ContainerRowSink sink = new ContainerRowSink(container, exec, 0, getMaxNumItemsToFetch());
+		try {
+			if (parallelism > 1) {
+				logger.info("Retrieving series with up to " + parallelism + " parallel requests.");
+				// the rows are written in the order of the devices
+				try (final ConcurrentRetriever retriever = new ConcurrentRetriever(parallelism, QUEUE_CAPACITY,
+						true)) {
+					while (device_ids.hasNext()) {
+						device_ids.next();
+						final String deviceId = device_ids.getCurrentId().get();
+						retriever.submit(
+								aSink -> retrieveSeries(client, deviceId, query, series, aSink, nTruncated));
+					}
+					retriever.drainInto(sink, exec);
+				}
+			} else {
+				boolean more = true;
+				while (more && device_ids.hasNext()) {
+					device_ids.next();
+					more = retrieveSeries(client, device_ids.getCurrentId().get(), query, series, sink, nTruncated);
+				}
+			}
+		} finally {
+			container.close();
+			device_ids.close();
+		}
+		logger.info("Retrieved " + sink.getRowIx() + " series rows.");
+		if (nTruncated.get() > 0) {
+			logger.warn("Cumulocity has truncated the series of " + nTruncated.get()
+					+ " devices, use a coarser aggregation or a shorter time range.");
+		}
+		return new BufferedDataTable[] { container.getTable() };
+	}
+
+	/**
+	 * the series of a device are returned in a single response
+	 *
+	 * @return false if no more rows are wanted
+	 */
+	private static boolean retrieveSeries(final CotRestClient aClient, final String aDeviceId,
+			final String aQuery, final List<String> aSeries, final RowSink aSink, final AtomicLong aTruncated)
+			throws CanceledExecutionException {
+		final SeriesRowDecoder decoder = new SeriesRowDecoder(aSeries);
+		final String url = SERIES_URL + "?"
+				+ PagedCollectionReader.joinQueries(PagedCollectionReader.toParameter("source", aDeviceId), aQuery);
+		final boolean more = aClient.getJson(url, aReader -> decoder.decode(aReader, aDeviceId, aSink));
+		if (decoder.isTruncated()) {
+			logger.debug("Series of device " + aDeviceId + " have been truncated.");
+			aTruncated.incrementAndGet();
+		}
+		return more;
+	}
+
+	/**
+	 * the series api requires a time range, the open ends of the selected range
+	 * are the beginning of the epoch and now
+	 *
+	 * @return query parameters for the time range, aggregation and series
+	 */
+	private String seriesQuery(final List<String> aSeries) {
+		final Date from = getFromTo().getFirst().orElse(new Date(0));
+		final Date to = getFromTo().getSecond().orElse(new Date());
+		final List<String> parameters = new ArrayList<>();
+		parameters.add(PagedCollectionReader.toParameter("dateFrom", DATE_FORMAT.format(from.toInstant())));
+		parameters.add(PagedCollectionReader.toParameter("dateTo", DATE_FORMAT.format(to.toInstant())));
+		parameters.add(
+				PagedCollectionReader.toParameter("aggregationType", m_aggregationTypeSettings.getStringValue()));
+		for (final String series : aSeries) {
+			parameters.add(PagedCollectionReader.toParameter("series", series));
+		}
+		return PagedCollectionReader.joinQueries(parameters.toArray(new String[0]));
+	}
+
+	@Override
+	protected DataTableSpec outputTableSpec() {
+		final List<DataColumnSpec> columns = new ArrayList<>();
+		columns.add(new DataColumnSpecCreator("Device ID", StringCell.TYPE).createSpec());
+		columns.add(new DataColumnSpecCreator("Time", ZonedDateTimeCellFactory.TYPE).createSpec());
+		for (final String series : MeasurementsNodeModel.parseSeriesColumns(m_seriesSettings.getStringValue())) {
+			columns.add(new DataColumnSpecCreator(series + " (min)", DoubleCell.TYPE).createSpec());
+			columns.add(new DataColumnSpecCreator(series + " (max)", DoubleCell.TYPE).createSpec());
+		}
+		return new DataTableSpec(columns.toArray(new DataColumnSpec[0]));
+	}
+
+	@Override
+	protected String sourceIdColumn() {
+		return "Device ID";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		boolean hasStringColumn = false;
+		final DataTableSpec dataTable = ((DataTableSpec) inSpecs[IN_PORT_DATA_TABLE]);
+		for (int i = 0; (i < dataTable.getNumColumns()) && !hasStringColumn; i++) {
+			if (dataTable.getColumnSpec(i).getType().isCompatible(StringValue.class)) {
+				hasStringColumn = true;
+			}
+		}
+		if (!hasStringColumn) {
+			throw new InvalidSettingsException("Input table must contain at least one String column");
+		}
+		if (MeasurementsNodeModel.parseSeriesColumns(m_seriesSettings.getStringValue()).isEmpty()) {
+			throw new InvalidSettingsException("Please enter the series to retrieve");
+		}
+		return super.configure(inSpecs);
+	}
+
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		super.saveSettingsTo(settings);
+		m_seriesSettings.saveSettingsTo(settings);
+		m_aggregationTypeSettings.saveSettingsTo(settings);
+	}
+
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		super.validateSettings(settings);
+		m_seriesSettings.validateSettings(settings);
+		m_aggregationTypeSettings.validateSettings(settings);
+
+		final SettingsModelString series = createSeriesSettings();
+		series.loadSettingsFrom(settings);
+		for (final String name : MeasurementsNodeModel.parseSeriesColumns(series.getStringValue())) {
+			if (name.indexOf('.') <= 0 || name.endsWith(".")) {
+				throw new InvalidSettingsException("Series must be given as 'fragment.series': " + name);
+			}
+		}
+	}
+
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		super.loadValidatedSettingsFrom(settings);
+		m_seriesSettings.loadSettingsFrom(settings);
+		m_aggregationTypeSettings.loadSettingsFrom(settings);
+	}
+}
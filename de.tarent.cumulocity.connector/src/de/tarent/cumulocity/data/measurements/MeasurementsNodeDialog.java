@@ -0,0 +1,48 @@
+package de.tarent.cumulocity.data.measurements;
+
+import org.knime.core.node.defaultnodesettings.DialogComponentMultiLineString;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+
+import de.tarent.cumulocity.data.RetrieveDataNodeDialog;
+
+/**
+ * implementation of the node dialog of the "Measurements" node, adds the
+ * incremental mode and the output format to the common retriever options
+ *
+ * @author tarent solutions GmbH
+ */
+public class MeasurementsNodeDialog extends RetrieveDataNodeDialog {
+
+	static final String INCREMENTAL_MODE_LABEL = "Incremental mode";
+	static final String OUTPUT_FORMAT_LABEL = "Output format";
+	static final String SERIES_COLUMNS_LABEL = "Series columns (fragment.series)";
+	static final String MEASUREMENT_TYPE_LABEL = "Measurement type";
+	static final String VALUE_FRAGMENT_TYPE_LABEL = "Value fragment type";
+	static final String VALUE_FRAGMENT_SERIES_LABEL = "Value fragment series";
+
+	MeasurementsNodeDialog() {
+		super(true, 10000, true, true);
+
+		addDialogComponent(new DialogComponentStringSelection(MeasurementsNodeModel.createIncrementalModeSettings(),
+				INCREMENTAL_MODE_LABEL, MeasurementsNodeModel.INCREMENTAL_OFF, MeasurementsNodeModel.INCREMENTAL_DELTA,
+				MeasurementsNodeModel.INCREMENTAL_MERGE));
+
+		// one value column per series instead of one row per series
+		addDialogComponent(new DialogComponentStringSelection(MeasurementsNodeModel.createOutputFormatSettings(),
+				OUTPUT_FORMAT_LABEL, MeasurementsNodeModel.FORMAT_LONG, MeasurementsNodeModel.FORMAT_WIDE));
+		addDialogComponent(new DialogComponentMultiLineString(MeasurementsNodeModel.createSeriesColumnsSettings(),
+				SERIES_COLUMNS_LABEL, false, 30, 4));
+
+		// the series of other fragments are not output
+		addDialogComponent(new DialogComponentString(
+				MeasurementsNodeModel.createFilterSettings(MeasurementsNodeModel.Config_MEASUREMENT_TYPE),
+				MEASUREMENT_TYPE_LABEL, false, 30));
+		addDialogComponent(new DialogComponentString(
+				MeasurementsNodeModel.createFilterSettings(MeasurementsNodeModel.Config_VALUE_FRAGMENT_TYPE),
+				VALUE_FRAGMENT_TYPE_LABEL, false, 30));
+		addDialogComponent(new DialogComponentString(
+				MeasurementsNodeModel.createFilterSettings(MeasurementsNodeModel.Config_VALUE_FRAGMENT_SERIES),
+				VALUE_FRAGMENT_SERIES_LABEL, false, 30));
+	}
+}
@@ -4,8 +4,6 @@ import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.NodeFactory;
 import org.knime.core.node.NodeView;
 
-import de.tarent.cumulocity.data.RetrieveDataNodeDialog;
-
 /**
  * implementation of the node factory of the "GetMeasurements" node.
  *
@@ -53,7 +51,7 @@ public class MeasurementsNodeFactory extends NodeFactory<MeasurementsNodeModel>
 	 */
 	@Override
 	public NodeDialogPane createNodeDialogPane() {
-		return new RetrieveDataNodeDialog(true, 10000, true);
+		return new MeasurementsNodeDialog();
 	}
 
 }
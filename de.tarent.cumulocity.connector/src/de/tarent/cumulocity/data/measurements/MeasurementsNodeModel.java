@@ -1,21 +1,33 @@
 package de.tarent.cumulocity.data.measurements;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTable;
 import org.knime.core.data.DataTableSpec;
-import org.knime.core.data.DataType;
 import org.knime.core.data.RowKey;
 import org.knime.core.data.StringValue;
+import org.knime.core.data.container.DataContainer;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
 import org.knime.core.data.def.StringCell;
@@ -24,22 +36,30 @@ import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContent;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
+import org.knime.core.util.FileUtil;
+import org.knime.core.util.Pair;
 
-import com.google.gson.internal.LazilyParsedNumber;
-import com.telekom.m2m.cot.restsdk.measurement.Measurement;
-import com.telekom.m2m.cot.restsdk.measurement.MeasurementApi;
-import com.telekom.m2m.cot.restsdk.measurement.MeasurementCollection;
-import com.telekom.m2m.cot.restsdk.util.ExtensibleObject;
-import com.telekom.m2m.cot.restsdk.util.Filter.FilterBuilder;
-
+import de.tarent.cumulocity.connector.CotRestClient;
 import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.data.CachedPages;
+import de.tarent.cumulocity.data.ConcurrentRetriever;
+import de.tarent.cumulocity.data.ContainerRowSink;
 import de.tarent.cumulocity.data.IdIterator;
+import de.tarent.cumulocity.data.PagedCollectionReader;
 import de.tarent.cumulocity.data.RetrieveDataNodeModel;
+import de.tarent.cumulocity.data.RowSink;
+import de.tarent.cumulocity.data.TimeShardPlanner;
+import de.tarent.cumulocity.data.TimeShardPlanner.TimeShard;
 
 /**
  * @author tarent solutions GmbH
@@ -48,13 +68,109 @@ public class MeasurementsNodeModel extends RetrieveDataNodeModel {
 
 	private static final NodeLogger logger = NodeLogger.getLogger(MeasurementsNodeModel.class);
 
+	/**
+	 * maximal number of rows of a time shard that wait to be written when
+	 * retrieving in parallel (one row per series in the long format)
+	 */
+	private static final int QUEUE_CAPACITY = 10000;
+
+	private static final String MEASUREMENTS_URL = "measurement/measurements";
+	private static final String MEASUREMENTS_COLLECTION = "measurements";
+
+	/**
+	 * default size of the result pages (max. 2000)
+	 */
+	private static final int PAGE_SIZE = 2000;
+
+	/**
+	 * time shards with more pages (of the configured page size) are split (when
+	 * retrieving in parallel)
+	 */
+	private static final long MAX_PAGES_PER_SHARD = 10;
+
+	/**
+	 * time shards are not split any further when they are shorter than this
+	 */
+	private static final long MIN_SHARD_MILLIS = 60 * 1000;
+
+	/**
+	 * the settings key of the incremental mode and its values
+	 */
+	static final String Config_INCREMENTAL_MODE = "INCREMENTAL_MODE";
+	static final String INCREMENTAL_OFF = "Retrieve all measurements";
+	static final String INCREMENTAL_DELTA = "Only measurements newer than the previous execution";
+	static final String INCREMENTAL_MERGE = "Previous output and newer measurements";
+
+	/**
+	 * the settings keys of the output format and its values
+	 */
+	static final String Config_OUTPUT_FORMAT = "OUTPUT_FORMAT";
+	static final String FORMAT_LONG = "One row per series";
+	static final String FORMAT_WIDE = "One row per measurement";
+	static final String Config_SERIES_COLUMNS = "SERIES_COLUMNS";
+
+	/**
+	 * the settings keys of the measurement filters, the latest measurement times
+	 * of the incremental mode only hold for the filters they were found with
+	 */
+	static final String Config_MEASUREMENT_TYPE = "MEASUREMENT_TYPE";
+	static final String Config_VALUE_FRAGMENT_TYPE = "VALUE_FRAGMENT_TYPE";
+	static final String Config_VALUE_FRAGMENT_SERIES = "VALUE_FRAGMENT_SERIES";
+
+	/**
+	 * number of measurements per device that are sampled to find the series
+	 * columns of the wide format
+	 */
+	private static final int SAMPLE_SIZE = 100;
+
+	private static final String INTERNALS_HIGH_WATER_MARKS = "high_water_marks.xml";
+	/**
+	 * the previous output is saved in parts, one per execution (the name of
+	 * workflows saved with older versions has no number)
+	 */
+	private static final String INTERNALS_PREVIOUS_OUTPUT = "previous_output";
+
+	private final SettingsModelString m_incrementalModeSettings = createIncrementalModeSettings();
+	private final SettingsModelString m_outputFormatSettings = createOutputFormatSettings();
+	private final SettingsModelString m_seriesColumnsSettings = createSeriesColumnsSettings();
+	private final SettingsModelString m_typeSettings = createFilterSettings(Config_MEASUREMENT_TYPE);
+	private final SettingsModelString m_valueFragmentTypeSettings = createFilterSettings(Config_VALUE_FRAGMENT_TYPE);
+	private final SettingsModelString m_valueFragmentSeriesSettings = createFilterSettings(
+			Config_VALUE_FRAGMENT_SERIES);
+
+	/**
+	 * latest measurement per device of all executions since the incremental mode
+	 * has been switched on, survives a reset of the node
+	 */
+	private final HighWaterMarks m_highWaterMarks = new HighWaterMarks();
+
+	/**
+	 * the new rows of every execution since the merge mode has been switched on,
+	 * in the order of the executions, owned by this node
+	 */
+	private final List<File> m_previousOutputFiles = new ArrayList<>();
+
+	static SettingsModelString createIncrementalModeSettings() {
+		return new SettingsModelString(Config_INCREMENTAL_MODE, INCREMENTAL_OFF);
+	}
+
+	static SettingsModelString createOutputFormatSettings() {
+		return new SettingsModelString(Config_OUTPUT_FORMAT, FORMAT_LONG);
+	}
+
+	/**
+	 * "fragment.series" names separated by line breaks or commas
+	 */
+	static SettingsModelString createSeriesColumnsSettings() {
+		return new SettingsModelString(Config_SERIES_COLUMNS, "");
+	}
 
 	/*
 	 * we have 2 input ports (connection info and device info) and one output port
 	 * with the measurements
 	 */
 	protected MeasurementsNodeModel() {
-		super(new PortType[] { CumulocityPortObject.TYPE, BufferedDataTable.TYPE });
+		super(new PortType[] { CumulocityPortObject.TYPE, BufferedDataTable.TYPE }, PAGE_SIZE);
 	}
 
 	/**
@@ -63,122 +179,370 @@ public class MeasurementsNodeModel extends RetrieveDataNodeModel {
 	 * @throws CanceledExecutionException - user interrupted the process
 	 */
 	@Override
-	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec)
+	protected PortObject[] executeRetrieval(final PortObject[] inData, final ExecutionContext exec)
 			throws CanceledExecutionException {
 
-		final MeasurementApi measurementApi = getMeasurementApi((CumulocityPortObject) inData[0]);
+		final CotRestClient client = getRestClient((CumulocityPortObject) inData[0]);
+		// measurements cannot be changed once they have been stored
+		final Optional<CachedPages> cache = openPageCache(client, true);
+		final PagedCollectionReader reader = new PagedCollectionReader(client, MEASUREMENTS_URL,
+				MEASUREMENTS_COLLECTION, getPageSize(), getPrefetchDepth(), cache, createAdaptivePageSize())
+						.withQuery(filterQuery());
+		final AtomicLong nIgnored = new AtomicLong();
+		final AtomicLong nDropped = new AtomicLong();
+		final Optional<Map<String, Integer>> seriesColumns;
+		final DataTableSpec outputSpec;
+		if (FORMAT_WIDE.equals(m_outputFormatSettings.getStringValue())) {
+			List<String> series = parseSeriesColumns(m_seriesColumnsSettings.getStringValue());
+			if (series.isEmpty()) {
+				series = sampleSeriesColumns(client, (BufferedDataTable) inData[IN_PORT_DATA_TABLE], exec);
+			}
+			final Map<String, Integer> columns = new HashMap<>();
+			for (final String name : series) {
+				columns.put(name, columns.size());
+			}
+			seriesColumns = Optional.of(columns);
+			outputSpec = wideTableSpec(series);
+		} else {
+			seriesColumns = Optional.empty();
+			outputSpec = longTableSpec();
+		}
 		final IdIterator device_ids = retrieveDeviceIDs((BufferedDataTable) inData[IN_PORT_DATA_TABLE]);
 
-		long nIgnored = 0;
-		long rowIx = 0;
 		final long maxNum = getMaxNumItemsToFetch();
+		final int parallelism = getParallelism();
+		final String incrementalMode = m_incrementalModeSettings.getStringValue();
+		final boolean incremental = !INCREMENTAL_OFF.equals(incrementalMode);
 
-		final BufferedDataContainer container = exec.createDataContainer(outputTableSpec());
-		// can be re-used as addRowToTable copies its content
-		final DataCell[] cells = new DataCell[8];
+		// in the merge mode the new rows are appended to the previous output
+		// (dropping it starts over with all measurements)
+		Optional<BufferedDataTable> previousOutput = Optional.empty();
+		if (INCREMENTAL_MERGE.equals(incrementalMode)) {
+			previousOutput = copyPreviousOutput(outputSpec, exec);
+		}
+		// the marks are only taken over if the execution succeeds
+		final HighWaterMarks newMarks = new HighWaterMarks(m_highWaterMarks);
+		final long rowIx = previousOutput.map(BufferedDataTable::size).orElse(0L);
+		final BufferedDataContainer container = exec.createDataContainer(outputSpec);
+		final ContainerRowSink containerSink = new ContainerRowSink(container, exec, rowIx,
+				maxNum == Long.MAX_VALUE ? Long.MAX_VALUE : rowIx + maxNum);
+		final RowSink sink;
+		if (incremental) {
+			sink = new IncrementalRowSink(containerSink, m_highWaterMarks, newMarks);
+		} else {
+			sink = containerSink;
+		}
 		try {
-			while (device_ids.hasNext() && rowIx < maxNum) {
-				// Retrieve measurement collection API
-				final Iterator<Measurement> mcol = getMeasurementCollectionApi(measurementApi, device_ids.next())
-						.stream().iterator();
-
-				while (mcol.hasNext() && rowIx < maxNum) {
-					final Measurement measurement = mcol.next();
-					final StringCell idCell = new StringCell(measurement.getId());
-					final DataCell typeCell;
-					if (measurement.getType() == null) {
-						typeCell = DataType.getMissingCell();
-					} else {
-						typeCell = new StringCell(measurement.getType());
-					}
-
-					final Map<String, Object> attributes = measurement.getAttributes();
-
-					final Object source = attributes.get("source");
-					final DataCell sourceCell;
-					if ((source != null) && (source instanceof ExtensibleObject)) {
-						final String source_id = ((ExtensibleObject) source).get("id").toString();
-						sourceCell = new StringCell(source_id);
-					} else {
-						sourceCell = DataType.getMissingCell();
-					}
-					final Date measurement_Date = measurement.getTime();
-					final DataCell dateCell = ZonedDateTimeCellFactory.create(m_dateFormat.format(measurement_Date));
-					// these values stay the same for all measurements for this device
-					cells[0] = idCell;
-					cells[1] = typeCell;
-					cells[2] = sourceCell;
-					cells[3] = dateCell;
-
-					for (final Entry<String, Object> entry : attributes.entrySet()) {
-						if ((entry.getValue() != null) && (entry.getValue() instanceof ExtensibleObject)) {
-							final Map<String, Object> frag_attributes = ((ExtensibleObject) entry.getValue())
-									.getAttributes();
-							//"Measurement Subtype"
-							cells[4] = new StringCell(entry.getKey());
-							boolean useful = false;
-							for (final Entry<String, Object> frag_attr : frag_attributes.entrySet()) {
-								// The row id should be set to work with multi dimensional fragments,
-								// measurements greater than 2000 and measurements for different devices.
-
-								final Object req_fragment = frag_attr.getValue();
-								if ((req_fragment != null) && (req_fragment instanceof ExtensibleObject)) {
-									//"Fragment Series"
-									cells[5] = new StringCell(frag_attr.getKey());
-									final ExtensibleObject subElem = ((ExtensibleObject) req_fragment);
-
-									final Object number = subElem.get("value");
-									if (number instanceof LazilyParsedNumber) {
-										final Double measurement_value = ((LazilyParsedNumber) number).doubleValue();
-										cells[6] = new DoubleCell(measurement_value);
-									} else {
-										cells[6] = DataType.getMissingCell();
-									}
-
-									if (subElem.has("unit")) {
-										final String measurement_unit = subElem.get("unit").toString();
-										cells[7] = new StringCell(measurement_unit);
-									} else {
-										cells[7] = DataType.getMissingCell();
-									}
-
-									final RowKey key = RowKey.createRowKey(rowIx);
-									final DataRow row = new DefaultRow(key, cells);
-									rowIx++;
-									useful = true;
-									container.addRowToTable(row);
-								}
-								exec.checkCanceled();
-							}
-							if (!useful) {
-								logger.info("Ignoring empty measurement: " + measurement.getId());
-								nIgnored++;
-								//measurementApi.delete(measurement);
-							}
+			if (parallelism > 1) {
+				logger.info("Retrieving measurements with up to " + parallelism + " parallel requests.");
+				final List<List<TimeShard>> shards = planTimeShards(reader, device_ids, parallelism, incremental,
+						exec);
+				// the shards are written in the order of the devices and in time order
+				try (final ConcurrentRetriever retriever = new ConcurrentRetriever(parallelism, QUEUE_CAPACITY,
+						true)) {
+					for (final List<TimeShard> deviceShards : shards) {
+						for (final TimeShard shard : deviceShards) {
+							retriever.submit(aSink -> shard.read(reader,
+									createDecoder(nIgnored, seriesColumns, nDropped), aSink));
 						}
 					}
-					if (rowIx >= maxNum) {
-						logger.info("Retrieved maximal number (" + rowIx + ") of measurements to retrieve, will stop.");
-						break;
+					retriever.drainInto(sink, exec);
+				}
+			} else {
+				boolean more = true;
+				while (more && device_ids.hasNext()) {
+					device_ids.next();
+					final String query;
+					if (incremental) {
+						query = toIncrementalQuery(device_ids.getCurrentId());
+					} else {
+						query = toQuery(device_ids.getCurrentId());
 					}
+					more = reader.read(query, createDecoder(nIgnored, seriesColumns, nDropped), sink);
 				}
 			}
+			if (containerSink.getRowIx() - rowIx >= maxNum) {
+				logger.info("Retrieved maximal number (" + (containerSink.getRowIx() - rowIx)
+						+ ") of measurements to retrieve, will stop.");
+			}
 		} finally {
 			container.close();
 			device_ids.close();
+			cache.ifPresent(aCache -> aCache.logStatistics(logger));
+		}
+		if (nIgnored.get() > 0) {
+			logger.info("Ignored " + nIgnored.get() + " measurements.");
+		}
+		if (nDropped.get() > 0) {
+			logger.warn("Dropped " + nDropped.get() + " series values without an output column.");
+		}
+		final BufferedDataTable newRows = container.getTable();
+		// rows that are not stored are retrieved again by the next execution
+		final boolean stored = !INCREMENTAL_MERGE.equals(incrementalMode) || appendPreviousOutput(newRows, exec);
+		if (incremental) {
+			logger.info("Retrieved " + (containerSink.getRowIx() - rowIx) + " new measurement rows.");
+			if (stored) {
+				m_highWaterMarks.set(newMarks);
+			}
+		}
+		if (previousOutput.isPresent()) {
+			return new BufferedDataTable[] { exec.createConcatenateTable(exec, previousOutput.get(), newRows) };
+		}
+		return new BufferedDataTable[] { newRows };
+	}
+
+	/**
+	 * the type and the value fragment are filtered by Cumulocity, so that only
+	 * measurements with the wanted series are transferred
+	 *
+	 * @return query parameters of the measurement filters, empty if there are
+	 *         none
+	 */
+	private String filterQuery() {
+		return PagedCollectionReader.joinQueries(
+				PagedCollectionReader.toParameter("type", m_typeSettings.getStringValue()),
+				PagedCollectionReader.toParameter("valueFragmentType", m_valueFragmentTypeSettings.getStringValue()),
+				PagedCollectionReader.toParameter("valueFragmentSeries",
+						m_valueFragmentSeriesSettings.getStringValue()));
+	}
+
+	/**
+	 * @return decoder that creates one row per fragment series or, if the series
+	 *         columns are given, one row per measurement; the other series of
+	 *         the measurements are skipped if a value fragment is selected
+	 */
+	private MeasurementRowDecoder createDecoder(final AtomicLong aIgnored,
+			final Optional<Map<String, Integer>> aSeriesColumns, final AtomicLong aDropped) {
+		final String fragment = m_valueFragmentTypeSettings.getStringValue().trim();
+		final String series = m_valueFragmentSeriesSettings.getStringValue().trim();
+		if (aSeriesColumns.isPresent()) {
+			return new MeasurementRowDecoder(aIgnored, aSeriesColumns.get(), aDropped, fragment, series);
+		}
+		return new MeasurementRowDecoder(aIgnored, fragment, series);
+	}
+
+	/**
+	 * @return the distinct series names of the given list, in the given order
+	 */
+	static List<String> parseSeriesColumns(final String aSeries) {
+		final Set<String> series = new LinkedHashSet<>();
+		for (final String name : aSeries.split("[,\\n]")) {
+			if (!name.trim().isEmpty()) {
+				series.add(name.trim());
+			}
+		}
+		return new ArrayList<>(series);
+	}
+
+	/**
+	 * the series columns of the wide format are taken from the first
+	 * measurements (within the selected time range) of every device
+	 *
+	 * @return the sampled series names in alphabetical order
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	private List<String> sampleSeriesColumns(final CotRestClient aClient, final BufferedDataTable aDeviceTable,
+			final ExecutionContext aExec) throws CanceledExecutionException {
+		final PagedCollectionReader reader = new PagedCollectionReader(aClient, MEASUREMENTS_URL,
+				MEASUREMENTS_COLLECTION, SAMPLE_SIZE).withQuery(filterQuery());
+		final Set<String> series = new TreeSet<>();
+		final MeasurementRowDecoder decoder = createDecoder(new AtomicLong(), Optional.empty(), null);
+		final IdIterator deviceIds = retrieveDeviceIDs(aDeviceTable);
+		try {
+			while (deviceIds.hasNext()) {
+				deviceIds.next();
+				reader.readFirstPage(toQuery(deviceIds.getCurrentId()), decoder,
+						aCells -> {
+							// long format: fragment and series follow the fixed columns
+							series.add(MeasurementRowDecoder.seriesName(aCells[4], aCells[5]));
+							return true;
+						});
+				aExec.checkCanceled();
+			}
+		} finally {
+			deviceIds.close();
+		}
+		if (series.isEmpty()) {
+			logger.warn("No series found in the first " + SAMPLE_SIZE + " measurements of the devices.");
+		} else {
+			logger.info("Sampled " + series.size() + " series columns.");
+		}
+		return new ArrayList<>(series);
+	}
+
+	/**
+	 * splits the selected time range of each device into shards, dense devices
+	 * (e.g. gateways) get many shards so that they can be retrieved with many
+	 * parallel requests
+	 *
+	 * @throws CanceledExecutionException - user interrupted the process
+	 */
+	private List<List<TimeShard>> planTimeShards(final PagedCollectionReader aReader, final IdIterator aDeviceIds,
+			final int aParallelism, final boolean aIncremental, final ExecutionContext aExec)
+			throws CanceledExecutionException {
+		final Pair<Optional<Date>, Optional<Date>> dateRestrictions = getFromTo();
+		final long from = dateRestrictions.getFirst().map(Date::getTime).orElse(0L);
+		final long to = dateRestrictions.getSecond().map(Date::getTime).orElse(System.currentTimeMillis() + 100000);
+		final List<String> deviceQueries = new ArrayList<>();
+		final List<Long> froms = new ArrayList<>();
+		while (aDeviceIds.hasNext()) {
+			aDeviceIds.next();
+			deviceQueries.add(PagedCollectionReader.toParameter("source", aDeviceIds.getCurrentId().orElse("")));
+			if (aIncremental) {
+				froms.add(getIncrementalFrom(from, aDeviceIds.getCurrentId()));
+			} else {
+				froms.add(from);
+			}
+		}
+		return new TimeShardPlanner(aReader, aParallelism, MAX_PAGES_PER_SHARD * getPageSize(), MIN_SHARD_MILLIS)
+				.plan(deviceQueries, froms, to, !dateRestrictions.getSecond().isPresent(), aExec);
+	}
+
+	/**
+	 * @return the given start of the time range or the time of the latest
+	 *         measurement of the device retrieved by the previous executions, if
+	 *         that is later
+	 */
+	private long getIncrementalFrom(final long aFrom, final Optional<String> aDeviceId) {
+		if (aDeviceId.isPresent()) {
+			final Optional<Long> latest = m_highWaterMarks.getTime(aDeviceId.get());
+			if (latest.isPresent()) {
+				return Math.max(aFrom, latest.get());
+			}
+		}
+		return aFrom;
+	}
+
+	/**
+	 * @return query parameters of the device and the time range from its latest
+	 *         measurement of the previous executions on
+	 */
+	private String toIncrementalQuery(final Optional<String> aDeviceId) {
+		if (!aDeviceId.isPresent() || !m_highWaterMarks.getTime(aDeviceId.get()).isPresent()) {
+			return toQuery(aDeviceId);
+		}
+		final Pair<Optional<Date>, Optional<Date>> dateRestrictions = getFromTo();
+		final long from = getIncrementalFrom(dateRestrictions.getFirst().map(Date::getTime).orElse(0L), aDeviceId);
+		final long to = dateRestrictions.getSecond().map(Date::getTime)
+				.orElse(System.currentTimeMillis() + 100000);
+		return toQuery(aDeviceId, from, to);
+	}
+
+	/**
+	 * copies the rows of the previous executions into a new table (with row keys
+	 * starting at 0)
+	 *
+	 * @return the rows, empty if there are none or they do not fit the given spec
+	 *         (the latest measurement times are dropped with them then)
+	 */
+	private Optional<BufferedDataTable> copyPreviousOutput(final DataTableSpec aSpec, final ExecutionContext aExec)
+			throws CanceledExecutionException {
+		if (m_previousOutputFiles.isEmpty()) {
+			return Optional.empty();
+		}
+		final BufferedDataContainer container = aExec.createDataContainer(aSpec);
+		long rowIx = 0;
+		try {
+			for (final File file : m_previousOutputFiles) {
+				final DataTable previous = DataContainer.readFromZip(file);
+				if (!previous.getDataTableSpec().equalStructure(aSpec)) {
+					logger.warn("The columns of the output have changed, will retrieve all measurements again.");
+					container.close();
+					startOver();
+					return Optional.empty();
+				}
+				for (final DataRow row : previous) {
+					final DataCell[] cells = new DataCell[row.getNumCells()];
+					for (int i = 0; i < cells.length; i++) {
+						cells[i] = row.getCell(i);
+					}
+					container.addRowToTable(new DefaultRow(RowKey.createRowKey(rowIx), cells));
+					rowIx++;
+					aExec.checkCanceled();
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to read the output of the previous executions, will retrieve all measurements again.",
+					e);
+			container.close();
+			startOver();
+			return Optional.empty();
+		}
+		container.close();
+		return Optional.of(container.getTable());
+	}
+
+	/**
+	 * stores the new rows of an execution as an additional part of the previous
+	 * output, the earlier parts are not rewritten
+	 *
+	 * @return true if the rows have been stored
+	 */
+	private boolean appendPreviousOutput(final BufferedDataTable aNewRows, final ExecutionContext aExec)
+			throws CanceledExecutionException {
+		if (aNewRows.size() == 0) {
+			return true;
 		}
-		if (nIgnored > 0) {
-			logger.info("Ignored " + nIgnored + " measurements.");
+		try {
+			final File file = FileUtil.createTempFile("cumulocity_measurements_", ".zip", true);
+			DataContainer.writeToZip(aNewRows, file, aExec);
+			m_previousOutputFiles.add(file);
+			return true;
+		} catch (IOException e) {
+			logger.warn("Failed to store the output for the next execution, will retrieve the rows again.", e);
+			return false;
 		}
-		return new BufferedDataTable[] { container.getTable() };
 	}
 
+	/**
+	 * drops the latest measurement times together with the previous output, so
+	 * that the next execution retrieves the whole time range again
+	 */
+	private void startOver() {
+		m_highWaterMarks.clear();
+		deletePreviousOutput();
+	}
+
+	private void deletePreviousOutput() {
+		for (final File file : m_previousOutputFiles) {
+			if (!file.delete()) {
+				logger.debug("Could not delete " + file);
+			}
+		}
+		m_previousOutputFiles.clear();
+	}
+
+	/**
+	 * @return the spec of the output table, null if the series columns of the
+	 *         wide format are only known after sampling the measurements
+	 */
 	protected DataTableSpec outputTableSpec() {
+		if (!FORMAT_WIDE.equals(m_outputFormatSettings.getStringValue())) {
+			return longTableSpec();
+		}
+		final List<String> series = parseSeriesColumns(m_seriesColumnsSettings.getStringValue());
+		if (series.isEmpty()) {
+			return null;
+		}
+		return wideTableSpec(series);
+	}
+
+	@Override
+	protected String sourceIdColumn() {
+		return "Device ID";
+	}
+
+	private static List<DataColumnSpec> fixedColumnSpecs() {
 		final List<DataColumnSpec> columns = new ArrayList<>();
 		columns.add(new DataColumnSpecCreator("Measurement ID", StringCell.TYPE).createSpec());
 		columns.add(new DataColumnSpecCreator("Measurement Type", StringCell.TYPE).createSpec());
 		columns.add(new DataColumnSpecCreator("Device ID", StringCell.TYPE).createSpec());
 		columns.add(new DataColumnSpecCreator("Zoned Date Time", ZonedDateTimeCellFactory.TYPE).createSpec());
+		return columns;
+	}
+
+	private static DataTableSpec longTableSpec() {
+		final List<DataColumnSpec> columns = fixedColumnSpecs();
 		columns.add(new DataColumnSpecCreator("Measurement Subtype", StringCell.TYPE).createSpec());
 		columns.add(new DataColumnSpecCreator("Fragment Series", StringCell.TYPE).createSpec());
 		columns.add(new DataColumnSpecCreator("Value", DoubleCell.TYPE).createSpec());
@@ -187,24 +551,17 @@ public class MeasurementsNodeModel extends RetrieveDataNodeModel {
 		return outputSpec;
 	}
 
-	private MeasurementCollection getMeasurementCollectionApi(final MeasurementApi aApi, 
-			final Optional<FilterBuilder> aDeviceIdFilter) {
-		final MeasurementCollection measurementCollection;
-		// final FilterBuilder filter = Filter.build().setFilter(FilterBy.BYSOURCE, aDeviceId);
-
-		// doesn't work as we don't know the expected date format....
-//		if (dateRestrictions.getFirst().isPresent()) {
-//			filter.setFilter(FilterBy.BYDATEFROM, m_c8yDateFormat.format(dateRestrictions.getFirst().get()));
-//		}
-//		if (dateRestrictions.getSecond().isPresent()) {
-//			filter.setFilter(FilterBy.BYDATETO, m_c8yDateFormat.format(dateRestrictions.getSecond().get()));
-//		}
-
-		// size of the results (Max. 2000)
-		measurementCollection = aApi.getMeasurements(addOptionalDateFilter(aDeviceIdFilter).get(), 2000);
-		return measurementCollection;
+	/**
+	 * @param aSeries - names of the value columns ("fragment.series")
+	 */
+	private static DataTableSpec wideTableSpec(final List<String> aSeries) {
+		final List<DataColumnSpec> columns = fixedColumnSpecs();
+		for (final String series : aSeries) {
+			columns.add(new DataColumnSpecCreator(series, DoubleCell.TYPE).createSpec());
+		}
+		return new DataTableSpec(columns.toArray(new DataColumnSpec[0]));
 	}
-	
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -223,7 +580,159 @@ public class MeasurementsNodeModel extends RetrieveDataNodeModel {
 		if (!hasStringColumn) {
 			throw new InvalidSettingsException("Input table must contain at least one String column");
 		}
+		// the latest measurement times are kept per device
+		if (!INCREMENTAL_OFF.equals(m_incrementalModeSettings.getStringValue())
+				&& !getDeviceIdColumn().filter(dataTable::containsName).isPresent()) {
+			throw new InvalidSettingsException("The incremental mode requires a column with the device IDs");
+		}
 		return super.configure(inSpecs);
 
 	}
+
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		super.saveSettingsTo(settings);
+		m_incrementalModeSettings.saveSettingsTo(settings);
+		m_outputFormatSettings.saveSettingsTo(settings);
+		m_seriesColumnsSettings.saveSettingsTo(settings);
+		m_typeSettings.saveSettingsTo(settings);
+		m_valueFragmentTypeSettings.saveSettingsTo(settings);
+		m_valueFragmentSeriesSettings.saveSettingsTo(settings);
+	}
+
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		super.validateSettings(settings);
+		if (settings.containsKey(Config_INCREMENTAL_MODE)) {
+			m_incrementalModeSettings.validateSettings(settings);
+		}
+		if (settings.containsKey(Config_OUTPUT_FORMAT)) {
+			m_outputFormatSettings.validateSettings(settings);
+			m_seriesColumnsSettings.validateSettings(settings);
+		}
+		if (settings.containsKey(Config_MEASUREMENT_TYPE)) {
+			m_typeSettings.validateSettings(settings);
+			m_valueFragmentTypeSettings.validateSettings(settings);
+			m_valueFragmentSeriesSettings.validateSettings(settings);
+
+			final SettingsModelString fragment = createFilterSettings(Config_VALUE_FRAGMENT_TYPE);
+			fragment.loadSettingsFrom(settings);
+			final SettingsModelString series = createFilterSettings(Config_VALUE_FRAGMENT_SERIES);
+			series.loadSettingsFrom(settings);
+			// Cumulocity only filters by series within a fragment
+			if (fragment.getStringValue().trim().isEmpty() && !series.getStringValue().trim().isEmpty()) {
+				throw new InvalidSettingsException("A value fragment series requires a value fragment type");
+			}
+		}
+	}
+
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		super.loadValidatedSettingsFrom(settings);
+		final String previousMode = m_incrementalModeSettings.getStringValue();
+		final String previousRetrieval = retrievalKey();
+		// not available in workflows created with older versions
+		if (settings.containsKey(Config_INCREMENTAL_MODE)) {
+			m_incrementalModeSettings.loadSettingsFrom(settings);
+		}
+		if (settings.containsKey(Config_OUTPUT_FORMAT)) {
+			m_outputFormatSettings.loadSettingsFrom(settings);
+			m_seriesColumnsSettings.loadSettingsFrom(settings);
+		}
+		if (settings.containsKey(Config_MEASUREMENT_TYPE)) {
+			m_typeSettings.loadSettingsFrom(settings);
+			m_valueFragmentTypeSettings.loadSettingsFrom(settings);
+			m_valueFragmentSeriesSettings.loadSettingsFrom(settings);
+		}
+		final String mode = m_incrementalModeSettings.getStringValue();
+		if (INCREMENTAL_OFF.equals(mode)) {
+			// switching the incremental mode off starts over
+			startOver();
+		} else if (!previousRetrieval.equals(retrievalKey())
+				|| (INCREMENTAL_MERGE.equals(mode) && !INCREMENTAL_MERGE.equals(previousMode))) {
+			// rows older than the marks would be missing from the output
+			if (!m_highWaterMarks.isEmpty()) {
+				logger.info("The measurements to retrieve have changed, the next execution retrieves all of them.");
+			}
+			startOver();
+		}
+	}
+
+	/**
+	 * @return the settings the latest measurement times and the previous output
+	 *         depend on (the filters and the output columns)
+	 */
+	private String retrievalKey() {
+		final StringBuilder key = new StringBuilder(filterQuery()).append('\n')
+				.append(m_outputFormatSettings.getStringValue());
+		if (FORMAT_WIDE.equals(m_outputFormatSettings.getStringValue())) {
+			key.append('\n').append(parseSeriesColumns(m_seriesColumnsSettings.getStringValue()));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * the latest measurement times (and the previous output) are kept in the
+	 * internals so that the next execution after loading the workflow only
+	 * retrieves newer measurements
+	 */
+	@Override
+	protected void loadInternals(final File nodeInternDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		final File marksFile = new File(nodeInternDir, INTERNALS_HIGH_WATER_MARKS);
+		if (marksFile.exists()) {
+			try (final InputStream in = new FileInputStream(marksFile)) {
+				m_highWaterMarks.loadFrom(ModelContent.loadFromXML(in));
+			} catch (InvalidSettingsException e) {
+				throw new IOException("Failed to load the latest measurement times: " + e.getMessage(), e);
+			}
+		}
+		deletePreviousOutput();
+		final File unnumberedFile = new File(nodeInternDir, INTERNALS_PREVIOUS_OUTPUT + ".zip");
+		if (unnumberedFile.exists()) {
+			loadPreviousOutput(unnumberedFile);
+		}
+		for (int i = 0; new File(nodeInternDir, INTERNALS_PREVIOUS_OUTPUT + "_" + i + ".zip").exists(); i++) {
+			loadPreviousOutput(new File(nodeInternDir, INTERNALS_PREVIOUS_OUTPUT + "_" + i + ".zip"));
+		}
+	}
+
+	private void loadPreviousOutput(final File aInternalsFile) throws IOException {
+		final File file = FileUtil.createTempFile("cumulocity_measurements_", ".zip", true);
+		Files.copy(aInternalsFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		m_previousOutputFiles.add(file);
+	}
+
+	@Override
+	protected void saveInternals(final File nodeInternDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		if (!m_highWaterMarks.isEmpty()) {
+			final ModelContent content = new ModelContent(INTERNALS_HIGH_WATER_MARKS);
+			m_highWaterMarks.saveTo(content);
+			try (final OutputStream out = new FileOutputStream(new File(nodeInternDir, INTERNALS_HIGH_WATER_MARKS))) {
+				content.saveToXML(out);
+			}
+		}
+		for (int i = 0; i < m_previousOutputFiles.size(); i++) {
+			Files.copy(m_previousOutputFiles.get(i).toPath(),
+					new File(nodeInternDir, INTERNALS_PREVIOUS_OUTPUT + "_" + i + ".zip").toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * the latest measurement times are deliberately kept when the node is reset,
+	 * otherwise a scheduled (reset and) execution would retrieve all
+	 * measurements again
+	 */
+	@Override
+	protected void reset() {
+		// Nothing to do
+	}
+
+	@Override
+	protected void onDispose() {
+		deletePreviousOutput();
+		super.onDispose();
+	}
 }
@@ -0,0 +1,188 @@
+package de.tarent.cumulocity.data.measurements;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.CanceledExecutionException;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import de.tarent.cumulocity.data.JsonCells;
+import de.tarent.cumulocity.data.RowSink;
+
+/**
+ * turns a response of the series api ("measurement/measurements/series") into
+ * one row per time bucket with the device id, the time of the bucket and the
+ * minimum and maximum of every requested series
+ *
+ * the values of a bucket are listed in the order of the "series" array, which
+ * follows the values in the response, so the buckets are kept as plain arrays
+ * until the whole response has been read (Cumulocity limits the number of
+ * buckets of a response)
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class SeriesRowDecoder {
+
+	/**
+	 * "fragment.series" to the index of the series in the output
+	 */
+	private final Map<String, Integer> m_seriesColumns = new HashMap<>();
+	private boolean m_truncated = false;
+
+	/**
+	 * @param aSeries - names of the series ("fragment.series") in the order of
+	 *                the output columns
+	 */
+	SeriesRowDecoder(final List<String> aSeries) {
+		for (final String series : aSeries) {
+			m_seriesColumns.put(series, m_seriesColumns.size());
+		}
+	}
+
+	/**
+	 * @return true if Cumulocity has left out buckets of the last response
+	 */
+	boolean isTruncated() {
+		return m_truncated;
+	}
+
+	/**
+	 * must consume the complete response
+	 *
+	 * @return false if the sink does not want any more rows
+	 */
+	boolean decode(final JsonReader aReader, final String aDeviceId, final RowSink aSink)
+			throws IOException, CanceledExecutionException {
+		final List<String> times = new ArrayList<>();
+		// minimum and maximum of every series in the order of the response, NaN
+		// if the series has no value in a bucket
+		final List<double[]> buckets = new ArrayList<>();
+		int[] columns = new int[0];
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			switch (aReader.nextName()) {
+			case "values":
+				readValues(aReader, times, buckets);
+				break;
+			case "series":
+				columns = readSeries(aReader);
+				break;
+			case "truncated":
+				m_truncated = aReader.nextBoolean();
+				break;
+			default:
+				aReader.skipValue();
+			}
+		}
+		aReader.endObject();
+
+		final DataCell device = new StringCell(aDeviceId);
+		for (int b = 0; b < buckets.size(); b++) {
+			final DataCell[] cells = new DataCell[2 + 2 * m_seriesColumns.size()];
+			Arrays.fill(cells, DataType.getMissingCell());
+			cells[0] = device;
+			cells[1] = JsonCells.createDateCell(times.get(b));
+			final double[] values = buckets.get(b);
+			for (int i = 0; i < columns.length && 2 * i + 1 < values.length; i++) {
+				if (columns[i] < 0) {
+					continue;
+				}
+				if (!Double.isNaN(values[2 * i])) {
+					cells[2 + 2 * columns[i]] = new DoubleCell(values[2 * i]);
+				}
+				if (!Double.isNaN(values[2 * i + 1])) {
+					cells[3 + 2 * columns[i]] = new DoubleCell(values[2 * i + 1]);
+				}
+			}
+			if (!aSink.addRow(cells)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * "values": { "time": [ { "min": 1.0, "max": 2.0 }, null, ... ], ... }
+	 */
+	private static void readValues(final JsonReader aReader, final List<String> aTimes,
+			final List<double[]> aBuckets) throws IOException {
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			aTimes.add(aReader.nextName());
+			final List<Double> values = new ArrayList<>();
+			aReader.beginArray();
+			while (aReader.hasNext()) {
+				double min = Double.NaN;
+				double max = Double.NaN;
+				if (aReader.peek() == JsonToken.NULL) {
+					aReader.nextNull();
+				} else {
+					aReader.beginObject();
+					while (aReader.hasNext()) {
+						final String name = aReader.nextName();
+						if (aReader.peek() == JsonToken.NULL) {
+							aReader.nextNull();
+						} else if ("min".equals(name)) {
+							min = aReader.nextDouble();
+						} else if ("max".equals(name)) {
+							max = aReader.nextDouble();
+						} else {
+							aReader.skipValue();
+						}
+					}
+					aReader.endObject();
+				}
+				values.add(min);
+				values.add(max);
+			}
+			aReader.endArray();
+			final double[] bucket = new double[values.size()];
+			for (int i = 0; i < bucket.length; i++) {
+				bucket[i] = values.get(i);
+			}
+			aBuckets.add(bucket);
+		}
+		aReader.endObject();
+	}
+
+	/**
+	 * "series": [ { "name": "T", "type": "c8y_Temperature", "unit": "C" }, ... ]
+	 *
+	 * @return the output index of every series of the response, -1 for series
+	 *         that have not been requested
+	 */
+	private int[] readSeries(final JsonReader aReader) throws IOException {
+		final List<Integer> columns = new ArrayList<>();
+		aReader.beginArray();
+		while (aReader.hasNext()) {
+			String name = null;
+			String type = null;
+			aReader.beginObject();
+			while (aReader.hasNext()) {
+				final String attribute = aReader.nextName();
+				if ("name".equals(attribute) && aReader.peek() == JsonToken.STRING) {
+					name = aReader.nextString();
+				} else if ("type".equals(attribute) && aReader.peek() == JsonToken.STRING) {
+					type = aReader.nextString();
+				} else {
+					aReader.skipValue();
+				}
+			}
+			aReader.endObject();
+			columns.add(m_seriesColumns.getOrDefault(type + "." + name, -1));
+		}
+		aReader.endArray();
+		return columns.stream().mapToInt(Integer::intValue).toArray();
+	}
+}
@@ -1,6 +1,11 @@
 package de.tarent.cumulocity.deviceretriever;
 
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+
+import de.tarent.cumulocity.data.PageCacheSettings;
+import de.tarent.cumulocity.data.PageSizeSettings;
 
 /**
  * <code>NodeDialog</code> for the "CumulocityConnectorDeviceRetriever" node.
@@ -9,11 +14,26 @@ import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
  */
 public class DeviceRetrieverNodeDialog extends DefaultNodeSettingsPane {
 
+	static final String PARALLELISM_LABEL = "Number of parallel requests";
+
+	static final String FRAGMENTS_LABEL = "Fragments as columns (comma separated)";
+
 	/**
 	 * New pane for configuring the CumulocityConnectorDeviceRetriever node.
 	 */
 	protected DeviceRetrieverNodeDialog() {
-		//no options so far
+		// the filters are applied by Cumulocity, not after the transfer
+		InventoryFilterSettings.addDialogComponents(this);
+		// all other fragments are skipped while the response is read
+		addDialogComponent(new DialogComponentString(DeviceRetrieverNodeModel.createFragmentsSettings(),
+				FRAGMENTS_LABEL, false, 30));
+		// fewer round-trips with larger pages, less memory with smaller ones
+		PageSizeSettings.addDialogComponents(this);
+		// the pages of large inventories are requested concurrently
+		addDialogComponent(new DialogComponentNumber(DeviceRetrieverNodeModel.createParallelismSettings(),
+				PARALLELISM_LABEL, 1));
+		// pages of repeated requests are taken from the local disk
+		PageCacheSettings.addDialogComponents(this);
 	}
 
 }
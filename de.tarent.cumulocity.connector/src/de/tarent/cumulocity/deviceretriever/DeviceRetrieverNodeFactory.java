@@ -47,7 +47,7 @@ public class DeviceRetrieverNodeFactory
 	@Override
 	public boolean hasDialog() {
 		// Indication whether the node has a dialog or not.
-		return false;
+		return true;
 	}
 
 	/**
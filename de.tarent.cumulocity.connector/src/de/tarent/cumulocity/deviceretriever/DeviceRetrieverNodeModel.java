@@ -2,17 +2,14 @@ package de.tarent.cumulocity.deviceretriever;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.stream.Stream;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
 
-import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
-import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
-import org.knime.core.data.DataType;
-import org.knime.core.data.RowKey;
-import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
@@ -24,17 +21,22 @@ import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
-import com.telekom.m2m.cot.restsdk.CloudOfThingsPlatform;
-import com.telekom.m2m.cot.restsdk.inventory.InventoryApi;
-import com.telekom.m2m.cot.restsdk.inventory.ManagedObject;
-import com.telekom.m2m.cot.restsdk.inventory.ManagedObjectCollection;
-
 import de.tarent.cumulocity.connector.CotPlatformProvider;
+import de.tarent.cumulocity.connector.CotRestClient;
 import de.tarent.cumulocity.connector.CumulocityPortObject;
+import de.tarent.cumulocity.connector.ExecutionMetrics;
+import de.tarent.cumulocity.data.CachedPages;
+import de.tarent.cumulocity.data.ContainerRowSink;
+import de.tarent.cumulocity.data.PageCacheSettings;
+import de.tarent.cumulocity.data.PageSizeSettings;
+import de.tarent.cumulocity.data.PagedCollectionReader;
+import de.tarent.cumulocity.data.RetrieveDataNodeModel;
 
 /**
  * <code>NodeModel</code> for the "CumulocityConnectorDeviceRetriever" node.
@@ -51,11 +53,49 @@ public class DeviceRetrieverNodeModel extends NodeModel {
 
 	private static final NodeLogger logger = NodeLogger.getLogger(DeviceRetrieverNodeModel.class);
 
-	private static final int DEVICE_ID_POS = 0;
+	static final int DEVICE_ID_POS = 0;
+
+	static final int TYPE_POS = 1;
+
+	static final int DEVICE_NAME_POS = 2;
+
+	private static final String MANAGED_OBJECTS_URL = "inventory/managedObjects";
+
+	private static final String MANAGED_OBJECTS_COLLECTION = "managedObjects";
+
+	// default page size
+	private static final int PAGE_SIZE = 1000;
 
-	private static final int TYPE_POS = 1;
+	static final String Config_PARALLELISM = "PARALLELISM";
 
-	private static final int DEVICE_NAME_POS = 2;
+	static final int MAX_PARALLELISM = 16;
+
+	static final String Config_FRAGMENTS = "FRAGMENTS";
+
+	/**
+	 * references that are left out of the response unless they are selected as
+	 * fragments
+	 */
+	private static final Set<String> CHILD_REFERENCES = new LinkedHashSet<>(
+			Arrays.asList("childDevices", "childAssets", "childAdditions"));
+
+	private final PageCacheSettings m_pageCacheSettings = new PageCacheSettings();
+
+	private final PageSizeSettings m_pageSizeSettings = new PageSizeSettings(PAGE_SIZE);
+
+	private final SettingsModelIntegerBounded m_parallelismSettings = createParallelismSettings();
+
+	private final InventoryFilterSettings m_filterSettings = new InventoryFilterSettings();
+
+	private final SettingsModelString m_fragmentsSettings = createFragmentsSettings();
+
+	static SettingsModelIntegerBounded createParallelismSettings() {
+		return new SettingsModelIntegerBounded(Config_PARALLELISM, 1, 1, MAX_PARALLELISM);
+	}
+
+	static SettingsModelString createFragmentsSettings() {
+		return new SettingsModelString(Config_FRAGMENTS, "");
+	}
 
 	/**
 	 * Constructor for the node model. There is one input port with the cumulocity
@@ -74,67 +114,87 @@ public class DeviceRetrieverNodeModel extends NodeModel {
 	protected PortObject[] execute(final PortObject[] inPort, final ExecutionContext exec)
 			throws CanceledExecutionException {
 		final CumulocityPortObject cotPortObject = (CumulocityPortObject) inPort[0];
-		final BufferedDataContainer container = fillDeviceTable(exec,
-				CotPlatformProvider.getCoTPlatform(getCredentialsProvider(), cotPortObject.getConfig()));
+		final ExecutionMetrics metrics = ExecutionMetrics.start(exec);
+		try {
+			final BufferedDataContainer container = fillDeviceTable(exec,
+					CotPlatformProvider.getCoTRestClient(getCredentialsProvider(), cotPortObject.getConfig()));
 
-		return new PortObject[] { container.getTable() };
+			return new PortObject[] { container.getTable() };
+		} finally {
+			metrics.close();
+			metrics.log(logger);
+			metrics.publish(this::pushFlowVariableInt, this::pushFlowVariableDouble);
+		}
 	}
 
-	private BufferedDataContainer fillDeviceTable(final ExecutionContext exec, final CloudOfThingsPlatform platform)
+	private BufferedDataContainer fillDeviceTable(final ExecutionContext exec, final CotRestClient client)
 			throws CanceledExecutionException {
-		final ManagedObjectCollection managedObjectCollection = getManagedObjects(platform);
-		final DataTableSpec outputSpec = getOutputTableSpec();
+		// the inventory has no time range, so cached pages always expire
+		final Optional<CachedPages> cache = m_pageCacheSettings.open(client, false);
+		final PagedCollectionReader reader = new PagedCollectionReader(client, MANAGED_OBJECTS_URL,
+				MANAGED_OBJECTS_COLLECTION, m_pageSizeSettings.getPageSize(), 0, cache,
+				m_pageSizeSettings.createAdaptivePageSize());
+		final String[] fragments = getFragments();
+		final DataTableSpec outputSpec = getOutputTableSpec(fragments);
 
 		final BufferedDataContainer container = exec.createDataContainer(outputSpec);
-		try (final Stream<ManagedObject> managedObjectsStream = managedObjectCollection.stream()) {
-			long rowIx = 0;
-			Iterator<ManagedObject> iter = managedObjectsStream.iterator();
-			while (iter.hasNext()) {
-				final ManagedObject managedObject = iter.next();
-				final RowKey key = RowKey.createRowKey(rowIx++);
-				final DataCell[] cells = new DataCell[3];
-				cells[DEVICE_ID_POS] = new StringCell(managedObject.getId());
-				if (managedObject.getType() == null) {
-					cells[TYPE_POS] = DataType.getMissingCell();
-				} else {
-					cells[TYPE_POS] = new StringCell(managedObject.getType());
-				}
-				if (managedObject.getName() == null) {
-					cells[DEVICE_NAME_POS] = DataType.getMissingCell();
-				} else {
-					cells[DEVICE_NAME_POS] = new StringCell(managedObject.getName());
-				}
-				final DataRow row = new DefaultRow(key, cells);
-				container.addRowToTable(row);
-				exec.checkCanceled();
-			}
+		try {
+			// the pages are written in page order, also when requested concurrently
+			// only the managed objects matching the filters are transferred
+			reader.readConcurrently(toQuery(fragments), m_parallelismSettings.getIntValue(),
+					new ManagedObjectRowDecoder(fragments),
+					new ContainerRowSink(container, exec, 0, Long.MAX_VALUE));
+		} finally {
+			container.close();
+			cache.ifPresent(aCache -> aCache.logStatistics(logger));
 		}
-
-		container.close();
 		logger.infoWithFormat("Read data of %d devices.", container.size());
 		return container;
 	}
 
+	/**
+	 * @return the distinct fragments to add as columns
+	 */
+	private String[] getFragments() {
+		return RetrieveDataNodeModel.parseCommaList(m_fragmentsSettings.getStringValue()).toArray(new String[0]);
+	}
+
+	/**
+	 * the references to child objects are the largest part of many managed
+	 * objects, they are left out by the server (or at least their names, which
+	 * have to be looked up) unless they are selected
+	 *
+	 * pages that are requested concurrently are only consistent if the managed
+	 * objects are in a stable order, so the filters order them by id in both
+	 * modes (see {@link InventoryFilterSettings#toQuery()})
+	 *
+	 * @return query parameters of the inventory filters and of the trimming of
+	 *         the managed objects
+	 */
+	private String toQuery(final String[] aFragments) {
+		final boolean withChildren = Arrays.stream(aFragments).anyMatch(CHILD_REFERENCES::contains);
+		return PagedCollectionReader.joinQueries(m_filterSettings.toQuery(),
+				withChildren ? "skipChildrenNames=true" : "withChildren=false");
+	}
+
 	/**
 	 * 
 	 * @return DataTableSpec with three pre-defined (and fixed) columns: device id,
-	 *         type and name
+	 *         type and name, followed by a text column per selected fragment
 	 */
-	private DataTableSpec getOutputTableSpec() {
-		final DataColumnSpec[] allColSpecs = new DataColumnSpec[3];
+	private DataTableSpec getOutputTableSpec(final String[] aFragments) {
+		final DataColumnSpec[] allColSpecs = new DataColumnSpec[3 + aFragments.length];
 
 		allColSpecs[DEVICE_ID_POS] = new DataColumnSpecCreator(DEVICE_ID, StringCell.TYPE).createSpec();
 		allColSpecs[TYPE_POS] = new DataColumnSpecCreator(TYPE, StringCell.TYPE).createSpec();
 		allColSpecs[DEVICE_NAME_POS] = new DataColumnSpecCreator(DEVICE_NAME, StringCell.TYPE).createSpec();
+		for (int i = 0; i < aFragments.length; i++) {
+			allColSpecs[DEVICE_NAME_POS + 1 + i] = new DataColumnSpecCreator(aFragments[i], StringCell.TYPE)
+					.createSpec();
+		}
 		return new DataTableSpec(allColSpecs);
 	}
 
-	private ManagedObjectCollection getManagedObjects(final CloudOfThingsPlatform platform) {
-		final InventoryApi inventoryApi = platform.getInventoryApi();
-		// TODO - make page size a configurable parameter ?
-		return inventoryApi.getManagedObjects(1000);
-	}
-
 	/**
 	 * {@inheritDoc}
 	 */
@@ -149,7 +209,7 @@ public class DeviceRetrieverNodeModel extends NodeModel {
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) {
 		// input ports are no relevant
-		return new PortObjectSpec[] { getOutputTableSpec() };
+		return new PortObjectSpec[] { getOutputTableSpec(getFragments()) };
 	}
 
 	/**
@@ -157,6 +217,11 @@ public class DeviceRetrieverNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		m_pageCacheSettings.saveSettingsTo(settings);
+		m_pageSizeSettings.saveSettingsTo(settings);
+		m_parallelismSettings.saveSettingsTo(settings);
+		m_filterSettings.saveSettingsTo(settings);
+		m_fragmentsSettings.saveSettingsTo(settings);
 	}
 
 	/**
@@ -164,6 +229,16 @@ public class DeviceRetrieverNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		m_pageCacheSettings.loadValidatedSettingsFrom(settings);
+		m_pageSizeSettings.loadValidatedSettingsFrom(settings);
+		// not available in workflows created with older versions
+		if (settings.containsKey(Config_PARALLELISM)) {
+			m_parallelismSettings.loadSettingsFrom(settings);
+		}
+		m_filterSettings.loadValidatedSettingsFrom(settings);
+		if (settings.containsKey(Config_FRAGMENTS)) {
+			m_fragmentsSettings.loadSettingsFrom(settings);
+		}
 	}
 
 	/**
@@ -171,6 +246,24 @@ public class DeviceRetrieverNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		m_pageCacheSettings.validateSettings(settings);
+		m_pageSizeSettings.validateSettings(settings);
+		final SettingsModelIntegerBounded parallelismSettings = createParallelismSettings();
+		if (settings.containsKey(Config_PARALLELISM)) {
+			m_parallelismSettings.validateSettings(settings);
+			parallelismSettings.loadSettingsFrom(settings);
+		}
+		m_filterSettings.validateSettings(settings, parallelismSettings.getIntValue());
+		if (settings.containsKey(Config_FRAGMENTS)) {
+			final SettingsModelString fragmentsSettings = createFragmentsSettings();
+			fragmentsSettings.loadSettingsFrom(settings);
+			for (final String fragment : RetrieveDataNodeModel.parseCommaList(fragmentsSettings.getStringValue())) {
+				if (Arrays.asList("id", "type", "name", DEVICE_ID, TYPE, DEVICE_NAME).contains(fragment)) {
+					throw new InvalidSettingsException(
+							"\"" + fragment + "\" is always retrieved and cannot be selected as fragment");
+				}
+			}
+		}
 	}
 
 	/**
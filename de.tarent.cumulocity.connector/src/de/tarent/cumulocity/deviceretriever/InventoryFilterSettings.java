@@ -0,0 +1,194 @@
+package de.tarent.cumulocity.deviceretriever;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+import de.tarent.cumulocity.data.PagedCollectionReader;
+
+/**
+ * settings of the device retriever for the filters that are pushed into the
+ * inventory query, so that only the wanted managed objects are transferred
+ *
+ * the filters are given in the query language and the managed objects are
+ * ordered by id, so that the same query can be read page by page or with
+ * concurrent requests; only a text search without a query expression has to be
+ * sent as query parameters of the inventory api, because the query language
+ * cannot search all text fields, and is therefore only read page by page
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class InventoryFilterSettings {
+
+	static final String Config_INVENTORY_TYPE = "INVENTORY_TYPE";
+	static final String Config_INVENTORY_FRAGMENT_TYPE = "INVENTORY_FRAGMENT_TYPE";
+	static final String Config_INVENTORY_TEXT = "INVENTORY_TEXT";
+	static final String Config_INVENTORY_OWNER = "INVENTORY_OWNER";
+	static final String Config_ONLY_DEVICES = "ONLY_DEVICES";
+	static final String Config_INVENTORY_QUERY = "INVENTORY_QUERY";
+
+	static final String TYPE_LABEL = "Type";
+	static final String FRAGMENT_TYPE_LABEL = "Fragment type";
+	static final String TEXT_LABEL = "Name or text";
+	static final String OWNER_LABEL = "Owner";
+	static final String ONLY_DEVICES_LABEL = "Only devices";
+	static final String QUERY_LABEL = "Query expression";
+
+	/**
+	 * fragment of all managed objects that are devices
+	 */
+	private static final String DEVICE_FRAGMENT = "c8y_IsDevice";
+
+	private final SettingsModelString m_typeSettings = createStringSettings(Config_INVENTORY_TYPE);
+	private final SettingsModelString m_fragmentTypeSettings = createStringSettings(Config_INVENTORY_FRAGMENT_TYPE);
+	private final SettingsModelString m_textSettings = createStringSettings(Config_INVENTORY_TEXT);
+	private final SettingsModelString m_ownerSettings = createStringSettings(Config_INVENTORY_OWNER);
+	private final SettingsModelBoolean m_onlyDevicesSettings = createOnlyDevicesSettings();
+	private final SettingsModelString m_querySettings = createStringSettings(Config_INVENTORY_QUERY);
+
+	static SettingsModelString createStringSettings(final String aConfigName) {
+		return new SettingsModelString(aConfigName, "");
+	}
+
+	static SettingsModelBoolean createOnlyDevicesSettings() {
+		return new SettingsModelBoolean(Config_ONLY_DEVICES, false);
+	}
+
+	/**
+	 * adds the filter options to the given dialog
+	 */
+	static void addDialogComponents(final DefaultNodeSettingsPane aPane) {
+		aPane.addDialogComponent(
+				new DialogComponentString(createStringSettings(Config_INVENTORY_TYPE), TYPE_LABEL, false, 30));
+		aPane.addDialogComponent(new DialogComponentString(createStringSettings(Config_INVENTORY_FRAGMENT_TYPE),
+				FRAGMENT_TYPE_LABEL, false, 30));
+		aPane.addDialogComponent(
+				new DialogComponentString(createStringSettings(Config_INVENTORY_TEXT), TEXT_LABEL, false, 30));
+		aPane.addDialogComponent(
+				new DialogComponentString(createStringSettings(Config_INVENTORY_OWNER), OWNER_LABEL, false, 30));
+		aPane.addDialogComponent(new DialogComponentBoolean(createOnlyDevicesSettings(), ONLY_DEVICES_LABEL));
+		aPane.addDialogComponent(
+				new DialogComponentString(createStringSettings(Config_INVENTORY_QUERY), QUERY_LABEL, false, 30));
+	}
+
+	/**
+	 * @return query parameters ("key=value&amp;...") of the configured filters,
+	 *         the same for every number of parallel requests
+	 */
+	String toQuery() {
+		final String expression = m_querySettings.getStringValue().trim();
+		if (isOrderedById(expression, m_textSettings.getStringValue())) {
+			return PagedCollectionReader.toParameter("query", toQueryLanguage(expression));
+		}
+		return PagedCollectionReader.joinQueries(
+				PagedCollectionReader.toParameter("type", m_typeSettings.getStringValue()),
+				PagedCollectionReader.toParameter("fragmentType", m_fragmentTypeSettings.getStringValue()),
+				PagedCollectionReader.toParameter("text", m_textSettings.getStringValue()),
+				PagedCollectionReader.toParameter("owner", m_ownerSettings.getStringValue()),
+				m_onlyDevicesSettings.getBooleanValue() ? "onlyDevices=true" : "");
+	}
+
+	/**
+	 * @param aExpression - may be empty
+	 * @return the given expression and the other filters in the query language,
+	 *         ordered by id so that the pages do not overlap
+	 */
+	private String toQueryLanguage(final String aExpression) {
+		final List<String> conditions = new ArrayList<>();
+		if (!aExpression.isEmpty()) {
+			conditions.add("(" + aExpression + ")");
+		}
+		if (!m_typeSettings.getStringValue().trim().isEmpty()) {
+			conditions.add("type eq " + quote(m_typeSettings.getStringValue().trim()));
+		}
+		if (!m_fragmentTypeSettings.getStringValue().trim().isEmpty()) {
+			conditions.add("has(" + m_fragmentTypeSettings.getStringValue().trim() + ")");
+		}
+		if (!m_textSettings.getStringValue().trim().isEmpty()) {
+			conditions.add("name eq " + quote("*" + m_textSettings.getStringValue().trim() + "*"));
+		}
+		if (!m_ownerSettings.getStringValue().trim().isEmpty()) {
+			conditions.add("owner eq " + quote(m_ownerSettings.getStringValue().trim()));
+		}
+		if (m_onlyDevicesSettings.getBooleanValue()) {
+			conditions.add("has(" + DEVICE_FRAGMENT + ")");
+		}
+		if (conditions.isEmpty()) {
+			return "$orderby=id";
+		}
+		return "$filter=(" + String.join(" and ", conditions) + ") $orderby=id";
+	}
+
+	/**
+	 * @return true if the filters are given in the query language, i.e. unless
+	 *         the text is searched in all text fields
+	 */
+	private static boolean isOrderedById(final String aExpression, final String aText) {
+		return !aExpression.trim().isEmpty() || aText.trim().isEmpty();
+	}
+
+	private static String quote(final String aValue) {
+		return "'" + aValue.replace("'", "''") + "'";
+	}
+
+	void saveSettingsTo(final NodeSettingsWO aSettings) {
+		m_typeSettings.saveSettingsTo(aSettings);
+		m_fragmentTypeSettings.saveSettingsTo(aSettings);
+		m_textSettings.saveSettingsTo(aSettings);
+		m_ownerSettings.saveSettingsTo(aSettings);
+		m_onlyDevicesSettings.saveSettingsTo(aSettings);
+		m_querySettings.saveSettingsTo(aSettings);
+	}
+
+	void loadValidatedSettingsFrom(final NodeSettingsRO aSettings) throws InvalidSettingsException {
+		// not available in workflows created with older versions
+		if (aSettings.containsKey(Config_INVENTORY_TYPE)) {
+			m_typeSettings.loadSettingsFrom(aSettings);
+			m_fragmentTypeSettings.loadSettingsFrom(aSettings);
+			m_textSettings.loadSettingsFrom(aSettings);
+			m_ownerSettings.loadSettingsFrom(aSettings);
+			m_onlyDevicesSettings.loadSettingsFrom(aSettings);
+			m_querySettings.loadSettingsFrom(aSettings);
+		}
+	}
+
+	/**
+	 * @param aParallelism - number of parallel requests of the given settings
+	 */
+	void validateSettings(final NodeSettingsRO aSettings, final int aParallelism) throws InvalidSettingsException {
+		if (aSettings.containsKey(Config_INVENTORY_TYPE)) {
+			m_typeSettings.validateSettings(aSettings);
+			m_fragmentTypeSettings.validateSettings(aSettings);
+			m_textSettings.validateSettings(aSettings);
+			m_ownerSettings.validateSettings(aSettings);
+			m_onlyDevicesSettings.validateSettings(aSettings);
+			m_querySettings.validateSettings(aSettings);
+
+			final SettingsModelString fragmentType = createStringSettings(Config_INVENTORY_FRAGMENT_TYPE);
+			fragmentType.loadSettingsFrom(aSettings);
+			if (fragmentType.getStringValue().trim().matches(".*[\\s()'].*")) {
+				throw new InvalidSettingsException(
+						"Fragment type must not contain spaces, quotes or parentheses: " + fragmentType.getStringValue());
+			}
+
+			// the pages of the text search are not in a stable order
+			final SettingsModelString text = createStringSettings(Config_INVENTORY_TEXT);
+			text.loadSettingsFrom(aSettings);
+			final SettingsModelString query = createStringSettings(Config_INVENTORY_QUERY);
+			query.loadSettingsFrom(aSettings);
+			if (aParallelism > 1 && !isOrderedById(query.getStringValue(), text.getStringValue())) {
+				throw new InvalidSettingsException("The " + TEXT_LABEL
+						+ " filter needs 1 parallel request, unless a query expression is given.");
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package de.tarent.cumulocity.deviceretriever;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.node.CanceledExecutionException;
+
+import com.google.gson.stream.JsonReader;
+
+import de.tarent.cumulocity.data.JsonCells;
+import de.tarent.cumulocity.data.PagedCollectionReader.ElementDecoder;
+import de.tarent.cumulocity.data.RowSink;
+
+/**
+ * decodes managed objects directly from the JSON stream into rows with the
+ * device id, type and name and the selected fragments (as text), all other
+ * attributes are skipped without being parsed into objects
+ *
+ * a decoder re-uses its buffers and must therefore not be shared between
+ * threads
+ *
+ * @author tarent solutions GmbH
+ *
+ */
+final class ManagedObjectRowDecoder implements ElementDecoder {
+
+	private final DataCell[] m_cells;
+
+	/**
+	 * position of the cell of each selected fragment
+	 */
+	private final Map<String, Integer> m_fragmentPositions = new HashMap<>();
+
+	ManagedObjectRowDecoder() {
+		this(new String[0]);
+	}
+
+	/**
+	 * @param aFragments - names of the fragments to keep, their cells follow
+	 *                   the cell of the device name
+	 */
+	ManagedObjectRowDecoder(final String[] aFragments) {
+		m_cells = new DataCell[DeviceRetrieverNodeModel.DEVICE_NAME_POS + 1 + aFragments.length];
+		for (int i = 0; i < aFragments.length; i++) {
+			m_fragmentPositions.put(aFragments[i], DeviceRetrieverNodeModel.DEVICE_NAME_POS + 1 + i);
+		}
+	}
+
+	@Override
+	public boolean decode(final JsonReader aReader, final RowSink aSink) throws IOException, CanceledExecutionException {
+		Arrays.fill(m_cells, DataType.getMissingCell());
+		aReader.beginObject();
+		while (aReader.hasNext()) {
+			final String name = aReader.nextName();
+			switch (name) {
+			case "id":
+				m_cells[DeviceRetrieverNodeModel.DEVICE_ID_POS] = JsonCells.nextStringCell(aReader);
+				break;
+			case "type":
+				m_cells[DeviceRetrieverNodeModel.TYPE_POS] = JsonCells.nextStringCell(aReader);
+				break;
+			case "name":
+				m_cells[DeviceRetrieverNodeModel.DEVICE_NAME_POS] = JsonCells.nextStringCell(aReader);
+				break;
+			default:
+				final Integer position = m_fragmentPositions.get(name);
+				if (position == null) {
+					// other fragments, references to child devices, ...
+					aReader.skipValue();
+				} else {
+					m_cells[position] = JsonCells.nextJsonCell(aReader);
+				}
+			}
+		}
+		aReader.endObject();
+		return aSink.addRow(m_cells);
+	}
+}